@@ -47,6 +47,7 @@ import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.ipc.RpcControllerFactory;
+import org.apache.hadoop.hbase.quotas.ThrottlingException;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.Pair;
@@ -697,6 +698,9 @@ class AsyncProcess<CResult> {
     // It should be possible to have some heuristics to take the right decision. Short term,
     //  we go for one.
     long backOffTime = errorsByServer.calculateBackoffTime(oldLocation, pause);
+    if (throwable instanceof ThrottlingException) {
+      backOffTime = Math.max(backOffTime, ((ThrottlingException) throwable).getWaitInterval());
+    }
 
     if (numAttempt > startLogErrorsCnt) {
       // We use this value to have some logs when we have multiple failures, but not too many
@@ -133,6 +133,8 @@ import org.apache.hadoop.hbase.protobuf.generated.MasterProtos.SnapshotRequest;
 import org.apache.hadoop.hbase.protobuf.generated.MasterProtos.SnapshotResponse;
 import org.apache.hadoop.hbase.protobuf.generated.MasterProtos.StopMasterRequest;
 import org.apache.hadoop.hbase.protobuf.generated.MasterProtos.UnassignRegionRequest;
+import org.apache.hadoop.hbase.quotas.QuotaSettings;
+import org.apache.hadoop.hbase.quotas.QuotaTableUtil;
 import org.apache.hadoop.hbase.regionserver.wal.FailedLogCloseException;
 import org.apache.hadoop.hbase.snapshot.HBaseSnapshotException;
 import org.apache.hadoop.hbase.snapshot.RestoreSnapshotException;
@@ -2828,6 +2830,50 @@ public class HBaseAdmin implements Abortable, Closeable {
         });
   }
 
+  /**
+   * Apply the new quota settings. Region servers pick them up when they next refresh their
+   * quota cache, see <code>hbase.quota.refresh.period</code>.
+   * @param quota the throttle to set, or the throttles to remove
+   * @throws TableNotFoundException if quotas are not enabled on the cluster
+   * @throws IOException
+   */
+  public void setQuota(final QuotaSettings quota) throws IOException {
+    HTable table = new HTable(QuotaTableUtil.QUOTA_TABLE_NAME, getConnection());
+    try {
+      Mutation m = QuotaTableUtil.toMutation(quota);
+      if (m instanceof Put) {
+        table.put((Put) m);
+      } else {
+        table.delete((Delete) m);
+      }
+    } finally {
+      table.close();
+    }
+  }
+
+  /**
+   * @return all the throttles set on the cluster
+   * @throws TableNotFoundException if quotas are not enabled on the cluster
+   * @throws IOException
+   */
+  public List<QuotaSettings> getQuotas() throws IOException {
+    List<QuotaSettings> quotas = new ArrayList<QuotaSettings>();
+    HTable table = new HTable(QuotaTableUtil.QUOTA_TABLE_NAME, getConnection());
+    try {
+      ResultScanner scanner = table.getScanner(QuotaTableUtil.QUOTA_FAMILY);
+      try {
+        for (Result r : scanner) {
+          quotas.addAll(QuotaTableUtil.parseResult(r));
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      table.close();
+    }
+    return quotas;
+  }
+
   /**
    * Check to see if HBase is running. Throw an exception if not.
    * We consider that HBase is running if ZooKeeper and Master are running.
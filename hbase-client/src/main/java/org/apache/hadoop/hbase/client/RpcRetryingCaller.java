@@ -32,6 +32,7 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.ipc.RpcClient;
+import org.apache.hadoop.hbase.quotas.ThrottlingException;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.ExceptionUtil;
 import org.apache.hadoop.ipc.RemoteException;
@@ -132,6 +133,10 @@ public class RpcRetryingCaller<T> {
         //  a chance to the regions to be
         // tries hasn't been bumped up yet so we use "tries + 1" to get right pause time
         expectedSleep = callable.sleep(pause, tries + 1);
+        if (t instanceof ThrottlingException) {
+          // The server told us when its quota lets the call in again.
+          expectedSleep = Math.max(expectedSleep, ((ThrottlingException) t).getWaitInterval());
+        }
 
         // If, after the planned sleep, there won't be enough time left, we stop now.
         long duration = singleCallDuration(expectedSleep);
@@ -0,0 +1,512 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * Cellblock compression that only compresses the cellblocks it pays off for.
+ *
+ * <p>A client asks for it by setting <code>hbase.client.rpc.compressor</code> to this class; the
+ * connection header then carries the class to the server, which makes an instance for the
+ * connection, so the choice is made connection by connection like for any other codec.
+ * The first {@link #MIN_SIZE_KEY} bytes of a cellblock are written straight through as they are,
+ * so small cellblocks cost no more than without compression. The rest of a larger one is
+ * compressed with the algorithm of {@link #ALGORITHM_KEY}, and sent compressed only if that saved
+ * at least what {@link #MAX_RATIO_KEY} asks. After a cellblock that did not compress well, the
+ * next {@link #PROBE_INTERVAL} are not tried, so incompressible data costs little CPU; data on a
+ * fast local link is best left uncompressed by raising the minimum size.
+ *
+ * <p>As the choice is only made at the end, every cellblock ends with a byte naming the
+ * algorithm its rest was compressed with, see {@link #ALGORITHM_IDS}, so each side can pick its
+ * own algorithm and the reader needs no settings; it must have the algorithm available though.
+ * A compressed cellblock is the raw bytes, the compressed rest, the int length of the raw bytes
+ * and that byte; an uncompressed one is the raw bytes and a 0.
+ * Compressors and decompressors are kept by the instance and reused, i.e. per connection on
+ * the server, rather than going through the global {@link CodecPool} for every cellblock;
+ * {@link #close()} gives them back to it.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class AdaptiveCompressionCodec implements CompressionCodec, Configurable, Closeable {
+  private static final Log LOG = LogFactory.getLog(AdaptiveCompressionCodec.class);
+
+  /** Algorithm cellblocks are compressed with, e.g. snappy, lz4 or gz */
+  public static final String ALGORITHM_KEY = "hbase.ipc.cellblock.adaptive.compression";
+  /** Size from which cellblocks are compressed */
+  public static final String MIN_SIZE_KEY = "hbase.ipc.cellblock.adaptive.min.size";
+  /** Largest compressed to raw size ratio for a cellblock to be sent compressed */
+  public static final String MAX_RATIO_KEY = "hbase.ipc.cellblock.adaptive.max.ratio";
+
+  /** Cellblocks not tried after one that did not compress well */
+  static final int PROBE_INTERVAL = 16;
+
+  /**
+   * Algorithms by the id cellblocks carry, which must not depend on the order of
+   * {@link Compression.Algorithm}; only ever append.
+   */
+  private static final Compression.Algorithm[] ALGORITHM_IDS = {
+    Compression.Algorithm.NONE,
+    Compression.Algorithm.GZ,
+    Compression.Algorithm.LZO,
+    Compression.Algorithm.SNAPPY,
+    Compression.Algorithm.LZ4
+  };
+
+  /** Length of the trailer of a compressed cellblock */
+  private static final int TRAILER_SIZE = Bytes.SIZEOF_INT + 1;
+
+  private final Queue<Compressor> compressors = new ConcurrentLinkedQueue<Compressor>();
+  // by algorithm, as a connection may get cellblocks of any
+  private final Queue<Decompressor>[] decompressors;
+  private final AtomicInteger toSkip = new AtomicInteger();
+  private volatile boolean closed = false;
+  private Configuration conf;
+  private Compression.Algorithm algorithm = Compression.Algorithm.NONE;
+  private int minSize;
+  private float maxRatio;
+
+  @SuppressWarnings("unchecked")
+  public AdaptiveCompressionCodec() {
+    decompressors = new Queue[ALGORITHM_IDS.length];
+    for (int i = 0; i < decompressors.length; i++) {
+      decompressors[i] = new ConcurrentLinkedQueue<Decompressor>();
+    }
+  }
+
+  @Override
+  public synchronized void setConf(Configuration conf) {
+    // Set again for every cellblock by IPCUtil
+    if (conf == this.conf) {
+      return;
+    }
+    this.conf = conf;
+    this.minSize = conf.getInt(MIN_SIZE_KEY, 32 * 1024);
+    this.maxRatio = conf.getFloat(MAX_RATIO_KEY, 0.8f);
+    Compression.Algorithm configured = Compression.Algorithm.NONE;
+    try {
+      configured = Compression.getCompressionAlgorithmByName(conf.get(ALGORITHM_KEY, "snappy"));
+      if (configured != Compression.Algorithm.NONE) {
+        // Fails if the algorithm is not available here
+        Compressor compressor = configured.getCompressor();
+        configured.returnCompressor(compressor);
+      }
+    } catch (Throwable t) {
+      LOG.warn("Cellblock compression " + conf.get(ALGORITHM_KEY) +
+        " is not available, cellblocks will not be compressed", t);
+      configured = Compression.Algorithm.NONE;
+    }
+    if (configured != this.algorithm) {
+      releaseCompressors();
+      this.algorithm = configured;
+    }
+  }
+
+  @Override
+  public synchronized Configuration getConf() {
+    return conf;
+  }
+
+  synchronized Compression.Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out) throws IOException {
+    Compression.Algorithm algorithm;
+    int minSize;
+    float maxRatio;
+    synchronized (this) {
+      algorithm = this.algorithm;
+      minSize = this.minSize;
+      maxRatio = this.maxRatio;
+    }
+    return new AdaptiveOutputStream(out, algorithm, minSize, maxRatio);
+  }
+
+  /**
+   * The passed compressor is not used; the codec keeps its own.
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor)
+      throws IOException {
+    return createOutputStream(out);
+  }
+
+  @Override
+  public Class<? extends Compressor> getCompressorType() {
+    return null;
+  }
+
+  @Override
+  public Compressor createCompressor() {
+    return null;
+  }
+
+  /**
+   * As the algorithm is at the end, the cellblock is read in full first; see
+   * {@link #createInputStream(byte[], int, int)} for one that is in memory already.
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in) throws IOException {
+    DataOutputBuffer cellBlock = new DataOutputBuffer();
+    IOUtils.copyBytes(in, cellBlock, 4096, false);
+    return createInputStream(cellBlock.getData(), 0, cellBlock.getLength());
+  }
+
+  /**
+   * @return the uncompressed content of the cellblock at <code>offset</code>
+   */
+  CompressionInputStream createInputStream(final byte[] cellBlock, final int offset,
+      final int length) throws IOException {
+    Compression.Algorithm algorithm = getAlgorithm(cellBlock, offset, length);
+    if (algorithm == Compression.Algorithm.NONE) {
+      return new AdaptiveInputStream(new ByteArrayInputStream(cellBlock, offset, length - 1),
+        algorithm, null);
+    }
+    int rawLength = length < TRAILER_SIZE ? -1 :
+      Bytes.toInt(cellBlock, offset + length - TRAILER_SIZE);
+    if (rawLength < 0 || rawLength > length - TRAILER_SIZE) {
+      throw new IOException("Corrupt cellblock, raw length " + rawLength + " of " + length);
+    }
+    return new AdaptiveInputStream(new ByteArrayInputStream(cellBlock, offset, rawLength),
+      algorithm, new ByteArrayInputStream(cellBlock, offset + rawLength,
+        length - TRAILER_SIZE - rawLength));
+  }
+
+  /**
+   * @return the algorithm the cellblock at <code>offset</code> was compressed with; if
+   * {@link Compression.Algorithm#NONE}, its content is the first <code>length - 1</code> bytes.
+   */
+  static Compression.Algorithm getAlgorithm(final byte[] cellBlock, final int offset,
+      final int length) throws IOException {
+    if (length <= 0) {
+      throw new IOException("Empty cellblock");
+    }
+    int id = cellBlock[offset + length - 1] & 0xff;
+    if (id >= ALGORITHM_IDS.length) {
+      throw new IOException("Unknown cellblock compression " + id);
+    }
+    return ALGORITHM_IDS[id];
+  }
+
+  /**
+   * @return the id cellblocks compressed with <code>algorithm</code> carry
+   */
+  static int getId(final Compression.Algorithm algorithm) {
+    for (int id = 0; id < ALGORITHM_IDS.length; id++) {
+      if (ALGORITHM_IDS[id] == algorithm) {
+        return id;
+      }
+    }
+    throw new IllegalArgumentException("No cellblock id for " + algorithm);
+  }
+
+  /**
+   * The passed decompressor is not used; the codec keeps its own.
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in, Decompressor decompressor)
+      throws IOException {
+    return createInputStream(in);
+  }
+
+  @Override
+  public Class<? extends Decompressor> getDecompressorType() {
+    return null;
+  }
+
+  @Override
+  public Decompressor createDecompressor() {
+    return null;
+  }
+
+  @Override
+  public String getDefaultExtension() {
+    return ".adaptive";
+  }
+
+  /**
+   * Gives the kept compressors and decompressors back to the global pool. The codec can still
+   * be used afterwards, but does not keep them any more.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    releaseCompressors();
+    for (int id = 0; id < ALGORITHM_IDS.length; id++) {
+      Decompressor decompressor;
+      while ((decompressor = decompressors[id].poll()) != null) {
+        ALGORITHM_IDS[id].returnDecompressor(decompressor);
+      }
+    }
+  }
+
+  private void releaseCompressors() {
+    Compressor compressor;
+    while ((compressor = compressors.poll()) != null) {
+      CodecPool.returnCompressor(compressor);
+    }
+  }
+
+  /**
+   * @return whether to try compressing the next large cellblock
+   */
+  private boolean shouldProbe() {
+    int skip = toSkip.get();
+    if (skip <= 0) {
+      return true;
+    }
+    toSkip.compareAndSet(skip, skip - 1);
+    return false;
+  }
+
+  private Compressor borrowCompressor(final Compression.Algorithm algorithm) {
+    Compressor compressor = compressors.poll();
+    if (compressor == null) {
+      return algorithm.getCompressor();
+    }
+    compressor.reset();
+    return compressor;
+  }
+
+  private void returnCompressor(final Compression.Algorithm algorithm,
+      final Compressor compressor) {
+    if (compressor == null) {
+      return;
+    }
+    synchronized (this) {
+      if (!closed && algorithm == this.algorithm) {
+        compressors.offer(compressor);
+        return;
+      }
+    }
+    algorithm.returnCompressor(compressor);
+  }
+
+  private Decompressor borrowDecompressor(final Compression.Algorithm algorithm) {
+    Decompressor decompressor = decompressors[getId(algorithm)].poll();
+    if (decompressor == null) {
+      return algorithm.getDecompressor();
+    }
+    decompressor.reset();
+    return decompressor;
+  }
+
+  private void returnDecompressor(final Compression.Algorithm algorithm,
+      final Decompressor decompressor) {
+    if (decompressor == null) {
+      return;
+    }
+    if (closed) {
+      algorithm.returnDecompressor(decompressor);
+    } else {
+      decompressors[getId(algorithm)].offer(decompressor);
+    }
+  }
+
+  /**
+   * Writes the first <code>minSize</code> bytes straight through, and collects the rest, if it
+   * is to be tried, to write it out compressed or not once finished.
+   */
+  private class AdaptiveOutputStream extends CompressionOutputStream {
+    private final Compression.Algorithm algorithm;
+    private final int minSize;
+    private final float maxRatio;
+    // bytes written straight through
+    private int rawLength = 0;
+    private boolean probed = false;
+    // the rest, if it is to be compressed
+    private DataOutputBuffer rest;
+    private final byte[] oneByte = new byte[1];
+    private boolean finished = false;
+
+    AdaptiveOutputStream(OutputStream out, Compression.Algorithm algorithm, int minSize,
+        float maxRatio) {
+      super(out);
+      this.algorithm = algorithm;
+      this.minSize = minSize;
+      this.maxRatio = maxRatio;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      oneByte[0] = (byte)b;
+      write(oneByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (rest != null) {
+        rest.write(b, off, len);
+        return;
+      }
+      if (!probed && algorithm != Compression.Algorithm.NONE && rawLength + len > minSize) {
+        probed = true;
+        if (shouldProbe()) {
+          int head = Math.max(minSize - rawLength, 0);
+          out.write(b, off, head);
+          rawLength += head;
+          rest = new DataOutputBuffer();
+          rest.write(b, off + head, len - head);
+          return;
+        }
+      }
+      out.write(b, off, len);
+      rawLength += len;
+    }
+
+    @Override
+    public void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (rest != null) {
+        int length = rest.getLength();
+        Compressor compressor = borrowCompressor(algorithm);
+        try {
+          DataOutputBuffer compressed = new DataOutputBuffer(length / 2);
+          CompressionOutputStream cos =
+            algorithm.createPlainCompressionStream(compressed, compressor);
+          cos.write(rest.getData(), 0, length);
+          cos.finish();
+          if (compressed.getLength() <= length * maxRatio) {
+            out.write(compressed.getData(), 0, compressed.getLength());
+            out.write(Bytes.toBytes(rawLength));
+            out.write(getId(algorithm));
+            return;
+          }
+          toSkip.set(PROBE_INTERVAL);
+        } finally {
+          returnCompressor(algorithm, compressor);
+        }
+        out.write(rest.getData(), 0, length);
+      }
+      out.write(getId(Compression.Algorithm.NONE));
+    }
+
+    @Override
+    public void resetState() throws IOException {
+      rawLength = 0;
+      probed = false;
+      rest = null;
+      finished = false;
+    }
+  }
+
+  /**
+   * Reads the raw bytes, then the rest through a decompression stream of the algorithm, if
+   * any. The decompressor goes back to the codec at the end of the cellblock.
+   */
+  private class AdaptiveInputStream extends CompressionInputStream {
+    private final Compression.Algorithm algorithm;
+    private final InputStream compressed;
+    private InputStream stream;
+    private Decompressor decompressor;
+    private boolean eof = false;
+
+    AdaptiveInputStream(InputStream raw, Compression.Algorithm algorithm, InputStream compressed)
+        throws IOException {
+      super(raw);
+      this.algorithm = algorithm;
+      this.compressed = compressed;
+    }
+
+    /**
+     * @return the stream of the rest, null if there is none
+     */
+    private InputStream openRest() throws IOException {
+      if (stream == null && compressed != null) {
+        decompressor = borrowDecompressor(algorithm);
+        stream = algorithm.createDecompressionStream(compressed, decompressor, 0);
+      }
+      return stream;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0 || eof || openRest() == null) {
+        return b;
+      }
+      b = stream.read();
+      if (b < 0) {
+        release();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n >= 0 || eof || openRest() == null) {
+        return n;
+      }
+      n = stream.read(b, off, len);
+      if (n < 0) {
+        release();
+      }
+      return n;
+    }
+
+    private void release() {
+      // the decompression stream must not be read again once its decompressor is back
+      eof = true;
+      if (decompressor != null) {
+        returnDecompressor(algorithm, decompressor);
+        decompressor = null;
+      }
+    }
+
+    @Override
+    public void resetState() throws IOException {
+      release();
+    }
+
+    @Override
+    public void close() throws IOException {
+      release();
+      super.close();
+    }
+  }
+}
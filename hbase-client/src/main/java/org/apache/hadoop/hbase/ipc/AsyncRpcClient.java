@@ -0,0 +1,708 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.io.BoundedByteBufferPool;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.CellBlockMeta;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.ConnectionHeader;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.ExceptionResponse;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.RequestHeader;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.ResponseHeader;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.UserInformation;
+import org.apache.hadoop.hbase.protobuf.generated.TracingProtos.RPCTInfo;
+import org.apache.hadoop.hbase.security.AuthMethod;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.hbase.util.Threads;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.cloudera.htrace.Span;
+import org.cloudera.htrace.Trace;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Descriptors.MethodDescriptor;
+import com.google.protobuf.Message;
+import com.google.protobuf.Message.Builder;
+
+/**
+ * Rpc client on a small, fixed number of non-blocking I/O threads, instead of a reader thread
+ * per server connection.
+ *
+ * <p>Calls are multiplexed over one connection per server, user and service. Each caller
+ * encodes its own request, cellblock included, into a direct buffer from a pool, and queues
+ * it on the connection; whichever caller finds the connection idle then writes everything
+ * queued in one gathering write, so concurrent calls to a server are coalesced rather than
+ * serialized on a lock around the socket. Responses are decoded on the I/O threads and
+ * complete the {@link ListenableFuture} returned by
+ * {@link #callAsync(MethodDescriptor, Message, CellScanner, Message, User, InetSocketAddress,
+ * int, int)}; call timeouts are tracked by a shared timer. The blocking calls used by the
+ * protobuf blocking stubs simply wait on that future.
+ *
+ * <p>The wire format is the one of {@link RpcClient}. SASL authentication is not done on the
+ * event loop: when hbase security is enabled, the blocking connections of {@link RpcClient}
+ * are used.
+ *
+ * <p>To use it, set <code>hbase.rpc.client.impl</code> to this class.
+ */
+@InterfaceAudience.Private
+public class AsyncRpcClient extends RpcClient {
+
+  /** Number of I/O threads shared by all the connections of the client */
+  public static final String IO_THREADS_KEY = "hbase.rpc.client.async.io.threads";
+  /** Most bytes of queued requests coalesced into one write */
+  public static final String WRITE_BATCH_SIZE_KEY = "hbase.rpc.client.async.write.batch.size";
+  /** Largest cellblock buffer kept in the pool */
+  public static final String POOL_MAX_BUFFER_SIZE_KEY =
+      "hbase.rpc.client.async.buffer.pool.max.buffer.size";
+  /** Most cellblock buffers kept in the pool */
+  public static final String POOL_MAX_BUFFERS_KEY = "hbase.rpc.client.async.buffer.pool.max";
+
+  private final NioClientSocketChannelFactory channelFactory;
+  private final HashedWheelTimer timer;
+  private final BoundedByteBufferPool bufferPool;
+  private final ConcurrentMap<ConnectionId, AsyncConnection> asyncConnections =
+      new ConcurrentHashMap<ConnectionId, AsyncConnection>();
+  private final AtomicInteger callIdCnt = new AtomicInteger();
+  private final AtomicBoolean stopped = new AtomicBoolean(false);
+  private final int writeBatchSize;
+  private final int connectTimeout;
+
+  public AsyncRpcClient(Configuration conf, String clusterId, SocketAddress localAddr) {
+    super(conf, clusterId, localAddr);
+    int ioThreads = conf.getInt(IO_THREADS_KEY,
+        Math.min(4, Runtime.getRuntime().availableProcessors()));
+    this.channelFactory = new NioClientSocketChannelFactory(
+        Executors.newCachedThreadPool(Threads.newDaemonThreadFactory("AsyncRpcClient.boss")),
+        Executors.newCachedThreadPool(Threads.newDaemonThreadFactory("AsyncRpcClient.io")),
+        ioThreads);
+    this.timer = new HashedWheelTimer(Threads.newDaemonThreadFactory("AsyncRpcClient.timer"),
+        10, TimeUnit.MILLISECONDS);
+    this.bufferPool = new BoundedByteBufferPool(
+        conf.getInt(POOL_MAX_BUFFER_SIZE_KEY, 1024 * 1024),
+        conf.getInt("hbase.ipc.cellblock.building.initial.buffersize", 16 * 1024),
+        conf.getInt(POOL_MAX_BUFFERS_KEY, 64 * ioThreads));
+    this.writeBatchSize = conf.getInt(WRITE_BATCH_SIZE_KEY, 64 * 1024);
+    this.connectTimeout = getSocketTimeout(conf);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Async rpc client with " + ioThreads + " I/O threads, write batch size "
+          + writeBatchSize);
+    }
+  }
+
+  /**
+   * Sends a call without waiting for its response.
+   * @param md
+   * @param param
+   * @param cells
+   * @param returnType
+   * @param ticket Be careful which ticket you pass. A new user will mean a new Connection.
+   * @param addr
+   * @param rpcTimeout time after which the call fails with a {@link CallTimeoutException};
+   *          0 for none
+   * @param priority
+   * @return future of the Message response and the Cell data (if any); fails with the
+   *         exception of the call
+   */
+  public ListenableFuture<Pair<Message, CellScanner>> callAsync(MethodDescriptor md,
+      Message param, CellScanner cells, Message returnType, User ticket, InetSocketAddress addr,
+      int rpcTimeout, int priority) {
+    return sendCall(md, param, cells, returnType, ticket, addr, rpcTimeout, priority);
+  }
+
+  private AsyncCall sendCall(MethodDescriptor md, Message param, CellScanner cells,
+      Message returnType, User ticket, InetSocketAddress addr, int rpcTimeout, int priority) {
+    AsyncCall call = new AsyncCall(md, param, cells, returnType, priority);
+    try {
+      if (!running.get()) {
+        throw new StoppedRpcClientException();
+      }
+      if (userProvider.isHBaseSecurityEnabled()) {
+        throw new IOException("Asynchronous calls are not supported with hbase security");
+      }
+      if (failedServers.isFailedServer(addr)) {
+        throw new FailedServerException("This server is in the failed servers list: " + addr);
+      }
+      AsyncConnection connection = getAsyncConnection(ticket, md, addr);
+      call.encode();
+      try {
+        connection.send(call, rpcTimeout);
+      } catch (ConnectionClosingException e) {
+        // closed for being idle as we got it; retry once, on a new connection
+        getAsyncConnection(ticket, md, addr).send(call, rpcTimeout);
+      }
+    } catch (IOException e) {
+      call.releaseCellBlock();
+      call.setFailed(e);
+    }
+    return call;
+  }
+
+  @Override
+  Pair<Message, CellScanner> call(MethodDescriptor md, Message param, CellScanner cells,
+      Message returnType, User ticket, InetSocketAddress addr,
+      int rpcTimeout, int priority)
+  throws InterruptedException, IOException {
+    if (userProvider.isHBaseSecurityEnabled()) {
+      return super.call(md, param, cells, returnType, ticket, addr, rpcTimeout, priority);
+    }
+    AsyncCall call = sendCall(md, param, cells, returnType, ticket, addr, rpcTimeout, priority);
+    try {
+      return call.get();
+    } catch (InterruptedException e) {
+      call.abandon();
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable t = e.getCause();
+      if (t instanceof RemoteException) {
+        t.fillInStackTrace();
+        throw (RemoteException) t;
+      }
+      if (t instanceof FailedServerException || t instanceof StoppedRpcClientException
+          || t instanceof UnknownHostException) {
+        // thrown as is when getting the connection, as the blocking client does
+        throw (IOException) t;
+      }
+      if (t instanceof IOException) {
+        throw wrapException(addr, (IOException) t);
+      }
+      throw new IOException("Call to " + addr + " failed", t);
+    }
+  }
+
+  private AsyncConnection getAsyncConnection(User ticket, MethodDescriptor md,
+      InetSocketAddress addr) throws IOException {
+    if (addr.isUnresolved()) {
+      throw new UnknownHostException("unknown host: " + addr.getHostName());
+    }
+    // calls time out on their own, so connections are not told apart by timeout
+    ConnectionId remoteId = new ConnectionId(ticket, md.getService().getName(), addr, 0);
+    AsyncConnection connection = asyncConnections.get(remoteId);
+    if (connection == null) {
+      AsyncConnection newConnection = new AsyncConnection(remoteId);
+      connection = asyncConnections.putIfAbsent(remoteId, newConnection);
+      if (connection == null) {
+        connection = newConnection;
+        connection.connect();
+      }
+    }
+    return connection;
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    if (!stopped.compareAndSet(false, true)) return;
+    for (AsyncConnection connection : asyncConnections.values()) {
+      connection.close(new StoppedRpcClientException());
+    }
+    timer.stop();
+    channelFactory.releaseExternalResources();
+  }
+
+  @Override
+  public void cancelConnections(String hostname, int port, IOException ioe) {
+    super.cancelConnections(hostname, port, ioe);
+    for (AsyncConnection connection : asyncConnections.values()) {
+      InetSocketAddress address = connection.remoteId.getAddress();
+      if (address.getPort() == port && address.getHostName().equals(hostname)) {
+        LOG.info("The server on " + hostname + ":" + port +
+            " is dead - stopping the connection " + connection.remoteId);
+        connection.close(ioe);
+      }
+    }
+  }
+
+  private static IOException toIOException(Throwable t) {
+    return t instanceof IOException ? (IOException) t : new IOException(t);
+  }
+
+  /**
+   * Thrown when sending on a connection closed for being idle: the call was not added to it,
+   * and can be sent again on a new connection.
+   */
+  @SuppressWarnings("serial")
+  private static class ConnectionClosingException extends IOException {
+    ConnectionClosingException(String msg) {
+      super(msg);
+    }
+  }
+
+  /** A call and the future of its response. */
+  private class AsyncCall extends AbstractFuture<Pair<Message, CellScanner>> {
+    final int id;
+    final MethodDescriptor md;
+    final Message param;
+    final CellScanner cells;
+    final Message responseDefaultType;
+    final int priority;
+    final long startTime;
+    final RPCTInfo traceInfo;
+    // the request as written out, and the pooled buffer holding its cellblock
+    ChannelBuffer request;
+    final AtomicReference<ByteBuffer> cellBlock = new AtomicReference<ByteBuffer>();
+    volatile Timeout timeout;
+    volatile AsyncConnection connection;
+
+    AsyncCall(MethodDescriptor md, Message param, CellScanner cells,
+        Message responseDefaultType, int priority) {
+      this.id = callIdCnt.getAndIncrement() & Integer.MAX_VALUE;
+      this.md = md;
+      this.param = param;
+      this.cells = cells;
+      this.responseDefaultType = responseDefaultType;
+      this.priority = priority;
+      this.startTime = EnvironmentEdgeManager.currentTimeMillis();
+      if (Trace.isTracing()) {
+        Span s = Trace.currentSpan();
+        this.traceInfo = RPCTInfo.newBuilder().
+          setParentId(s.getSpanId()).setTraceId(s.getTraceId()).build();
+      } else {
+        this.traceInfo = null;
+      }
+    }
+
+    /**
+     * Builds the request, in the calling thread rather than on the I/O threads.
+     */
+    void encode() throws IOException {
+      RequestHeader.Builder builder = RequestHeader.newBuilder();
+      builder.setCallId(id);
+      if (traceInfo != null) {
+        builder.setTraceInfo(traceInfo);
+      }
+      builder.setMethodName(md.getName());
+      builder.setRequestParam(param != null);
+      ByteBuffer cb = ipcUtil.buildCellBlock(codec, compressor, cells, bufferPool);
+      if (cb != null) {
+        cellBlock.set(cb);
+        builder.setCellBlockMeta(CellBlockMeta.newBuilder().setLength(cb.limit()).build());
+      }
+      boolean encoded = false;
+      try {
+        this.request = buildRequest(builder, cb);
+        encoded = true;
+      } finally {
+        if (!encoded) releaseCellBlock();
+      }
+    }
+
+    private ChannelBuffer buildRequest(RequestHeader.Builder builder, ByteBuffer cb)
+        throws IOException {
+      // Only pass priority if there one.  Let zero be same as no priority.
+      if (priority != 0) builder.setPriority(priority);
+      ByteBuffer header = IPCUtil.getDelimitedMessageAsByteBuffer(builder.build());
+      ByteBuffer body = IPCUtil.getDelimitedMessageAsByteBuffer(param);
+      int totalSize = header.remaining() + (body == null ? 0 : body.remaining()) +
+          (cb == null ? 0 : cb.remaining());
+      ChannelBuffer length = ChannelBuffers.buffer(4);
+      length.writeInt(totalSize);
+      List<ChannelBuffer> parts = new ArrayList<ChannelBuffer>(4);
+      parts.add(length);
+      parts.add(ChannelBuffers.wrappedBuffer(header));
+      if (body != null) parts.add(ChannelBuffers.wrappedBuffer(body));
+      if (cb != null) parts.add(ChannelBuffers.wrappedBuffer(cb));
+      return ChannelBuffers.wrappedBuffer(parts.toArray(new ChannelBuffer[parts.size()]));
+    }
+
+    /** Gives the cellblock buffer back once the request is written or dropped. */
+    void releaseCellBlock() {
+      ByteBuffer cb = cellBlock.getAndSet(null);
+      if (cb != null) {
+        bufferPool.putbackBuffer(cb);
+      }
+    }
+
+    void setResponse(Message response, CellScanner cells) {
+      cancelTimeout();
+      set(new Pair<Message, CellScanner>(response, cells));
+    }
+
+    void setFailed(IOException e) {
+      cancelTimeout();
+      setException(e);
+    }
+
+    /**
+     * Drops the call when its caller stops waiting for it, so that the connection does not
+     * keep it until its response or timeout.
+     */
+    void abandon() {
+      AsyncConnection c = connection;
+      if (c != null) {
+        c.calls.remove(id);
+      }
+      cancelTimeout();
+      cancel(false);
+    }
+
+    private void cancelTimeout() {
+      Timeout t = timeout;
+      if (t != null) t.cancel();
+    }
+
+    @Override
+    public String toString() {
+      return "callId: " + this.id + " methodName: " + this.md.getName();
+    }
+  }
+
+  /**
+   * A connection to a server, multiplexing calls. Not a thread: the I/O threads of the client
+   * read its responses.
+   */
+  private class AsyncConnection {
+    final ConnectionId remoteId;
+    private final ConnectionHeader header;
+    private final Map<Integer, AsyncCall> calls = new ConcurrentHashMap<Integer, AsyncCall>();
+    private final Queue<AsyncCall> pendingWrites = new ConcurrentLinkedQueue<AsyncCall>();
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private volatile Channel channel;
+    private volatile boolean connected = false;
+    private volatile IOException closeException;
+    private volatile long lastActivity = EnvironmentEdgeManager.currentTimeMillis();
+
+    AsyncConnection(ConnectionId remoteId) {
+      this.remoteId = remoteId;
+      ConnectionHeader.Builder builder = ConnectionHeader.newBuilder();
+      builder.setServiceName(remoteId.getServiceName());
+      UserGroupInformation ugi = remoteId.getTicket() == null ? null :
+          remoteId.getTicket().getUGI();
+      if (ugi != null) {
+        // simple auth: send both effective user and real user
+        UserInformation.Builder userInfoPB = UserInformation.newBuilder();
+        userInfoPB.setEffectiveUser(ugi.getUserName());
+        if (ugi.getRealUser() != null) {
+          userInfoPB.setRealUser(ugi.getRealUser().getUserName());
+        }
+        builder.setUserInfo(userInfoPB.build());
+      }
+      if (codec != null) {
+        builder.setCellBlockCodecClass(codec.getClass().getCanonicalName());
+      }
+      if (compressor != null) {
+        builder.setCellBlockCompressorClass(compressor.getClass().getCanonicalName());
+      }
+      this.header = builder.build();
+    }
+
+    void connect() {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Connecting to " + remoteId.getAddress());
+      }
+      ClientBootstrap bootstrap = new ClientBootstrap(channelFactory);
+      bootstrap.setOption("tcpNoDelay", tcpNoDelay);
+      bootstrap.setOption("keepAlive", tcpKeepAlive);
+      bootstrap.setOption("connectTimeoutMillis", connectTimeout);
+      bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+        @Override
+        public ChannelPipeline getPipeline() {
+          // frames are the responses, after their 4 bytes total size
+          return Channels.pipeline(
+              new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4),
+              new ResponseHandler(AsyncConnection.this));
+        }
+      });
+      ChannelFuture future = localAddr == null ? bootstrap.connect(remoteId.getAddress()) :
+          bootstrap.connect(remoteId.getAddress(), localAddr);
+      this.channel = future.getChannel();
+      future.addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture f) {
+          if (!f.isSuccess()) {
+            failedServers.addToFailedServers(remoteId.getAddress());
+            close(toIOException(f.getCause()));
+            return;
+          }
+          f.getChannel().write(getPreambleAndHeader());
+          connected = true;
+          scheduleIdleCheck();
+          flush();
+        }
+      });
+    }
+
+    /**
+     * @return the preamble -- MAGIC, version, and auth to use -- and the connection header
+     */
+    private ChannelBuffer getPreambleAndHeader() {
+      int rpcHeaderLen = HConstants.RPC_HEADER.array().length;
+      ChannelBuffer buf = ChannelBuffers.buffer(rpcHeaderLen + 2 + 4 + header.getSerializedSize());
+      buf.writeBytes(HConstants.RPC_HEADER.array(), 0, rpcHeaderLen);
+      buf.writeByte(HConstants.RPC_CURRENT_VERSION);
+      buf.writeByte(AuthMethod.SIMPLE.code);
+      buf.writeInt(header.getSerializedSize());
+      buf.writeBytes(header.toByteArray());
+      return buf;
+    }
+
+    /**
+     * Queues the call for writing.
+     * @throws ConnectionClosingException if the connection was closed for being idle; the call
+     *           is left as is, to be sent on another connection
+     */
+    void send(final AsyncCall call, final int rpcTimeout) throws ConnectionClosingException {
+      IOException e;
+      // with the idle check, so that the call is either added first or not at all
+      synchronized (this) {
+        e = closeException;
+        if (e == null) {
+          calls.put(call.id, call);
+        }
+      }
+      if (e instanceof ConnectionClosingException) {
+        throw (ConnectionClosingException) e;
+      }
+      if (e != null) {
+        call.releaseCellBlock();
+        call.setFailed(e);
+        return;
+      }
+      call.connection = this;
+      if (rpcTimeout > 0) {
+        call.timeout = timer.newTimeout(new TimerTask() {
+          @Override
+          public void run(Timeout timeout) {
+            if (calls.remove(call.id) != null) {
+              call.setFailed(new CallTimeoutException("Call id=" + call.id + ", waitTime=" +
+                  (EnvironmentEdgeManager.currentTimeMillis() - call.startTime) +
+                  ", rpcTimeout=" + rpcTimeout));
+            }
+          }
+        }, rpcTimeout, TimeUnit.MILLISECONDS);
+      }
+      pendingWrites.add(call);
+      if (closeException != null) {
+        // raced with close; it may have drained the queue before the call got in
+        close(closeException);
+        return;
+      }
+      flush();
+    }
+
+    /**
+     * Writes out the queued requests, coalesced into writes of up to the write batch size.
+     * Returns at once if another thread is writing; it picks up what was queued meanwhile.
+     */
+    private void flush() {
+      while (connected && !pendingWrites.isEmpty() && writing.compareAndSet(false, true)) {
+        try {
+          final List<AsyncCall> batch = new ArrayList<AsyncCall>();
+          List<ChannelBuffer> buffers = new ArrayList<ChannelBuffer>();
+          int batchBytes = 0;
+          AsyncCall call;
+          while (batchBytes < writeBatchSize && (call = pendingWrites.poll()) != null) {
+            if (call.isDone()) {
+              // timed out before it could be written
+              call.releaseCellBlock();
+              continue;
+            }
+            batch.add(call);
+            buffers.add(call.request);
+            batchBytes += call.request.readableBytes();
+          }
+          if (batch.isEmpty()) {
+            continue;
+          }
+          lastActivity = EnvironmentEdgeManager.currentTimeMillis();
+          ChannelFuture future = channel.write(
+              ChannelBuffers.wrappedBuffer(buffers.toArray(new ChannelBuffer[buffers.size()])));
+          future.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture f) {
+              for (AsyncCall c : batch) {
+                c.releaseCellBlock();
+              }
+              if (!f.isSuccess()) {
+                close(toIOException(f.getCause()));
+              }
+            }
+          });
+        } finally {
+          writing.set(false);
+        }
+      }
+    }
+
+    /**
+     * Completes the call of a response. Called on an I/O thread.
+     */
+    void readResponse(ChannelBuffer buf) {
+      lastActivity = EnvironmentEdgeManager.currentTimeMillis();
+      try {
+        ChannelBufferInputStream in = new ChannelBufferInputStream(buf);
+        ResponseHeader responseHeader = ResponseHeader.parseDelimitedFrom(in);
+        int id = responseHeader.getCallId();
+        AsyncCall call = calls.remove(id);
+        if (responseHeader.hasException()) {
+          ExceptionResponse exceptionResponse = responseHeader.getException();
+          RemoteException re = createRemoteException(exceptionResponse);
+          if (isFatalConnectionException(exceptionResponse)) {
+            if (call != null) call.setFailed(re);
+            close(re);
+          } else if (call != null) {
+            call.setFailed(re);
+          }
+          return;
+        }
+        if (call == null) {
+          // timed out already; the rest of the frame is dropped with it
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Unknown callId: " + id + ", skipping over this response");
+          }
+          return;
+        }
+        Message value = null;
+        if (call.responseDefaultType != null) {
+          Builder builder = call.responseDefaultType.newBuilderForType();
+          builder.mergeDelimitedFrom(in);
+          value = builder.build();
+        }
+        CellScanner cellBlockScanner = null;
+        if (responseHeader.hasCellBlockMeta()) {
+          byte [] cellBlock = new byte[responseHeader.getCellBlockMeta().getLength()];
+          buf.readBytes(cellBlock);
+          cellBlockScanner = ipcUtil.createCellScanner(codec, compressor, cellBlock);
+        }
+        call.setResponse(value, cellBlockScanner);
+      } catch (IOException e) {
+        close(e);
+      }
+    }
+
+    private void scheduleIdleCheck() {
+      timer.newTimeout(new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+          synchronized (AsyncConnection.this) {
+            if (closeException != null) return;
+            long idle = EnvironmentEdgeManager.currentTimeMillis() - lastActivity;
+            if (calls.isEmpty() && idle >= maxIdleTime) {
+              close(new ConnectionClosingException("Connection to " + remoteId.getAddress()
+                  + " closed after " + idle + "ms idle"));
+              return;
+            }
+          }
+          scheduleIdleCheck();
+        }
+      }, maxIdleTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connection and fails all its calls.
+     */
+    void close(IOException e) {
+      synchronized (this) {
+        if (closeException == null) {
+          closeException = e;
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Closing connection to " + remoteId.getAddress() + ": " + e.getMessage());
+          }
+        }
+      }
+      asyncConnections.remove(remoteId, this);
+      connected = false;
+      Channel ch = channel;
+      if (ch != null && ch.isOpen()) {
+        ch.close();
+      }
+      AsyncCall call;
+      while ((call = pendingWrites.poll()) != null) {
+        call.releaseCellBlock();
+      }
+      Iterator<AsyncCall> it = calls.values().iterator();
+      while (it.hasNext()) {
+        call = it.next();
+        it.remove();
+        call.setFailed(closeException);
+      }
+    }
+  }
+
+  /**
+   * Hands the responses of a connection over to it, and closes it on errors.
+   */
+  private static class ResponseHandler extends SimpleChannelUpstreamHandler {
+    private final AsyncConnection connection;
+
+    ResponseHandler(AsyncConnection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+      connection.readResponse((ChannelBuffer) e.getMessage());
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+      connection.close(new IOException("Connection to " + connection.remoteId.getAddress()
+          + " closed"));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+      connection.close(toIOException(e.getCause()));
+    }
+  }
+}
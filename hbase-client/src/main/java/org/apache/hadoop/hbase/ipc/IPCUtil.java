@@ -31,9 +31,16 @@ import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.CellScanner;
 import org.apache.hadoop.hbase.HBaseIOException;
+import org.apache.hadoop.hbase.codec.CellCodec;
+import org.apache.hadoop.hbase.codec.CellCodecWithTags;
 import org.apache.hadoop.hbase.codec.Codec;
+import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.codec.KeyValueCodecWithTags;
+import org.apache.hadoop.hbase.io.BoundedByteBufferPool;
+import org.apache.hadoop.hbase.io.ByteBufferListOutputStream;
 import org.apache.hadoop.hbase.io.ByteBufferOutputStream;
 import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.hadoop.io.compress.CodecPool;
@@ -85,14 +92,34 @@ class IPCUtil {
    * flipped and is ready for reading.  Use limit to find total size.
    * @throws IOException
    */
-  @SuppressWarnings("resource")
   ByteBuffer buildCellBlock(final Codec codec, final CompressionCodec compressor,
     final CellScanner cellScanner)
+  throws IOException {
+    return buildCellBlock(codec, compressor, cellScanner, null);
+  }
+
+  /**
+   * Puts CellScanner Cells into a cell block using passed in <code>codec</code> and/or
+   * <code>compressor</code>, in a buffer from <code>pool</code> if there is one.
+   * @param codec
+   * @param compressor
+   * @param cellScanner
+   * @param pool Pool to take the buffer from; the caller gives the returned buffer back to it
+   * once written out. Null to allocate a heap buffer.
+   * @return Null or byte buffer filled with a cellblock filled with passed-in Cells encoded using
+   * passed in <code>codec</code> and/or <code>compressor</code>; the returned buffer has been
+   * flipped and is ready for reading.  Use limit to find total size.
+   * @throws IOException
+   */
+  @SuppressWarnings("resource")
+  ByteBuffer buildCellBlock(final Codec codec, final CompressionCodec compressor,
+    final CellScanner cellScanner, final BoundedByteBufferPool pool)
   throws IOException {
     if (cellScanner == null) return null;
     if (codec == null) throw new CellScannerButNoCodecException();
     int bufferSize = this.cellBlockBuildingInitialBufferSize;
-    if (cellScanner instanceof HeapSize) {
+    boolean sizeKnown = cellScanner instanceof HeapSize;
+    if (sizeKnown) {
       long longSize = ((HeapSize)cellScanner).heapSize();
       // Just make sure we don't have a size bigger than an int.
       if (longSize > Integer.MAX_VALUE) {
@@ -105,13 +132,89 @@ class IPCUtil {
     // within the estimated buffer size, then the cost is not worth it.  If we are often well
     // outside the guesstimated buffer size, the processing can be done in half the time if we
     // go w/ the estimated size rather than let the buffer resize.
-    ByteBufferOutputStream baos = new ByteBufferOutputStream(bufferSize);
-    OutputStream os = baos;
+    ByteBufferOutputStream baos;
+    if (pool == null) {
+      baos = new ByteBufferOutputStream(bufferSize);
+    } else {
+      baos = new ByteBufferOutputStream(sizeKnown ? pool.getBuffer(bufferSize) : pool.getBuffer());
+    }
+    boolean built = false;
+    try {
+      // If no cells, don't mess around.  Just return null (could be a bunch of existence checking
+      // gets or something -- stuff that does not return a cell).
+      if (encodeCellBlock(codec, compressor, cellScanner, baos) == 0) return null;
+      built = true;
+    } finally {
+      if (!built && pool != null) pool.putbackBuffer(baos.getByteBuffer());
+    }
+    if (LOG.isTraceEnabled()) {
+      if (bufferSize < baos.size()) {
+        LOG.trace("Buffer grew from initial bufferSize=" + bufferSize + " to " + baos.size() +
+          "; up hbase.ipc.cellblock.building.initial.buffersize?");
+      }
+    }
+    return baos.getByteBuffer();
+  }
+
+  /**
+   * Puts CellScanner Cells into a cell block like
+   * {@link #buildCellBlock(Codec, CompressionCodec, CellScanner, BoundedByteBufferPool)}, but
+   * as a list of buffers for a gathering write. If there is no <code>compressor</code> and the
+   * <code>codec</code> writes the arrays of the cells as they are, arrays of at least
+   * <code>referenceMinSize</code> bytes, e.g. KeyValues straight out of a cached block, are
+   * referenced rather than copied into the cellblock.
+   * @param codec
+   * @param compressor
+   * @param cellScanner
+   * @param pool Pool to take the buffers the rest is copied into from; null to allocate them on
+   * the heap.
+   * @param referenceMinSize Size from which arrays are referenced; {@link Integer#MAX_VALUE} to
+   * copy everything.
+   * @return Null or the stream holding the cellblock. The referenced cells must not change, and
+   * the caller releases the resources of the stream, once its buffers are written out.
+   * @throws IOException
+   */
+  ByteBufferListOutputStream buildCellBlockBuffers(final Codec codec,
+    final CompressionCodec compressor, final CellScanner cellScanner,
+    final BoundedByteBufferPool pool, final int referenceMinSize)
+  throws IOException {
+    if (cellScanner == null) return null;
+    if (codec == null) throw new CellScannerButNoCodecException();
+    boolean reference = compressor == null && writesCellArrays(codec);
+    int chunkSize = this.cellBlockBuildingInitialBufferSize;
+    if (!reference && cellScanner instanceof HeapSize) {
+      // Only worth a chunk of the whole size when all of it gets copied
+      chunkSize = ClassSize.align((int)Math.min(((HeapSize)cellScanner).heapSize(),
+        Integer.MAX_VALUE - 8));
+    }
+    ByteBufferListOutputStream bblos = new ByteBufferListOutputStream(pool, chunkSize,
+      reference ? referenceMinSize : Integer.MAX_VALUE);
+    boolean built = false;
+    try {
+      if (encodeCellBlock(codec, compressor, cellScanner, bblos) == 0) return null;
+      built = true;
+    } finally {
+      if (!built) bblos.releaseResources();
+    }
+    return bblos;
+  }
+
+  /**
+   * Encodes the cells into <code>out</code>, through <code>compressor</code> if not null.
+   * @return Count of Cells written
+   */
+  private int encodeCellBlock(final Codec codec, final CompressionCodec compressor,
+    final CellScanner cellScanner, final OutputStream out)
+  throws IOException {
+    OutputStream os = out;
     Compressor poolCompressor = null;
     try {
       if (compressor != null) {
         if (compressor instanceof Configurable) ((Configurable)compressor).setConf(this.conf);
-        poolCompressor = CodecPool.getCompressor(compressor);
+        // AdaptiveCompressionCodec keeps its own
+        if (!(compressor instanceof AdaptiveCompressionCodec)) {
+          poolCompressor = CodecPool.getCompressor(compressor);
+        }
         os = compressor.createOutputStream(os, poolCompressor);
       }
       Codec.Encoder encoder = codec.getEncoder(os);
@@ -121,20 +224,21 @@ class IPCUtil {
         count++;
       }
       encoder.flush();
-      // If no cells, don't mess around.  Just return null (could be a bunch of existence checking
-      // gets or something -- stuff that does not return a cell).
-      if (count == 0) return null;
+      return count;
     } finally {
       os.close();
       if (poolCompressor != null) CodecPool.returnCompressor(poolCompressor);
     }
-    if (LOG.isTraceEnabled()) {
-      if (bufferSize < baos.size()) {
-        LOG.trace("Buffer grew from initial bufferSize=" + bufferSize + " to " + baos.size() +
-          "; up hbase.ipc.cellblock.building.initial.buffersize?");
-      }
-    }
-    return baos.getByteBuffer();
+  }
+
+  /**
+   * @return Whether the encoders of <code>codec</code> hand the arrays of the cells to their
+   * stream as they are, rather than through a buffer of their own that they reuse.
+   */
+  private static boolean writesCellArrays(final Codec codec) {
+    Class<?> clazz = codec.getClass();
+    return clazz == KeyValueCodec.class || clazz == KeyValueCodecWithTags.class ||
+      clazz == CellCodec.class || clazz == CellCodecWithTags.class;
   }
 
   /**
@@ -163,13 +267,23 @@ class IPCUtil {
     // If compressed, decompress it first before passing it on else we will leak compression
     // resources if the stream is not closed properly after we let it out.
     InputStream is = null;
-    if (compressor != null) {
+    if (compressor instanceof AdaptiveCompressionCodec && AdaptiveCompressionCodec.getAlgorithm(
+        cellBlock, offset, length) == Compression.Algorithm.NONE) {
+      // Sent as it is but for the algorithm byte at the end; nothing to decompress.
+      is = new ByteArrayInputStream(cellBlock, offset, length - 1);
+    } else if (compressor != null) {
       // GZIPCodec fails w/ NPE if no configuration.
       if (compressor instanceof Configurable) ((Configurable)compressor).setConf(this.conf);
-      Decompressor poolDecompressor = CodecPool.getDecompressor(compressor);
-      CompressionInputStream cis =
-        compressor.createInputStream(new ByteArrayInputStream(cellBlock, offset, length),
-        poolDecompressor);
+      Decompressor poolDecompressor = null;
+      CompressionInputStream cis;
+      if (compressor instanceof AdaptiveCompressionCodec) {
+        // Keeps its own decompressors
+        cis = ((AdaptiveCompressionCodec)compressor).createInputStream(cellBlock, offset, length);
+      } else {
+        poolDecompressor = CodecPool.getDecompressor(compressor);
+        cis = compressor.createInputStream(new ByteArrayInputStream(cellBlock, offset, length),
+          poolDecompressor);
+      }
       ByteBufferOutputStream bbos = null;
       try {
         // TODO: This is ugly.  The buffer will be resized on us if we guess wrong.
@@ -184,7 +298,7 @@ class IPCUtil {
         if (is != null) is.close();
         if (bbos != null) bbos.close();
 
-        CodecPool.returnDecompressor(poolDecompressor);
+        if (poolDecompressor != null) CodecPool.returnDecompressor(poolDecompressor);
       }
     } else {
       is = new ByteArrayInputStream(cellBlock, offset, length);
@@ -128,16 +128,16 @@ public class RpcClient {
   protected final boolean tcpKeepAlive; // if T then use keepalives
   protected int pingInterval; // how often sends ping to the server in msecs
   protected FailedServers failedServers;
-  private final Codec codec;
-  private final CompressionCodec compressor;
-  private final IPCUtil ipcUtil;
+  protected final Codec codec;
+  protected final CompressionCodec compressor;
+  protected final IPCUtil ipcUtil;
 
   protected final SocketFactory socketFactory;           // how to create sockets
   protected String clusterId;
   protected final SocketAddress localAddr;
 
   private final boolean fallbackAllowed;
-  private UserProvider userProvider;
+  protected UserProvider userProvider;
 
   final public static String PING_INTERVAL_NAME = "hbase.ipc.ping.interval";
   final public static String SOCKET_TIMEOUT = "hbase.ipc.socket.timeout";
@@ -1137,30 +1137,6 @@ public class RpcClient {
       }
     }
 
-    /**
-     * @param e
-     * @return True if the exception is a fatal connection exception.
-     */
-    private boolean isFatalConnectionException(final ExceptionResponse e) {
-      return e.getExceptionClassName().
-        equals(FatalConnectionException.class.getName());
-    }
-
-    /**
-     * @param e
-     * @return RemoteException made from passed <code>e</code>
-     */
-    private RemoteException createRemoteException(final ExceptionResponse e) {
-      String innerExceptionClassName = e.getExceptionClassName();
-      boolean doNotRetry = e.getDoNotRetry();
-      return e.hasHostname()?
-        // If a hostname then add it to the RemoteWithExtrasException
-        new RemoteWithExtrasException(innerExceptionClassName,
-          e.getStackTrace(), e.getHostname(), e.getPort(), doNotRetry):
-        new RemoteWithExtrasException(innerExceptionClassName,
-          e.getStackTrace(), doNotRetry);
-    }
-
     protected synchronized void markClosed(IOException e) {
       if (shouldCloseConnection.compareAndSet(false, true)) {
         closeException = e;
@@ -1218,6 +1194,30 @@ public class RpcClient {
     }
   }
 
+  /**
+   * @param e
+   * @return True if the exception is a fatal connection exception.
+   */
+  static boolean isFatalConnectionException(final ExceptionResponse e) {
+    return e.getExceptionClassName().
+      equals(FatalConnectionException.class.getName());
+  }
+
+  /**
+   * @param e
+   * @return RemoteException made from passed <code>e</code>
+   */
+  static RemoteException createRemoteException(final ExceptionResponse e) {
+    String innerExceptionClassName = e.getExceptionClassName();
+    boolean doNotRetry = e.getDoNotRetry();
+    return e.hasHostname()?
+      // If a hostname then add it to the RemoteWithExtrasException
+      new RemoteWithExtrasException(innerExceptionClassName,
+        e.getStackTrace(), e.getHostname(), e.getPort(), doNotRetry):
+      new RemoteWithExtrasException(innerExceptionClassName,
+        e.getStackTrace(), doNotRetry);
+  }
+
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="IS2_INCONSISTENT_SYNC",
     justification="Presume sync not needed setting socket timeout")
   private static void setSocketTimeout(final Socket socket, final int rpcTimeout)
@@ -1405,6 +1405,9 @@ public class RpcClient {
       } catch (InterruptedException ignored) {
       }
     }
+    if (compressor instanceof AdaptiveCompressionCodec) {
+      ((AdaptiveCompressionCodec)compressor).close();
+    }
   }
 
   Pair<Message, CellScanner> call(MethodDescriptor md, Message param, CellScanner cells,
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hbase.TableName;
+
+/**
+ * A throttle on the requests of a user, a namespace or a table, or the removal of all the
+ * throttles of one, as set with
+ * {@link org.apache.hadoop.hbase.client.HBaseAdmin#setQuota(QuotaSettings)}.
+ *
+ * <p>For example, to let user bob do at most 100 reads a second:
+ * <pre>
+ * admin.setQuota(QuotaSettings.throttleUser("bob", ThrottleType.READ_NUMBER, 100,
+ *     TimeUnit.SECONDS));
+ * </pre>
+ * Limits are enforced by every region server on its own, so a user may do up to the limit on
+ * each of them.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class QuotaSettings {
+  private final String userName;
+  private final String namespace;
+  private final TableName tableName;
+  private final ThrottleType throttleType;
+  private final long limit;
+  private final TimeUnit timeUnit;
+
+  QuotaSettings(final String userName, final String namespace, final TableName tableName,
+      final ThrottleType throttleType, final long limit, final TimeUnit timeUnit) {
+    if (throttleType != null) {
+      if (limit <= 0) {
+        throw new IllegalArgumentException("The limit must be positive, got " + limit);
+      }
+      if (timeUnit == null || timeUnit.compareTo(TimeUnit.SECONDS) < 0) {
+        throw new IllegalArgumentException("Limits are per second or longer, got " + timeUnit);
+      }
+    }
+    this.userName = userName;
+    this.namespace = namespace;
+    this.tableName = tableName;
+    this.throttleType = throttleType;
+    this.limit = limit;
+    this.timeUnit = timeUnit;
+  }
+
+  /**
+   * @return a throttle of the requests of the user
+   */
+  public static QuotaSettings throttleUser(final String userName, final ThrottleType type,
+      final long limit, final TimeUnit timeUnit) {
+    return new QuotaSettings(userName, null, null, type, limit, timeUnit);
+  }
+
+  /**
+   * @return a throttle of the requests on the tables of the namespace, all together
+   */
+  public static QuotaSettings throttleNamespace(final String namespace, final ThrottleType type,
+      final long limit, final TimeUnit timeUnit) {
+    return new QuotaSettings(null, namespace, null, type, limit, timeUnit);
+  }
+
+  /**
+   * @return a throttle of the requests on the table
+   */
+  public static QuotaSettings throttleTable(final TableName tableName, final ThrottleType type,
+      final long limit, final TimeUnit timeUnit) {
+    return new QuotaSettings(null, null, tableName, type, limit, timeUnit);
+  }
+
+  /**
+   * @return the removal of all the throttles of the user
+   */
+  public static QuotaSettings unthrottleUser(final String userName) {
+    return new QuotaSettings(userName, null, null, null, 0, null);
+  }
+
+  /**
+   * @return the removal of all the throttles of the namespace
+   */
+  public static QuotaSettings unthrottleNamespace(final String namespace) {
+    return new QuotaSettings(null, namespace, null, null, 0, null);
+  }
+
+  /**
+   * @return the removal of all the throttles of the table
+   */
+  public static QuotaSettings unthrottleTable(final TableName tableName) {
+    return new QuotaSettings(null, null, tableName, null, 0, null);
+  }
+
+  /** @return the user throttled, or null */
+  public String getUserName() {
+    return userName;
+  }
+
+  /** @return the namespace throttled, or null */
+  public String getNamespace() {
+    return namespace;
+  }
+
+  /** @return the table throttled, or null */
+  public TableName getTableName() {
+    return tableName;
+  }
+
+  /** @return what is limited, or null if these settings remove all the throttles */
+  public ThrottleType getThrottleType() {
+    return throttleType;
+  }
+
+  /** @return requests or bytes allowed per {@link #getTimeUnit()} */
+  public long getLimit() {
+    return limit;
+  }
+
+  public TimeUnit getTimeUnit() {
+    return timeUnit;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (userName != null) sb.append("USER => '").append(userName).append("'");
+    if (namespace != null) sb.append("NAMESPACE => '").append(namespace).append("'");
+    if (tableName != null) sb.append("TABLE => '").append(tableName).append("'");
+    if (throttleType == null) {
+      sb.append(", UNTHROTTLE");
+    } else {
+      sb.append(", ").append(throttleType).append(" => ").append(limit).append("/")
+        .append(timeUnit.name().toLowerCase());
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof QuotaSettings)) return false;
+    QuotaSettings other = (QuotaSettings) o;
+    return equal(userName, other.userName) && equal(namespace, other.namespace)
+        && equal(tableName, other.tableName) && throttleType == other.throttleType
+        && limit == other.limit && timeUnit == other.timeUnit;
+  }
+
+  @Override
+  public int hashCode() {
+    int h = userName != null ? userName.hashCode() : 0;
+    h = 31 * h + (namespace != null ? namespace.hashCode() : 0);
+    h = 31 * h + (tableName != null ? tableName.hashCode() : 0);
+    h = 31 * h + (throttleType != null ? throttleType.hashCode() : 0);
+    h = 31 * h + (int) (limit ^ (limit >>> 32));
+    return 31 * h + (timeUnit != null ? timeUnit.hashCode() : 0);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.NamespaceDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Layout of the quota table. It has a row per user (<code>u.&lt;user&gt;</code>), namespace
+ * (<code>n.&lt;namespace&gt;</code>) and table (<code>t.&lt;table&gt;</code>) with throttles,
+ * and a column per {@link ThrottleType} in the family <code>q</code>, whose value is the limit
+ * as a long followed by the name of its time unit.
+ */
+@InterfaceAudience.Private
+public class QuotaTableUtil {
+  /** Whether the master creates the quota table and the region servers enforce the quotas */
+  public static final String QUOTA_ENABLED_KEY = "hbase.quota.enabled";
+  public static final boolean QUOTA_ENABLED_DEFAULT = false;
+
+  public static final TableName QUOTA_TABLE_NAME =
+      TableName.valueOf(NamespaceDescriptor.SYSTEM_NAMESPACE_NAME_STR, "quota");
+  public static final byte[] QUOTA_FAMILY = Bytes.toBytes("q");
+
+  public static final HTableDescriptor QUOTA_TABLE_DESC = new HTableDescriptor(QUOTA_TABLE_NAME);
+  static {
+    QUOTA_TABLE_DESC.addFamily(new HColumnDescriptor(QUOTA_FAMILY)
+        .setMaxVersions(1)
+        .setInMemory(true)
+        .setBlocksize(8 * 1024)
+        .setScope(HConstants.REPLICATION_SCOPE_LOCAL));
+  }
+
+  private static final String USER_PREFIX = "u.";
+  private static final String NAMESPACE_PREFIX = "n.";
+  private static final String TABLE_PREFIX = "t.";
+
+  private QuotaTableUtil() {
+  }
+
+  public static boolean isQuotaEnabled(final Configuration conf) {
+    return conf.getBoolean(QUOTA_ENABLED_KEY, QUOTA_ENABLED_DEFAULT);
+  }
+
+  public static byte[] getUserRowKey(final String user) {
+    return Bytes.toBytes(USER_PREFIX + user);
+  }
+
+  public static byte[] getNamespaceRowKey(final String namespace) {
+    return Bytes.toBytes(NAMESPACE_PREFIX + namespace);
+  }
+
+  public static byte[] getTableRowKey(final TableName table) {
+    return Bytes.toBytes(TABLE_PREFIX + table.getNameAsString());
+  }
+
+  /**
+   * @return the row of the owner of the settings
+   */
+  public static byte[] getRowKey(final QuotaSettings settings) {
+    if (settings.getUserName() != null) return getUserRowKey(settings.getUserName());
+    if (settings.getNamespace() != null) return getNamespaceRowKey(settings.getNamespace());
+    if (settings.getTableName() != null) return getTableRowKey(settings.getTableName());
+    throw new IllegalArgumentException("No user, namespace or table in " + settings);
+  }
+
+  /**
+   * @return the change of the quota table that applies the settings
+   */
+  public static Mutation toMutation(final QuotaSettings settings) {
+    byte[] row = getRowKey(settings);
+    if (settings.getThrottleType() == null) {
+      return new Delete(row);
+    }
+    Put put = new Put(row);
+    put.add(QUOTA_FAMILY, Bytes.toBytes(settings.getThrottleType().name()),
+      Bytes.add(Bytes.toBytes(settings.getLimit()),
+        Bytes.toBytes(settings.getTimeUnit().name())));
+    return put;
+  }
+
+  /**
+   * @return the throttles in a row of the quota table; unknown columns are skipped
+   */
+  public static List<QuotaSettings> parseResult(final Result result) {
+    List<QuotaSettings> settings = new ArrayList<QuotaSettings>();
+    NavigableMap<byte[], byte[]> columns = result.getFamilyMap(QUOTA_FAMILY);
+    if (columns == null) return settings;
+    String row = Bytes.toString(result.getRow());
+    for (Map.Entry<byte[], byte[]> column : columns.entrySet()) {
+      byte[] value = column.getValue();
+      ThrottleType type;
+      TimeUnit unit;
+      try {
+        type = ThrottleType.valueOf(Bytes.toString(column.getKey()));
+        unit = TimeUnit.valueOf(Bytes.toString(value, Bytes.SIZEOF_LONG,
+          value.length - Bytes.SIZEOF_LONG));
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      long limit = Bytes.toLong(value, 0);
+      if (row.startsWith(USER_PREFIX)) {
+        settings.add(QuotaSettings.throttleUser(row.substring(USER_PREFIX.length()), type,
+          limit, unit));
+      } else if (row.startsWith(NAMESPACE_PREFIX)) {
+        settings.add(QuotaSettings.throttleNamespace(row.substring(NAMESPACE_PREFIX.length()),
+          type, limit, unit));
+      } else if (row.startsWith(TABLE_PREFIX)) {
+        settings.add(QuotaSettings.throttleTable(
+          TableName.valueOf(row.substring(TABLE_PREFIX.length())), type, limit, unit));
+      }
+    }
+    return settings;
+  }
+}
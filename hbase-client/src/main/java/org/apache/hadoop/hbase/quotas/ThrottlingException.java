@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Thrown by a region server when a request would exceed a quota of its user, table or
+ * namespace. The request is not run and can be retried once {@link #getWaitInterval()} ms
+ * passed, which the client honors when it backs off.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ThrottlingException extends IOException {
+  private static final long serialVersionUID = 1406576492085155743L;
+
+  // The wait is in the message, as that is all that reaches the client.
+  private static final Pattern WAIT_PATTERN = Pattern.compile("wait (\\d+)ms");
+
+  private final long waitInterval;
+
+  /**
+   * Constructor, used when the exception is rebuilt on the client
+   * @param msg message, with the wait interval of the server
+   */
+  public ThrottlingException(final String msg) {
+    super(msg);
+    long wait = 0;
+    if (msg != null) {
+      Matcher m = WAIT_PATTERN.matcher(msg);
+      if (m.find()) {
+        wait = Long.parseLong(m.group(1));
+      }
+    }
+    this.waitInterval = wait;
+  }
+
+  /**
+   * @param type the exceeded throttle
+   * @param owner whose quota it is, e.g. <code>user bob</code>
+   * @param waitInterval ms until the request can be run
+   */
+  public ThrottlingException(final ThrottleType type, final String owner,
+      final long waitInterval) {
+    super(type + " quota of " + owner + " exceeded, wait " + waitInterval + "ms");
+    this.waitInterval = waitInterval;
+  }
+
+  /**
+   * @return ms to wait before retrying the request, 0 if unknown
+   */
+  public long getWaitInterval() {
+    return waitInterval;
+  }
+}
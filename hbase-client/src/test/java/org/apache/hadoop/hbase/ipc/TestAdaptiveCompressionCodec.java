@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestAdaptiveCompressionCodec {
+  private IPCUtil util;
+  private AdaptiveCompressionCodec compressor;
+
+  @Before
+  public void before() {
+    Configuration conf = new Configuration();
+    // in plain java, no native libraries needed
+    conf.set(AdaptiveCompressionCodec.ALGORITHM_KEY, "gz");
+    conf.setInt(AdaptiveCompressionCodec.MIN_SIZE_KEY, 4096);
+    this.util = new IPCUtil(conf);
+    this.compressor = new AdaptiveCompressionCodec();
+  }
+
+  private static Cell[] getCells(int count, int valueSize, boolean random) {
+    Random rand = new Random(42);
+    Cell[] cells = new Cell[count];
+    for (int i = 0; i < count; i++) {
+      byte[] value = new byte[valueSize];
+      if (random) {
+        rand.nextBytes(value);
+      }
+      cells[i] = new KeyValue(Bytes.toBytes(i), Bytes.toBytes("f"), Bytes.toBytes("q"), value);
+    }
+    return cells;
+  }
+
+  /**
+   * @return the algorithm the cellblock was sent with
+   */
+  private Compression.Algorithm roundTrip(Cell[] cells) throws IOException {
+    ByteBuffer bb = util.buildCellBlock(new KeyValueCodec(), compressor,
+      CellUtil.createCellScanner(cells));
+    CellScanner scanner = util.createCellScanner(new KeyValueCodec(), compressor, bb.array(), 0,
+      bb.limit());
+    int i = 0;
+    while (scanner.advance()) {
+      assertEquals(cells[i], scanner.current());
+      assertTrue(CellUtil.matchingValue(cells[i], scanner.current()));
+      i++;
+    }
+    assertEquals(cells.length, i);
+    return AdaptiveCompressionCodec.getAlgorithm(bb.array(), 0, bb.limit());
+  }
+
+  @Test
+  public void testCompressesOnlyWhatPaysOff() throws IOException {
+    // too small
+    assertEquals(Compression.Algorithm.NONE, roundTrip(getCells(2, 100, false)));
+    // large and compressible
+    assertEquals(Compression.Algorithm.GZ, roundTrip(getCells(100, 1000, false)));
+    // large but random
+    assertEquals(Compression.Algorithm.NONE, roundTrip(getCells(100, 1000, true)));
+    // not even tried for a while after that
+    for (int i = 0; i < AdaptiveCompressionCodec.PROBE_INTERVAL; i++) {
+      assertEquals(Compression.Algorithm.NONE, roundTrip(getCells(100, 1000, false)));
+    }
+    assertEquals(Compression.Algorithm.GZ, roundTrip(getCells(100, 1000, false)));
+    compressor.close();
+    // still usable once closed
+    assertEquals(Compression.Algorithm.GZ, roundTrip(getCells(100, 1000, false)));
+  }
+
+  @Test
+  public void testSmallCellBlockAsIs() throws IOException {
+    Cell[] cells = getCells(2, 100, false);
+    ByteBuffer plain = util.buildCellBlock(new KeyValueCodec(), null,
+      CellUtil.createCellScanner(cells));
+    ByteBuffer bb = util.buildCellBlock(new KeyValueCodec(), compressor,
+      CellUtil.createCellScanner(cells));
+    // the raw bytes and the algorithm byte
+    assertEquals(plain.limit() + 1, bb.limit());
+    assertEquals(0, Bytes.compareTo(plain.array(), 0, plain.limit(), bb.array(), 0,
+      plain.limit()));
+    assertEquals(0, bb.get(plain.limit()));
+  }
+
+  @Test
+  public void testStableIds() {
+    // on the wire, whatever the order of the enum
+    assertEquals(0, AdaptiveCompressionCodec.getId(Compression.Algorithm.NONE));
+    assertEquals(1, AdaptiveCompressionCodec.getId(Compression.Algorithm.GZ));
+    assertEquals(2, AdaptiveCompressionCodec.getId(Compression.Algorithm.LZO));
+    assertEquals(3, AdaptiveCompressionCodec.getId(Compression.Algorithm.SNAPPY));
+    assertEquals(4, AdaptiveCompressionCodec.getId(Compression.Algorithm.LZ4));
+  }
+
+  @Test
+  public void testUnavailableAlgorithm() throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(AdaptiveCompressionCodec.ALGORITHM_KEY, "nosuchalgorithm");
+    this.util = new IPCUtil(conf);
+    // cellblocks are sent as they are, and still read back
+    assertEquals(Compression.Algorithm.NONE, roundTrip(getCells(100, 1000, false)));
+    assertEquals(Compression.Algorithm.NONE, compressor.getAlgorithm());
+  }
+}
@@ -18,10 +18,12 @@
 package org.apache.hadoop.hbase.ipc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.commons.logging.Log;
@@ -36,6 +38,7 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.SmallTests;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.io.ByteBufferListOutputStream;
 import org.apache.hadoop.hbase.io.SizedCellScanner;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
@@ -65,6 +68,38 @@ public class TestIPCUtil {
     doBuildCellBlockUndoCellBlock(this.util, new KeyValueCodec(), new GzipCodec());
   }
 
+  @Test
+  public void testBuildCellBlockBuffers() throws IOException {
+    Cell [] cells = getCells(10, 1024);
+    ByteBufferListOutputStream bblos = this.util.buildCellBlockBuffers(new KeyValueCodec(), null,
+      CellUtil.createCellScanner(cells), null, 1024);
+    List<ByteBuffer> buffers = bblos.getByteBuffers();
+    // a length prefix and the KeyValue itself for each cell
+    assertEquals(20, buffers.size());
+    assertTrue(buffers.get(1).array() == ((KeyValue)cells[0]).getBuffer());
+    byte [] cellBlock = new byte[bblos.size()];
+    int offset = 0;
+    for (ByteBuffer bb: buffers) {
+      int length = bb.remaining();
+      bb.get(cellBlock, offset, length);
+      offset += length;
+    }
+    CellScanner cellScanner = util.createCellScanner(new KeyValueCodec(), null, cellBlock);
+    int i = 0;
+    while (cellScanner.advance()) {
+      assertEquals(cells[i++], cellScanner.current());
+    }
+    assertEquals(cells.length, i);
+    bblos.releaseResources();
+
+    // compressed cellblocks are all copied
+    bblos = this.util.buildCellBlockBuffers(new KeyValueCodec(), new DefaultCodec(),
+      CellUtil.createCellScanner(cells), null, 1024);
+    for (ByteBuffer bb: bblos.getByteBuffers()) {
+      assertTrue(bb.array() != ((KeyValue)cells[0]).getBuffer());
+    }
+  }
+
   static void doBuildCellBlockUndoCellBlock(final IPCUtil util,
       final Codec codec, final CompressionCodec compressor)
   throws IOException {
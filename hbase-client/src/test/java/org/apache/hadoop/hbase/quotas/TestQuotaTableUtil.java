@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestQuotaTableUtil {
+
+  private static void assertRoundTrip(QuotaSettings settings) {
+    Mutation m = QuotaTableUtil.toMutation(settings);
+    assertTrue(m instanceof Put);
+    Result r = Result.create(((Put) m).getFamilyCellMap().get(QuotaTableUtil.QUOTA_FAMILY));
+    List<QuotaSettings> parsed = QuotaTableUtil.parseResult(r);
+    assertEquals(1, parsed.size());
+    assertEquals(settings, parsed.get(0));
+  }
+
+  @Test
+  public void testRoundTrip() {
+    assertRoundTrip(QuotaSettings.throttleUser("bob", ThrottleType.READ_NUMBER, 100,
+      TimeUnit.SECONDS));
+    assertRoundTrip(QuotaSettings.throttleNamespace("ns", ThrottleType.WRITE_SIZE, 1L << 40,
+      TimeUnit.HOURS));
+    assertRoundTrip(QuotaSettings.throttleTable(TableName.valueOf("ns", "t.1"),
+      ThrottleType.REQUEST_NUMBER, 5, TimeUnit.MINUTES));
+  }
+
+  @Test
+  public void testUnthrottle() {
+    Mutation m = QuotaTableUtil.toMutation(QuotaSettings.unthrottleUser("bob"));
+    assertTrue(m instanceof Delete);
+    assertEquals("u.bob", Bytes.toString(m.getRow()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSubSecondLimit() {
+    QuotaSettings.throttleUser("bob", ThrottleType.READ_NUMBER, 100, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testWaitInterval() {
+    ThrottlingException e = new ThrottlingException(ThrottleType.READ_SIZE, "table t", 1234);
+    assertEquals(1234, e.getWaitInterval());
+    assertEquals(1234, new ThrottlingException(e.getMessage()).getWaitInterval());
+    assertEquals(0, new ThrottlingException("no hint").getWaitInterval());
+  }
+}
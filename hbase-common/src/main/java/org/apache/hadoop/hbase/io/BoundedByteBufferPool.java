@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Pool of {@link ByteBuffer}s, direct or on heap, e.g. to read requests and build cellblocks
+ * in without allocating, and later garbage collecting, a buffer per call.
+ *
+ * <p>Buffers come in size classes of powers of two, from {@link #MIN_BUFFER_SIZE} up to
+ * <code>maxByteBufferSizeToCache</code>; a request for some size gets a buffer of the smallest
+ * class holding it, from the pool if one is there. Larger buffers are allocated to size and
+ * dropped when given back, so an occasional huge request does not pin its buffer forever. At
+ * most <code>maxToCache</code> buffers are kept over all the classes.
+ * {@link #getBuffer()}, for when the size is not known up front, hands out the class of the
+ * running average size of the buffers given back. Thread safe.
+ */
+@InterfaceAudience.Private
+public class BoundedByteBufferPool {
+  private static final Log LOG = LogFactory.getLog(BoundedByteBufferPool.class);
+
+  /** Smallest size class */
+  public static final int MIN_BUFFER_SIZE = 1024;
+
+  private final Queue<ByteBuffer>[] classes;
+  private final AtomicInteger count = new AtomicInteger();
+  private final AtomicLong totalReturned = new AtomicLong();
+  private final AtomicLong returned = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong outstanding = new AtomicLong();
+  private final int maxByteBufferSizeToCache;
+  private final int maxToCache;
+  private final int initialByteBufferSize;
+  private final boolean direct;
+  private volatile int runningAverage;
+
+  /**
+   * Creates a pool of direct buffers.
+   * @param maxByteBufferSizeToCache largest buffer kept in the pool
+   * @param initialByteBufferSize size of the buffers handed out by {@link #getBuffer()} until
+   *          some are given back
+   * @param maxToCache most buffers kept in the pool
+   */
+  public BoundedByteBufferPool(final int maxByteBufferSizeToCache,
+      final int initialByteBufferSize, final int maxToCache) {
+    this(maxByteBufferSizeToCache, initialByteBufferSize, maxToCache, true);
+  }
+
+  /**
+   * @param maxByteBufferSizeToCache largest buffer kept in the pool
+   * @param initialByteBufferSize size of the buffers handed out by {@link #getBuffer()} until
+   *          some are given back
+   * @param maxToCache most buffers kept in the pool
+   * @param direct whether the buffers are direct or on heap
+   */
+  @SuppressWarnings("unchecked")
+  public BoundedByteBufferPool(final int maxByteBufferSizeToCache,
+      final int initialByteBufferSize, final int maxToCache, final boolean direct) {
+    this.maxByteBufferSizeToCache = roundUp(maxByteBufferSizeToCache);
+    this.initialByteBufferSize = initialByteBufferSize;
+    this.runningAverage = initialByteBufferSize;
+    this.maxToCache = maxToCache;
+    this.direct = direct;
+    this.classes = new Queue[classOf(this.maxByteBufferSizeToCache) + 1];
+    for (int i = 0; i < classes.length; ++i) {
+      classes[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+    }
+  }
+
+  /**
+   * @return smallest size class holding <code>size</code> bytes
+   */
+  static int roundUp(final int size) {
+    if (size <= MIN_BUFFER_SIZE) return MIN_BUFFER_SIZE;
+    int highest = Integer.highestOneBit(size);
+    return highest == size || highest == (1 << 30) ? highest : highest << 1;
+  }
+
+  private static int classOf(final int classSize) {
+    return Integer.numberOfTrailingZeros(classSize)
+        - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+  }
+
+  /**
+   * @return a cleared buffer of the running average size class
+   */
+  public ByteBuffer getBuffer() {
+    return getBuffer(runningAverage);
+  }
+
+  /**
+   * @param size bytes the buffer must hold
+   * @return a cleared buffer with at least <code>size</code> bytes of capacity, from the pool
+   *         if it has one of the size class
+   */
+  public ByteBuffer getBuffer(final int size) {
+    outstanding.incrementAndGet();
+    int classSize = roundUp(size);
+    if (classSize > maxByteBufferSizeToCache) {
+      misses.incrementAndGet();
+      return allocate(size);
+    }
+    ByteBuffer bb = classes[classOf(classSize)].poll();
+    if (bb != null) {
+      count.decrementAndGet();
+      hits.incrementAndGet();
+      bb.clear();
+      return bb;
+    }
+    misses.incrementAndGet();
+    return allocate(classSize);
+  }
+
+  private ByteBuffer allocate(final int size) {
+    return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+  }
+
+  /**
+   * Gives a buffer back to the pool. The buffer must not be used afterwards.
+   * @param bb a buffer from {@link #getBuffer()}, or one of the same kind that replaced it
+   */
+  public void putbackBuffer(final ByteBuffer bb) {
+    if (bb == null) {
+      return;
+    }
+    outstanding.decrementAndGet();
+    int size = bb.capacity();
+    long n = returned.incrementAndGet();
+    long total = totalReturned.addAndGet(size);
+    runningAverage = (int) Math.max(initialByteBufferSize / 2,
+        Math.min(maxByteBufferSizeToCache, total / n));
+    if (bb.isDirect() != direct || size > maxByteBufferSizeToCache
+        || size < MIN_BUFFER_SIZE || Integer.bitCount(size) != 1) {
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("Not keeping a buffer of " + size + " bytes");
+      }
+      return;
+    }
+    if (count.incrementAndGet() > maxToCache) {
+      count.decrementAndGet();
+      return;
+    }
+    classes[classOf(size)].offer(bb);
+  }
+
+  /**
+   * @return number of buffers in the pool
+   */
+  public int getQueueSize() {
+    return count.get();
+  }
+
+  /**
+   * @return size asked of the buffers handed out by {@link #getBuffer()}
+   */
+  public int getRunningAverage() {
+    return runningAverage;
+  }
+
+  /**
+   * @return number of buffers handed out from the pool
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of buffers handed out that had to be allocated
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of buffers handed out and not given back yet
+   */
+  public long getOutstandingCount() {
+    return outstanding.get();
+  }
+}
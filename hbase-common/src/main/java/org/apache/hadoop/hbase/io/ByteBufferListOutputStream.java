@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * OutputStream that collects what is written to it as a list of {@link ByteBuffer}s rather than
+ * in one buffer, e.g. to hand a cellblock to a gathering write.
+ *
+ * <p>Writes of at least <code>referenceMinSize</code> bytes are not copied: the list references
+ * the written array in place, so the array must not change until the buffers are written out.
+ * Smaller writes are copied into chunks taken from a {@link BoundedByteBufferPool}, or allocated
+ * on the heap if there is no pool; {@link #releaseResources()} gives the chunks back.
+ * Not thread safe.
+ */
+@InterfaceAudience.Private
+public class ByteBufferListOutputStream extends OutputStream {
+  private final BoundedByteBufferPool pool;
+  private final int chunkSize;
+  private final int referenceMinSize;
+  // what was written, in order, each ready for reading
+  private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+  // the chunks copies went to, to give back to the pool
+  private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+  private ByteBuffer current;
+  // where the part of current not in buffers yet starts
+  private int segmentStart;
+  private int size;
+
+  /**
+   * @param pool pool to take the chunks from, or null to allocate them on the heap
+   * @param chunkSize size of the chunks to copy small writes into
+   * @param referenceMinSize size from which writes are referenced rather than copied;
+   *          {@link Integer#MAX_VALUE} to copy everything
+   */
+  public ByteBufferListOutputStream(final BoundedByteBufferPool pool, final int chunkSize,
+      final int referenceMinSize) {
+    this.pool = pool;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.referenceMinSize = referenceMinSize;
+  }
+
+  @Override
+  public void write(int b) {
+    ensureRoom();
+    current.put((byte) b);
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    if (len >= referenceMinSize) {
+      endSegment();
+      buffers.add(ByteBuffer.wrap(b, off, len).slice());
+      size += len;
+      return;
+    }
+    while (len > 0) {
+      ensureRoom();
+      int n = Math.min(len, current.remaining());
+      current.put(b, off, n);
+      off += n;
+      len -= n;
+      size += n;
+    }
+  }
+
+  private void ensureRoom() {
+    if (current != null && current.hasRemaining()) {
+      return;
+    }
+    endSegment();
+    current = pool == null ? ByteBuffer.allocate(chunkSize) : pool.getBuffer(chunkSize);
+    chunks.add(current);
+    segmentStart = current.position();
+  }
+
+  /**
+   * Adds what was copied into the current chunk since the last reference to the list.
+   */
+  private void endSegment() {
+    if (current == null || current.position() == segmentStart) {
+      return;
+    }
+    ByteBuffer segment = current.duplicate();
+    segment.limit(current.position());
+    segment.position(segmentStart);
+    buffers.add(segment.slice());
+    segmentStart = current.position();
+  }
+
+  /**
+   * @return number of bytes written
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Use this last; nothing should be written afterwards.
+   * @return the buffers holding what was written, in order, each ready for reading
+   */
+  public List<ByteBuffer> getByteBuffers() {
+    endSegment();
+    return buffers;
+  }
+
+  /**
+   * Gives the chunks back to the pool. The buffers of {@link #getByteBuffers()} must not be used
+   * afterwards.
+   */
+  public void releaseResources() {
+    if (pool != null) {
+      for (ByteBuffer chunk : chunks) {
+        pool.putbackBuffer(chunk);
+      }
+    }
+    chunks.clear();
+    buffers.clear();
+    current = null;
+  }
+
+  @Override
+  public void flush() {
+    // noop
+  }
+
+  @Override
+  public void close() {
+    // noop, resources are released with releaseResources
+  }
+}
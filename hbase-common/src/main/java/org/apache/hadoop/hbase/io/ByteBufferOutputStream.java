@@ -50,6 +50,15 @@ public class ByteBufferOutputStream extends OutputStream {
     }
   }
 
+  /**
+   * @param bb buffer to write into, from its position on, e.g. one from a
+   * {@link BoundedByteBufferPool}. If it gets full it is replaced by a larger one of the same
+   * kind, so {@link #getByteBuffer()} may return another buffer.
+   */
+  public ByteBufferOutputStream(final ByteBuffer bb) {
+    this.buf = bb;
+  }
+
   public int size() {
     return buf.position();
   }
@@ -71,7 +80,8 @@ public class ByteBufferOutputStream extends OutputStream {
           (long)(Integer.MAX_VALUE));
       newSize = Math.max(newSize, buf.position() + extra);
 
-      ByteBuffer newBuf = ByteBuffer.allocate(newSize);
+      ByteBuffer newBuf = buf.isDirect() ?
+          ByteBuffer.allocateDirect(newSize) : ByteBuffer.allocate(newSize);
       buf.flip();
       newBuf.put(buf);
       buf = newBuf;
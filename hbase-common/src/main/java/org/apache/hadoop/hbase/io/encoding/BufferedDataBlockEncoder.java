@@ -164,6 +164,8 @@ abstract class BufferedDataBlockEncoder implements DataBlockEncoder {
     protected STATE current = createSeekerState(); // always valid
     protected STATE previous = createSeekerState(); // may not be valid
     protected TagCompressionContext tagCompressionContext = null;
+    // the cell materialized for the current position, until the seeker moves
+    private KeyValue currentKeyValue = null;
 
     public BufferedEncodedSeeker(KVComparator comparator,
         HFileBlockDecodingContext decodingCtx) {
@@ -195,6 +197,7 @@ abstract class BufferedDataBlockEncoder implements DataBlockEncoder {
 
     @Override
     public void setCurrentBuffer(ByteBuffer buffer) {
+      currentKeyValue = null;
       if (this.tagCompressionContext != null) {
         this.tagCompressionContext.clear();
       }
@@ -219,49 +222,57 @@ abstract class BufferedDataBlockEncoder implements DataBlockEncoder {
 
     @Override
     public ByteBuffer getKeyValueBuffer() {
-      ByteBuffer kvBuffer = createKVBuffer();
-      kvBuffer.putInt(current.keyLength);
-      kvBuffer.putInt(current.valueLength);
-      kvBuffer.put(current.keyBuffer, 0, current.keyLength);
-      kvBuffer.put(currentBuffer.array(),
-          currentBuffer.arrayOffset() + current.valueOffset,
-          current.valueLength);
+      return ByteBuffer.wrap(copyCurrentKeyValue());
+    }
+
+    /**
+     * Copies the current cell, in KeyValue format, into a new array of exactly its size.
+     */
+    private byte[] copyCurrentKeyValue() {
+      byte[] kvBytes = new byte[(int) KeyValue.getKeyValueDataStructureSize(current.keyLength,
+          current.valueLength, current.tagsLength)];
+      int pos = Bytes.putInt(kvBytes, 0, current.keyLength);
+      pos = Bytes.putInt(kvBytes, pos, current.valueLength);
+      pos = Bytes.putBytes(kvBytes, pos, current.keyBuffer, 0, current.keyLength);
+      pos = Bytes.putBytes(kvBytes, pos, currentBuffer.array(),
+          currentBuffer.arrayOffset() + current.valueOffset, current.valueLength);
       if (current.tagsLength > 0) {
         // Put short as unsigned
-        kvBuffer.put((byte)(current.tagsLength >> 8 & 0xff));
-        kvBuffer.put((byte)(current.tagsLength & 0xff));
+        pos = Bytes.putByte(kvBytes, pos, (byte)(current.tagsLength >> 8 & 0xff));
+        pos = Bytes.putByte(kvBytes, pos, (byte)(current.tagsLength & 0xff));
         if (current.tagsOffset != -1) {
           // the offset of the tags bytes in the underlying buffer is marked. So the temp
           // buffer,tagsBuffer was not been used.
-          kvBuffer.put(currentBuffer.array(), currentBuffer.arrayOffset() + current.tagsOffset,
-              current.tagsLength);
+          Bytes.putBytes(kvBytes, pos, currentBuffer.array(),
+              currentBuffer.arrayOffset() + current.tagsOffset, current.tagsLength);
         } else {
           // When tagsOffset is marked as -1, tag compression was present and so the tags were
           // uncompressed into temp buffer, tagsBuffer. Let us copy it from there
-          kvBuffer.put(current.tagsBuffer, 0, current.tagsLength);
+          Bytes.putBytes(kvBytes, pos, current.tagsBuffer, 0, current.tagsLength);
         }
       }
-      return kvBuffer;
-    }
-
-    protected ByteBuffer createKVBuffer() {
-      int kvBufSize = (int) KeyValue.getKeyValueDataStructureSize(current.keyLength,
-          current.valueLength, current.tagsLength);
-      ByteBuffer kvBuffer = ByteBuffer.allocate(kvBufSize);
-      return kvBuffer;
+      return kvBytes;
     }
 
+    /**
+     * The cell is copied out of the block at most once per position: asking again for the
+     * same cell, e.g. after a seek that landed on it, returns the same instance. Every position
+     * the scanners stop at is still copied, including cells the query matcher then skips, as
+     * its trackers keep references into the cells they have seen.
+     */
     @Override
     public KeyValue getKeyValue() {
-      ByteBuffer kvBuf = getKeyValueBuffer();
-      KeyValue kv = new KeyValue(kvBuf.array(), kvBuf.arrayOffset(), kvBuf.array().length
-          - kvBuf.arrayOffset());
-      kv.setMvccVersion(current.memstoreTS);
-      return kv;
+      if (currentKeyValue == null) {
+        byte[] kvBytes = copyCurrentKeyValue();
+        currentKeyValue = new KeyValue(kvBytes, 0, kvBytes.length);
+        currentKeyValue.setMvccVersion(current.memstoreTS);
+      }
+      return currentKeyValue;
     }
 
     @Override
     public void rewind() {
+      currentKeyValue = null;
       currentBuffer.rewind();
       if (tagCompressionContext != null) {
         tagCompressionContext.clear();
@@ -275,6 +286,7 @@ abstract class BufferedDataBlockEncoder implements DataBlockEncoder {
       if (!currentBuffer.hasRemaining()) {
         return false;
       }
+      currentKeyValue = null;
       decodeNext();
       previous.invalidate();
       return true;
@@ -309,6 +321,7 @@ abstract class BufferedDataBlockEncoder implements DataBlockEncoder {
     public int seekToKeyInBlock(byte[] key, int offset, int length,
         boolean seekBefore) {
       int commonPrefix = 0;
+      currentKeyValue = null;
       previous.invalidate();
       do {
         int comp;
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestBoundedByteBufferPool {
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+  private static final int INITIAL_BUFFER_SIZE = 2000;
+  private static final int MAX_TO_CACHE = 10;
+
+  @Test
+  public void testReuse() {
+    BoundedByteBufferPool pool =
+        new BoundedByteBufferPool(MAX_BUFFER_SIZE, INITIAL_BUFFER_SIZE, MAX_TO_CACHE);
+    ByteBuffer bb = pool.getBuffer();
+    assertTrue(bb.isDirect());
+    assertEquals(2048, bb.capacity());
+    bb.put((byte) 1);
+    pool.putbackBuffer(bb);
+    assertEquals(1, pool.getQueueSize());
+    ByteBuffer again = pool.getBuffer(1500);
+    assertTrue(again == bb);
+    assertEquals(0, again.position());
+    assertEquals(0, pool.getQueueSize());
+    assertEquals(1, pool.getHitCount());
+    assertEquals(1, pool.getMissCount());
+    assertEquals(1, pool.getOutstandingCount());
+  }
+
+  @Test
+  public void testSizeClasses() {
+    BoundedByteBufferPool pool =
+        new BoundedByteBufferPool(MAX_BUFFER_SIZE, INITIAL_BUFFER_SIZE, MAX_TO_CACHE, false);
+    ByteBuffer small = pool.getBuffer(10);
+    assertFalse(small.isDirect());
+    assertEquals(BoundedByteBufferPool.MIN_BUFFER_SIZE, small.capacity());
+    ByteBuffer large = pool.getBuffer(5000);
+    assertEquals(8192, large.capacity());
+    pool.putbackBuffer(small);
+    pool.putbackBuffer(large);
+    // a buffer of another class is not handed out
+    assertEquals(16384, pool.getBuffer(9000).capacity());
+    assertTrue(pool.getBuffer(8192) == large);
+    assertTrue(pool.getBuffer(1) == small);
+    assertEquals(2, pool.getHitCount());
+    assertEquals(3, pool.getMissCount());
+    assertEquals(3, pool.getOutstandingCount());
+  }
+
+  @Test
+  public void testBounds() {
+    BoundedByteBufferPool pool =
+        new BoundedByteBufferPool(MAX_BUFFER_SIZE, INITIAL_BUFFER_SIZE, MAX_TO_CACHE);
+    // too large to keep, allocated to size
+    ByteBuffer huge = pool.getBuffer(MAX_BUFFER_SIZE + 1);
+    assertEquals(MAX_BUFFER_SIZE + 1, huge.capacity());
+    pool.putbackBuffer(huge);
+    assertEquals(0, pool.getQueueSize());
+    // not of the kind of the pool, or not of a size class
+    pool.putbackBuffer(ByteBuffer.allocate(4096));
+    pool.putbackBuffer(ByteBuffer.allocateDirect(3000));
+    assertEquals(0, pool.getQueueSize());
+    for (int i = 0; i < MAX_TO_CACHE * 2; ++i) {
+      pool.putbackBuffer(ByteBuffer.allocateDirect(4096));
+    }
+    assertEquals(MAX_TO_CACHE, pool.getQueueSize());
+  }
+
+  @Test
+  public void testRunningAverage() {
+    BoundedByteBufferPool pool =
+        new BoundedByteBufferPool(MAX_BUFFER_SIZE, INITIAL_BUFFER_SIZE, MAX_TO_CACHE);
+    for (int i = 0; i < 4; ++i) {
+      pool.putbackBuffer(ByteBuffer.allocateDirect(5000));
+    }
+    assertEquals(5000, pool.getRunningAverage());
+    assertEquals(8192, pool.getBuffer().capacity());
+  }
+
+  @Test
+  public void testRoundUp() {
+    assertEquals(BoundedByteBufferPool.MIN_BUFFER_SIZE, BoundedByteBufferPool.roundUp(0));
+    assertEquals(1024, BoundedByteBufferPool.roundUp(1024));
+    assertEquals(2048, BoundedByteBufferPool.roundUp(1025));
+    assertEquals(1 << 30, BoundedByteBufferPool.roundUp(1 << 30));
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestByteBufferListOutputStream {
+
+  private static byte[] toBytes(List<ByteBuffer> buffers) {
+    int size = 0;
+    for (ByteBuffer bb : buffers) {
+      size += bb.remaining();
+    }
+    byte[] bytes = new byte[size];
+    int offset = 0;
+    for (ByteBuffer bb : buffers) {
+      int length = bb.remaining();
+      bb.duplicate().get(bytes, offset, length);
+      offset += length;
+    }
+    return bytes;
+  }
+
+  @Test
+  public void testReferencesLargeWrites() {
+    BoundedByteBufferPool pool = new BoundedByteBufferPool(64 * 1024, 1024, 10);
+    ByteBufferListOutputStream out = new ByteBufferListOutputStream(pool, 1024, 100);
+    byte[] large = new byte[200];
+    large[0] = 42;
+    out.write(Bytes.toBytes(1));
+    out.write(large, 0, large.length);
+    out.write(Bytes.toBytes(2));
+    out.write(7);
+    assertEquals(209, out.size());
+
+    List<ByteBuffer> buffers = out.getByteBuffers();
+    assertEquals(3, buffers.size());
+    assertTrue(buffers.get(0).isDirect());
+    // the large write is the array itself
+    assertTrue(buffers.get(1).hasArray() && buffers.get(1).array() == large);
+    assertTrue(buffers.get(2).isDirect());
+    byte[] expected = Bytes.add(Bytes.toBytes(1), large, Bytes.add(Bytes.toBytes(2),
+      new byte[] { 7 }));
+    assertArrayEquals(expected, toBytes(buffers));
+
+    // only the one chunk both small parts were copied into is pooled
+    assertEquals(1, pool.getOutstandingCount());
+    out.releaseResources();
+    assertEquals(0, pool.getOutstandingCount());
+    assertEquals(1, pool.getQueueSize());
+  }
+
+  @Test
+  public void testCopiesAcrossChunks() {
+    ByteBufferListOutputStream out =
+      new ByteBufferListOutputStream(null, 16, Integer.MAX_VALUE);
+    byte[] bytes = new byte[100];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    out.write(bytes, 0, 50);
+    out.write(bytes, 50, 50);
+    assertEquals(100, out.size());
+    List<ByteBuffer> buffers = out.getByteBuffers();
+    assertEquals(7, buffers.size());
+    for (ByteBuffer bb : buffers) {
+      assertTrue(bb.array() != bytes);
+    }
+    assertArrayEquals(bytes, toBytes(buffers));
+  }
+}
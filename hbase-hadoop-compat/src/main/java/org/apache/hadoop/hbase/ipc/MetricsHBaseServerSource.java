@@ -40,6 +40,16 @@ public interface MetricsHBaseServerSource extends BaseSource {
   String RECEIVED_BYTES_DESC = "Number of bytes received.";
   String QUEUE_CALL_TIME_NAME = "queueCallTime";
   String QUEUE_CALL_TIME_DESC = "Queue Call Time.";
+  String QUEUE_CALL_TIME_CLASS_PREFIX = QUEUE_CALL_TIME_NAME + "_";
+  String CALL_STAGE_TIME_PREFIX = "callStageTime_";
+  String DROPPED_CALLS_NAME = "droppedCalls";
+  String DROPPED_CALLS_DESC = "Number of calls dropped after waiting past their deadline.";
+  String READER_LOOP_TIME_NAME = "readerLoopTime";
+  String READER_LOOP_TIME_DESC =
+      "Time, in microseconds, a reader spends on the connections ready after a select.";
+  String PAUSED_CONNECTION_READS_NAME = "pausedConnectionReads";
+  String PAUSED_CONNECTION_READS_DESC =
+      "Number of times a connection was not read for having too many calls or bytes in flight.";
   String PROCESS_CALL_TIME_NAME = "processCallTime";
   String PROCESS_CALL_TIME_DESC = "Processing call time.";
   String QUEUE_SIZE_NAME = "queueSize";
@@ -55,6 +65,12 @@ public interface MetricsHBaseServerSource extends BaseSource {
   String NUM_OPEN_CONNECTIONS_DESC = "Number of open connections.";
   String NUM_ACTIVE_HANDLER_NAME = "numActiveHandler";
   String NUM_ACTIVE_HANDLER_DESC = "Number of active rpc handlers.";
+  String BUFFER_POOL_HIT_PERCENT_NAME = "bufferPoolHitPercent";
+  String BUFFER_POOL_HIT_PERCENT_DESC =
+      "Percentage of request and cellblock buffers that came from the pools.";
+  String BUFFER_POOL_OUTSTANDING_NAME = "bufferPoolOutstanding";
+  String BUFFER_POOL_OUTSTANDING_DESC =
+      "Number of pooled buffers held by calls in progress.";
 
   void authorizationSuccess();
 
@@ -70,5 +86,32 @@ public interface MetricsHBaseServerSource extends BaseSource {
 
   void dequeuedCall(int qTime);
 
+  /**
+   * Queue time of a call of some class, as told apart by the scheduler, e.g. gets or scans.
+   * @param callClass the class of the call
+   * @param qTime time the call waited in the queue
+   */
+  void dequeuedCall(String callClass, int qTime);
+
+  void droppedCall();
+
+  void pausedConnectionRead();
+
   void processedCall(int processingTime);
+
+  /**
+   * Time a reader spent reading and decoding the requests of the connections that one select
+   * found ready.
+   * @param time time spent, in microseconds
+   */
+  void readerLoop(long time);
+
+  /**
+   * Time a call of some method spent in one of its stages, e.g. waiting for the WAL sync of a
+   * Mutate call.
+   * @param methodName the method called
+   * @param stage the stage, e.g. queue or walSyncWait
+   * @param time time spent in the stage, in ms
+   */
+  void updateCallStage(String methodName, String stage, long time);
 }
@@ -26,4 +26,6 @@ public interface MetricsHBaseServerWrapper {
   int getPriorityQueueLength();
   int getNumOpenConnections();
   int getActiveRpcHandlerCount();
+  int getBufferPoolHitPercent();
+  long getBufferPoolOutstanding();
 }
@@ -136,6 +136,9 @@ public interface MetricsRegionServerSource extends BaseSource {
   String WRITE_REQUEST_COUNT = "writeRequestCount";
   String WRITE_REQUEST_COUNT_DESC =
       "Number of mutation requests this region server has answered.";
+  String TOMBSTONES_SKIPPED = "tombstonesSkipped";
+  String TOMBSTONES_SKIPPED_DESC =
+      "Number of delete markers that scans of this region server have skipped.";
   String CHECK_MUTATE_FAILED_COUNT = "checkMutateFailedCount";
   String CHECK_MUTATE_FAILED_COUNT_DESC =
       "Number of Check and Mutate calls that failed the checks.";
@@ -162,6 +165,18 @@ public interface MetricsRegionServerSource extends BaseSource {
   String LARGE_COMPACTION_QUEUE_LENGTH = "largeCompactionQueueLength";
   String SMALL_COMPACTION_QUEUE_LENGTH = "smallCompactionQueueLength";
   String COMPACTION_QUEUE_LENGTH_DESC = "Length of the queue for compactions.";
+  String COMPACTION_THROUGHPUT_LIMIT = "compactionThroughputLimit";
+  String COMPACTION_THROUGHPUT_LIMIT_DESC =
+      "Current limit of the compaction throughput in bytes per second, 0 if unlimited.";
+  String COMPACTION_THROTTLED_TIME = "compactionThrottledTime";
+  String COMPACTION_THROTTLED_TIME_DESC =
+      "Time in ms compactions slept to stay below the throughput limit.";
+  String COMPACTION_EFFECTIVE_THROUGHPUT = "compactionEffectiveThroughput";
+  String COMPACTION_EFFECTIVE_THROUGHPUT_DESC =
+      "Average throughput of the finished compactions in bytes per second.";
+  String COMPACTIONS_PREEMPTED = "compactionsPreempted";
+  String COMPACTIONS_PREEMPTED_DESC =
+      "Number of major compactions stopped to let a store that blocks updates compact.";
   String FLUSH_QUEUE_LENGTH = "flushQueueLength";
   String FLUSH_QUEUE_LENGTH_DESC = "Length of the queue for region flushes";
   String BLOCK_CACHE_FREE_SIZE = "blockCacheFreeSize";
@@ -171,6 +186,8 @@ public interface MetricsRegionServerSource extends BaseSource {
   String BLOCK_CACHE_COUNT_DESC = "Number of block in the block cache.";
   String BLOCK_CACHE_SIZE = "blockCacheSize";
   String BLOCK_CACHE_SIZE_DESC = "Size of the block cache.";
+  String ROW_CACHE_SIZE = "rowCacheSize";
+  String ROW_CACHE_SIZE_DESC = "Heap held by the row caches of all the regions.";
   String BLOCK_CACHE_HIT_COUNT = "blockCacheHitCount";
   String BLOCK_CACHE_HIT_COUNT_DESC = "Count of the hit on the block cache.";
   String BLOCK_CACHE_MISS_COUNT = "blockCacheMissCount";
@@ -179,6 +196,9 @@ public interface MetricsRegionServerSource extends BaseSource {
   String BLOCK_CACHE_EVICTION_COUNT = "blockCacheEvictionCount";
   String BLOCK_CACHE_EVICTION_COUNT_DESC =
       "Count of the number of blocks evicted from the block cache.";
+  String DATA_BLOCKS_SKIPPED_BY_TIMERANGE = "dataBlocksSkippedByTimeRange";
+  String DATA_BLOCKS_SKIPPED_BY_TIMERANGE_DESC =
+      "Number of data blocks scans did not read because all their cells were too old.";
   String BLOCK_CACHE_HIT_PERCENT = "blockCountHitPercent";
   String BLOCK_CACHE_HIT_PERCENT_DESC =
       "Percent of block cache requests that are hits";
@@ -112,6 +112,11 @@ public interface MetricsRegionServerWrapper {
    */
   long getWriteRequestsCount();
 
+  /**
+   * Get the number of delete markers scans of regions hosted on this region server skipped.
+   */
+  long getTombstonesSkipped();
+
   /**
    * Get the number of CAS operations that failed.
    */
@@ -162,6 +167,26 @@ public interface MetricsRegionServerWrapper {
 
   int getLargeCompactionQueueSize();
 
+  /**
+   * Get the current limit of the compaction throughput in bytes per second, 0 if unlimited.
+   */
+  long getCompactionThroughputLimit();
+
+  /**
+   * Get the time compactions were slowed down to stay below the throughput limit, in ms.
+   */
+  long getCompactionThrottledTime();
+
+  /**
+   * Get the average throughput of the finished compactions in bytes per second.
+   */
+  long getCompactionEffectiveThroughput();
+
+  /**
+   * Get the number of major compactions stopped to let a store that blocks updates compact.
+   */
+  long getCompactionsPreempted();
+
   /**
    * Get the size of the flush queue.
    */
@@ -182,6 +207,11 @@ public interface MetricsRegionServerWrapper {
    */
   long getBlockCacheSize();
 
+  /**
+   * Get the heap (in bytes) held by the row caches of all the regions.
+   */
+  long getRowCacheSize();
+
   /**
    * Get the count of hits to the block cache
    */
@@ -197,6 +227,11 @@ public interface MetricsRegionServerWrapper {
    */
   long getBlockCacheEvictedCount();
 
+  /**
+   * Get the number of data blocks that scans skipped because of their time range.
+   */
+  long getDataBlocksSkippedByTimeRange();
+
   /**
    * Get the percent of all requests that hit the block cache.
    */
@@ -35,6 +35,10 @@ public interface MetricsRegionSource extends Comparable<MetricsRegionSource> {
       "Sum of filesize on all files entering a finished, successful or aborted, compaction";
   String NUM_FILES_COMPACTED_DESC =
       "Number of files that were input for finished, successful or aborted, compactions";
+  String ROW_CACHE_HIT_COUNT = "rowCacheHitCount";
+  String ROW_CACHE_MISS_COUNT = "rowCacheMissCount";
+  String FAMILY_PREFIX = "family_";
+  String FLUSH_SIZE = "flushSize";
 
   /**
    * Close the region's metrics as this region is closing.
@@ -72,6 +76,23 @@ public interface MetricsRegionSource extends Comparable<MetricsRegionSource> {
    */
   void updateAppend();
 
+  /**
+   * Update the count of gets served from the row cache.
+   */
+  void updateRowCacheHit();
+
+  /**
+   * Update the count of cacheable gets that missed the row cache.
+   */
+  void updateRowCacheMiss();
+
+  /**
+   * Update the sizes of the memstore flushes of a family.
+   * @param family name of the column family
+   * @param flushSize size in bytes of the memstore the family flushed
+   */
+  void updateFlush(String family, long flushSize);
+
   /**
    * Get the aggregate source to which this reports.
    */
@@ -35,8 +35,11 @@ public class MetricsHBaseServerSourceImpl extends BaseSourceImpl
   private final MetricMutableCounterLong authenticationFailures;
   private final MetricMutableCounterLong sentBytes;
   private final MetricMutableCounterLong receivedBytes;
+  private final MetricMutableCounterLong droppedCalls;
+  private final MetricMutableCounterLong pausedConnectionReads;
   private MetricMutableHistogram queueCallTime;
   private MetricMutableHistogram processCallTime;
+  private MetricMutableHistogram readerLoopTime;
 
   public MetricsHBaseServerSourceImpl(String metricsName,
                                       String metricsDescription,
@@ -59,10 +62,16 @@ public class MetricsHBaseServerSourceImpl extends BaseSourceImpl
         SENT_BYTES_DESC, 0l);
     this.receivedBytes = this.getMetricsRegistry().newCounter(RECEIVED_BYTES_NAME,
         RECEIVED_BYTES_DESC, 0l);
+    this.droppedCalls = this.getMetricsRegistry().newCounter(DROPPED_CALLS_NAME,
+        DROPPED_CALLS_DESC, 0l);
+    this.pausedConnectionReads = this.getMetricsRegistry().newCounter(
+        PAUSED_CONNECTION_READS_NAME, PAUSED_CONNECTION_READS_DESC, 0l);
     this.queueCallTime = this.getMetricsRegistry().newHistogram(QUEUE_CALL_TIME_NAME,
         QUEUE_CALL_TIME_DESC);
     this.processCallTime = this.getMetricsRegistry().newHistogram(PROCESS_CALL_TIME_NAME,
         PROCESS_CALL_TIME_DESC);
+    this.readerLoopTime = this.getMetricsRegistry().newHistogram(READER_LOOP_TIME_NAME,
+        READER_LOOP_TIME_DESC);
   }
 
   @Override
@@ -100,11 +109,37 @@ public class MetricsHBaseServerSourceImpl extends BaseSourceImpl
     queueCallTime.add(qTime);
   }
 
+  @Override
+  public void dequeuedCall(String callClass, int qTime) {
+    getMetricsRegistry().getHistogram(QUEUE_CALL_TIME_CLASS_PREFIX + callClass).add(qTime);
+  }
+
+  @Override
+  public void updateCallStage(String methodName, String stage, long time) {
+    getMetricsRegistry().getHistogram(CALL_STAGE_TIME_PREFIX + methodName + "_" + stage)
+        .add(time);
+  }
+
+  @Override
+  public void droppedCall() {
+    droppedCalls.incr();
+  }
+
+  @Override
+  public void pausedConnectionRead() {
+    pausedConnectionReads.incr();
+  }
+
   @Override
   public void processedCall(int processingTime) {
     processCallTime.add(processingTime);
   }
 
+  @Override
+  public void readerLoop(long time) {
+    readerLoopTime.add(time);
+  }
+
   @Override
   public void getMetrics(MetricsBuilder metricsBuilder, boolean all) {
     MetricsRecordBuilder mrb = metricsBuilder.addRecord(metricsName)
@@ -118,7 +153,11 @@ public class MetricsHBaseServerSourceImpl extends BaseSourceImpl
           .addGauge(NUM_OPEN_CONNECTIONS_NAME,
               NUM_OPEN_CONNECTIONS_DESC, wrapper.getNumOpenConnections())
           .addGauge(NUM_ACTIVE_HANDLER_NAME,
-              NUM_ACTIVE_HANDLER_DESC, wrapper.getActiveRpcHandlerCount());
+              NUM_ACTIVE_HANDLER_DESC, wrapper.getActiveRpcHandlerCount())
+          .addGauge(BUFFER_POOL_HIT_PERCENT_NAME,
+              BUFFER_POOL_HIT_PERCENT_DESC, wrapper.getBufferPoolHitPercent())
+          .addGauge(BUFFER_POOL_OUTSTANDING_NAME,
+              BUFFER_POOL_OUTSTANDING_DESC, wrapper.getBufferPoolOutstanding());
     }
 
     metricsRegistry.snapshot(mrb, all);
@@ -157,6 +157,7 @@ public class MetricsRegionServerSourceImpl
           .addCounter(TOTAL_REQUEST_COUNT, TOTAL_REQUEST_COUNT_DESC, rsWrap.getTotalRequestCount())
           .addCounter(READ_REQUEST_COUNT, READ_REQUEST_COUNT_DESC, rsWrap.getReadRequestsCount())
           .addCounter(WRITE_REQUEST_COUNT, WRITE_REQUEST_COUNT_DESC, rsWrap.getWriteRequestsCount())
+          .addCounter(TOMBSTONES_SKIPPED, TOMBSTONES_SKIPPED_DESC, rsWrap.getTombstonesSkipped())
           .addCounter(CHECK_MUTATE_FAILED_COUNT,
               CHECK_MUTATE_FAILED_COUNT_DESC,
               rsWrap.getCheckAndMutateChecksFailed())
@@ -182,10 +183,22 @@ public class MetricsRegionServerSourceImpl
           .addGauge(SMALL_COMPACTION_QUEUE_LENGTH,
               COMPACTION_QUEUE_LENGTH_DESC,
               rsWrap.getSmallCompactionQueueSize())
+          .addGauge(COMPACTION_THROUGHPUT_LIMIT,
+              COMPACTION_THROUGHPUT_LIMIT_DESC,
+              rsWrap.getCompactionThroughputLimit())
+          .addCounter(COMPACTION_THROTTLED_TIME,
+              COMPACTION_THROTTLED_TIME_DESC,
+              rsWrap.getCompactionThrottledTime())
+          .addGauge(COMPACTION_EFFECTIVE_THROUGHPUT,
+              COMPACTION_EFFECTIVE_THROUGHPUT_DESC,
+              rsWrap.getCompactionEffectiveThroughput())
+          .addCounter(COMPACTIONS_PREEMPTED, COMPACTIONS_PREEMPTED_DESC,
+              rsWrap.getCompactionsPreempted())
           .addGauge(FLUSH_QUEUE_LENGTH, FLUSH_QUEUE_LENGTH_DESC, rsWrap.getFlushQueueSize())
           .addGauge(BLOCK_CACHE_FREE_SIZE, BLOCK_CACHE_FREE_DESC, rsWrap.getBlockCacheFreeSize())
           .addGauge(BLOCK_CACHE_COUNT, BLOCK_CACHE_COUNT_DESC, rsWrap.getBlockCacheCount())
           .addGauge(BLOCK_CACHE_SIZE, BLOCK_CACHE_SIZE_DESC, rsWrap.getBlockCacheSize())
+          .addGauge(ROW_CACHE_SIZE, ROW_CACHE_SIZE_DESC, rsWrap.getRowCacheSize())
           .addCounter(BLOCK_CACHE_HIT_COUNT,
               BLOCK_CACHE_HIT_COUNT_DESC,
               rsWrap.getBlockCacheHitCount())
@@ -195,6 +208,9 @@ public class MetricsRegionServerSourceImpl
           .addCounter(BLOCK_CACHE_EVICTION_COUNT,
               BLOCK_CACHE_EVICTION_COUNT_DESC,
               rsWrap.getBlockCacheEvictedCount())
+          .addCounter(DATA_BLOCKS_SKIPPED_BY_TIMERANGE,
+              DATA_BLOCKS_SKIPPED_BY_TIMERANGE_DESC,
+              rsWrap.getDataBlocksSkippedByTimeRange())
           .addGauge(BLOCK_CACHE_HIT_PERCENT,
               BLOCK_CACHE_HIT_PERCENT_DESC,
               rsWrap.getBlockCacheHitPercent())
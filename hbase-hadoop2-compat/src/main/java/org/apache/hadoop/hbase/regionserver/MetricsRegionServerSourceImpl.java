@@ -168,6 +168,8 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getReadRequestsCount())
           .addCounter(Interns.info(WRITE_REQUEST_COUNT, WRITE_REQUEST_COUNT_DESC),
               rsWrap.getWriteRequestsCount())
+          .addCounter(Interns.info(TOMBSTONES_SKIPPED, TOMBSTONES_SKIPPED_DESC),
+              rsWrap.getTombstonesSkipped())
           .addCounter(Interns.info(CHECK_MUTATE_FAILED_COUNT, CHECK_MUTATE_FAILED_COUNT_DESC),
               rsWrap.getCheckAndMutateChecksFailed())
           .addCounter(Interns.info(CHECK_MUTATE_PASSED_COUNT, CHECK_MUTATE_PASSED_COUNT_DESC),
@@ -187,6 +189,14 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getPercentFileLocal())
           .addGauge(Interns.info(COMPACTION_QUEUE_LENGTH, COMPACTION_QUEUE_LENGTH_DESC),
               rsWrap.getCompactionQueueSize())
+          .addGauge(Interns.info(COMPACTION_THROUGHPUT_LIMIT, COMPACTION_THROUGHPUT_LIMIT_DESC),
+              rsWrap.getCompactionThroughputLimit())
+          .addCounter(Interns.info(COMPACTION_THROTTLED_TIME, COMPACTION_THROTTLED_TIME_DESC),
+              rsWrap.getCompactionThrottledTime())
+          .addGauge(Interns.info(COMPACTION_EFFECTIVE_THROUGHPUT,
+              COMPACTION_EFFECTIVE_THROUGHPUT_DESC), rsWrap.getCompactionEffectiveThroughput())
+          .addCounter(Interns.info(COMPACTIONS_PREEMPTED, COMPACTIONS_PREEMPTED_DESC),
+              rsWrap.getCompactionsPreempted())
           .addGauge(Interns.info(FLUSH_QUEUE_LENGTH, FLUSH_QUEUE_LENGTH_DESC),
               rsWrap.getFlushQueueSize())
           .addGauge(Interns.info(BLOCK_CACHE_FREE_SIZE, BLOCK_CACHE_FREE_DESC),
@@ -195,12 +205,16 @@ public class MetricsRegionServerSourceImpl
               rsWrap.getBlockCacheCount())
           .addGauge(Interns.info(BLOCK_CACHE_SIZE, BLOCK_CACHE_SIZE_DESC),
               rsWrap.getBlockCacheSize())
+          .addGauge(Interns.info(ROW_CACHE_SIZE, ROW_CACHE_SIZE_DESC),
+              rsWrap.getRowCacheSize())
           .addCounter(Interns.info(BLOCK_CACHE_HIT_COUNT, BLOCK_CACHE_HIT_COUNT_DESC),
               rsWrap.getBlockCacheHitCount())
           .addCounter(Interns.info(BLOCK_CACHE_MISS_COUNT, BLOCK_COUNT_MISS_COUNT_DESC),
               rsWrap.getBlockCacheMissCount())
           .addCounter(Interns.info(BLOCK_CACHE_EVICTION_COUNT, BLOCK_CACHE_EVICTION_COUNT_DESC),
               rsWrap.getBlockCacheEvictedCount())
+          .addCounter(Interns.info(DATA_BLOCKS_SKIPPED_BY_TIMERANGE,
+              DATA_BLOCKS_SKIPPED_BY_TIMERANGE_DESC), rsWrap.getDataBlocksSkippedByTimeRange())
           .addGauge(Interns.info(BLOCK_CACHE_HIT_PERCENT, BLOCK_CACHE_HIT_PERCENT_DESC),
               rsWrap.getBlockCacheHitPercent())
           .addGauge(Interns.info(BLOCK_CACHE_EXPRESS_HIT_PERCENT,
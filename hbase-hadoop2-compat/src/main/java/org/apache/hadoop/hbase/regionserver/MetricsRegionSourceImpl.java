@@ -18,6 +18,9 @@
 
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -46,15 +49,23 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
   private String regionIncrementKey;
   private String regionAppendKey;
   private String regionScanNextKey;
+  private String regionRowCacheHitKey;
+  private String regionRowCacheMissKey;
   private MutableCounterLong regionPut;
   private MutableCounterLong regionDelete;
 
   private MutableCounterLong regionIncrement;
   private MutableCounterLong regionAppend;
+  private MutableCounterLong regionRowCacheHit;
+  private MutableCounterLong regionRowCacheMiss;
 
   private MutableHistogram regionGet;
   private MutableHistogram regionScanNext;
 
+  // flush size histograms by family, created on the first flush of the family
+  private final Map<String, MutableHistogram> familyFlushSizes =
+      new ConcurrentHashMap<String, MutableHistogram>();
+
   public MetricsRegionSourceImpl(MetricsRegionWrapper regionWrapper,
                                  MetricsRegionAggregateSourceImpl aggregate) {
     this.regionWrapper = regionWrapper;
@@ -90,6 +101,12 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
 
     regionScanNextKey = regionNamePrefix + MetricsRegionServerSource.SCAN_NEXT_KEY;
     regionScanNext = registry.newHistogram(regionScanNextKey);
+
+    regionRowCacheHitKey = regionNamePrefix + MetricsRegionSource.ROW_CACHE_HIT_COUNT;
+    regionRowCacheHit = registry.getLongCounter(regionRowCacheHitKey, 0l);
+
+    regionRowCacheMissKey = regionNamePrefix + MetricsRegionSource.ROW_CACHE_MISS_COUNT;
+    regionRowCacheMiss = registry.getLongCounter(regionRowCacheMissKey, 0l);
   }
 
   @Override
@@ -107,6 +124,11 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
 
     registry.removeMetric(regionGetKey);
     registry.removeMetric(regionScanNextKey);
+    registry.removeMetric(regionRowCacheHitKey);
+    registry.removeMetric(regionRowCacheMissKey);
+    for (String family : familyFlushSizes.keySet()) {
+      registry.removeMetric(getFamilyFlushSizeKey(family));
+    }
 
     JmxCacheBuster.clearJmxCache();
   }
@@ -141,6 +163,31 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
     regionAppend.incr();
   }
 
+  @Override
+  public void updateRowCacheHit() {
+    regionRowCacheHit.incr();
+  }
+
+  @Override
+  public void updateRowCacheMiss() {
+    regionRowCacheMiss.incr();
+  }
+
+  @Override
+  public void updateFlush(String family, long flushSize) {
+    MutableHistogram familyFlushSize = familyFlushSizes.get(family);
+    if (familyFlushSize == null) {
+      familyFlushSize = registry.getHistogram(getFamilyFlushSizeKey(family));
+      familyFlushSizes.put(family, familyFlushSize);
+    }
+    familyFlushSize.add(flushSize);
+  }
+
+  private String getFamilyFlushSizeKey(String family) {
+    return regionNamePrefix + MetricsRegionSource.FAMILY_PREFIX + family + "_" +
+        MetricsRegionSource.FLUSH_SIZE;
+  }
+
   @Override
   public MetricsRegionAggregateSource getAggregateSource() {
     return agg;
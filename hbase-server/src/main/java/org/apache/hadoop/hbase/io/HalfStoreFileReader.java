@@ -286,6 +286,10 @@ public class HalfStoreFileReader extends StoreFile.Reader {
       public boolean isSeeked() {
         return this.delegate.isSeeked();
       }
+
+      public void skipBlocksOlderThan(long timestamp) {
+        this.delegate.skipBlocksOlderThan(timestamp);
+      }
     };
   }
   
@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * The offset and the minimum and maximum cell timestamp of every data block of an HFile.
+ * Written by {@link HFileWriterV2} as the {@link #META_BLOCK_NAME} meta block so that scanners
+ * can step over data blocks holding only cells older than a scan is interested in, see
+ * {@link HFileScanner#skipBlocksOlderThan(long)}. Files without the meta block are read as
+ * before.
+ */
+@InterfaceAudience.Private
+public class BlockTimeRanges implements Writable {
+  /** Name of the meta block holding the data block time ranges */
+  public static final String META_BLOCK_NAME = "BLOCK_TIMERANGES";
+
+  private long[] offsets;
+  private long[] minTimestamps;
+  private long[] maxTimestamps;
+  private int count;
+
+  public BlockTimeRanges() {
+    this(16);
+  }
+
+  BlockTimeRanges(int capacity) {
+    offsets = new long[capacity];
+    minTimestamps = new long[capacity];
+    maxTimestamps = new long[capacity];
+  }
+
+  /**
+   * Records the time range of the next data block. Blocks must be added in file order.
+   */
+  void add(long offset, long minTimestamp, long maxTimestamp) {
+    if (count == offsets.length) {
+      int capacity = Math.max(16, count * 2);
+      offsets = Arrays.copyOf(offsets, capacity);
+      minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+      maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+    }
+    offsets[count] = offset;
+    minTimestamps[count] = minTimestamp;
+    maxTimestamps[count] = maxTimestamp;
+    count++;
+  }
+
+  /**
+   * @return the number of data blocks
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the position of the data block starting at the given offset, or a negative value
+   *         if there is no such block
+   */
+  public int indexOf(long offset) {
+    return Arrays.binarySearch(offsets, 0, count, offset);
+  }
+
+  public long getOffset(int i) {
+    return offsets[i];
+  }
+
+  public long getMinTimestamp(int i) {
+    return minTimestamps[i];
+  }
+
+  public long getMaxTimestamp(int i) {
+    return maxTimestamps[i];
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, count);
+    long previousOffset = 0;
+    for (int i = 0; i < count; i++) {
+      // offsets only grow, so store the deltas
+      WritableUtils.writeVLong(out, offsets[i] - previousOffset);
+      previousOffset = offsets[i];
+      out.writeLong(minTimestamps[i]);
+      out.writeLong(maxTimestamps[i]);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    int n = WritableUtils.readVInt(in);
+    offsets = new long[n];
+    minTimestamps = new long[n];
+    maxTimestamps = new long[n];
+    long offset = 0;
+    for (int i = 0; i < n; i++) {
+      offset += WritableUtils.readVLong(in);
+      offsets[i] = offset;
+      minTimestamps[i] = in.readLong();
+      maxTimestamps[i] = in.readLong();
+    }
+    count = n;
+  }
+}
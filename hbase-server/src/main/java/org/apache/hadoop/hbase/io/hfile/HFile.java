@@ -251,6 +251,16 @@ public class HFile {
   // for test purpose
   public static final AtomicLong dataBlockReadCnt = new AtomicLong(0);
 
+  /** Data blocks stepped over because their cells were older than a scan asked for */
+  static final AtomicLong skippedDataBlocks = new AtomicLong(0);
+
+  /**
+   * @return the number of data blocks skipped by their time range since startup
+   */
+  public static final long getSkippedDataBlockCount() {
+    return skippedDataBlocks.get();
+  }
+
   // number of sequential reads
   public static final int getReadOps() {
     return readOps.getAndSet(0);
@@ -864,6 +864,52 @@ public class HFileBlock implements Cacheable {
       finishBlockAndWriteHeaderAndData((DataOutputStream) out);
     }
 
+    /**
+     * Writes a block taken verbatim from another file, i.e. without decompressing, decoding and
+     * compressing it again. Only the header fields that depend on the file the block is in,
+     * the offset of the previous block of the same type and the checksum settings, are
+     * rewritten, and the checksums are computed again. The block must have been written with
+     * the compression, data block encoding and cell format of this writer. Can be called in any
+     * state except while a block is written to; afterwards a new block has to be started.
+     *
+     * @param onDiskBlock the block as stored on disk, including header and checksums, see
+     *          {@link FSReaderV2#readRawBlock(long, int)}
+     * @param out the stream to write the block to
+     * @return the on-disk size of the written block, including header and checksums
+     * @throws IOException
+     */
+    public int writeRawBlock(byte[] onDiskBlock, FSDataOutputStream out) throws IOException {
+      Preconditions.checkState(blockSizeWritten() == 0,
+          "Cannot copy a block while writing one");
+      if (state == State.BLOCK_READY && startOffset != -1) {
+        prevOffsetByType[blockType.getId()] = startOffset;
+      }
+      BlockType rawBlockType = BlockType.parse(onDiskBlock, 0, BlockType.MAGIC_LENGTH);
+      int onDiskDataSize = Bytes.toInt(onDiskBlock,
+          HConstants.HFILEBLOCK_HEADER_SIZE - Bytes.SIZEOF_INT);
+      int numBytes = (int) ChecksumUtil.numBytes(onDiskDataSize,
+          fileContext.getBytesPerChecksum());
+
+      int pos = Bytes.putInt(onDiskBlock, BlockType.MAGIC_LENGTH,
+          onDiskDataSize + numBytes - HConstants.HFILEBLOCK_HEADER_SIZE);
+      pos += Bytes.SIZEOF_INT; // uncompressed size stays the same
+      pos = Bytes.putLong(onDiskBlock, pos, prevOffsetByType[rawBlockType.getId()]);
+      pos = Bytes.putByte(onDiskBlock, pos, fileContext.getChecksumType().getCode());
+      Bytes.putInt(onDiskBlock, pos, fileContext.getBytesPerChecksum());
+      byte[] checksum = new byte[numBytes];
+      ChecksumUtil.generateChecksums(onDiskBlock, 0, onDiskDataSize, checksum, 0,
+          fileContext.getChecksumType(), fileContext.getBytesPerChecksum());
+
+      long offset = out.getPos();
+      out.write(onDiskBlock, 0, onDiskDataSize);
+      out.write(checksum);
+      prevOffsetByType[rawBlockType.getId()] = offset;
+      // nothing left to finish or to remember when the next block is started
+      startOffset = -1;
+      state = State.INIT;
+      return onDiskDataSize + numBytes;
+    }
+
     /**
      * Writes the header and the compressed data of this block (or uncompressed
      * data when not using compression) into the given stream. Can be called in
@@ -1366,6 +1412,70 @@ public class HFileBlock implements Cacheable {
       return blk;
     }
 
+    /**
+     * Reads a block as it is stored on disk, i.e. the header followed by the compressed or
+     * encoded data and the checksums, for copying it to another file without decompressing
+     * it. The checksums are verified like {@link #readBlockData(long, long, int, boolean)}
+     * does, falling back to HDFS checksums on a mismatch.
+     *
+     * @param offset the offset of the block in the file
+     * @param onDiskSizeWithHeader the on-disk size of the block, including the header and the
+     *          checksums, as found in the block index
+     * @return the bytes of the block
+     * @throws IOException
+     */
+    public byte[] readRawBlock(long offset, int onDiskSizeWithHeader) throws IOException {
+      if (!fileContext.isUseHBaseChecksum() || onDiskSizeWithHeader < hdrSize) {
+        throw new IOException("Cannot read the raw block at offset " + offset + " of size "
+            + onDiskSizeWithHeader + " in " + path);
+      }
+      byte[] block = new byte[onDiskSizeWithHeader];
+      boolean doVerificationThruHBaseChecksum = streamWrapper.shouldUseHBaseChecksum();
+      FSDataInputStream is = streamWrapper.getStream(doVerificationThruHBaseChecksum);
+      readAtOffset(is, block, 0, onDiskSizeWithHeader, false, offset, true);
+      if (doVerificationThruHBaseChecksum && !validateRawBlockChecksum(block)) {
+        HFile.LOG.warn("HBase checksum verification failed for file " + path + " at offset "
+            + offset + ". Retrying read with HDFS checksums turned on...");
+        HFile.checksumFailures.incrementAndGet();
+        is = streamWrapper.fallbackToFsChecksum(CHECKSUM_VERIFICATION_NUM_IO_THRESHOLD);
+        readAtOffset(is, block, 0, onDiskSizeWithHeader, false, offset, true);
+      }
+      streamWrapper.checksumOk();
+
+      int onDiskSizeWithoutHeader = Bytes.toInt(block, BlockType.MAGIC_LENGTH);
+      if (onDiskSizeWithoutHeader + hdrSize != onDiskSizeWithHeader) {
+        throw new IOException("The block at offset " + offset + " in " + path + " has "
+            + onDiskSizeWithoutHeader + " bytes after the header, expected "
+            + (onDiskSizeWithHeader - hdrSize));
+      }
+      return block;
+    }
+
+    /**
+     * @return whether the checksums stored in a raw block match its header and data
+     */
+    private boolean validateRawBlockChecksum(byte[] block) throws IOException {
+      int pos = BlockType.MAGIC_LENGTH + 2 * Bytes.SIZEOF_INT + Bytes.SIZEOF_LONG;
+      ChecksumType checksumType = ChecksumType.codeToType(block[pos]);
+      if (checksumType == ChecksumType.NULL) {
+        return true;
+      }
+      int bytesPerChecksum = Bytes.toInt(block, pos + Bytes.SIZEOF_BYTE);
+      int onDiskDataSize = Bytes.toInt(block, hdrSize - Bytes.SIZEOF_INT);
+      if (bytesPerChecksum < hdrSize || onDiskDataSize < hdrSize
+          || onDiskDataSize > block.length) {
+        return false;
+      }
+      int numBytes = (int) ChecksumUtil.numBytes(onDiskDataSize, bytesPerChecksum);
+      if (onDiskDataSize + numBytes != block.length) {
+        return false;
+      }
+      byte[] checksum = new byte[numBytes];
+      ChecksumUtil.generateChecksums(block, 0, onDiskDataSize, checksum, 0, checksumType,
+          bytesPerChecksum);
+      return Bytes.equals(checksum, 0, numBytes, block, onDiskDataSize, numBytes);
+    }
+
     /**
      * Reads a version 2 block. 
      *
@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -91,6 +93,10 @@ public class HFileReaderV2 extends AbstractHFileReader {
    */
   private List<HFileBlock> loadOnOpenBlocks = new ArrayList<HFileBlock>();
 
+  /** Data block time ranges, read from their meta block on first use */
+  private volatile BlockTimeRanges blockTimeRanges;
+  private volatile boolean blockTimeRangesLoaded = false;
+
   /** Minimum minor version supported by this HFile format */
   static final int MIN_MINOR_VERSION = 0;
 
@@ -267,6 +273,10 @@ public class HFileReaderV2 extends AbstractHFileReader {
         mbname.length);
     if (block == -1)
       return null;
+    // the root block lookup finds the closest preceding name, not only an exact match
+    if (!Bytes.equals(metaBlockIndexReader.getRootBlockKey(block), mbname)) {
+      return null;
+    }
     long blockSize = metaBlockIndexReader.getRootBlockDataSize(block);
     long startTimeNs = System.nanoTime();
 
@@ -307,6 +317,36 @@ public class HFileReaderV2 extends AbstractHFileReader {
     }
   }
 
+  /**
+   * @return the time ranges of the data blocks, or null if the file was written without them
+   * @throws IOException
+   */
+  BlockTimeRanges getBlockTimeRanges() throws IOException {
+    if (!blockTimeRangesLoaded) {
+      synchronized (this) {
+        if (!blockTimeRangesLoaded) {
+          ByteBuffer buf = getMetaBlock(BlockTimeRanges.META_BLOCK_NAME, false);
+          if (buf != null) {
+            BlockTimeRanges ranges = new BlockTimeRanges();
+            ranges.readFields(new DataInputStream(new ByteArrayInputStream(buf.array(),
+                buf.arrayOffset() + buf.position(), buf.remaining())));
+            blockTimeRanges = ranges;
+          }
+          blockTimeRangesLoaded = true;
+        }
+      }
+    }
+    return blockTimeRanges;
+  }
+
+  /**
+   * Reads a block as it is stored on disk, see
+   * {@link HFileBlock.FSReaderV2#readRawBlock(long, int)}.
+   */
+  byte[] readRawBlock(long offset, int onDiskSizeWithHeader) throws IOException {
+    return ((HFileBlock.FSReaderV2) fsBlockReader).readRawBlock(offset, onDiskSizeWithHeader);
+  }
+
   /**
    * Read in a file block.
    * @param dataBlockOffset offset to read.
@@ -504,6 +544,9 @@ public class HFileReaderV2 extends AbstractHFileReader {
      */
     protected byte[] nextIndexedKey;
 
+    /** Data blocks with only cells older than this are skipped when moving forward. */
+    protected long minBlockTimestamp = Long.MIN_VALUE;
+
     public AbstractScannerV2(HFileReaderV2 r, boolean cacheBlocks,
         final boolean pread, final boolean isCompaction) {
       super(r, cacheBlocks, pread, isCompaction);
@@ -546,6 +589,11 @@ public class HFileReaderV2 extends AbstractHFileReader {
         boolean rewind, byte[] key, int offset, int length, boolean seekBefore)
         throws IOException;
 
+    @Override
+    public void skipBlocksOlderThan(long timestamp) {
+      this.minBlockTimestamp = timestamp;
+    }
+
     @Override
     public int seekTo(byte[] key, int offset, int length) throws IOException {
       // Always rewind to the first key of the block, because the given key
@@ -628,6 +676,26 @@ public class HFileReaderV2 extends AbstractHFileReader {
       if (block == null)
         return null;
 
+      if (minBlockTimestamp != Long.MIN_VALUE) {
+        BlockTimeRanges ranges = ((HFileReaderV2) reader).getBlockTimeRanges();
+        int current = ranges == null ? -1 : ranges.indexOf(block.getOffset());
+        if (current >= 0) {
+          int next = current + 1;
+          while (next < ranges.size() && ranges.getMaxTimestamp(next) < minBlockTimestamp) {
+            next++;
+          }
+          int skipped = next - current - 1;
+          if (skipped > 0) {
+            HFile.skippedDataBlocks.addAndGet(skipped);
+            if (next == ranges.size()) {
+              return null;
+            }
+            return reader.readBlock(ranges.getOffset(next), -1, cacheBlocks, pread,
+                isCompaction, true, BlockType.DATA);
+          }
+        }
+      }
+
       HFileBlock curBlock = block;
 
       do {
@@ -144,4 +144,11 @@ public interface HFileScanner {
    * Otherwise returns false.
    */
   boolean isSeeked();
+  /**
+   * Lets {@link #next()} step over whole data blocks whose cells are all older than the given
+   * timestamp, when the file records the time ranges of its data blocks. Seeks are not
+   * affected. Only use it when the caller would ignore such cells anyway.
+   * @param timestamp cells with a smaller timestamp may be skipped
+   */
+  void skipBlocksOlderThan(long timestamp);
 }
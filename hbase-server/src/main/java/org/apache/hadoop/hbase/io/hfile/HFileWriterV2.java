@@ -32,8 +32,10 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.io.crypto.Encryption;
 import org.apache.hadoop.hbase.io.hfile.HFile.Writer;
 import org.apache.hadoop.hbase.io.hfile.HFileBlock.BlockWritable;
 import org.apache.hadoop.hbase.util.BloomFilterWriter;
@@ -59,6 +61,9 @@ public class HFileWriterV2 extends AbstractHFileWriter {
   /** Version for KeyValue which includes memstore timestamp */
   public static final int KEY_VALUE_VER_WITH_MEMSTORE = 1;
 
+  /** Whether to write the time ranges of the data blocks, see {@link BlockTimeRanges} */
+  public static final String BLOCK_TIMERANGES_KEY = "hfile.block.timeranges.enabled";
+
   /** Inline block writers for multi-level block index and compound Blooms. */
   private List<InlineBlockWriter> inlineBlockWriters =
       new ArrayList<InlineBlockWriter>();
@@ -84,6 +89,14 @@ public class HFileWriterV2 extends AbstractHFileWriter {
 
   protected long maxMemstoreTS = 0;
 
+  /**
+   * Time ranges of the data blocks written so far. Null once a cell was appended without a
+   * timestamp, i.e. as plain key and value bytes.
+   */
+  private BlockTimeRanges blockTimeRanges;
+  private long blockMinTimestamp = Long.MAX_VALUE;
+  private long blockMaxTimestamp = Long.MIN_VALUE;
+
   static class WriterFactoryV2 extends HFile.WriterFactory {
     WriterFactoryV2(Configuration conf, CacheConfig cacheConf) {
       super(conf, cacheConf);
@@ -127,6 +140,10 @@ public class HFileWriterV2 extends AbstractHFileWriter {
 
     // Meta data block index writer
     metaBlockIndexWriter = new HFileBlockIndex.BlockIndexWriter();
+
+    if (conf.getBoolean(BLOCK_TIMERANGES_KEY, true)) {
+      blockTimeRanges = new BlockTimeRanges();
+    }
     if (LOG.isTraceEnabled()) LOG.trace("Initialized with " + cacheConf);
   }
 
@@ -161,6 +178,9 @@ public class HFileWriterV2 extends AbstractHFileWriter {
 
     byte[] indexKey = comparator.calcIndexKey(lastKeyOfPreviousBlock, firstKeyInBlock);
     dataBlockIndexWriter.addEntry(indexKey, lastDataBlockOffset, onDiskSize);
+    if (blockTimeRanges != null) {
+      blockTimeRanges.add(lastDataBlockOffset, blockMinTimestamp, blockMaxTimestamp);
+    }
     totalUncompressedBytes += fsBlockWriter.getUncompressedSizeWithHeader();
     HFile.offerWriteLatency(System.nanoTime() - startTimeNs);
     if (cacheConf.shouldCacheDataOnWrite()) {
@@ -209,6 +229,8 @@ public class HFileWriterV2 extends AbstractHFileWriter {
     // This is where the next block begins.
     fsBlockWriter.startWriting(BlockType.DATA);
     firstKeyInBlock = null;
+    blockMinTimestamp = Long.MAX_VALUE;
+    blockMaxTimestamp = Long.MIN_VALUE;
     if (lastKeyLength > 0) {
       lastKeyOfPreviousBlock = new byte[lastKeyLength];
       System.arraycopy(lastKeyBuffer, lastKeyOffset, lastKeyOfPreviousBlock, 0, lastKeyLength);
@@ -255,6 +277,27 @@ public class HFileWriterV2 extends AbstractHFileWriter {
     append(kv.getMvccVersion(), kv.getBuffer(), kv.getKeyOffset(), kv.getKeyLength(),
         kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
     this.maxMemstoreTS = Math.max(this.maxMemstoreTS, kv.getMvccVersion());
+    updateBlockTimeRange(kv.getTimestamp());
+  }
+
+  /**
+   * Widens the time range of the current data block. Must be called after the cell was
+   * appended, so that it is accounted to the block it went into.
+   */
+  protected void updateBlockTimeRange(long timestamp) {
+    if (timestamp < blockMinTimestamp) {
+      blockMinTimestamp = timestamp;
+    }
+    if (timestamp > blockMaxTimestamp) {
+      blockMaxTimestamp = timestamp;
+    }
+  }
+
+  /**
+   * Stops recording data block time ranges, for files that get cells without timestamps.
+   */
+  protected void disableBlockTimeRanges() {
+    blockTimeRanges = null;
   }
 
   /**
@@ -269,6 +312,7 @@ public class HFileWriterV2 extends AbstractHFileWriter {
    */
   @Override
   public void append(final byte[] key, final byte[] value) throws IOException {
+    disableBlockTimeRanges();
     append(0, key, 0, key.length, value, 0, value.length);
   }
 
@@ -324,6 +368,108 @@ public class HFileWriterV2 extends AbstractHFileWriter {
     entryCount++;
   }
 
+  /**
+   * Whether {@link #appendDataBlocks(HFile.Reader)} can take the data blocks of the given file
+   * as they are. They have to be stored exactly the way this writer would store them: same
+   * HFile version, compression, data block encoding and cell format, no tags and no
+   * encryption. The file also needs a single level data block index, which lists every data
+   * block.
+   */
+  public boolean canAppendDataBlocks(HFile.Reader source) {
+    if (!(source instanceof HFileReaderV2)
+        || source.getTrailer().getMajorVersion() != getMajorVersion()
+        || source.getEntries() == 0) {
+      return false;
+    }
+    HFileContext sourceContext = source.getFileContext();
+    return source.getTrailer().getNumDataIndexLevels() == 1
+        && sourceContext.isUseHBaseChecksum()
+        && source.getCompressionAlgorithm() == hFileContext.getCompression()
+        && source.getDataBlockEncoding() == blockEncoder.getDataBlockEncoding()
+        && sourceContext.isIncludesMvcc() == hFileContext.isIncludesMvcc()
+        && !sourceContext.isIncludesTags() && !hFileContext.isIncludesTags()
+        && sourceContext.getEncryptionContext() == Encryption.Context.NONE
+        && hFileContext.getEncryptionContext() == Encryption.Context.NONE
+        && source.getComparator().getClass() == comparator.getClass();
+  }
+
+  /**
+   * Appends all cells of another file by copying its data blocks as they are stored on disk,
+   * without decompressing, decoding or compressing them again. The keys of the file must all
+   * be larger than the keys written so far. Meant for compactions, which can pass the files
+   * whose key range does not overlap any other file through this way.
+   *
+   * @param source a file for which {@link #canAppendDataBlocks(HFile.Reader)} holds
+   * @throws IOException
+   */
+  public void appendDataBlocks(HFile.Reader source) throws IOException {
+    if (!canAppendDataBlocks(source)) {
+      throw new IllegalArgumentException("Cannot copy the data blocks of " + source.getName()
+          + " into " + name);
+    }
+    HFileReaderV2 reader = (HFileReaderV2) source;
+    byte[] firstKey = reader.getFirstKey();
+    byte[] lastKey = reader.getLastKey();
+    if (checkKey(firstKey, 0, firstKey.length)) {
+      throw new IOException("The first key of " + reader.getName() + " was already written: "
+          + Bytes.toStringBinary(firstKey));
+    }
+    finishBlock();
+    writeInlineBlocks(false);
+
+    byte[] previousKey = null;
+    if (lastKeyLength > 0) {
+      previousKey = new byte[lastKeyLength];
+      System.arraycopy(lastKeyBuffer, lastKeyOffset, previousKey, 0, lastKeyLength);
+    }
+    HFileBlockIndex.BlockIndexReader index = reader.getDataBlockIndexReader();
+    BlockTimeRanges sourceRanges = blockTimeRanges == null ? null : reader.getBlockTimeRanges();
+    for (int i = 0; i < index.getRootBlockCount(); i++) {
+      long startTimeNs = System.nanoTime();
+      long sourceOffset = index.getRootBlockOffset(i);
+      byte[] block = reader.readRawBlock(sourceOffset, index.getRootBlockDataSize(i));
+      long offset = outputStream.getPos();
+      int onDiskSize = fsBlockWriter.writeRawBlock(block, outputStream);
+      if (firstDataBlockOffset == -1) {
+        firstDataBlockOffset = offset;
+      }
+      lastDataBlockOffset = offset;
+      // the index keys of the source separate its blocks, only the first one has to be
+      // computed against what was written before
+      byte[] indexKey = i == 0 ? comparator.calcIndexKey(previousKey, firstKey)
+          : index.getRootBlockKey(i);
+      dataBlockIndexWriter.addEntry(indexKey, offset, onDiskSize);
+      if (blockTimeRanges != null) {
+        int pos = sourceRanges == null ? -1 : sourceRanges.indexOf(sourceOffset);
+        if (pos < 0) {
+          disableBlockTimeRanges();
+        } else {
+          blockTimeRanges.add(offset, sourceRanges.getMinTimestamp(pos),
+              sourceRanges.getMaxTimestamp(pos));
+        }
+      }
+      totalUncompressedBytes += HConstants.HFILEBLOCK_HEADER_SIZE
+          + Bytes.toInt(block, BlockType.MAGIC_LENGTH + Bytes.SIZEOF_INT);
+      HFile.offerWriteLatency(System.nanoTime() - startTimeNs);
+      writeInlineBlocks(false);
+    }
+
+    long entries = reader.getEntries();
+    entryCount += entries;
+    totalKeyLength += entries * Math.max(0, reader.avgKeyLen);
+    totalValueLength += entries * Math.max(0, reader.avgValueLen);
+    if (hFileContext.isIncludesMvcc()) {
+      byte[] sourceMaxMemstoreTS = reader.loadFileInfo().get(MAX_MEMSTORE_TS_KEY);
+      if (sourceMaxMemstoreTS != null) {
+        maxMemstoreTS = Math.max(maxMemstoreTS, Bytes.toLong(sourceMaxMemstoreTS));
+      }
+    }
+    lastKeyBuffer = lastKey;
+    lastKeyOffset = 0;
+    lastKeyLength = lastKey.length;
+    firstKeyInBlock = null;
+  }
+
   @Override
   public void close() throws IOException {
     if (outputStream == null) {
@@ -339,6 +485,11 @@ public class HFileWriterV2 extends AbstractHFileWriter {
 
     FixedFileTrailer trailer = new FixedFileTrailer(getMajorVersion(), getMinorVersion());
 
+    // Nothing to skip in a file of a single data block
+    if (blockTimeRanges != null && blockTimeRanges.size() > 1) {
+      appendMetaBlock(BlockTimeRanges.META_BLOCK_NAME, blockTimeRanges);
+    }
+
     // Write out the metadata blocks if any.
     if (!metaNames.isEmpty()) {
       for (int i = 0; i < metaNames.size(); ++i) {
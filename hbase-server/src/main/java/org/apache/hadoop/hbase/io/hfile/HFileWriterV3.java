@@ -90,6 +90,7 @@ public class HFileWriterV3 extends HFileWriterV2 {
         kv.getBuffer(), kv.getValueOffset(), kv.getValueLength(), kv.getBuffer(),
         kv.getTagsOffset(), kv.getTagsLengthUnsigned());
     this.maxMemstoreTS = Math.max(this.maxMemstoreTS, kv.getMvccVersion());
+    updateBlockTimeRange(kv.getTimestamp());
   }
   
   /**
@@ -119,6 +120,7 @@ public class HFileWriterV3 extends HFileWriterV2 {
    */
   @Override
   public void append(final byte[] key, final byte[] value, byte[] tag) throws IOException {
+    disableBlockTimeRanges();
     append(0, key, 0, key.length, value, 0, value.length, tag, 0, tag.length);
   }
 
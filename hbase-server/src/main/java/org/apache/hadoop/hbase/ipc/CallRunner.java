@@ -16,6 +16,7 @@ package org.apache.hadoop.hbase.ipc;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -66,6 +67,8 @@ public class CallRunner {
   }
 
   public void run() {
+    // whether the response is, or will be once the delayed call ends, with the responder
+    boolean responding = false;
     try {
       if (!call.connection.channel.isOpen()) {
         if (RpcServer.LOG.isDebugEnabled()) {
@@ -95,8 +98,14 @@ public class CallRunner {
         RequestContext.set(userProvider.create(call.connection.user), RpcServer.getRemoteIp(),
           call.connection.service);
         // make the call
-        resultPair = this.rpcServer.call(call.service, call.md, call.param, call.cellScanner,
-          call.timestamp, this.status);
+        long startTime = System.currentTimeMillis();
+        call.queueTime = Math.max(0, startTime - call.timestamp);
+        try {
+          resultPair = this.rpcServer.call(call.service, call.md, call.param, call.cellScanner,
+            call.timestamp, this.status);
+        } finally {
+          call.handlerTime = System.currentTimeMillis() - startTime;
+        }
       } catch (Throwable e) {
         RpcServer.LOG.debug(Thread.currentThread().getName() + ": " + call.toShortString(), e);
         errorThrowable = e;
@@ -110,7 +119,6 @@ public class CallRunner {
         RequestContext.clear();
       }
       RpcServer.CurCall.set(null);
-      this.rpcServer.addCallSize(call.getSize() * -1);
       // Set the response for undelayed calls and delayed calls with
       // undelayed responses.
       if (!call.isDelayed() || !call.isReturnValueDelayed()) {
@@ -119,6 +127,7 @@ public class CallRunner {
         call.setResponse(param, cells, errorThrowable, error);
       }
       call.sendResponseIfReady();
+      responding = true;
       this.status.markComplete("Sent response");
       this.status.pause("Waiting for a call");
     } catch (OutOfMemoryError e) {
@@ -139,6 +148,37 @@ public class CallRunner {
     } catch (Exception e) {
       RpcServer.LOG.warn(Thread.currentThread().getName()
           + ": caught: " + StringUtils.stringifyException(e));
+    } finally {
+      this.rpcServer.addCallSize(call.getSize() * -1);
+      // The request and its cells have been read by now, even if the response is delayed
+      call.releaseRequest();
+      if (!responding) {
+        call.finish();
+      }
+    }
+  }
+
+  /**
+   * Fails the call without running it, e.g. because it waited in the queue past its deadline.
+   * @param t the error to respond with
+   */
+  public void drop(final Throwable t) {
+    boolean responding = false;
+    try {
+      this.rpcServer.addCallSize(call.getSize() * -1);
+      if (!call.connection.channel.isOpen()) {
+        return;
+      }
+      call.setResponse(null, null, t, t.getMessage());
+      call.sendResponseIfReady();
+      responding = true;
+    } catch (IOException e) {
+      RpcServer.LOG.debug("Failed to respond to dropped call " + call.toShortString(), e);
+    } finally {
+      call.releaseRequest();
+      if (!responding) {
+        call.finish();
+      }
     }
   }
 
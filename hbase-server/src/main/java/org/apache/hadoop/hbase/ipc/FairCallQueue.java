@@ -0,0 +1,458 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+/**
+ * Call queue that shares the handlers between users, and between the tables of a user, by
+ * weighted fair queuing on the estimated cost of the calls.
+ *
+ * <p>Every user with queued calls has a virtual start tag; the user with the smallest tag is
+ * served next and its tag then grows by the cost of the call over the weight of the user, so a
+ * user running large scans gets no more handler time than one doing point gets. Tables of a
+ * user are shared the same way with their own weights. Users and tables that run out of calls
+ * are forgotten and start again at the current virtual time, so idling does not build up
+ * credit.
+ *
+ * <p>The calls of a table are served cheapest first, each call counting as received
+ * {@link Classifier#getCostDelay()} ms later per unit of cost: short gets jump ahead of long
+ * scans, but a scan is not starved by a steady stream of gets.
+ *
+ * <p>Calls that waited longer than their deadline are not handed out: the client has given up
+ * on them, so they are dropped with a {@link CallDeadlineExceededException}.
+ */
+@InterfaceAudience.Private
+class FairCallQueue extends AbstractQueue<CallRunner> implements BlockingQueue<CallRunner> {
+
+  /** What the queue needs to know about calls */
+  interface Classifier {
+    /** @return the user, table, class and cost of the call */
+    CallTag classify(CallRunner task);
+
+    /** @return ms a call may wait in the queue before it is dropped; 0 for no deadline */
+    long getDeadline();
+
+    /** @return ms later a call counts as received, per unit of cost, among its table's calls */
+    double getCostDelay();
+
+    /** Called for every call handed out to a handler */
+    void dequeued(CallTag tag, long queueTime);
+
+    /** Called for every call dropped for waiting past its deadline */
+    void dropped(CallTag tag, long queueTime);
+  }
+
+  /** Where a call is queued and what it costs */
+  static class CallTag {
+    final String user;
+    final String table;
+    final String callClass;
+    final long cost;
+    final int userWeight;
+    final int tableWeight;
+
+    CallTag(String user, String table, String callClass, long cost, int userWeight,
+        int tableWeight) {
+      this.user = user == null ? "" : user;
+      this.table = table == null ? "" : table;
+      this.callClass = callClass;
+      this.cost = Math.max(1, cost);
+      this.userWeight = Math.max(1, userWeight);
+      this.tableWeight = Math.max(1, tableWeight);
+    }
+  }
+
+  private static class Entry implements Comparable<Entry> {
+    final CallRunner task;
+    final CallTag tag;
+    final long enqueueTime;
+    final double sortKey;
+    final long seq;
+
+    Entry(CallRunner task, CallTag tag, long enqueueTime, double sortKey, long seq) {
+      this.task = task;
+      this.tag = tag;
+      this.enqueueTime = enqueueTime;
+      this.sortKey = sortKey;
+      this.seq = seq;
+    }
+
+    @Override
+    public int compareTo(Entry o) {
+      int c = Double.compare(sortKey, o.sortKey);
+      return c != 0 ? c : (seq < o.seq ? -1 : (seq == o.seq ? 0 : 1));
+    }
+  }
+
+  private static class TableShare {
+    final UserShare user;
+    final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+    double tag;
+
+    TableShare(UserShare user, double tag) {
+      this.user = user;
+      this.tag = tag;
+    }
+  }
+
+  private static class UserShare {
+    final Map<String, TableShare> tables = new LinkedHashMap<String, TableShare>();
+    double tag;
+    double tableTime;
+
+    UserShare(double tag) {
+      this.tag = tag;
+    }
+  }
+
+  private final Classifier classifier;
+  private final int maxLength;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Map<String, UserShare> users = new LinkedHashMap<String, UserShare>();
+  private double virtualTime = 0;
+  private int count = 0;
+  private long seq = 0;
+
+  /**
+   * @param maxLength most calls queued; {@link #put(CallRunner)} waits for room beyond it
+   * @param classifier tells what the calls are
+   */
+  FairCallQueue(int maxLength, Classifier classifier) {
+    this.maxLength = maxLength;
+    this.classifier = classifier;
+  }
+
+  @Override
+  public boolean offer(CallRunner task) {
+    if (task == null) throw new NullPointerException();
+    CallTag tag = classifier.classify(task);
+    lock.lock();
+    try {
+      if (count >= maxLength) return false;
+      enqueue(task, tag);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(CallRunner task) throws InterruptedException {
+    if (task == null) throw new NullPointerException();
+    CallTag tag = classifier.classify(task);
+    lock.lockInterruptibly();
+    try {
+      while (count >= maxLength) {
+        notFull.await();
+      }
+      enqueue(task, tag);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(CallRunner task, long timeout, TimeUnit unit) throws InterruptedException {
+    if (task == null) throw new NullPointerException();
+    CallTag tag = classifier.classify(task);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count >= maxLength) {
+        if (nanos <= 0) return false;
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(task, tag);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Must hold the lock. */
+  private void enqueue(CallRunner task, CallTag tag) {
+    UserShare us = users.get(tag.user);
+    if (us == null) {
+      us = new UserShare(virtualTime);
+      users.put(tag.user, us);
+    }
+    TableShare ts = us.tables.get(tag.table);
+    if (ts == null) {
+      ts = new TableShare(us, us.tableTime);
+      us.tables.put(tag.table, ts);
+    }
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    ts.queue.add(new Entry(task, tag, now, now + tag.cost * classifier.getCostDelay(), seq++));
+    ++count;
+    notEmpty.signal();
+  }
+
+  @Override
+  public CallRunner poll() {
+    while (true) {
+      Entry e;
+      lock.lock();
+      try {
+        if (count == 0) return null;
+        e = dequeue();
+      } finally {
+        lock.unlock();
+      }
+      if (handOut(e)) return e.task;
+    }
+  }
+
+  @Override
+  public CallRunner take() throws InterruptedException {
+    while (true) {
+      Entry e;
+      lock.lockInterruptibly();
+      try {
+        while (count == 0) {
+          notEmpty.await();
+        }
+        e = dequeue();
+      } finally {
+        lock.unlock();
+      }
+      if (handOut(e)) return e.task;
+    }
+  }
+
+  @Override
+  public CallRunner poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    while (true) {
+      Entry e;
+      lock.lockInterruptibly();
+      try {
+        while (count == 0) {
+          if (nanos <= 0) return null;
+          nanos = notEmpty.awaitNanos(nanos);
+        }
+        e = dequeue();
+      } finally {
+        lock.unlock();
+      }
+      if (handOut(e)) return e.task;
+    }
+  }
+
+  /**
+   * Drops the call if it is past its deadline, outside of the lock since that responds to it.
+   * @return whether the call is to be run
+   */
+  private boolean handOut(Entry e) {
+    long queueTime = EnvironmentEdgeManager.currentTimeMillis() - e.enqueueTime;
+    long deadline = classifier.getDeadline();
+    if (deadline > 0 && queueTime > deadline) {
+      classifier.dropped(e.tag, queueTime);
+      e.task.drop(new CallDeadlineExceededException("Call dropped after waiting " + queueTime
+          + " ms in the queue, deadline is " + deadline + " ms"));
+      return false;
+    }
+    classifier.dequeued(e.tag, queueTime);
+    return true;
+  }
+
+  @Override
+  public CallRunner peek() {
+    lock.lock();
+    try {
+      return count == 0 ? null : select().queue.peek().task;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return maxLength - count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    lock.lock();
+    try {
+      Iterator<UserShare> uit = users.values().iterator();
+      while (uit.hasNext()) {
+        UserShare us = uit.next();
+        Iterator<TableShare> tit = us.tables.values().iterator();
+        while (tit.hasNext()) {
+          TableShare ts = tit.next();
+          Iterator<Entry> eit = ts.queue.iterator();
+          while (eit.hasNext()) {
+            if (eit.next().task == o) {
+              eit.remove();
+              --count;
+              notFull.signal();
+              if (ts.queue.isEmpty()) tit.remove();
+              if (us.tables.isEmpty()) uit.remove();
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super CallRunner> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super CallRunner> c, int maxElements) {
+    if (c == this) throw new IllegalArgumentException();
+    lock.lock();
+    try {
+      int n = 0;
+      while (count > 0 && n < maxElements) {
+        c.add(dequeue().task);
+        ++n;
+      }
+      return n;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return a snapshot of the queued calls, in no particular order
+   */
+  @Override
+  public Iterator<CallRunner> iterator() {
+    final List<CallRunner> snapshot = new ArrayList<CallRunner>();
+    lock.lock();
+    try {
+      for (UserShare us : users.values()) {
+        for (TableShare ts : us.tables.values()) {
+          for (Entry e : ts.queue) {
+            snapshot.add(e.task);
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    return new Iterator<CallRunner>() {
+      private int next = 0;
+      private CallRunner last = null;
+
+      @Override
+      public boolean hasNext() {
+        return next < snapshot.size();
+      }
+
+      @Override
+      public CallRunner next() {
+        if (next >= snapshot.size()) throw new NoSuchElementException();
+        last = snapshot.get(next++);
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) throw new IllegalStateException();
+        FairCallQueue.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+  /**
+   * Picks the table whose cheapest call should run next. Must hold the lock, with calls queued.
+   */
+  private TableShare select() {
+    UserShare fairUser = null;
+    for (UserShare us : users.values()) {
+      if (fairUser == null || us.tag < fairUser.tag) {
+        fairUser = us;
+      }
+    }
+    TableShare fairTable = null;
+    for (TableShare ts : fairUser.tables.values()) {
+      if (fairTable == null || ts.tag < fairTable.tag) {
+        fairTable = ts;
+      }
+    }
+    return fairTable;
+  }
+
+  /**
+   * Removes the next call and charges its cost to its user and table. Must hold the lock, with
+   * calls queued.
+   */
+  private Entry dequeue() {
+    TableShare ts = select();
+    UserShare us = ts.user;
+    Entry e = ts.queue.poll();
+    --count;
+    virtualTime = Math.max(virtualTime, us.tag);
+    us.tag += (double) e.tag.cost / e.tag.userWeight;
+    us.tableTime = Math.max(us.tableTime, ts.tag);
+    ts.tag += (double) e.tag.cost / e.tag.tableWeight;
+    if (ts.queue.isEmpty()) {
+      us.tables.values().remove(ts);
+      if (us.tables.isEmpty()) {
+        users.values().remove(us);
+      }
+    }
+    if (count == 0) {
+      virtualTime = 0;
+    }
+    notFull.signal();
+    return e;
+  }
+}
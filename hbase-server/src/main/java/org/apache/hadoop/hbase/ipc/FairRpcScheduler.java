@@ -0,0 +1,344 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.GetRequest;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MultiRequest;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MutateRequest;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.RegionAction;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.ScanRequest;
+import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.RegionSpecifier;
+import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.RegionSpecifier.RegionSpecifierType;
+import org.apache.hadoop.security.UserGroupInformation;
+
+import com.google.protobuf.Message;
+
+/**
+ * A scheduler that, like {@link SimpleRpcScheduler}, keeps isolated handler pools for
+ * high-priority and replication requests, but shares the general handlers fairly between users
+ * and tables instead of in arrival order; see {@link FairCallQueue}.
+ *
+ * <p>The cost of a call is estimated from its request: a get or a mutation costs 1, a multi
+ * the number of its actions, and a scan the rows it asks for times
+ * <code>hbase.ipc.server.fair.scan.row.cost</code>. Users and tables get weights with
+ * <code>hbase.ipc.server.fair.user.weight.&lt;user&gt;</code> and
+ * <code>hbase.ipc.server.fair.table.weight.&lt;table&gt;</code>, 1 by default, read when the
+ * scheduler is created. The table of a scan that goes on with an open scanner is looked up
+ * with the {@link ScanClassifier} of the server.
+ *
+ * <p>Requests do not carry the timeout of their client, so calls are dropped once they waited
+ * <code>hbase.ipc.server.fair.call.deadline</code> ms, by default the
+ * <code>hbase.rpc.timeout</code> of the server. Queue times are exported per class of call.
+ */
+@InterfaceAudience.LimitedPrivate({HBaseInterfaceAudience.COPROC, HBaseInterfaceAudience.PHOENIX})
+@InterfaceStability.Evolving
+public class FairRpcScheduler extends RpcScheduler implements FairCallQueue.Classifier {
+  public static final Log LOG = LogFactory.getLog(FairRpcScheduler.class);
+
+  /** ms a call may wait in the queue before it is dropped; 0 to never drop calls */
+  public static final String CALL_DEADLINE_KEY = "hbase.ipc.server.fair.call.deadline";
+  /** ms later a call counts as received per unit of cost, among the calls of its table */
+  public static final String COST_DELAY_KEY = "hbase.ipc.server.fair.cost.delay";
+  /** Cost of a scanned row, relative to a get */
+  public static final String SCAN_ROW_COST_KEY = "hbase.ipc.server.fair.scan.row.cost";
+  public static final String USER_WEIGHT_PREFIX = "hbase.ipc.server.fair.user.weight.";
+  public static final String TABLE_WEIGHT_PREFIX = "hbase.ipc.server.fair.table.weight.";
+
+  static final String GET = "get";
+  static final String SCAN = "scan";
+  static final String MUTATE = "mutate";
+  static final String MULTI = "multi";
+  static final String OTHER = "other";
+
+  /** Rows of a scan that does not say how many it wants */
+  private static final int DEFAULT_SCAN_ROWS = 100;
+
+  private int port;
+  private final PriorityFunction priority;
+  private final RpcExecutor callExecutor;
+  private final RpcExecutor priorityExecutor;
+  private final RpcExecutor replicationExecutor;
+  private final ScanClassifier scanClassifier;
+  private final Map<String, Integer> userWeights;
+  private final Map<String, Integer> tableWeights;
+  private final long deadline;
+  private final double costDelay;
+  private final double scanRowCost;
+  private volatile MetricsHBaseServer metrics;
+
+  /** What level a high priority call is at. */
+  private final int highPriorityLevel;
+
+  /**
+   * @param conf
+   * @param handlerCount the number of handler threads that will be used to process calls
+   * @param priorityHandlerCount How many threads for priority handling.
+   * @param replicationHandlerCount How many threads for replication handling.
+   * @param priority Function to extract request priority.
+   * @param highPriorityLevel
+   */
+  public FairRpcScheduler(
+      Configuration conf,
+      int handlerCount,
+      int priorityHandlerCount,
+      int replicationHandlerCount,
+      PriorityFunction priority,
+      int highPriorityLevel) {
+    this(conf, handlerCount, priorityHandlerCount, replicationHandlerCount, priority,
+      highPriorityLevel, null);
+  }
+
+  /**
+   * @param scanClassifier tells the table of open scanners, or null if there is none to tell
+   * @see #FairRpcScheduler(Configuration, int, int, int, PriorityFunction, int)
+   */
+  public FairRpcScheduler(
+      Configuration conf,
+      int handlerCount,
+      int priorityHandlerCount,
+      int replicationHandlerCount,
+      PriorityFunction priority,
+      int highPriorityLevel,
+      ScanClassifier scanClassifier) {
+    int maxQueueLength = conf.getInt(SimpleRpcScheduler.CALL_QUEUE_MAX_LENGTH_CONF_KEY,
+      conf.getInt("ipc.server.max.callqueue.length",
+        handlerCount * RpcServer.DEFAULT_MAX_CALLQUEUE_LENGTH_PER_HANDLER));
+    this.priority = priority;
+    this.scanClassifier = scanClassifier;
+    this.userWeights = getWeights(conf, USER_WEIGHT_PREFIX);
+    this.tableWeights = getWeights(conf, TABLE_WEIGHT_PREFIX);
+    this.highPriorityLevel = highPriorityLevel;
+    this.deadline = conf.getLong(CALL_DEADLINE_KEY,
+      conf.getInt(HConstants.HBASE_RPC_TIMEOUT_KEY, HConstants.DEFAULT_HBASE_RPC_TIMEOUT));
+    this.costDelay = conf.getFloat(COST_DELAY_KEY, 1.0f);
+    this.scanRowCost = conf.getFloat(SCAN_ROW_COST_KEY, 0.1f);
+
+    LOG.info("Using fair user call queue, deadline=" + deadline + "ms, costDelay=" + costDelay +
+      "ms, scanRowCost=" + scanRowCost);
+    this.callExecutor = new FairRpcExecutor("default", handlerCount,
+      new FairCallQueue(maxQueueLength, this));
+    this.priorityExecutor =
+      priorityHandlerCount > 0 ? new BalancedQueueRpcExecutor("Priority", priorityHandlerCount,
+        1, maxQueueLength) : null;
+    this.replicationExecutor =
+      replicationHandlerCount > 0 ? new BalancedQueueRpcExecutor("Replication",
+        replicationHandlerCount, 1, maxQueueLength) : null;
+  }
+
+  @Override
+  public void init(Context context) {
+    this.port = context.getListenerAddress().getPort();
+    this.metrics = context.getMetrics();
+  }
+
+  @Override
+  public void start() {
+    callExecutor.start(port);
+    if (priorityExecutor != null) priorityExecutor.start(port);
+    if (replicationExecutor != null) replicationExecutor.start(port);
+  }
+
+  @Override
+  public void stop() {
+    callExecutor.stop();
+    if (priorityExecutor != null) priorityExecutor.stop();
+    if (replicationExecutor != null) replicationExecutor.stop();
+  }
+
+  @Override
+  public void dispatch(CallRunner callTask) throws InterruptedException {
+    RpcServer.Call call = callTask.getCall();
+    int level = priority.getPriority(call.getHeader(), call.param);
+    if (priorityExecutor != null && level > highPriorityLevel) {
+      priorityExecutor.dispatch(callTask);
+    } else if (replicationExecutor != null && level == HConstants.REPLICATION_QOS) {
+      replicationExecutor.dispatch(callTask);
+    } else {
+      callExecutor.dispatch(callTask);
+    }
+  }
+
+  @Override
+  public int getGeneralQueueLength() {
+    return callExecutor.getQueueLength();
+  }
+
+  @Override
+  public int getPriorityQueueLength() {
+    return priorityExecutor == null ? 0 : priorityExecutor.getQueueLength();
+  }
+
+  @Override
+  public int getReplicationQueueLength() {
+    return replicationExecutor == null ? 0 : replicationExecutor.getQueueLength();
+  }
+
+  @Override
+  public int getActiveRpcHandlerCount() {
+    return callExecutor.getActiveHandlerCount() +
+           (priorityExecutor == null ? 0 : priorityExecutor.getActiveHandlerCount()) +
+           (replicationExecutor == null ? 0 : replicationExecutor.getActiveHandlerCount());
+  }
+
+  @Override
+  public FairCallQueue.CallTag classify(CallRunner task) {
+    RpcServer.Call call = task.getCall();
+    Message param = call.param;
+    String callClass;
+    long cost = 1;
+    RegionSpecifier region = null;
+    String table = null;
+    if (param instanceof GetRequest) {
+      callClass = GET;
+      region = ((GetRequest) param).getRegion();
+    } else if (param instanceof ScanRequest) {
+      ScanRequest request = (ScanRequest) param;
+      callClass = SCAN;
+      if (!request.hasCloseScanner() || !request.getCloseScanner()) {
+        int rows = request.hasNumberOfRows() ? request.getNumberOfRows() : DEFAULT_SCAN_ROWS;
+        cost = (long) Math.ceil(rows * scanRowCost);
+      }
+      if (request.hasRegion()) {
+        region = request.getRegion();
+      } else if (request.hasScannerId() && scanClassifier != null) {
+        TableName tableName = scanClassifier.getScannerTable(request.getScannerId());
+        if (tableName != null) table = tableName.getNameAsString();
+      }
+    } else if (param instanceof MutateRequest) {
+      callClass = MUTATE;
+      region = ((MutateRequest) param).getRegion();
+    } else if (param instanceof MultiRequest) {
+      callClass = MULTI;
+      cost = 0;
+      for (RegionAction action : ((MultiRequest) param).getRegionActionList()) {
+        cost += action.getActionCount();
+        if (region == null) region = action.getRegion();
+      }
+    } else {
+      callClass = OTHER;
+    }
+    String user = "";
+    if (call.connection != null) {
+      UserGroupInformation ugi = call.connection.user;
+      if (ugi != null) user = ugi.getShortUserName();
+    }
+    if (table == null) table = getTable(region);
+    return new FairCallQueue.CallTag(user, table, callClass, cost,
+      getWeight(userWeights, user), getWeight(tableWeights, table));
+  }
+
+  /**
+   * @return the name of the table of the region, or the empty string if it cannot be told
+   */
+  private static String getTable(final RegionSpecifier region) {
+    if (region == null || region.getType() != RegionSpecifierType.REGION_NAME) return "";
+    try {
+      return HRegionInfo.getTable(region.getValue().toByteArray()).getNameAsString();
+    } catch (IllegalArgumentException e) {
+      return "";
+    }
+  }
+
+  /**
+   * @return the weights configured under the prefix, by the name that follows it
+   */
+  private static Map<String, Integer> getWeights(final Configuration conf,
+      final String prefix) {
+    Map<String, Integer> weights = new HashMap<String, Integer>();
+    for (Map.Entry<String, String> entry : conf) {
+      String key = entry.getKey();
+      if (key.startsWith(prefix) && key.length() > prefix.length()) {
+        weights.put(key.substring(prefix.length()), conf.getInt(key, 1));
+      }
+    }
+    return weights;
+  }
+
+  private static int getWeight(final Map<String, Integer> weights, final String name) {
+    Integer weight = weights.get(name);
+    return weight == null ? 1 : weight;
+  }
+
+  @Override
+  public long getDeadline() {
+    return deadline;
+  }
+
+  @Override
+  public double getCostDelay() {
+    return costDelay;
+  }
+
+  @Override
+  public void dequeued(FairCallQueue.CallTag tag, long queueTime) {
+    MetricsHBaseServer m = this.metrics;
+    if (m != null) m.dequeuedCall(tag.callClass, (int) queueTime);
+  }
+
+  @Override
+  public void dropped(FairCallQueue.CallTag tag, long queueTime) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Dropping a " + tag.callClass + " call of user " + tag.user + " on table " +
+        tag.table + " after " + queueTime + " ms in the queue");
+    }
+    MetricsHBaseServer m = this.metrics;
+    if (m != null) m.droppedCall();
+  }
+
+  /**
+   * The general handlers, all taking calls from the one fair queue.
+   */
+  private static class FairRpcExecutor extends RpcExecutor {
+    private final FairCallQueue queue;
+
+    FairRpcExecutor(final String name, final int handlerCount, final FairCallQueue queue) {
+      super(name, handlerCount);
+      this.queue = queue;
+    }
+
+    @Override
+    public int getQueueLength() {
+      return queue.size();
+    }
+
+    @Override
+    public void dispatch(final CallRunner callTask) throws InterruptedException {
+      queue.put(callTask);
+    }
+
+    @Override
+    protected List<BlockingQueue<CallRunner>> getQueues() {
+      return Collections.<BlockingQueue<CallRunner>>singletonList(queue);
+    }
+  }
+}
@@ -59,10 +59,30 @@ public class MetricsHBaseServer {
     source.dequeuedCall(qTime);
   }
 
+  void dequeuedCall(String callClass, int qTime) {
+    source.dequeuedCall(callClass, qTime);
+  }
+
+  void droppedCall() {
+    source.droppedCall();
+  }
+
+  void pausedConnectionRead() {
+    source.pausedConnectionRead();
+  }
+
   void processedCall(int processingTime) {
     source.processedCall(processingTime);
   }
 
+  void callStage(String methodName, String stage, long time) {
+    source.updateCallStage(methodName, stage, time);
+  }
+
+  void readerLoop(long time) {
+    source.readerLoop(time);
+  }
+
   public MetricsHBaseServerSource getMetricsSource() {
     return source;
   }
@@ -74,4 +74,24 @@ public class MetricsHBaseServerWrapperImpl implements MetricsHBaseServerWrapper
     }
     return server.getScheduler().getActiveRpcHandlerCount();
   }
+
+  @Override
+  public int getBufferPoolHitPercent() {
+    if (this.server == null || this.server.requestBufferPool == null) {
+      return 0;
+    }
+    long hits = server.requestBufferPool.getHitCount() + server.cellBlockPool.getHitCount();
+    long total = hits + server.requestBufferPool.getMissCount()
+        + server.cellBlockPool.getMissCount();
+    return total == 0 ? 0 : (int) (hits * 100 / total);
+  }
+
+  @Override
+  public long getBufferPoolOutstanding() {
+    if (this.server == null || this.server.requestBufferPool == null) {
+      return 0;
+    }
+    return server.requestBufferPool.getOutstandingCount()
+        + server.cellBlockPool.getOutstandingCount();
+  }
 }
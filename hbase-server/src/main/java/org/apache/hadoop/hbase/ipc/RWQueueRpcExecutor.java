@@ -32,15 +32,23 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.Action;
 import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MultiRequest;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MutateRequest;
 import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.RegionAction;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.ScanRequest;
 import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.RequestHeader;
 import org.apache.hadoop.hbase.util.ReflectionUtils;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.Message;
 
 /**
  * RPC Executor that uses different queues for reads and writes.
  * Each handler has its own queue and there is no stealing.
+ *
+ * <p>The read queues can be split further, giving scans their own queues so that a heavy
+ * <code>next()</code> does not hold up the gets behind it, and the scan queues again between
+ * short and long scans. A scan moves to the long scan queues once its {@link ScanClassifier}
+ * says so, so that the first calls of every scan stay in the short ones.
  */
 @InterfaceAudience.LimitedPrivate({HBaseInterfaceAudience.COPROC, HBaseInterfaceAudience.PHOENIX})
 @InterfaceStability.Evolving
@@ -51,8 +59,13 @@ public class RWQueueRpcExecutor extends RpcExecutor {
   private final Random balancer = new Random();
   private final int writeHandlersCount;
   private final int readHandlersCount;
+  private final int shortScanHandlersCount;
+  private final int longScanHandlersCount;
   private final int numWriteQueues;
   private final int numReadQueues;
+  private final int numShortScanQueues;
+  private final int numLongScanQueues;
+  private final ScanClassifier scanClassifier;
 
   public RWQueueRpcExecutor(final String name, final int handlerCount, final int numQueues,
       final float readShare, final int maxQueueLength) {
@@ -69,27 +82,97 @@ public class RWQueueRpcExecutor extends RpcExecutor {
       readQueueClass, ArrayUtils.addAll(new Object[] {maxQueueLength}, readQueueInitArgs));
   }
 
+  /**
+   * @param readShare share of the handlers and queues for reads, as with the other constructors
+   * @param scanShare share of the read handlers and queues for scans; 0 to queue them with gets
+   * @param longScanShare share of the scan handlers and queues for long scans; 0 to queue them
+   *          with short scans
+   * @param scanClassifier tells long scans from short ones, or null if there is none to tell
+   */
+  public RWQueueRpcExecutor(final String name, final int handlerCount, final int numQueues,
+      final float readShare, final float scanShare, final float longScanShare,
+      final int maxQueueLength, final ScanClassifier scanClassifier) {
+    this(name, calcNumWriters(handlerCount, readShare),
+      calcNumGets(handlerCount, readShare, scanShare),
+      calcNumShortScans(handlerCount, readShare, scanShare, longScanShare),
+      calcNumLongScans(handlerCount, readShare, scanShare, longScanShare),
+      calcNumWriters(numQueues, readShare),
+      calcNumGets(numQueues, readShare, scanShare),
+      calcNumShortScans(numQueues, readShare, scanShare, longScanShare),
+      calcNumLongScans(numQueues, readShare, scanShare, longScanShare),
+      scanClassifier,
+      LinkedBlockingQueue.class, new Object[] {maxQueueLength},
+      LinkedBlockingQueue.class, new Object[] {maxQueueLength});
+  }
+
+  public RWQueueRpcExecutor(final String name, final int writeHandlers, final int readHandlers,
+      final int numWriteQueues, final int numReadQueues,
+      final Class<? extends BlockingQueue> writeQueueClass, Object[] writeQueueInitArgs,
+      final Class<? extends BlockingQueue> readQueueClass, Object[] readQueueInitArgs) {
+    this(name, writeHandlers, readHandlers, 0, 0, numWriteQueues, numReadQueues, 0, 0, null,
+      writeQueueClass, writeQueueInitArgs, readQueueClass, readQueueInitArgs);
+  }
+
+  /**
+   * Scan queues use the class of the read queues. The handlers of a class of calls without
+   * queues go to the class it is split from: long scans to short scans, short scans to gets.
+   */
   public RWQueueRpcExecutor(final String name, final int writeHandlers, final int readHandlers,
+      final int shortScanHandlers, final int longScanHandlers,
       final int numWriteQueues, final int numReadQueues,
+      final int numShortScanQueues, final int numLongScanQueues,
+      final ScanClassifier scanClassifier,
       final Class<? extends BlockingQueue> writeQueueClass, Object[] writeQueueInitArgs,
       final Class<? extends BlockingQueue> readQueueClass, Object[] readQueueInitArgs) {
-    super(name, Math.max(writeHandlers + readHandlers, numWriteQueues + numReadQueues));
+    this(name, writeHandlers,
+      calcReadHandlers(name, readHandlers, shortScanHandlers, longScanHandlers,
+        numShortScanQueues, numLongScanQueues),
+      numWriteQueues, numReadQueues, numShortScanQueues, numLongScanQueues, scanClassifier,
+      writeQueueClass, writeQueueInitArgs, readQueueClass, readQueueInitArgs);
+  }
+
+  /**
+   * @param readHandlers handlers of gets, short scans and long scans, each with queues
+   */
+  private RWQueueRpcExecutor(final String name, final int writeHandlers,
+      final int[] readHandlers, final int numWriteQueues, final int numReadQueues,
+      final int numShortScanQueues, final int numLongScanQueues,
+      final ScanClassifier scanClassifier,
+      final Class<? extends BlockingQueue> writeQueueClass, Object[] writeQueueInitArgs,
+      final Class<? extends BlockingQueue> readQueueClass, Object[] readQueueInitArgs) {
+    super(name, Math.max(writeHandlers, numWriteQueues) + Math.max(readHandlers[0], numReadQueues)
+      + (numShortScanQueues > 0 ? Math.max(readHandlers[1], numShortScanQueues) : 0)
+      + (numShortScanQueues > 0 && numLongScanQueues > 0 ?
+        Math.max(readHandlers[2], numLongScanQueues) : 0));
 
     this.writeHandlersCount = Math.max(writeHandlers, numWriteQueues);
-    this.readHandlersCount = Math.max(readHandlers, numReadQueues);
+    this.readHandlersCount = Math.max(readHandlers[0], numReadQueues);
+    this.shortScanHandlersCount =
+      numShortScanQueues > 0 ? Math.max(readHandlers[1], numShortScanQueues) : 0;
+    this.longScanHandlersCount =
+      numShortScanQueues > 0 && numLongScanQueues > 0 ?
+        Math.max(readHandlers[2], numLongScanQueues) : 0;
     this.numWriteQueues = numWriteQueues;
     this.numReadQueues = numReadQueues;
+    this.numShortScanQueues = numShortScanQueues;
+    this.numLongScanQueues = numLongScanQueues;
+    this.scanClassifier = scanClassifier;
 
-    queues = new ArrayList<BlockingQueue<CallRunner>>(writeHandlersCount + readHandlersCount);
+    queues = new ArrayList<BlockingQueue<CallRunner>>(numWriteQueues + numReadQueues +
+      numShortScanQueues + numLongScanQueues);
     LOG.debug(name + " writeQueues=" + numWriteQueues + " writeHandlers=" + writeHandlersCount +
-              " readQueues=" + numReadQueues + " readHandlers=" + readHandlersCount);
+              " readQueues=" + numReadQueues + " readHandlers=" + readHandlersCount +
+              " shortScanQueues=" + numShortScanQueues +
+              " shortScanHandlers=" + shortScanHandlersCount +
+              " longScanQueues=" + numLongScanQueues +
+              " longScanHandlers=" + longScanHandlersCount);
 
     for (int i = 0; i < numWriteQueues; ++i) {
       queues.add((BlockingQueue<CallRunner>)
         ReflectionUtils.newInstance(writeQueueClass, writeQueueInitArgs));
     }
 
-    for (int i = 0; i < numReadQueues; ++i) {
+    for (int i = 0; i < numReadQueues + numShortScanQueues + numLongScanQueues; ++i) {
       queues.add((BlockingQueue<CallRunner>)
         ReflectionUtils.newInstance(readQueueClass, readQueueInitArgs));
     }
@@ -97,8 +180,14 @@ public class RWQueueRpcExecutor extends RpcExecutor {
 
   @Override
   protected void startHandlers(final int port) {
-    startHandlers(".write", writeHandlersCount, queues, 0, numWriteQueues, port);
-    startHandlers(".read", readHandlersCount, queues, numWriteQueues, numReadQueues, port);
+    int index = 0;
+    startHandlers(".write", writeHandlersCount, queues, index, numWriteQueues, port);
+    index += numWriteQueues;
+    startHandlers(".read", readHandlersCount, queues, index, numReadQueues, port);
+    index += numReadQueues;
+    startHandlers(".shortscan", shortScanHandlersCount, queues, index, numShortScanQueues, port);
+    index += numShortScanQueues;
+    startHandlers(".longscan", longScanHandlersCount, queues, index, numLongScanQueues, port);
   }
 
   @Override
@@ -107,6 +196,13 @@ public class RWQueueRpcExecutor extends RpcExecutor {
     int queueIndex;
     if (isWriteRequest(call.getHeader(), call.param)) {
       queueIndex = balancer.nextInt(numWriteQueues);
+    } else if (numShortScanQueues > 0 && call.param instanceof ScanRequest) {
+      queueIndex = numWriteQueues + numReadQueues;
+      if (numLongScanQueues > 0 && isLongScan((ScanRequest)call.param)) {
+        queueIndex += numShortScanQueues + balancer.nextInt(numLongScanQueues);
+      } else {
+        queueIndex += balancer.nextInt(numShortScanQueues);
+      }
     } else {
       queueIndex = numWriteQueues + balancer.nextInt(numReadQueues);
     }
@@ -115,6 +211,9 @@ public class RWQueueRpcExecutor extends RpcExecutor {
 
   private boolean isWriteRequest(final RequestHeader header, final Message param) {
     // TODO: Is there a better way to do this?
+    if (param instanceof MutateRequest) {
+      return true;
+    }
     String methodName = header.getMethodName();
     if (methodName.equalsIgnoreCase("multi") && param instanceof MultiRequest) {
       MultiRequest multi = (MultiRequest)param;
@@ -129,6 +228,32 @@ public class RWQueueRpcExecutor extends RpcExecutor {
     return false;
   }
 
+  private boolean isLongScan(final ScanRequest request) {
+    // Opening a scanner is always short; its scanner is only known to be long later on.
+    return scanClassifier != null && request.hasScannerId() &&
+      scanClassifier.isLongScan(request.getScannerId());
+  }
+
+  @VisibleForTesting
+  int getWriteHandlersCount() {
+    return writeHandlersCount;
+  }
+
+  @VisibleForTesting
+  int getReadHandlersCount() {
+    return readHandlersCount;
+  }
+
+  @VisibleForTesting
+  int getShortScanHandlersCount() {
+    return shortScanHandlersCount;
+  }
+
+  @VisibleForTesting
+  int getLongScanHandlersCount() {
+    return longScanHandlersCount;
+  }
+
   @Override
   public int getQueueLength() {
     int length = 0;
@@ -143,6 +268,34 @@ public class RWQueueRpcExecutor extends RpcExecutor {
     return queues;
   }
 
+  /*
+   * Calculate the handlers of gets, short scans and long scans, giving those of a class of
+   * calls without queues to the class it is split from. Long scans only get calls when short
+   * scans have queues too.
+   */
+  private static int[] calcReadHandlers(final String name, final int readHandlers,
+      final int shortScanHandlers, final int longScanHandlers,
+      final int numShortScanQueues, final int numLongScanQueues) {
+    int gets = readHandlers;
+    int shortScans = shortScanHandlers;
+    int longScans = longScanHandlers;
+    if (longScans > 0 && (numLongScanQueues <= 0 || numShortScanQueues <= 0)) {
+      LOG.warn(name + " has no long scan queue, its " + longScans +
+        " long scan handlers serve short scans; " +
+        SimpleRpcScheduler.CALL_QUEUE_LONG_SCAN_SHARE_CONF_KEY + " needs more call queues");
+      shortScans += longScans;
+      longScans = 0;
+    }
+    if (shortScans > 0 && numShortScanQueues <= 0) {
+      LOG.warn(name + " has no scan queue, its " + shortScans +
+        " scan handlers serve gets; " +
+        SimpleRpcScheduler.CALL_QUEUE_SCAN_SHARE_CONF_KEY + " needs more call queues");
+      gets += shortScans;
+      shortScans = 0;
+    }
+    return new int[] {gets, shortScans, longScans};
+  }
+
   /*
    * Calculate the number of writers based on the "total count" and the read share.
    * You'll get at least one writer.
@@ -158,4 +311,41 @@ public class RWQueueRpcExecutor extends RpcExecutor {
   private static int calcNumReaders(final int count, final float readShare) {
     return count - calcNumWriters(count, readShare);
   }
+
+  /*
+   * Calculate how many of "count" go to a sub-class of calls with the given share, leaving at
+   * least one to the others. None if the share is 0 or there is nothing to split.
+   */
+  private static int calcShare(final int count, final float share) {
+    if (share <= 0 || count < 2) {
+      return 0;
+    }
+    return Math.min(count - 1, Math.max(1, Math.round(count * share)));
+  }
+
+  /*
+   * Calculate the number of readers left to gets once scans took their share.
+   */
+  private static int calcNumGets(final int count, final float readShare,
+      final float scanShare) {
+    int readers = calcNumReaders(count, readShare);
+    return readers - calcShare(readers, scanShare);
+  }
+
+  /*
+   * Calculate the number of scan readers left to short scans once long scans took their share.
+   */
+  private static int calcNumShortScans(final int count, final float readShare,
+      final float scanShare, final float longScanShare) {
+    int scanners = calcShare(calcNumReaders(count, readShare), scanShare);
+    return scanners - calcShare(scanners, longScanShare);
+  }
+
+  /*
+   * Calculate the number of scan readers for long scans.
+   */
+  private static int calcNumLongScans(final int count, final float readShare,
+      final float scanShare, final float longScanShare) {
+    return calcShare(calcShare(calcNumReaders(count, readShare), scanShare), longScanShare);
+  }
 }
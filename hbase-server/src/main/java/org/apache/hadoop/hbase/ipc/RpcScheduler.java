@@ -34,6 +34,11 @@ public abstract class RpcScheduler {
   /** Exposes runtime information of a {@code RpcServer} that a {@code RpcScheduler} may need. */
   static abstract class Context {
     public abstract InetSocketAddress getListenerAddress();
+
+    /** @return the metrics of the server, or null if there are none */
+    public MetricsHBaseServer getMetrics() {
+      return null;
+    }
   }
 
   /**
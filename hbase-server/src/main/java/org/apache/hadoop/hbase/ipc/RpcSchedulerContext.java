@@ -36,4 +36,9 @@ class RpcSchedulerContext extends RpcScheduler.Context {
   public InetSocketAddress getListenerAddress() {
     return this.rpcServer.getListenerAddress();
   }
+
+  @Override
+  public MetricsHBaseServer getMetrics() {
+    return this.rpcServer.metrics;
+  }
 }
\ No newline at end of file
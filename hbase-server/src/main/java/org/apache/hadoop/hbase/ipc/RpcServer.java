@@ -22,6 +22,7 @@ import static org.apache.hadoop.fs.CommonConfigurationKeys.HADOOP_SECURITY_AUTHO
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.BindException;
@@ -45,6 +46,7 @@ import java.nio.channels.WritableByteChannel;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -53,8 +55,11 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.ObjectName;
 import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslException;
 import javax.security.sasl.SaslServer;
@@ -74,6 +79,8 @@ import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Operation;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.exceptions.RegionMovedException;
+import org.apache.hadoop.hbase.io.BoundedByteBufferPool;
+import org.apache.hadoop.hbase.io.ByteBufferListOutputStream;
 import org.apache.hadoop.hbase.io.ByteBufferOutputStream;
 import org.apache.hadoop.hbase.monitoring.MonitoredRPCHandler;
 import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
@@ -101,6 +108,7 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.metrics.util.MBeanUtil;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.UserGroupInformation.AuthenticationMethod;
@@ -116,6 +124,7 @@ import org.cliffc.high_scale_lib.Counter;
 import org.cloudera.htrace.TraceInfo;
 import org.codehaus.jackson.map.ObjectMapper;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.BlockingService;
 import com.google.protobuf.CodedInputStream;
@@ -179,6 +188,71 @@ public class RpcServer implements RpcServerInterface {
   private AtomicInteger delayedCalls;
   private final IPCUtil ipcUtil;
 
+  /**
+   * Size from which the arrays of the cells of a response are sent as they are rather than
+   * copied into its cellblock; 0 to always copy them.
+   */
+  public static final String CELLBLOCK_REFERENCE_MIN_SIZE_KEY =
+      "hbase.ipc.server.cellblock.reference.min.size";
+
+  /**
+   * Number of listeners, each accepting on the server socket with its own selector and
+   * handing the connections it accepts to its own share of the reader threads.
+   */
+  public static final String LISTENER_COUNT_KEY = "hbase.ipc.server.listener.count";
+  /** Most requests a reader decodes off a connection before going on to the next one */
+  public static final String READ_MAX_REQUESTS_KEY = "hbase.ipc.server.read.max.requests";
+
+  /**
+   * Most calls of a connection that may be queued, running or waiting for their response to be
+   * written; past it the connection is not read until some of its calls are done, so that TCP
+   * pushes back on that client alone. 0 for no limit.
+   */
+  public static final String CONNECTION_MAX_CALLS_KEY = "hbase.ipc.server.connection.max.calls";
+  /**
+   * Fraction of hbase.ipc.server.max.callqueue.size from which connections holding more than
+   * their share of the queued request bytes are not read until their calls are done.
+   */
+  public static final String CALLQUEUE_PAUSE_RATIO_KEY = "hbase.ipc.server.callqueue.pause.ratio";
+
+  /** Number of slow calls kept for {@link SlowCallLogMBean}; 0 to keep none */
+  public static final String SLOW_CALL_LOG_SIZE_KEY = "hbase.ipc.server.slowcall.log.size";
+  /** Total time, in ms, from which a call goes in the slow call log */
+  public static final String SLOW_CALL_LOG_THRESHOLD_KEY =
+      "hbase.ipc.server.slowcall.log.threshold";
+
+  /**
+   * Whether requests are read, and response cellblocks built, in pooled buffers. Off by default:
+   * each pool keeps up to {@link #RESERVOIR_MAX_BUFFERS_KEY} buffers of up to
+   * {@link #RESERVOIR_MAX_BUFFER_SIZE_KEY}, one pool on the heap and one direct, which is not
+   * accounted for anywhere else; leave room for both before turning it on.
+   */
+  public static final String RESERVOIR_ENABLED_KEY = "hbase.ipc.server.reservoir.enabled";
+  /** Largest buffer kept in the pools */
+  public static final String RESERVOIR_MAX_BUFFER_SIZE_KEY =
+      "hbase.ipc.server.reservoir.max.buffer.size";
+  /** Most buffers kept in each pool */
+  public static final String RESERVOIR_MAX_BUFFERS_KEY = "hbase.ipc.server.reservoir.max";
+
+  /**
+   * Heap buffers the readers read requests into, given back once their call is done. Null if
+   * the reservoir is disabled.
+   */
+  final BoundedByteBufferPool requestBufferPool;
+  /**
+   * Direct buffers the handlers build response cellblocks in, given back by the responder once
+   * written out. Null if the reservoir is disabled.
+   */
+  final BoundedByteBufferPool cellBlockPool;
+  /**
+   * Size from which the arrays of response cells are referenced by the cellblock rather than
+   * copied into it. {@link Integer#MAX_VALUE} if disabled.
+   */
+  final int cellBlockReferenceMinSize;
+
+  final SlowCallLog slowCallLog;
+  private ObjectName slowCallLogBeanName;
+
   private static final String AUTH_FAILED_FOR = "Auth failed for ";
   private static final String AUTH_SUCCESSFUL_FOR = "Auth successful for ";
   private static final Log AUDITLOG = LogFactory.getLog("SecurityLogger." +
@@ -198,6 +272,8 @@ public class RpcServer implements RpcServerInterface {
   protected final InetSocketAddress isa;
   protected int port;                             // port we listen on
   private int readThreads;                        // number of read threads
+  private int listenerCount;                      // number of listener/reader groups
+  private int maxRequestsPerRead;                 // requests decoded per read event
   protected int maxIdleTime;                      // the maximum idle time after
                                                   // which a client may be
                                                   // disconnected
@@ -214,6 +290,9 @@ public class RpcServer implements RpcServerInterface {
   protected final Configuration conf;
 
   private int maxQueueSize;
+  // queued request bytes from which the connections using the most are paused
+  private long pauseQueueSize;
+  private int maxCallsPerConnection;
   protected int socketSendBufferSize;
   protected final boolean tcpNoDelay;   // if T then disable Nagle's Algorithm
   protected final boolean tcpKeepAlive; // if T then use keepalives
@@ -241,7 +320,7 @@ public class RpcServer implements RpcServerInterface {
     Collections.synchronizedList(new LinkedList<Connection>());
   //maintain a list
   //of client connections
-  private Listener listener = null;
+  private Listener[] listeners = null;
   protected Responder responder = null;
   protected int numConnections = 0;
 
@@ -291,6 +370,22 @@ public class RpcServer implements RpcServerInterface {
     protected long size;                          // size of current call
     protected boolean isError;
     protected TraceInfo tinfo;
+    // Time, in ms, spent in each stage of the call, for metrics and the slow call log
+    long readTime;
+    long queueTime;
+    long handlerTime;
+    long rowLockWaitTime;
+    long walSyncWaitTime;
+    // when the response was ready to be written
+    long responseTime;
+    // whether the call counts against the limits of its connection
+    private boolean accounted;
+    // set once the call no longer counts as outstanding on its connection
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    // Pooled buffers of the request and of the response cellblock, if any
+    private final AtomicReference<ByteBuffer> requestBuffer = new AtomicReference<ByteBuffer>();
+    private final AtomicReference<ByteBufferListOutputStream> cellBlock =
+      new AtomicReference<ByteBufferListOutputStream>();
 
     Call(int id, final BlockingService service, final MethodDescriptor md, RequestHeader header,
          Message param, CellScanner cellScanner, Connection connection, Responder responder,
@@ -382,24 +477,39 @@ public class RpcServer implements RpcServerInterface {
           // Set the exception as the result of the method invocation.
           headerBuilder.setException(exceptionBuilder.build());
         }
-        ByteBuffer cellBlock =
-          ipcUtil.buildCellBlock(this.connection.codec, this.connection.compressionCodec, cells);
+        releaseResponse();
+        ByteBufferListOutputStream cellBlock = ipcUtil.buildCellBlockBuffers(
+          this.connection.codec, this.connection.compressionCodec, cells, cellBlockPool,
+          cellBlockReferenceMinSize);
+        this.cellBlock.set(cellBlock);
         if (cellBlock != null) {
           CellBlockMeta.Builder cellBlockBuilder = CellBlockMeta.newBuilder();
-          // Presumes the cellBlock bytebuffer has been flipped so limit has total size in it.
-          cellBlockBuilder.setLength(cellBlock.limit());
+          cellBlockBuilder.setLength(cellBlock.size());
           headerBuilder.setCellBlockMeta(cellBlockBuilder.build());
         }
         Message header = headerBuilder.build();
 
         // Organize the response as a set of bytebuffers rather than collect it all together inside
-        // one big byte array; save on allocations.
+        // one big byte array; save on allocations. The cellblock may reference the arrays of the
+        // cells themselves, so they go out to the socket in one gathering write without a copy.
         ByteBuffer bbHeader = IPCUtil.getDelimitedMessageAsByteBuffer(header);
         ByteBuffer bbResult = IPCUtil.getDelimitedMessageAsByteBuffer(result);
         int totalSize = bbHeader.capacity() + (bbResult == null? 0: bbResult.limit()) +
-          (cellBlock == null? 0: cellBlock.limit());
+          (cellBlock == null? 0: cellBlock.size());
         ByteBuffer bbTotalSize = ByteBuffer.wrap(Bytes.toBytes(totalSize));
-        bc = new BufferChain(bbTotalSize, bbHeader, bbResult, cellBlock);
+        if (cellBlock == null) {
+          bc = new BufferChain(bbTotalSize, bbHeader, bbResult);
+        } else {
+          List<ByteBuffer> cellBlockBuffers = cellBlock.getByteBuffers();
+          ByteBuffer[] buffers = new ByteBuffer[3 + cellBlockBuffers.size()];
+          buffers[0] = bbTotalSize;
+          buffers[1] = bbHeader;
+          buffers[2] = bbResult;
+          for (int i = 0; i < cellBlockBuffers.size(); i++) {
+            buffers[3 + i] = cellBlockBuffers.get(i);
+          }
+          bc = new BufferChain(buffers);
+        }
         if (connection.useWrap) {
           bc = wrapWithSasl(bc);
         }
@@ -407,6 +517,7 @@ public class RpcServer implements RpcServerInterface {
         LOG.warn("Exception while creating response " + e);
       }
       this.response = bc;
+      this.responseTime = System.currentTimeMillis();
     }
 
     private BufferChain wrapWithSasl(BufferChain bc)
@@ -504,6 +615,34 @@ public class RpcServer implements RpcServerInterface {
         this.responder.doRespond(this);
       }
     }
+
+    /**
+     * Gives the request buffer back to its pool, once the call has run and its cells are read.
+     */
+    void releaseRequest() {
+      ByteBuffer bb = this.requestBuffer.getAndSet(null);
+      if (bb != null) requestBufferPool.putbackBuffer(bb);
+    }
+
+    /**
+     * Gives the response cellblock buffer back to its pool, once the response is written out
+     * or dropped.
+     */
+    void releaseResponse() {
+      ByteBufferListOutputStream bblos = this.cellBlock.getAndSet(null);
+      if (bblos != null) bblos.releaseResources();
+    }
+
+    /**
+     * Stops counting the call as outstanding on its connection, once its response is written
+     * out or when it will not get one. Later calls do nothing.
+     */
+    void finish() {
+      if (this.finished.compareAndSet(false, true)) {
+        this.connection.decRpcCount();
+        this.connection.callDone(this);
+      }
+    }
   }
 
   /** Listens on the socket. Creates jobs for the handler threads*/
@@ -523,32 +662,46 @@ public class RpcServer implements RpcServerInterface {
 
     private ExecutorService readPool;
 
-    public Listener(final String name) throws IOException {
+    /**
+     * @param name name of the server
+     * @param index index of the listener; the first one binds the server socket
+     * @param numReaders number of reader threads of the listener
+     * @param sharedAcceptChannel the server socket bound by the first listener, or null for
+     *          the first listener itself
+     */
+    public Listener(final String name, final int index, final int numReaders,
+        final ServerSocketChannel sharedAcceptChannel) throws IOException {
       super(name);
-      // Create a new server socket and set to non blocking mode
-      acceptChannel = ServerSocketChannel.open();
-      acceptChannel.configureBlocking(false);
-
-      // Bind the server socket to the local host and port
-      bind(acceptChannel.socket(), isa, backlogLength);
-      port = acceptChannel.socket().getLocalPort(); //Could be an ephemeral port
+      if (sharedAcceptChannel == null) {
+        // Create a new server socket and set to non blocking mode
+        acceptChannel = ServerSocketChannel.open();
+        acceptChannel.configureBlocking(false);
+
+        // Bind the server socket to the local host and port
+        bind(acceptChannel.socket(), isa, backlogLength);
+        port = acceptChannel.socket().getLocalPort(); //Could be an ephemeral port
+      } else {
+        // The other listeners wait on the same socket: whichever selector wakes first accepts
+        acceptChannel = sharedAcceptChannel;
+      }
       // create a selector;
       selector= Selector.open();
 
-      readers = new Reader[readThreads];
-      readPool = Executors.newFixedThreadPool(readThreads,
+      String group = index == 0 ? "" : ",listener=" + index;
+      readers = new Reader[numReaders];
+      readPool = Executors.newFixedThreadPool(numReaders,
         new ThreadFactoryBuilder().setNameFormat(
-          "RpcServer.reader=%d,port=" + port).setDaemon(true).build());
-      for (int i = 0; i < readThreads; ++i) {
+          "RpcServer.reader=%d" + group + ",port=" + port).setDaemon(true).build());
+      for (int i = 0; i < numReaders; ++i) {
         Reader reader = new Reader();
         readers[i] = reader;
         readPool.execute(reader);
       }
-      LOG.info(getName() + ": started " + readThreads + " reader(s).");
+      LOG.info(getName() + ": started " + numReaders + " reader(s).");
 
       // Register accepts on the server socket with the selector.
       acceptChannel.register(selector, SelectionKey.OP_ACCEPT);
-      this.setName("RpcServer.listener,port=" + port);
+      this.setName("RpcServer.listener" + (index == 0 ? "" : "=" + index) + ",port=" + port);
       this.setDaemon(true);
     }
 
@@ -556,6 +709,8 @@ public class RpcServer implements RpcServerInterface {
     private class Reader implements Runnable {
       private volatile boolean adding = false;
       private final Selector readSelector;
+      // number of open connections read by this reader
+      private final AtomicInteger connections = new AtomicInteger(0);
 
       Reader() throws IOException {
         this.readSelector = Selector.open();
@@ -581,6 +736,8 @@ public class RpcServer implements RpcServerInterface {
               this.wait(1000);
             }
 
+            long loopStart = System.nanoTime();
+            boolean read = false;
             Iterator<SelectionKey> iter = readSelector.selectedKeys().iterator();
             while (iter.hasNext()) {
               key = iter.next();
@@ -588,10 +745,14 @@ public class RpcServer implements RpcServerInterface {
               if (key.isValid()) {
                 if (key.isReadable()) {
                   doRead(key);
+                  read = true;
                 }
               }
               key = null;
             }
+            if (read) {
+              metrics.readerLoop((System.nanoTime() - loopStart) / 1000);
+            }
           } catch (InterruptedException e) {
             if (running) {                      // unexpected -- log it
               LOG.info(getName() + ": unexpectedly interrupted: " +
@@ -729,9 +890,13 @@ public class RpcServer implements RpcServerInterface {
         selector= null;
         acceptChannel= null;
 
-        // clean up all connections
-        while (!connectionList.isEmpty()) {
-          closeConnection(connectionList.remove(0));
+        // clean up all connections; the other listeners may be at it too
+        Connection[] connections;
+        synchronized (connectionList) {
+          connections = connectionList.toArray(new Connection[connectionList.size()]);
+        }
+        for (Connection c : connections) {
+          closeConnection(c);
         }
       }
     }
@@ -774,7 +939,11 @@ public class RpcServer implements RpcServerInterface {
           reader.startAdd();
           SelectionKey readKey = reader.registerChannel(channel);
           c = getConnection(channel, System.currentTimeMillis());
+          // set up the connection before attaching it, which publishes it to the reader
+          c.readKey = readKey;
+          c.readerConnections = reader.connections;
           readKey.attach(c);
+          reader.connections.incrementAndGet();
           synchronized (connectionList) {
             connectionList.add(numConnections, c);
             numConnections++;
@@ -791,10 +960,13 @@ public class RpcServer implements RpcServerInterface {
     void doRead(SelectionKey key) throws InterruptedException {
       int count = 0;
       Connection c = (Connection)key.attachment();
-      if (c == null) {
+      if (c == null || c.readPaused) {
         return;
       }
       c.setLastContact(System.currentTimeMillis());
+      if (!c.startReading()) {
+        return;
+      }
       try {
         count = c.readAndProcess();
       } catch (InterruptedException ieo) {
@@ -802,6 +974,8 @@ public class RpcServer implements RpcServerInterface {
       } catch (Exception e) {
         LOG.warn(getName() + ": count of bytes read: " + count, e);
         count = -1; //so that the (count < 0) block is executed
+      } finally {
+        c.doneReading();
       }
       if (count < 0) {
         if (LOG.isDebugEnabled()) {
@@ -831,10 +1005,17 @@ public class RpcServer implements RpcServerInterface {
       readPool.shutdownNow();
     }
 
-    // The method that will return the next reader to work with
-    // Simplistic implementation of round robin for now
+    // The method that will return the next reader to work with: the one with the fewest
+    // connections, looking from the one after the last pick so that equals take turns
     Reader getReader() {
-      currentReader = (currentReader + 1) % readers.length;
+      int best = (currentReader + 1) % readers.length;
+      for (int i = 2; i <= readers.length; ++i) {
+        int candidate = (currentReader + i) % readers.length;
+        if (readers[candidate].connections.get() < readers[best].connections.get()) {
+          best = candidate;
+        }
+      }
+      currentReader = best;
       return readers[currentReader];
     }
   }
@@ -1015,7 +1196,9 @@ public class RpcServer implements RpcServerInterface {
             return true;
           }
           if (!call.response.hasRemaining()) {
-            call.connection.decRpcCount();
+            call.releaseResponse();
+            call.finish();
+            traceCall(call);
             //noinspection RedundantIfStatement
             if (numElements == 1) {    // last call fully processes.
               done = true;             // no more data for this channel.
@@ -1095,6 +1278,34 @@ public class RpcServer implements RpcServerInterface {
       }
     }
 
+    /**
+     * Reports the stages of a call whose response is out to the metrics, and to the slow call
+     * log if it took long.
+     */
+    private void traceCall(Call call) {
+      if (call.md == null) {
+        return; // connection level calls, e.g. sasl or failed header reads
+      }
+      String method = call.md.getName();
+      long writeTime = Math.max(0, System.currentTimeMillis() - call.responseTime);
+      metrics.callStage(method, "read", call.readTime);
+      metrics.callStage(method, "queue", call.queueTime);
+      metrics.callStage(method, "handler", call.handlerTime);
+      metrics.callStage(method, "rowLockWait", call.rowLockWaitTime);
+      metrics.callStage(method, "walSyncWait", call.walSyncWaitTime);
+      metrics.callStage(method, "write", writeTime);
+      long total = call.readTime + call.queueTime + call.handlerTime + writeTime;
+      if (slowCallLog.isSlow(total)) {
+        // the short text of the request names the region, if any
+        slowCallLog.add(new Date().toString() + " " + method + " from " +
+            call.connection.getHostAddress() + " total=" + total + "ms read=" + call.readTime +
+            " queue=" + call.queueTime + " handler=" + call.handlerTime + " rowLockWait=" +
+            call.rowLockWaitTime + " walSyncWait=" + call.walSyncWaitTime + " write=" +
+            writeTime +
+            (call.param == null ? "" : " " + ProtobufUtil.getShortTextFormat(call.param)));
+      }
+    }
+
     private synchronized void incPending() {   // call waiting to be enqueued.
       pending++;
     }
@@ -1129,6 +1340,21 @@ public class RpcServer implements RpcServerInterface {
     private boolean connectionHeaderRead = false;
     protected SocketChannel channel;
     private ByteBuffer data;
+    // whether data is from the request buffer pool
+    private boolean dataPooled;
+    // whether a reader is in readAndProcess, and whether the connection was closed meanwhile;
+    // guarded by this connection
+    private boolean reading;
+    private boolean closed;
+    // when we started reading data
+    private long readStartTime;
+    // connection count of the reader of this connection
+    private AtomicInteger readerConnections;
+    private SelectionKey readKey;
+    // calls not done yet and their request bytes, and whether reading is paused over them
+    private int callsInFlight = 0;
+    private long bytesInFlight = 0;
+    private volatile boolean readPaused = false;
     private ByteBuffer dataLengthBuffer;
     protected final LinkedList<Call> responseQueue;
     private Counter rpcCount = new Counter(); // number of outstanding rpcs
@@ -1237,6 +1463,68 @@ public class RpcServer implements RpcServerInterface {
       rpcCount.increment();
     }
 
+    /**
+     * Counts a call handed to the scheduler, and stops reading off the connection if it is now
+     * over its limits.
+     */
+    private synchronized void callDispatched(Call call) {
+      call.accounted = true;
+      callsInFlight++;
+      bytesInFlight += call.getSize();
+      if (!readPaused && isOverLimits()) {
+        setReadPaused(true);
+        metrics.pausedConnectionRead();
+      }
+    }
+
+    /**
+     * Counts a call whose response is out, and reads off the connection again once it is back
+     * under its limits.
+     */
+    synchronized void callDone(Call call) {
+      if (!call.accounted) {
+        return;
+      }
+      call.accounted = false;
+      callsInFlight--;
+      bytesInFlight -= call.getSize();
+      if (readPaused && !isOverLimits()) {
+        setReadPaused(false);
+      }
+    }
+
+    /**
+     * @return whether the connection has too many calls in flight, or, when the call queues are
+     * getting full, more than its share of their bytes
+     */
+    private boolean isOverLimits() {
+      if (maxCallsPerConnection > 0 && callsInFlight >= maxCallsPerConnection) {
+        return true;
+      }
+      long queued = callQueueSize.get();
+      return queued > pauseQueueSize && bytesInFlight > queued / Math.max(1, numConnections);
+    }
+
+    @VisibleForTesting
+    SelectionKey getReadKey() {
+      return readKey;
+    }
+
+    private void setReadPaused(boolean paused) {
+      readPaused = paused;
+      if (readKey == null) {
+        return;
+      }
+      try {
+        readKey.interestOps(paused ? 0 : SelectionKey.OP_READ);
+        if (!paused) {
+          readKey.selector().wakeup();
+        }
+      } catch (CancelledKeyException e) {
+        // the connection is closed
+      }
+    }
+
     protected boolean timedOut(long currentTime) {
       return isIdle() && currentTime - lastContact > maxIdleTime;
     }
@@ -1415,6 +1703,7 @@ public class RpcServer implements RpcServerInterface {
      * @throws InterruptedException
      */
     public int readAndProcess() throws IOException, InterruptedException {
+      int requests = 0;
       while (true) {
         // Try and read in an int.  If new connection, the int will hold the 'HBas' HEADER.  If it
         // does, read in the rest of the connection preamble, the version and the auth method.
@@ -1492,7 +1781,14 @@ public class RpcServer implements RpcServerInterface {
             throw new IllegalArgumentException("Unexpected data length "
                 + dataLength + "!! from " + getHostAddress());
           }
-          data = ByteBuffer.allocate(dataLength);
+          if (connectionHeaderRead && !useSasl && requestBufferPool != null) {
+            data = requestBufferPool.getBuffer(dataLength);
+            data.limit(dataLength);
+            dataPooled = true;
+          } else {
+            data = ByteBuffer.allocate(dataLength);
+          }
+          readStartTime = System.currentTimeMillis();
           incRpcCount();  // Increment the rpc count
         }
         count = channelRead(channel, data);
@@ -1507,7 +1803,11 @@ public class RpcServer implements RpcServerInterface {
             continue;
           }
           boolean headerRead = connectionHeaderRead;
-          if (useSasl) {
+          if (dataPooled) {
+            // the call gives the buffer back when done
+            dataPooled = false;
+            processRequest(data, true);
+          } else if (useSasl) {
             saslReadAndProcess(data.array());
           } else {
             processOneRpc(data.array());
@@ -1516,6 +1816,11 @@ public class RpcServer implements RpcServerInterface {
           if (!headerRead) {
             continue;
           }
+          // Decode the next requests already sent on this connection in the same go, rather
+          // than coming back to them after another select
+          if (++requests < maxRequestsPerRead && channel.isOpen() && !readPaused) {
+            continue;
+          }
         } else if (count > 0) {
           // We got some data and there is more to read still; go around again.
           if (LOG.isTraceEnabled()) LOG.trace("Continue to read rest of data " + data.remaining());
@@ -1670,11 +1975,26 @@ public class RpcServer implements RpcServerInterface {
      * @throws InterruptedException
      */
     protected void processRequest(byte[] buf) throws IOException, InterruptedException {
-      long totalRequestSize = buf.length;
-      int offset = 0;
+      processRequest(ByteBuffer.wrap(buf), false);
+    }
+
+    /**
+     * @param bb Has the request header and the request param and optionally encoded data buffer
+     * all in its backing array, up to its limit.
+     * @param pooled whether <code>bb</code> is from the request buffer pool; if so, it is given
+     * back once the call is done with it
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void processRequest(ByteBuffer bb, boolean pooled)
+    throws IOException, InterruptedException {
+      byte[] buf = bb.array();
+      int length = bb.arrayOffset() + bb.limit();
+      long totalRequestSize = bb.limit();
+      int offset = bb.arrayOffset();
       // Here we read in the header.  We avoid having pb
       // do its default 4k allocation for CodedInputStream.  We force it to use backing array.
-      CodedInputStream cis = CodedInputStream.newInstance(buf, offset, buf.length);
+      CodedInputStream cis = CodedInputStream.newInstance(buf, offset, length - offset);
       int headerSize = cis.readRawVarint32();
       offset = cis.getTotalBytesRead();
       RequestHeader header = RequestHeader.newBuilder().mergeFrom(buf, offset, headerSize).build();
@@ -1693,6 +2013,7 @@ public class RpcServer implements RpcServerInterface {
         ByteArrayOutputStream responseBuffer = new ByteArrayOutputStream();
         setupResponse(responseBuffer, callTooBig, new CallQueueTooBigException(),
           "Call queue is full, is ipc.server.max.callqueue.size too small?");
+        if (pooled) requestBufferPool.putbackBuffer(bb);
         responder.doRespond(callTooBig);
         return;
       }
@@ -1705,7 +2026,7 @@ public class RpcServer implements RpcServerInterface {
           if (md == null) throw new UnsupportedOperationException(header.getMethodName());
           Builder builder = this.service.getRequestPrototype(md).newBuilderForType();
           // To read the varint, I need an inputstream; might as well be a CIS.
-          cis = CodedInputStream.newInstance(buf, offset, buf.length);
+          cis = CodedInputStream.newInstance(buf, offset, length - offset);
           int paramSize = cis.readRawVarint32();
           offset += cis.getTotalBytesRead();
           if (builder != null) {
@@ -1715,7 +2036,7 @@ public class RpcServer implements RpcServerInterface {
         }
         if (header.hasCellBlockMeta()) {
           cellScanner = ipcUtil.createCellScanner(this.codec, this.compressionCodec,
-            buf, offset, buf.length);
+            buf, offset, length - offset);
         }
       } catch (Throwable t) {
         String msg = "Unable to read call parameter from client " + getHostAddress();
@@ -1736,6 +2057,7 @@ public class RpcServer implements RpcServerInterface {
         ByteArrayOutputStream responseBuffer = new ByteArrayOutputStream();
         setupResponse(responseBuffer, readParamsFailedCall, t,
           msg + "; " + t.getMessage());
+        if (pooled) requestBufferPool.putbackBuffer(bb);
         responder.doRespond(readParamsFailedCall);
         return;
       }
@@ -1746,6 +2068,9 @@ public class RpcServer implements RpcServerInterface {
       Call call = new Call(id, this.service, md, header, param, cellScanner, this, responder,
               totalRequestSize,
               traceInfo);
+      if (pooled) call.requestBuffer.set(bb);
+      call.readTime = Math.max(0, call.timestamp - readStartTime);
+      callDispatched(call);
       scheduler.dispatch(new CallRunner(RpcServer.this, call, userProvider));
     }
 
@@ -1774,10 +2099,48 @@ public class RpcServer implements RpcServerInterface {
       return true;
     }
 
+    /**
+     * @return whether the connection is still open, in which case the reader may read it until
+     * it calls {@link #doneReading()}
+     */
+    synchronized boolean startReading() {
+      if (closed) {
+        return false;
+      }
+      reading = true;
+      return true;
+    }
+
+    synchronized void doneReading() {
+      reading = false;
+      if (closed) {
+        releaseData();
+      }
+    }
+
+    /**
+     * Gives a partly read pooled request buffer back; only once the reader is done with it.
+     */
+    private synchronized void releaseData() {
+      if (dataPooled && data != null) {
+        requestBufferPool.putbackBuffer(data);
+      }
+      dataPooled = false;
+      data = null;
+    }
+
     protected synchronized void close() {
+      closed = true;
       disposeSasl();
-      data = null;
+      // A reader still at the request buffer gives it back when done
+      if (!reading) {
+        releaseData();
+      }
       this.dataLengthBuffer = null;
+      // e.g. an AdaptiveCompressionCodec keeping compressors for the connection
+      if (compressionCodec instanceof Closeable) {
+        try {((Closeable)compressionCodec).close();} catch(Exception ignored) {}
+      }
       if (!channel.isOpen())
         return;
       try {socket.shutdownOutput();} catch(Exception ignored) {} // FindBugs DE_MIGHT_IGNORE
@@ -1859,8 +2222,12 @@ public class RpcServer implements RpcServerInterface {
     this.socketSendBufferSize = 0;
     this.maxQueueSize = conf.getInt("hbase.ipc.server.max.callqueue.size",
       conf.getInt("ipc.server.max.callqueue.size", DEFAULT_MAX_CALLQUEUE_SIZE));
+    this.pauseQueueSize = (long) (maxQueueSize * conf.getFloat(CALLQUEUE_PAUSE_RATIO_KEY, 0.8f));
+    this.maxCallsPerConnection = conf.getInt(CONNECTION_MAX_CALLS_KEY, 128);
     this.readThreads = conf.getInt("hbase.ipc.server.read.threadpool.size",
       conf.getInt("ipc.server.read.threadpool.size", 10));
+    this.listenerCount = Math.max(1, Math.min(readThreads, conf.getInt(LISTENER_COUNT_KEY, 1)));
+    this.maxRequestsPerRead = Math.max(1, conf.getInt(READ_MAX_REQUESTS_KEY, 8));
     this.maxIdleTime = 2 * conf.getInt("hbase.ipc.client.connection.maxidletime",
       conf.getInt("ipc.client.connection.maxidletime", 1000));
     this.maxConnectionsToNuke = conf.getInt("hbase.ipc.client.kill.max",
@@ -1873,11 +2240,17 @@ public class RpcServer implements RpcServerInterface {
     this.warnResponseTime = conf.getInt(WARN_RESPONSE_TIME, DEFAULT_WARN_RESPONSE_TIME);
     this.warnResponseSize = conf.getInt(WARN_RESPONSE_SIZE, DEFAULT_WARN_RESPONSE_SIZE);
 
-    // Start the listener here and let it bind to the port
-    listener = new Listener(name);
-    this.port = listener.getAddress().getPort();
-
     this.metrics = new MetricsHBaseServer(name, new MetricsHBaseServerWrapperImpl(this));
+
+    // Start the listeners here and let the first one bind to the port; the reader threads are
+    // shared out between them
+    listeners = new Listener[listenerCount];
+    for (int i = 0; i < listenerCount; ++i) {
+      int numReaders = readThreads / listenerCount + (i < readThreads % listenerCount ? 1 : 0);
+      listeners[i] = new Listener(name, i, numReaders,
+        i == 0 ? null : listeners[0].acceptChannel);
+    }
+    this.port = listeners[0].getAddress().getPort();
     this.tcpNoDelay = conf.getBoolean("hbase.ipc.server.tcpnodelay", true);
     this.tcpKeepAlive = conf.getBoolean("hbase.ipc.server.tcpkeepalive",
       conf.getBoolean("ipc.server.tcpkeepalive", true));
@@ -1885,6 +2258,27 @@ public class RpcServer implements RpcServerInterface {
     this.warnDelayedCalls = conf.getInt(WARN_DELAYED_CALLS, DEFAULT_WARN_DELAYED_CALLS);
     this.delayedCalls = new AtomicInteger(0);
     this.ipcUtil = new IPCUtil(conf);
+    if (conf.getBoolean(RESERVOIR_ENABLED_KEY, false)) {
+      int maxBufferSize = conf.getInt(RESERVOIR_MAX_BUFFER_SIZE_KEY, 1024 * 1024);
+      int maxBuffers = conf.getInt(RESERVOIR_MAX_BUFFERS_KEY,
+        conf.getInt(HConstants.REGION_SERVER_HANDLER_COUNT,
+          HConstants.DEFAULT_REGION_SERVER_HANDLER_COUNT) * 2);
+      int initialSize = conf.getInt("hbase.ipc.cellblock.building.initial.buffersize", 16 * 1024);
+      this.requestBufferPool =
+        new BoundedByteBufferPool(maxBufferSize, initialSize, maxBuffers, false);
+      this.cellBlockPool = new BoundedByteBufferPool(maxBufferSize, initialSize, maxBuffers, true);
+    } else {
+      this.requestBufferPool = null;
+      this.cellBlockPool = null;
+    }
+    // Recycled memstore chunks could be overwritten before a response referencing them is out
+    int referenceMinSize = conf.getInt(CELLBLOCK_REFERENCE_MIN_SIZE_KEY, 2048);
+    if (referenceMinSize <= 0 || conf.getFloat("hbase.hregion.memstore.chunkpool.maxsize", 0) > 0) {
+      referenceMinSize = Integer.MAX_VALUE;
+    }
+    this.cellBlockReferenceMinSize = referenceMinSize;
+    this.slowCallLog = new SlowCallLog(conf.getInt(SLOW_CALL_LOG_SIZE_KEY, 256),
+      conf.getLong(SLOW_CALL_LOG_THRESHOLD_KEY, 1000));
 
 
     // Create the responder here
@@ -1926,9 +2320,18 @@ public class RpcServer implements RpcServerInterface {
     synchronized (connectionList) {
       if (connectionList.remove(connection)) {
         numConnections--;
+        if (connection.readerConnections != null) {
+          connection.readerConnections.decrementAndGet();
+        }
       }
     }
     connection.close();
+    // responses that will not be written out any more
+    synchronized (connection.responseQueue) {
+      for (Call call : connection.responseQueue) {
+        call.releaseResponse();
+      }
+    }
   }
 
   Configuration getConf() {
@@ -1946,6 +2349,7 @@ public class RpcServer implements RpcServerInterface {
   public void start() {
     startThreads();
     openServer();
+    slowCallLogBeanName = MBeanUtil.registerMBean("HBase", "RpcSlowCalls-" + port, slowCallLog);
   }
 
   /**
@@ -1975,7 +2379,9 @@ public class RpcServer implements RpcServerInterface {
     this.authManager = new ServiceAuthorizationManager();
     HBasePolicyProvider.init(conf, authManager);
     responder.start();
-    listener.start();
+    for (Listener listener : listeners) {
+      listener.start();
+    }
     scheduler.start();
   }
 
@@ -2128,10 +2534,16 @@ public class RpcServer implements RpcServerInterface {
   public synchronized void stop() {
     LOG.info("Stopping server on " + port);
     running = false;
-    listener.interrupt();
-    listener.doStop();
+    for (Listener listener : listeners) {
+      listener.interrupt();
+      listener.doStop();
+    }
     responder.interrupt();
     scheduler.stop();
+    if (slowCallLogBeanName != null) {
+      MBeanUtil.unregisterMBean(slowCallLogBeanName);
+      slowCallLogBeanName = null;
+    }
     notifyAll();
   }
 
@@ -2153,7 +2565,23 @@ public class RpcServer implements RpcServerInterface {
    */
   @Override
   public synchronized InetSocketAddress getListenerAddress() {
-    return listener.getAddress();
+    return listeners[0].getAddress();
+  }
+
+  /**
+   * @return the number of open connections of each reader, per listener
+   */
+  @VisibleForTesting
+  int[][] getReaderConnectionCounts() {
+    int[][] counts = new int[listeners.length][];
+    for (int i = 0; i < listeners.length; i++) {
+      Listener.Reader[] readers = listeners[i].readers;
+      counts[i] = new int[readers.length];
+      for (int j = 0; j < readers.length; j++) {
+        counts[i][j] = readers[j].connections.get();
+      }
+    }
+    return counts;
   }
 
   /**
@@ -2342,6 +2770,28 @@ public class RpcServer implements RpcServerInterface {
     return bsasi == null? null: bsasi.getBlockingService();
   }
 
+  /**
+   * Adds time the current call, if any, waited on row locks.
+   * @param time wait in ms
+   */
+  public static void addRowLockWaitTime(long time) {
+    Call call = CurCall.get();
+    if (call != null) {
+      call.rowLockWaitTime += time;
+    }
+  }
+
+  /**
+   * Adds time the current call, if any, waited on WAL syncs.
+   * @param time wait in ms
+   */
+  public static void addWalSyncWaitTime(long time) {
+    Call call = CurCall.get();
+    if (call != null) {
+      call.walSyncWaitTime += time;
+    }
+  }
+
   /** Returns the remote side ip address when invoked inside an RPC
    *  Returns null incase of an error.
    *  @return InetAddress
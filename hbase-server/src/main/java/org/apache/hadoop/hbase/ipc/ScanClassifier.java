@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.TableName;
+
+/**
+ * Tells how far along an open scanner is, so that the calls of long scans can be queued apart
+ * from those of short ones, and which table it scans, as the calls that go on with a scan only
+ * carry the id of its scanner.
+ */
+@InterfaceAudience.LimitedPrivate({HBaseInterfaceAudience.COPROC, HBaseInterfaceAudience.PHOENIX})
+@InterfaceStability.Evolving
+public interface ScanClassifier {
+  /**
+   * @param scannerId id of an open scanner
+   * @return whether the scanner returned enough rows, or has been open long enough, to count
+   *         as a long scan; false for unknown scanners
+   */
+  boolean isLongScan(long scannerId);
+
+  /**
+   * @param scannerId id of an open scanner
+   * @return the table the scanner reads, or null for unknown scanners
+   */
+  TableName getScannerTable(long scannerId);
+}
@@ -36,6 +36,10 @@ public class SimpleRpcScheduler extends RpcScheduler {
 
   public static final String CALL_QUEUE_READ_SHARE_CONF_KEY =
     "hbase.ipc.server.callqueue.read.share";
+  public static final String CALL_QUEUE_SCAN_SHARE_CONF_KEY =
+    "hbase.ipc.server.callqueue.scan.ratio";
+  public static final String CALL_QUEUE_LONG_SCAN_SHARE_CONF_KEY =
+    "hbase.ipc.server.callqueue.long.scan.ratio";
   public static final String CALL_QUEUE_HANDLER_FACTOR_CONF_KEY =
     "hbase.ipc.server.callqueue.handler.factor";
   public static final String CALL_QUEUE_MAX_LENGTH_CONF_KEY =
@@ -65,6 +69,22 @@ public class SimpleRpcScheduler extends RpcScheduler {
       int replicationHandlerCount,
       PriorityFunction priority,
       int highPriorityLevel) {
+    this(conf, handlerCount, priorityHandlerCount, replicationHandlerCount, priority,
+      highPriorityLevel, null);
+  }
+
+  /**
+   * @param scanClassifier tells long scans from short ones, or null to queue all scans as short
+   * @see #SimpleRpcScheduler(Configuration, int, int, int, PriorityFunction, int)
+   */
+  public SimpleRpcScheduler(
+      Configuration conf,
+      int handlerCount,
+      int priorityHandlerCount,
+      int replicationHandlerCount,
+      PriorityFunction priority,
+      int highPriorityLevel,
+      ScanClassifier scanClassifier) {
     int maxQueueLength = conf.getInt(CALL_QUEUE_MAX_LENGTH_CONF_KEY,
       conf.getInt("ipc.server.max.callqueue.length",
         handlerCount * RpcServer.DEFAULT_MAX_CALLQUEUE_LENGTH_PER_HANDLER));
@@ -74,6 +94,9 @@ public class SimpleRpcScheduler extends RpcScheduler {
     float callqReadShare = conf.getFloat(CALL_QUEUE_READ_SHARE_CONF_KEY,
       conf.getFloat("ipc.server.callqueue.read.share", 0));
 
+    float callqScanShare = conf.getFloat(CALL_QUEUE_SCAN_SHARE_CONF_KEY, 0);
+    float callqLongScanShare = conf.getFloat(CALL_QUEUE_LONG_SCAN_SHARE_CONF_KEY, 0);
+
     float callQueuesHandlersFactor = conf.getFloat(CALL_QUEUE_HANDLER_FACTOR_CONF_KEY,
       conf.getFloat("ipc.server.callqueue.handler.factor", 0));
     int numCallQueues = Math.max(1, (int)Math.round(handlerCount * callQueuesHandlersFactor));
@@ -83,7 +106,7 @@ public class SimpleRpcScheduler extends RpcScheduler {
     if (numCallQueues > 1 && callqReadShare > 0) {
       // multiple read/write queues
       callExecutor = new RWQueueRpcExecutor("default", handlerCount, numCallQueues,
-          callqReadShare, maxQueueLength);
+          callqReadShare, callqScanShare, callqLongScanShare, maxQueueLength, scanClassifier);
     } else {
       // multiple queues
       callExecutor = new BalancedQueueRpcExecutor("default", handlerCount,
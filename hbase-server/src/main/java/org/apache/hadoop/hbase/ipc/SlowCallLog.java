@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Ring buffer of the last slow calls of an RPC server, for {@link SlowCallLogMBean}.
+ */
+@InterfaceAudience.Private
+public class SlowCallLog implements SlowCallLogMBean {
+  private final String[] entries;
+  private final long threshold;
+  private int next = 0;
+  private long count = 0;
+
+  /**
+   * @param size most calls kept; 0 to keep none
+   * @param threshold total time, in ms, from which a call is slow
+   */
+  SlowCallLog(int size, long threshold) {
+    this.entries = new String[Math.max(0, size)];
+    this.threshold = threshold;
+  }
+
+  /**
+   * @return whether a call that took <code>totalTime</code> ms goes in the log
+   */
+  boolean isSlow(long totalTime) {
+    return entries.length > 0 && totalTime >= threshold;
+  }
+
+  synchronized void add(String entry) {
+    if (entries.length == 0) {
+      return;
+    }
+    entries[next] = entry;
+    next = (next + 1) % entries.length;
+    count++;
+  }
+
+  @Override
+  public synchronized String[] getSlowCalls() {
+    int size = (int) Math.min(count, entries.length);
+    String[] calls = new String[size];
+    for (int i = 0; i < size; i++) {
+      calls[i] = entries[(next - 1 - i + entries.length) % entries.length];
+    }
+    return calls;
+  }
+
+  @Override
+  public synchronized long getSlowCallCount() {
+    return count;
+  }
+
+  @Override
+  public long getSlowCallThreshold() {
+    return threshold;
+  }
+}
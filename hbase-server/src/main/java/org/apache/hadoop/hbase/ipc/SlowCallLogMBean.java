@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * JMX view of the calls an RPC server found slow, also served by the info server under
+ * <code>/jmx?qry=hadoop:service=HBase,name=RpcSlowCalls-*</code>.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface SlowCallLogMBean {
+  /**
+   * @return the most recent slow calls, newest first, with the time spent in each stage
+   */
+  String[] getSlowCalls();
+
+  /**
+   * @return number of slow calls since the server started, including those no longer kept
+   */
+  long getSlowCallCount();
+
+  /**
+   * @return total time, in ms, from which a call is slow
+   */
+  long getSlowCallThreshold();
+}
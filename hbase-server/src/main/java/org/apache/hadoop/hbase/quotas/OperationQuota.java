@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * The quota taken by one operation of a region server. The operation is admitted on an
+ * estimate of its size, and once it ran, the sizes it reported are charged instead by
+ * {@link #close()}.
+ */
+@InterfaceAudience.Private
+public class OperationQuota {
+  public enum OperationType { MUTATE, GET, SCAN }
+
+  /** Quota of operations that are not throttled */
+  public static final OperationQuota NOOP = new OperationQuota(
+      Collections.<QuotaLimiter>emptyList()) {
+    @Override
+    public void addGetResult(final Result result) {
+    }
+
+    @Override
+    public void addScanResult(final List<Result> results) {
+    }
+
+    @Override
+    public void addMutation(final Mutation mutation) {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  /** Bytes assumed for a read or write until its real size is known */
+  static final long ESTIMATED_SIZE = 100;
+
+  private final List<QuotaLimiter> limiters;
+  private long estimatedWriteSize = 0;
+  private long estimatedReadSize = 0;
+  private long writeSize = 0;
+  private long readSize = 0;
+  private boolean writeSizeKnown = false;
+  private boolean readSizeKnown = false;
+
+  OperationQuota(final List<QuotaLimiter> limiters) {
+    this.limiters = limiters;
+  }
+
+  /**
+   * Admits the operation and takes its estimated quota.
+   * @throws ThrottlingException if a limiter has not enough left for it
+   */
+  void checkQuota(final int numWrites, final int numReads, final int numScans)
+      throws ThrottlingException {
+    int reads = numReads + numScans;
+    estimatedWriteSize = numWrites * ESTIMATED_SIZE;
+    estimatedReadSize = reads * ESTIMATED_SIZE;
+    for (QuotaLimiter limiter : limiters) {
+      limiter.checkQuota(numWrites, estimatedWriteSize, reads, estimatedReadSize);
+    }
+    for (QuotaLimiter limiter : limiters) {
+      limiter.grabQuota(numWrites, estimatedWriteSize, reads, estimatedReadSize);
+    }
+  }
+
+  public void addGetResult(final Result result) {
+    readSizeKnown = true;
+    readSize += size(result);
+  }
+
+  public void addScanResult(final List<Result> results) {
+    readSizeKnown = true;
+    if (results == null) return;
+    for (Result result : results) {
+      readSize += size(result);
+    }
+  }
+
+  public void addMutation(final Mutation mutation) {
+    writeSizeKnown = true;
+    writeSize += mutation.heapSize();
+  }
+
+  private static long size(final Result result) {
+    long size = 0;
+    if (result != null && !result.isEmpty()) {
+      for (Cell cell : result.rawCells()) {
+        size += KeyValueUtil.length(cell);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Charges the real sizes of the operation in place of the estimates, where they are known.
+   */
+  public void close() {
+    long writeDelta = writeSizeKnown ? writeSize - estimatedWriteSize : 0;
+    long readDelta = readSizeKnown ? readSize - estimatedReadSize : 0;
+    for (QuotaLimiter limiter : limiters) {
+      if (writeDelta != 0) limiter.consumeWrite(writeDelta);
+      if (readDelta != 0) limiter.consumeRead(readDelta);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Chore;
+import org.apache.hadoop.hbase.Stoppable;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+/**
+ * Copy of the quota table kept by a region server, reread every
+ * <code>hbase.quota.refresh.period</code> ms. The table holds a row per throttled user,
+ * namespace and table, so it is small enough to be read whole. Limiters whose throttles did not
+ * change are kept across refreshes, along with what their buckets hold.
+ */
+@InterfaceAudience.Private
+class QuotaCache extends Chore {
+  private static final Log LOG = LogFactory.getLog(QuotaCache.class);
+
+  static final String REFRESH_PERIOD_KEY = "hbase.quota.refresh.period";
+  static final int DEFAULT_REFRESH_PERIOD = 5 * 60000;
+
+  private final Configuration conf;
+  private volatile Map<String, QuotaLimiter> userLimiters = Collections.emptyMap();
+  private volatile Map<String, QuotaLimiter> namespaceLimiters = Collections.emptyMap();
+  private volatile Map<TableName, QuotaLimiter> tableLimiters = Collections.emptyMap();
+
+  QuotaCache(final Configuration conf, final Stoppable stopper) {
+    super("QuotaCache", conf.getInt(REFRESH_PERIOD_KEY, DEFAULT_REFRESH_PERIOD), stopper);
+    this.conf = conf;
+  }
+
+  /**
+   * For tests: a cache only updated by hand.
+   */
+  QuotaCache() {
+    super();
+    this.conf = null;
+  }
+
+  /**
+   * @return the limiters that apply to a request of the user on the table, maybe none
+   */
+  List<QuotaLimiter> getLimiters(final String user, final TableName table) {
+    List<QuotaLimiter> limiters = new ArrayList<QuotaLimiter>(3);
+    QuotaLimiter limiter = user == null ? null : userLimiters.get(user);
+    if (limiter != null) limiters.add(limiter);
+    limiter = namespaceLimiters.get(table.getNamespaceAsString());
+    if (limiter != null) limiters.add(limiter);
+    limiter = tableLimiters.get(table);
+    if (limiter != null) limiters.add(limiter);
+    return limiters;
+  }
+
+  @Override
+  protected boolean initialChore() {
+    return refresh();
+  }
+
+  @Override
+  protected void chore() {
+    refresh();
+  }
+
+  /**
+   * @return whether the quota table could be read
+   */
+  private boolean refresh() {
+    List<QuotaSettings> settings = new ArrayList<QuotaSettings>();
+    try {
+      HTable table = new HTable(conf, QuotaTableUtil.QUOTA_TABLE_NAME);
+      try {
+        ResultScanner scanner = table.getScanner(QuotaTableUtil.QUOTA_FAMILY);
+        try {
+          for (Result r : scanner) {
+            settings.addAll(QuotaTableUtil.parseResult(r));
+          }
+        } finally {
+          scanner.close();
+        }
+      } finally {
+        table.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read the quota table, keeping the current quotas", e);
+      return false;
+    }
+    update(settings);
+    return true;
+  }
+
+  /**
+   * Replaces the cached throttles.
+   */
+  void update(final List<QuotaSettings> settings) {
+    Map<String, List<QuotaSettings>> users = new HashMap<String, List<QuotaSettings>>();
+    Map<String, List<QuotaSettings>> namespaces = new HashMap<String, List<QuotaSettings>>();
+    Map<TableName, List<QuotaSettings>> tables = new HashMap<TableName, List<QuotaSettings>>();
+    for (QuotaSettings s : settings) {
+      if (s.getUserName() != null) {
+        add(users, s.getUserName(), s);
+      } else if (s.getNamespace() != null) {
+        add(namespaces, s.getNamespace(), s);
+      } else if (s.getTableName() != null) {
+        add(tables, s.getTableName(), s);
+      }
+    }
+    userLimiters = toLimiters("user ", users, userLimiters);
+    namespaceLimiters = toLimiters("namespace ", namespaces, namespaceLimiters);
+    tableLimiters = toLimiters("table ", tables, tableLimiters);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Quotas refreshed: " + settings.size() + " throttles");
+    }
+  }
+
+  private static <K> void add(final Map<K, List<QuotaSettings>> map, final K key,
+      final QuotaSettings s) {
+    List<QuotaSettings> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<QuotaSettings>();
+      map.put(key, list);
+    }
+    list.add(s);
+  }
+
+  private static <K> Map<K, QuotaLimiter> toLimiters(final String kind,
+      final Map<K, List<QuotaSettings>> settings, final Map<K, QuotaLimiter> current) {
+    Map<K, QuotaLimiter> limiters = new HashMap<K, QuotaLimiter>(settings.size());
+    for (Map.Entry<K, List<QuotaSettings>> e : settings.entrySet()) {
+      QuotaLimiter limiter = current.get(e.getKey());
+      if (limiter == null
+          || !limiter.getSettings().equals(new HashSet<QuotaSettings>(e.getValue()))) {
+        limiter = new QuotaLimiter(kind + e.getKey(), e.getValue());
+      }
+      limiters.put(e.getKey(), limiter);
+    }
+    return limiters;
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * The throttles of one user, namespace or table, with a {@link RateLimiter} per
+ * {@link ThrottleType} that is set.
+ */
+@InterfaceAudience.Private
+class QuotaLimiter {
+  private final String owner;
+  private final Set<QuotaSettings> settings;
+  private final RateLimiter[] limiters = new RateLimiter[ThrottleType.values().length];
+
+  /**
+   * @param owner whose throttles these are, for the messages
+   * @param settings the throttles
+   */
+  QuotaLimiter(final String owner, final Collection<QuotaSettings> settings) {
+    this.owner = owner;
+    this.settings = new HashSet<QuotaSettings>(settings);
+    for (QuotaSettings s : settings) {
+      limiters[s.getThrottleType().ordinal()] = new RateLimiter(s.getLimit(), s.getTimeUnit());
+    }
+  }
+
+  /**
+   * @return the throttles, to tell whether they changed
+   */
+  Set<QuotaSettings> getSettings() {
+    return settings;
+  }
+
+  /**
+   * @throws ThrottlingException if the requests would exceed a throttle now
+   */
+  void checkQuota(final long writeReqs, final long writeSize, final long readReqs,
+      final long readSize) throws ThrottlingException {
+    check(ThrottleType.REQUEST_NUMBER, writeReqs + readReqs);
+    check(ThrottleType.REQUEST_SIZE, writeSize + readSize);
+    check(ThrottleType.WRITE_NUMBER, writeReqs);
+    check(ThrottleType.WRITE_SIZE, writeSize);
+    check(ThrottleType.READ_NUMBER, readReqs);
+    check(ThrottleType.READ_SIZE, readSize);
+  }
+
+  private void check(final ThrottleType type, final long amount) throws ThrottlingException {
+    RateLimiter limiter = limiters[type.ordinal()];
+    if (limiter == null || amount <= 0) return;
+    long wait = limiter.waitInterval(amount);
+    if (wait > 0) {
+      throw new ThrottlingException(type, owner, wait);
+    }
+  }
+
+  /**
+   * Takes the requests from the throttles, after {@link #checkQuota(long, long, long, long)}.
+   */
+  void grabQuota(final long writeReqs, final long writeSize, final long readReqs,
+      final long readSize) {
+    consume(ThrottleType.REQUEST_NUMBER, writeReqs + readReqs);
+    consume(ThrottleType.REQUEST_SIZE, writeSize + readSize);
+    consume(ThrottleType.WRITE_NUMBER, writeReqs);
+    consume(ThrottleType.WRITE_SIZE, writeSize);
+    consume(ThrottleType.READ_NUMBER, readReqs);
+    consume(ThrottleType.READ_SIZE, readSize);
+  }
+
+  /**
+   * Corrects the bytes written taken by {@link #grabQuota(long, long, long, long)}.
+   * @param delta real size minus the estimated one
+   */
+  void consumeWrite(final long delta) {
+    consume(ThrottleType.REQUEST_SIZE, delta);
+    consume(ThrottleType.WRITE_SIZE, delta);
+  }
+
+  /**
+   * Corrects the bytes read taken by {@link #grabQuota(long, long, long, long)}.
+   * @param delta real size minus the estimated one
+   */
+  void consumeRead(final long delta) {
+    consume(ThrottleType.REQUEST_SIZE, delta);
+    consume(ThrottleType.READ_SIZE, delta);
+  }
+
+  private void consume(final ThrottleType type, final long amount) {
+    RateLimiter limiter = limiters[type.ordinal()];
+    if (limiter != null && amount != 0) {
+      limiter.consume(amount);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return owner + " " + settings;
+  }
+}
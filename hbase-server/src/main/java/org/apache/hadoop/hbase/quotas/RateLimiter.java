@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+/**
+ * Token bucket holding up to one time unit's worth of the limit, and refilling continuously at
+ * the limit over the time unit. Consuming may take the bucket below empty, when a request turns
+ * out larger than estimated; later requests then wait for the debt to be refilled.
+ */
+@InterfaceAudience.Private
+class RateLimiter {
+  private final long limit;
+  private final double unitMillis;
+  private double avail;
+  private long lastRefill;
+
+  RateLimiter(final long limit, final TimeUnit timeUnit) {
+    this.limit = limit;
+    this.unitMillis = timeUnit.toMillis(1);
+    this.avail = limit;
+    this.lastRefill = EnvironmentEdgeManager.currentTimeMillis();
+  }
+
+  private void refill() {
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    if (now > lastRefill) {
+      avail = Math.min(limit, avail + (now - lastRefill) * limit / unitMillis);
+      lastRefill = now;
+    }
+  }
+
+  /**
+   * @return ms until the amount is available, 0 if it is now. An amount above the limit is
+   *         available once the bucket is full, so it is not refused forever.
+   */
+  synchronized long waitInterval(final long amount) {
+    refill();
+    double needed = Math.min(amount, limit) - avail;
+    if (needed <= 0) return 0;
+    return (long) Math.ceil(needed * unitMillis / limit);
+  }
+
+  /**
+   * Takes the amount from the bucket; a negative amount gives back what was taken in excess.
+   */
+  synchronized void consume(final long amount) {
+    refill();
+    avail = Math.min(limit, avail - amount);
+  }
+
+  long getLimit() {
+    return limit;
+  }
+}
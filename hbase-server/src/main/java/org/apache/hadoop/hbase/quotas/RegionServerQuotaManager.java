@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.ipc.RequestContext;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.RegionServerServices;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * Enforces the quotas of the quota table on the requests of a region server: an operation
+ * checks its quota before it runs, and is refused with a {@link ThrottlingException} telling
+ * the client when to retry if a throttle of its user, its table or the namespace of its table
+ * is exhausted. Requests on system tables and from outside of an RPC are never throttled.
+ *
+ * <p>Nothing is done unless <code>hbase.quota.enabled</code> is set.
+ */
+@InterfaceAudience.Private
+public class RegionServerQuotaManager {
+  private static final Log LOG = LogFactory.getLog(RegionServerQuotaManager.class);
+
+  private final RegionServerServices rsServices;
+  private QuotaCache quotaCache = null;
+
+  public RegionServerQuotaManager(final RegionServerServices rsServices) {
+    this.rsServices = rsServices;
+  }
+
+  public void start(final Thread.UncaughtExceptionHandler handler) {
+    if (!QuotaTableUtil.isQuotaEnabled(rsServices.getConfiguration())) {
+      LOG.info("Quota support disabled");
+      return;
+    }
+    LOG.info("Initializing quota support");
+    quotaCache = new QuotaCache(rsServices.getConfiguration(), rsServices);
+    Threads.setDaemonThreadRunning(quotaCache.getThread(),
+      rsServices.getServerName().toShortString() + ".quotaCache", handler);
+  }
+
+  public void stop() {
+    if (quotaCache != null) {
+      quotaCache.interrupt();
+    }
+  }
+
+  public boolean isQuotaEnabled() {
+    return quotaCache != null;
+  }
+
+  /**
+   * Checks the quota of a single get, mutation or scan call.
+   * @return the quota to report the results to and close once the operation is done
+   * @throws ThrottlingException if the operation must not run now
+   */
+  public OperationQuota checkQuota(final HRegion region,
+      final OperationQuota.OperationType type) throws ThrottlingException {
+    switch (type) {
+      case GET: return checkQuota(region, 0, 1, 0);
+      case SCAN: return checkQuota(region, 0, 0, 1);
+      default: return checkQuota(region, 1, 0, 0);
+    }
+  }
+
+  /**
+   * Checks the quota of the actions of a multi on a region.
+   * @return the quota to report the results to and close once the operation is done
+   * @throws ThrottlingException if the operation must not run now
+   */
+  public OperationQuota checkQuota(final HRegion region,
+      final List<ClientProtos.Action> actions) throws ThrottlingException {
+    int numWrites = 0;
+    int numReads = 0;
+    for (ClientProtos.Action action : actions) {
+      if (action.hasMutation()) {
+        numWrites++;
+      } else if (action.hasGet()) {
+        numReads++;
+      }
+    }
+    return checkQuota(region, numWrites, numReads, 0);
+  }
+
+  private OperationQuota checkQuota(final HRegion region, final int numWrites,
+      final int numReads, final int numScans) throws ThrottlingException {
+    if (quotaCache == null) return OperationQuota.NOOP;
+    TableName table = region.getRegionInfo().getTable();
+    if (table.isSystemTable() || !RequestContext.isInRequestContext()) {
+      return OperationQuota.NOOP;
+    }
+    List<QuotaLimiter> limiters = quotaCache.getLimiters(RequestContext.getRequestUserName(),
+      table);
+    if (limiters.isEmpty()) return OperationQuota.NOOP;
+    OperationQuota quota = new OperationQuota(limiters);
+    try {
+      quota.checkQuota(numWrites, numReads, numScans);
+    } catch (ThrottlingException e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Throttling " + RequestContext.getRequestUserName() + " on " + table + ": " +
+          e.getMessage());
+      }
+      throw e;
+    }
+    return quota;
+  }
+}
@@ -24,7 +24,9 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -32,14 +34,19 @@ import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.RemoteExceptionHandler;
+import org.apache.hadoop.hbase.monitoring.MonitoredTask;
+import org.apache.hadoop.hbase.monitoring.TaskMonitor;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionThroughputController;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.util.StringUtils;
@@ -53,6 +60,24 @@ import com.google.common.base.Preconditions;
 public class CompactSplitThread implements CompactionRequestor {
   static final Log LOG = LogFactory.getLog(CompactSplitThread.class);
 
+  /**
+   * Whether the compaction pools share their threads fairly between tables and regions, see
+   * {@link FairCompactionQueue}. Otherwise requests are served strictly by priority.
+   */
+  public static final String FAIR_QUEUE_KEY = "hbase.regionserver.compaction.queue.fair";
+
+  /**
+   * Table attribute giving the share of the compaction threads a table gets relative to
+   * other tables while both have compactions queued.
+   */
+  public static final String COMPACTION_WEIGHT_KEY = "hbase.regionserver.compaction.weight";
+
+  /**
+   * Whether a store that reaches the blocking file count may stop a running, system requested
+   * major compaction of another store when all threads of its pool are busy.
+   */
+  public static final String PREEMPT_MAJOR_KEY = "hbase.regionserver.compaction.preempt.major";
+
   private final HRegionServer server;
   private final Configuration conf;
 
@@ -61,6 +86,14 @@ public class CompactSplitThread implements CompactionRequestor {
   private final ThreadPoolExecutor splits;
   private final ThreadPoolExecutor mergePool;
 
+  private final CompactionThroughputController throughputController;
+
+  private final boolean preemptMajors;
+  /** Compactions running on the compaction pools, with the pool running them */
+  private final Map<CompactionRunner, ThreadPoolExecutor> runningCompactions =
+      new ConcurrentHashMap<CompactionRunner, ThreadPoolExecutor>();
+  private final AtomicLong preemptedCompactions = new AtomicLong();
+
   /**
    * Splitting should not take place if the total number of regions exceed this.
    * This is not a hard limit to the number of regions but it is a guideline to
@@ -87,9 +120,11 @@ public class CompactSplitThread implements CompactionRequestor {
     Preconditions.checkArgument(largeThreads > 0 && smallThreads > 0);
 
     final String n = Thread.currentThread().getName();
+    boolean fair = conf.getBoolean(FAIR_QUEUE_KEY, true);
+    this.preemptMajors = conf.getBoolean(PREEMPT_MAJOR_KEY, false);
 
     this.largeCompactions = new ThreadPoolExecutor(largeThreads, largeThreads,
-        60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+        60, TimeUnit.SECONDS, createCompactionQueue(fair),
         new ThreadFactory() {
           @Override
           public Thread newThread(Runnable r) {
@@ -100,7 +135,7 @@ public class CompactSplitThread implements CompactionRequestor {
       });
     this.largeCompactions.setRejectedExecutionHandler(new Rejection());
     this.smallCompactions = new ThreadPoolExecutor(smallThreads, smallThreads,
-        60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+        60, TimeUnit.SECONDS, createCompactionQueue(fair),
         new ThreadFactory() {
           @Override
           public Thread newThread(Runnable r) {
@@ -121,6 +156,7 @@ public class CompactSplitThread implements CompactionRequestor {
             return t;
           }
       });
+    this.throughputController = new CompactionThroughputController(conf);
     int mergeThreads = conf.getInt("hbase.regionserver.thread.merge", 1);
     this.mergePool = (ThreadPoolExecutor) Executors.newFixedThreadPool(
         mergeThreads, new ThreadFactory() {
@@ -133,6 +169,12 @@ public class CompactSplitThread implements CompactionRequestor {
         });
   }
 
+  private static BlockingQueue<Runnable> createCompactionQueue(boolean fair) {
+    // user requests and blocking stores go first either way
+    return fair ? new FairCompactionQueue(Store.PRIORITY_USER)
+        : new PriorityBlockingQueue<Runnable>();
+  }
+
   @Override
   public String toString() {
     return "compaction_queue=("
@@ -313,7 +355,10 @@ public class CompactSplitThread implements CompactionRequestor {
     long size = selectNow ? compaction.getRequest().getSize() : 0;
     ThreadPoolExecutor pool = (!selectNow && s.throttleCompaction(size))
       ? largeCompactions : smallCompactions;
-    pool.execute(new CompactionRunner(s, r, compaction, pool));
+    // Files picked now for a plain request are picked again when it runs; only custom and
+    // user requests must compact exactly what they asked for.
+    boolean reselect = selectNow && request == null && priority != Store.PRIORITY_USER;
+    execute(pool, new CompactionRunner(s, r, compaction, pool, reselect ? priority : null));
     if (LOG.isDebugEnabled()) {
       String type = (pool == smallCompactions) ? "Small " : "Large ";
       LOG.debug(type + "Compaction requested: " + (selectNow ? compaction.toString() : "system")
@@ -339,6 +384,38 @@ public class CompactSplitThread implements CompactionRequestor {
     return compaction;
   }
 
+  /**
+   * Queues the runner on the pool. If it is for a store that is blocking updates and the pool
+   * has no idle thread, a less urgent major compaction may be asked to give up its thread.
+   */
+  private void execute(ThreadPoolExecutor pool, CompactionRunner runner) {
+    runner.queued(pool == largeCompactions ? "large" : "small");
+    pool.execute(runner);
+    if (!preemptMajors || runner.queuedPriority > 0
+        || pool.getActiveCount() < pool.getMaximumPoolSize()) {
+      return;
+    }
+    CompactionRunner victim = null;
+    for (Map.Entry<CompactionRunner, ThreadPoolExecutor> e : runningCompactions.entrySet()) {
+      CompactionRunner running = e.getKey();
+      CompactionContext compaction = running.compaction;
+      if (e.getValue() != pool || running.store == runner.store || compaction == null) continue;
+      CompactionRequest request = compaction.getRequest();
+      if (!request.isMajor() || request.isStopRequested() || running.queuedPriority <= 0
+          || request.getPriority() == Store.PRIORITY_USER) {
+        continue;
+      }
+      if (victim == null || running.queuedPriority > victim.queuedPriority) {
+        victim = running;
+      }
+    }
+    if (victim != null) {
+      LOG.info("Preempting major compaction " + victim + " in favor of blocking " + runner);
+      victim.compaction.getRequest().requestStop();
+      preemptedCompactions.incrementAndGet();
+    }
+  }
+
   /**
    * Only interrupt once it's done with a run through the work loop.
    */
@@ -390,6 +467,20 @@ public class CompactSplitThread implements CompactionRequestor {
     return smallCompactions.getQueue().size();
   }
 
+  /**
+   * @return the number of major compactions stopped to let a blocking store compact
+   */
+  public long getPreemptedCompactionCount() {
+    return preemptedCompactions.get();
+  }
+
+  /**
+   * @return the controller limiting the write rate of the compactions of this server
+   */
+  public CompactionThroughputController getCompactionThroughputController() {
+    return throughputController;
+  }
+
 
   private boolean shouldSplitRegion() {
     return (regionSplitLimit > server.getNumberOfOnlineRegions());
@@ -402,15 +493,22 @@ public class CompactSplitThread implements CompactionRequestor {
     return this.regionSplitLimit;
   }
 
-  private class CompactionRunner implements Runnable, Comparable<CompactionRunner> {
+  private class CompactionRunner implements Runnable, Comparable<CompactionRunner>,
+      FairCompactionQueue.Schedulable {
     private final Store store;
     private final HRegion region;
-    private CompactionContext compaction;
-    private int queuedPriority;
+    private final String tableName;
+    private final String regionName;
+    private final int weight;
+    private volatile CompactionContext compaction;
+    private volatile int queuedPriority;
     private ThreadPoolExecutor parent;
+    /** Priority to select files with when the runner starts, null to keep the selection */
+    private Integer reselectPriority;
+    private MonitoredTask status;
 
     public CompactionRunner(Store store, HRegion region,
-        CompactionContext compaction, ThreadPoolExecutor parent) {
+        CompactionContext compaction, ThreadPoolExecutor parent, Integer reselectPriority) {
       super();
       this.store = store;
       this.region = region;
@@ -418,6 +516,52 @@ public class CompactSplitThread implements CompactionRequestor {
       this.queuedPriority = (this.compaction == null)
           ? store.getCompactPriority() : compaction.getRequest().getPriority();
       this.parent = parent;
+      this.reselectPriority = reselectPriority;
+      HRegionInfo hri = region.getRegionInfo();
+      this.tableName = hri == null ? "" : hri.getTable().getNameAsString();
+      this.regionName = hri == null ? "" : hri.getEncodedName();
+      int w = 1;
+      if (region.getTableDesc() != null
+          && region.getTableDesc().getValue(COMPACTION_WEIGHT_KEY) != null) {
+        try {
+          w = Integer.parseInt(region.getTableDesc().getValue(COMPACTION_WEIGHT_KEY));
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring invalid " + COMPACTION_WEIGHT_KEY + " of table " + tableName, e);
+        }
+      }
+      this.weight = Math.max(1, w);
+    }
+
+    @Override
+    public String getTableName() {
+      return tableName;
+    }
+
+    @Override
+    public String getRegionName() {
+      return regionName;
+    }
+
+    @Override
+    public int getWeight() {
+      return weight;
+    }
+
+    @Override
+    public int getPriority() {
+      return queuedPriority;
+    }
+
+    /**
+     * Shows the runner as waiting in the given queue until it starts.
+     */
+    void queued(String queueName) {
+      if (status == null) {
+        status = TaskMonitor.get().createStatus("Queued compaction of store " + store
+            + " in region " + regionName);
+      }
+      status.setStatus("Waiting in " + queueName + " compaction queue with priority "
+          + queuedPriority);
     }
 
     @Override
@@ -429,18 +573,30 @@ public class CompactSplitThread implements CompactionRequestor {
     @Override
     public void run() {
       Preconditions.checkNotNull(server);
+      if (status != null) {
+        status.markComplete("Dequeued");
+        status = null;
+      }
       if (server.isStopped()
           || (region.getTableDesc() != null && !region.getTableDesc().isCompactionEnabled())) {
         return;
       }
+      if (this.compaction != null && this.reselectPriority != null) {
+        // Flushes and other compactions may have changed the store while we were in queue,
+        // drop the stale selection and make a new one below.
+        this.store.cancelRequestedCompaction(this.compaction);
+        this.compaction = null;
+      }
       // Common case - system compaction without a file selection. Select now.
       if (this.compaction == null) {
         int oldPriority = this.queuedPriority;
-        this.queuedPriority = this.store.getCompactPriority();
+        this.queuedPriority = (this.reselectPriority == null
+            || this.reselectPriority == Store.NO_PRIORITY)
+            ? this.store.getCompactPriority() : this.reselectPriority;
         if (this.queuedPriority > oldPriority) {
           // Store priority decreased while we were in queue (due to some other compaction?),
           // requeue with new priority to avoid blocking potential higher priorities.
-          this.parent.execute(this);
+          execute(this.parent, this);
           return;
         }
         try {
@@ -460,14 +616,16 @@ public class CompactSplitThread implements CompactionRequestor {
           this.store.cancelRequestedCompaction(this.compaction);
           this.compaction = null;
           this.parent = pool;
-          this.parent.execute(this);
+          execute(this.parent, this);
           return;
         }
+        this.reselectPriority = null;
       }
       // Finally we can compact something.
       assert this.compaction != null;
 
       this.compaction.getRequest().beforeExecute();
+      runningCompactions.put(this, this.parent);
       try {
         // Note: please don't put single-compaction logic here;
         //       put it into region/store/etc. This is CST logic.
@@ -476,7 +634,10 @@ public class CompactSplitThread implements CompactionRequestor {
         long now = EnvironmentEdgeManager.currentTimeMillis();
         LOG.info(((completed) ? "Completed" : "Aborted") + " compaction: " +
               this + "; duration=" + StringUtils.formatTimeDiff(now, start));
-        if (completed) {
+        if (!completed && compaction.getRequest().isStopRequested()) {
+          // preempted by a blocking store; the files are still due, so come back later
+          requestSystemCompaction(region, store, "Preempted compaction");
+        } else if (completed) {
           // degenerate case: blocked regions require recursive enqueues
           if (store.getCompactPriority() <= 0) {
             requestSystemCompaction(region, store, "Recursive enqueue");
@@ -496,6 +657,7 @@ public class CompactSplitThread implements CompactionRequestor {
         LOG.error("Compaction failed " + this, ex);
         server.checkFileSystem();
       } finally {
+        runningCompactions.remove(this);
         LOG.debug("CompactSplitThread Status: " + CompactSplitThread.this);
       }
       this.compaction.getRequest().afterExecute();
@@ -530,6 +692,9 @@ public class CompactSplitThread implements CompactionRequestor {
       if (runnable instanceof CompactionRunner) {
         CompactionRunner runner = (CompactionRunner)runnable;
         LOG.debug("Compaction Rejected: " + runner);
+        if (runner.status != null) {
+          runner.status.abort("Compaction rejected");
+        }
         runner.store.cancelRequestedCompaction(runner.compaction);
       }
     }
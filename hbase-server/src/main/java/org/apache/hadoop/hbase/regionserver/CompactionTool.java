@@ -57,6 +57,7 @@ import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.hadoop.hbase.regionserver.HRegionFileSystem;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.OffloadingCompactor;
 import org.apache.hadoop.hbase.mapreduce.JobUtil;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -71,6 +72,8 @@ import org.apache.hadoop.hbase.util.FSUtils;
  *  <li>region folder (all families in the region will be compacted)
  *  <li>family folder (the store files will be compacted)
  * </ul>
+ * It is also the compaction worker process of {@link OffloadingCompactor}, started with
+ * <code>-request</code> on a compaction request written by a region server.
  */
 @InterfaceAudience.Public
 public class CompactionTool extends Configured implements Tool {
@@ -127,6 +130,25 @@ public class CompactionTool extends Configured implements Tool {
       }
     }
 
+    /**
+     * Execute a compaction request of a region server, leaving the new files in the region
+     * tmp dir for the region server to commit.
+     *
+     * @param requestFile Request written by {@link OffloadingCompactor}, in the region tmp dir.
+     */
+    public void compactRequest(final Path requestFile) throws IOException {
+      Path regionDir = requestFile.getParent().getParent();
+      Path tableDir = regionDir.getParent();
+      HTableDescriptor htd = FSTableDescriptors.getTableDescriptorFromFs(fs, tableDir);
+      HRegionInfo hri = HRegionFileSystem.loadRegionInfoFileContent(fs, regionDir);
+      String familyName = OffloadingCompactor.getRequestFamily(fs, requestFile);
+      HStore store = getStore(conf, fs, tableDir, htd, hri, familyName, null);
+      LOG.info("Compact table=" + htd.getTableName() +
+        " region=" + hri.getRegionNameAsString() +
+        " family=" + familyName + " request=" + requestFile.getName());
+      OffloadingCompactor.executeRequest(conf, store, requestFile);
+    }
+
     private void compactTable(final Path tableDir, final boolean compactOnce, final boolean major)
         throws IOException {
       HTableDescriptor htd = FSTableDescriptors.getTableDescriptorFromFs(fs, tableDir);
@@ -174,18 +196,23 @@ public class CompactionTool extends Configured implements Tool {
     }
 
     /**
-     * Create a "mock" HStore that uses the tmpDir specified by the user and
-     * the store dir to compact as source.
+     * Create a "mock" HStore that uses the tmpDir specified by the user, or the region tmp dir
+     * if null, and the store dir to compact as source.
      */
     private static HStore getStore(final Configuration conf, final FileSystem fs,
         final Path tableDir, final HTableDescriptor htd, final HRegionInfo hri,
         final String familyName, final Path tempDir) throws IOException {
-      HRegionFileSystem regionFs = new HRegionFileSystem(conf, fs, tableDir, hri) {
-        @Override
-        public Path getTempDir() {
-          return tempDir;
-        }
-      };
+      HRegionFileSystem regionFs;
+      if (tempDir == null) {
+        regionFs = new HRegionFileSystem(conf, fs, tableDir, hri);
+      } else {
+        regionFs = new HRegionFileSystem(conf, fs, tableDir, hri) {
+          @Override
+          public Path getTempDir() {
+            return tempDir;
+          }
+        };
+      }
       HRegion region = new HRegion(regionFs, null, conf, htd, null);
       return new HStore(region, htd.getFamily(Bytes.toBytes(familyName)), conf);
     }
@@ -395,6 +422,7 @@ public class CompactionTool extends Configured implements Tool {
     boolean compactOnce = false;
     boolean major = false;
     boolean mapred = false;
+    Path requestFile = null;
 
     Configuration conf = getConf();
     FileSystem fs = FileSystem.get(conf);
@@ -408,6 +436,8 @@ public class CompactionTool extends Configured implements Tool {
           major = true;
         } else if (opt.equals("-mapred")) {
           mapred = true;
+        } else if (opt.equals("-request") && i + 1 < args.length) {
+          requestFile = new Path(args[++i]);
         } else if (!opt.startsWith("-")) {
           Path path = new Path(opt);
           FileStatus status = fs.getFileStatus(path);
@@ -425,6 +455,11 @@ public class CompactionTool extends Configured implements Tool {
       return 1;
     }
 
+    if (requestFile != null) {
+      new CompactionWorker(fs, conf).compactRequest(requestFile);
+      return 0;
+    }
+
     if (toCompactDirs.size() == 0) {
       printUsage("No directories to compact specified.");
       return 1;
@@ -453,6 +488,8 @@ public class CompactionTool extends Configured implements Tool {
     System.err.println(" mapred         Use MapReduce to run compaction.");
     System.err.println(" compactOnce    Execute just one compaction step. (default: while needed)");
     System.err.println(" major          Trigger major compaction.");
+    System.err.println(" request FILE   Run a compaction request of a region server, see");
+    System.err.println("                " + OffloadingCompactor.class.getName());
     System.err.println();
     System.err.println("Note: -D properties will be applied to the conf used. ");
     System.err.println("For example: ");
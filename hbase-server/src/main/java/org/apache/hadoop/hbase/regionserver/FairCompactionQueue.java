@@ -0,0 +1,355 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Work queue of the compaction pools that shares the threads between tables, and between the
+ * regions of a table, by weighted fair queuing.
+ *
+ * <p>Every table with queued work has a virtual start tag; the table with the smallest tag is
+ * served next and its tag then grows by 1/weight, so a table of weight 2 gets twice the
+ * compactions of a table of weight 1 while both have work queued. Regions of a table are
+ * served the same way with equal weights, and the requests of one region come out in their
+ * natural (priority) order. Tables and regions that run out of work are forgotten, and start
+ * again at the current virtual time when they queue more, so idling does not build up credit.
+ *
+ * <p>Requests at or above {@link #urgentPriority} (i.e. with a priority number no larger) skip
+ * the fair share and are served first, most urgent first: a store that is blocking updates must
+ * not wait for its turn.
+ */
+@InterfaceAudience.Private
+class FairCompactionQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+  /**
+   * Work that can be shared fairly; other runnables all belong to a single anonymous region.
+   */
+  interface Schedulable {
+    /** @return name of the table the work is for */
+    String getTableName();
+
+    /** @return name of the region the work is for */
+    String getRegionName();
+
+    /** @return share of the table relative to other tables, at least 1 */
+    int getWeight();
+
+    /** @return priority of the work; lower values are more urgent */
+    int getPriority();
+  }
+
+  private static class RegionShare {
+    final TableShare table;
+    final PriorityQueue<Runnable> queue = new PriorityQueue<Runnable>();
+    double tag;
+
+    RegionShare(TableShare table, double tag) {
+      this.table = table;
+      this.tag = tag;
+    }
+  }
+
+  private static class TableShare {
+    final Map<String, RegionShare> regions = new LinkedHashMap<String, RegionShare>();
+    double tag;
+    double regionTime;
+    int weight = 1;
+
+    TableShare(double tag) {
+      this.tag = tag;
+    }
+  }
+
+  private final int urgentPriority;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Map<String, TableShare> tables = new LinkedHashMap<String, TableShare>();
+  private double virtualTime = 0;
+  private int count = 0;
+
+  /**
+   * @param urgentPriority requests with this or a more urgent priority are served before any
+   *          fair sharing takes place
+   */
+  FairCompactionQueue(int urgentPriority) {
+    this.urgentPriority = urgentPriority;
+  }
+
+  @Override
+  public boolean offer(Runnable r) {
+    if (r == null) throw new NullPointerException();
+    String table = "", region = "";
+    int weight = 1;
+    if (r instanceof Schedulable) {
+      Schedulable s = (Schedulable) r;
+      table = s.getTableName() == null ? "" : s.getTableName();
+      region = s.getRegionName() == null ? "" : s.getRegionName();
+      weight = Math.max(1, s.getWeight());
+    }
+    lock.lock();
+    try {
+      TableShare ts = tables.get(table);
+      if (ts == null) {
+        ts = new TableShare(virtualTime);
+        tables.put(table, ts);
+      }
+      ts.weight = weight;
+      RegionShare rs = ts.regions.get(region);
+      if (rs == null) {
+        rs = new RegionShare(ts, ts.regionTime);
+        ts.regions.put(region, rs);
+      }
+      rs.queue.add(r);
+      ++count;
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(Runnable r) {
+    offer(r);
+  }
+
+  @Override
+  public boolean offer(Runnable r, long timeout, TimeUnit unit) {
+    return offer(r);
+  }
+
+  @Override
+  public Runnable poll() {
+    lock.lock();
+    try {
+      return count == 0 ? null : dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        if (nanos <= 0) return null;
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable peek() {
+    lock.lock();
+    try {
+      return count == 0 ? null : select().queue.peek();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    lock.lock();
+    try {
+      Iterator<TableShare> tit = tables.values().iterator();
+      while (tit.hasNext()) {
+        TableShare ts = tit.next();
+        Iterator<RegionShare> rit = ts.regions.values().iterator();
+        while (rit.hasNext()) {
+          RegionShare rs = rit.next();
+          if (rs.queue.remove(o)) {
+            --count;
+            if (rs.queue.isEmpty()) rit.remove();
+            if (ts.regions.isEmpty()) tit.remove();
+            return true;
+          }
+        }
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> c, int maxElements) {
+    if (c == this) throw new IllegalArgumentException();
+    lock.lock();
+    try {
+      int n = 0;
+      while (count > 0 && n < maxElements) {
+        c.add(dequeue());
+        ++n;
+      }
+      return n;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return a snapshot of the queued work, in no particular order
+   */
+  @Override
+  public Iterator<Runnable> iterator() {
+    final List<Runnable> snapshot = new ArrayList<Runnable>();
+    lock.lock();
+    try {
+      for (TableShare ts : tables.values()) {
+        for (RegionShare rs : ts.regions.values()) {
+          snapshot.addAll(rs.queue);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    return new Iterator<Runnable>() {
+      private int next = 0;
+      private Runnable last = null;
+
+      @Override
+      public boolean hasNext() {
+        return next < snapshot.size();
+      }
+
+      @Override
+      public Runnable next() {
+        if (next >= snapshot.size()) throw new NoSuchElementException();
+        last = snapshot.get(next++);
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) throw new IllegalStateException();
+        FairCompactionQueue.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+  /**
+   * Picks the region whose head should run next. Must hold the lock, with work queued.
+   */
+  private RegionShare select() {
+    RegionShare urgent = null;
+    int urgentHeadPriority = 0;
+    TableShare fairTable = null;
+    for (TableShare ts : tables.values()) {
+      for (RegionShare rs : ts.regions.values()) {
+        Runnable head = rs.queue.peek();
+        int priority = (head instanceof Schedulable)
+            ? ((Schedulable) head).getPriority() : Integer.MAX_VALUE;
+        if (priority <= urgentPriority && (urgent == null || priority < urgentHeadPriority)) {
+          urgent = rs;
+          urgentHeadPriority = priority;
+        }
+      }
+      if (fairTable == null || ts.tag < fairTable.tag) {
+        fairTable = ts;
+      }
+    }
+    if (urgent != null) return urgent;
+    RegionShare fairRegion = null;
+    for (RegionShare rs : fairTable.regions.values()) {
+      if (fairRegion == null || rs.tag < fairRegion.tag) {
+        fairRegion = rs;
+      }
+    }
+    return fairRegion;
+  }
+
+  /**
+   * Removes the next work and charges it to its table and region. Must hold the lock, with
+   * work queued.
+   */
+  private Runnable dequeue() {
+    RegionShare rs = select();
+    TableShare ts = rs.table;
+    Runnable r = rs.queue.poll();
+    --count;
+    virtualTime = Math.max(virtualTime, ts.tag);
+    ts.tag += 1.0 / ts.weight;
+    ts.regionTime = Math.max(ts.regionTime, rs.tag);
+    rs.tag += 1;
+    if (rs.queue.isEmpty()) {
+      ts.regions.values().remove(rs);
+      if (ts.regions.isEmpty()) {
+        tables.values().remove(ts);
+      }
+    }
+    if (count == 0) {
+      virtualTime = 0;
+    }
+    return r;
+  }
+}
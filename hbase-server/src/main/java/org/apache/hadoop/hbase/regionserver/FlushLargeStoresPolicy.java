@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+/**
+ * A {@link FlushPolicy} that only flushes the stores worth a flush of their own: those whose
+ * memstore is above a lower bound, those holding an edit older than the periodic flush
+ * interval, and those that have not been flushed for more than the changes allowed between
+ * flushes. Small and cold families then stay in memory until they have grown, instead of
+ * being written out as many tiny files on every flush of their region. If no store
+ * qualifies, all of them are flushed, so a flush always frees memory.
+ */
+@InterfaceAudience.Private
+public class FlushLargeStoresPolicy extends FlushPolicy {
+  private static final Log LOG = LogFactory.getLog(FlushLargeStoresPolicy.class);
+
+  /**
+   * Memstore size above which a store is flushed on its own. By default, the larger of the
+   * region flush size divided among the families and
+   * {@link #DEFAULT_HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND}.
+   */
+  public static final String HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND =
+      "hbase.hregion.percolumnfamilyflush.size.lower.bound";
+
+  static final long DEFAULT_HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND = 1024 * 1024 * 16L;
+
+  private long flushSizeLowerBound;
+  private long flushCheckInterval;
+  private long flushPerChanges;
+
+  @Override
+  protected void configureForRegion(HRegion region) {
+    super.configureForRegion(region);
+    int familyNumber = Math.max(1, region.getTableDesc().getFamilies().size());
+    long lowerBound = getConf().getLong(HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND, -1);
+    if (lowerBound < 0) {
+      lowerBound = Math.max(region.memstoreFlushSize / familyNumber,
+          DEFAULT_HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND);
+    }
+    this.flushSizeLowerBound = lowerBound;
+    this.flushCheckInterval = getConf().getInt(HRegion.MEMSTORE_PERIODIC_FLUSH_INTERVAL,
+        HRegion.DEFAULT_CACHE_FLUSH_INTERVAL);
+    this.flushPerChanges = getConf().getLong(HRegion.MEMSTORE_FLUSH_PER_CHANGES,
+        HRegion.DEFAULT_FLUSH_PER_CHANGES);
+  }
+
+  @Override
+  public Collection<Store> selectStoresToFlush() {
+    Collection<Store> stores = region.getStores().values();
+    List<Store> specificStoresToFlush = new ArrayList<Store>(stores.size());
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    long sequenceId = region.getSequenceId().get();
+    for (Store store : stores) {
+      if (shouldFlush(store, now, sequenceId)) {
+        specificStoresToFlush.add(store);
+      }
+    }
+    if (specificStoresToFlush.isEmpty()) {
+      // nothing stands out, flush everything rather than not freeing any memory
+      return stores;
+    }
+    return specificStoresToFlush;
+  }
+
+  private boolean shouldFlush(Store store, long now, long sequenceId) {
+    long flushableSize = store.getFlushableSize();
+    if (flushableSize <= 0) {
+      return false;
+    }
+    if (flushableSize > flushSizeLowerBound) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Flushing " + store + " of " + region + ", memstore size " + flushableSize
+            + " is above the lower bound " + flushSizeLowerBound);
+      }
+      return true;
+    }
+    if (flushCheckInterval > 0 && store.timeOfOldestEdit() < now - flushCheckInterval) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Flushing " + store + " of " + region + ", it has edits older than "
+            + flushCheckInterval + "ms");
+      }
+      return true;
+    }
+    long lastFlushSeqId = region.getLastStoreFlushSeqId(store.getFamily().getName());
+    if (sequenceId - lastFlushSeqId > flushPerChanges) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Flushing " + store + " of " + region + ", not flushed since sequenceid "
+            + lastFlushSeqId);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  long getFlushSizeLowerBound() {
+    return flushSizeLowerBound;
+  }
+}
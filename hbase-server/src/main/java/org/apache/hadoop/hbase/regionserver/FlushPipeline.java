@@ -0,0 +1,251 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.regionserver.compactions.Compactor;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * Runs a flush as a pipeline, so that reading the snapshot, hashing the keys into the Bloom
+ * filters and building, compressing and writing out the blocks overlap instead of taking turns
+ * in the flushing thread.
+ * <p>
+ * The flushing thread scans the snapshot and hands the cells in batches to one queue per
+ * stage. When the sink is a {@link StoreFile.Writer}, one stage adds the cells to its Bloom
+ * filters and another appends them to the file, i.e. encodes, compresses and checksums the
+ * blocks and builds the block index; other sinks get a single stage. The queues are bounded,
+ * so a slow stage holds back the scan rather than buffering the snapshot twice over. The write
+ * to HDFS is the last stage: the HDFS client already sends the written packets from its own
+ * thread.
+ * <p>
+ * Enabled with {@link #ENABLED_KEY}.
+ */
+@InterfaceAudience.Private
+class FlushPipeline {
+  /** Whether flushes run as a pipeline */
+  static final String ENABLED_KEY = "hbase.hstore.flush.pipeline.enabled";
+  /** How many batches of cells each stage may have queued */
+  static final String QUEUE_SIZE_KEY = "hbase.hstore.flush.pipeline.queue.size";
+
+  private static final int POLL_INTERVAL_MS = 100;
+
+  /** The end of the cells; compared by reference. */
+  private static final List<KeyValue> END = new ArrayList<KeyValue>(0);
+
+  /** Threads of the stages, shared by all the stores of the process. */
+  private static final ExecutorService STAGE_POOL =
+      Executors.newCachedThreadPool(Threads.newDaemonThreadFactory("FlushPipeline"));
+
+  /** A step of writing the cells out. */
+  interface Stage {
+    void append(KeyValue kv) throws IOException;
+  }
+
+  private final int queueSize;
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+  private volatile boolean aborted = false;
+
+  FlushPipeline(Configuration conf) {
+    this.queueSize = Math.max(1, conf.getInt(QUEUE_SIZE_KEY, 100));
+  }
+
+  static boolean isEnabled(Configuration conf) {
+    return conf.getBoolean(ENABLED_KEY, false);
+  }
+
+  /**
+   * @return the stages writing the cells to the sink
+   */
+  static List<Stage> createStages(final Compactor.CellSink sink) {
+    List<Stage> stages = new ArrayList<Stage>(2);
+    if (sink instanceof StoreFile.Writer) {
+      final StoreFile.Writer writer = (StoreFile.Writer) sink;
+      stages.add(new Stage() {
+        @Override
+        public void append(KeyValue kv) throws IOException {
+          writer.appendToBloomFilters(kv);
+        }
+      });
+      stages.add(new Stage() {
+        @Override
+        public void append(KeyValue kv) throws IOException {
+          writer.appendToFile(kv);
+        }
+      });
+    } else {
+      stages.add(new Stage() {
+        @Override
+        public void append(KeyValue kv) throws IOException {
+          sink.append(kv);
+        }
+      });
+    }
+    return stages;
+  }
+
+  /**
+   * Writes all the cells of the scanner through the stages. Returns only when the stages are
+   * done with the sink, also on failure.
+   * @param scanner Scanner to get data from.
+   * @param stages Stages to pass the cells through, each in its own thread.
+   * @param smallestReadPoint Smallest read point used for the flush.
+   * @param batchSize How many cells to hand over at a time.
+   * @return Bytes flushed.
+   */
+  long run(InternalScanner scanner, List<Stage> stages, long smallestReadPoint, int batchSize)
+      throws IOException {
+    List<BlockingQueue<List<KeyValue>>> queues =
+        new ArrayList<BlockingQueue<List<KeyValue>>>(stages.size());
+    List<Future<?>> futures = new ArrayList<Future<?>>(stages.size());
+    boolean done = false;
+    try {
+      for (Stage stage : stages) {
+        BlockingQueue<List<KeyValue>> queue = new ArrayBlockingQueue<List<KeyValue>>(queueSize);
+        queues.add(queue);
+        futures.add(STAGE_POOL.submit(createStageRunner(stage, queue)));
+      }
+      List<Cell> cells = new ArrayList<Cell>();
+      boolean hasMore;
+      long flushed = 0;
+      do {
+        hasMore = scanner.next(cells, batchSize);
+        if (!cells.isEmpty()) {
+          List<KeyValue> batch = new ArrayList<KeyValue>(cells.size());
+          for (Cell c : cells) {
+            KeyValue kv = StoreFlusher.prepareForFlush(c, smallestReadPoint);
+            batch.add(kv);
+            flushed += MemStore.heapSizeChange(kv, true);
+          }
+          handOver(queues, batch);
+          cells.clear();
+        }
+      } while (hasMore);
+      handOver(queues, END);
+      waitForStages(futures);
+      done = true;
+      return flushed;
+    } finally {
+      if (!done) {
+        aborted = true;
+        try {
+          waitForStages(futures);
+        } catch (IOException e) {
+          // The flush has failed already.
+        }
+      }
+    }
+  }
+
+  private Runnable createStageRunner(final Stage stage,
+      final BlockingQueue<List<KeyValue>> queue) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            List<KeyValue> batch = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (batch == END || (batch == null && aborted)) {
+              return;
+            }
+            if (batch == null || aborted || failure.get() != null) {
+              continue; // keep draining, so that the scan is not stuck
+            }
+            for (KeyValue kv : batch) {
+              stage.append(kv);
+            }
+          }
+        } catch (Throwable t) {
+          failure.compareAndSet(null, t);
+        }
+      }
+    };
+  }
+
+  private void handOver(List<BlockingQueue<List<KeyValue>>> queues, List<KeyValue> batch)
+      throws IOException {
+    try {
+      for (BlockingQueue<List<KeyValue>> queue : queues) {
+        while (!queue.offer(batch, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+          checkFailure();
+        }
+      }
+    } catch (InterruptedException e) {
+      throw (InterruptedIOException) new InterruptedIOException(
+          "Interrupted handing cells to the flush pipeline").initCause(e);
+    }
+    checkFailure();
+  }
+
+  private void waitForStages(List<Future<?>> futures) throws IOException {
+    boolean interrupted = false;
+    try {
+      for (Future<?> future : futures) {
+        while (true) {
+          try {
+            future.get();
+            break;
+          } catch (InterruptedException e) {
+            // The stages are still using the sink; they end soon once aborted.
+            interrupted = true;
+            aborted = true;
+          } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+            break;
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (interrupted) {
+      throw new InterruptedIOException("Interrupted waiting for the flush pipeline");
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t == null) {
+      return;
+    }
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    }
+    throw new IOException("Flush pipeline stage failed", t);
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A flush policy determines the stores that need to be flushed when the memstore of a region
+ * is flushed because it is too big, too old or under global memstore pressure. Explicit
+ * flushes, e.g. on close, split or request of an admin, always flush all the stores.
+ * @see FlushLargeStoresPolicy Default flush policy
+ * @see FlushAllStoresPolicy Flush policy flushing every store, as before per-family flushes
+ */
+@InterfaceAudience.Private
+public abstract class FlushPolicy extends Configured {
+  /** Name of the flush policy class; can be set in the table descriptor too */
+  public static final String HBASE_FLUSH_POLICY_KEY = "hbase.regionserver.flush.policy";
+
+  private static final Class<? extends FlushPolicy> DEFAULT_FLUSH_POLICY_CLASS =
+      FlushLargeStoresPolicy.class;
+
+  /**
+   * The region configured for this flush policy.
+   */
+  protected HRegion region;
+
+  /**
+   * Upon construction, this method will be called with the region
+   * to be governed. It will be called once and only once.
+   */
+  protected void configureForRegion(HRegion region) {
+    Preconditions.checkState(
+        this.region == null,
+        "Policy already configured for region %s",
+        this.region);
+
+    this.region = region;
+  }
+
+  /**
+   * @return the stores to flush; never empty while the region has something to flush
+   */
+  public abstract Collection<Store> selectStoresToFlush();
+
+  /**
+   * Create the FlushPolicy configured for the given region.
+   * @param region
+   * @param conf the configuration of the region, including the table settings
+   * @return a FlushPolicy
+   * @throws IOException
+   */
+  public static FlushPolicy create(HRegion region, Configuration conf) throws IOException {
+    Class<? extends FlushPolicy> clazz = getFlushPolicyClass(region, conf);
+    FlushPolicy policy = ReflectionUtils.newInstance(clazz, conf);
+    policy.configureForRegion(region);
+    return policy;
+  }
+
+  static Class<? extends FlushPolicy> getFlushPolicyClass(HRegion region, Configuration conf)
+      throws IOException {
+    String className = conf.get(HBASE_FLUSH_POLICY_KEY, DEFAULT_FLUSH_POLICY_CLASS.getName());
+    try {
+      return Class.forName(className).asSubclass(FlushPolicy.class);
+    } catch (Exception e) {
+      throw new IOException(
+          "Unable to load configured flush policy '" +
+          className + "' for table '" + region.getTableDesc().getTableName() + "'",
+          e);
+    }
+  }
+}
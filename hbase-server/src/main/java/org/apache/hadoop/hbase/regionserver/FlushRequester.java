@@ -30,8 +30,10 @@ public interface FlushRequester {
    * Tell the listener the cache needs to be flushed.
    *
    * @param region the HRegion requesting the cache flush
+   * @param forceFlushAllStores whether we want to flush all stores, e.g. to free the oldest WAL
+   *          files; otherwise the flush policy of the region picks the stores to flush
    */
-  void requestFlush(HRegion region);
+  void requestFlush(HRegion region, boolean forceFlushAllStores);
   /**
    * Tell the listener the cache needs to be flushed after a delay
    *
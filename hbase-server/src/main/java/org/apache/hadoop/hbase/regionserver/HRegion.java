@@ -40,6 +40,7 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -262,6 +263,9 @@ public class HRegion implements HeapSize { // , Writable{
   final Counter readRequestsCount = new Counter();
   final Counter writeRequestsCount = new Counter();
 
+  // Number of delete markers user scans skipped
+  final Counter tombstonesSkipped = new Counter();
+
   // Compaction counters
   final AtomicLong compactionsFinished = new AtomicLong(0L);
   final AtomicLong compactionNumFilesCompacted = new AtomicLong(0L);
@@ -322,6 +326,12 @@ public class HRegion implements HeapSize { // , Writable{
   // The following map is populated when opening the region
   Map<byte[], Long> maxSeqIdInStores = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
 
+  // The sequence id of the last flush of each store. As stores can be flushed on their own,
+  // every edit still in the memstore of a store has a larger sequence id than its entry, and
+  // the smallest entry over the stores holding edits bounds what the WAL has to keep.
+  private final ConcurrentMap<byte[], Long> lastStoreFlushSeqIds =
+      new ConcurrentSkipListMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+
   /**
    * Config setting for whether to allow writes when a region is in recovering or not.
    */
@@ -496,11 +506,16 @@ public class HRegion implements HeapSize { // , Writable{
 
   private HTableDescriptor htableDescriptor = null;
   private RegionSplitPolicy splitPolicy;
+  private FlushPolicy flushPolicy;
 
   private final MetricsRegion metricsRegion;
   private final MetricsRegionWrapperImpl metricsRegionWrapper;
   private final Durability durability;
 
+  // Cache of client get results, null unless enabled for the table
+  @VisibleForTesting
+  final RowCache rowCache;
+
   /**
    * HRegion constructor. This constructor should only be used for testing and
    * extensions.  Instances of HRegion should be instantiated with the
@@ -615,6 +630,8 @@ public class HRegion implements HeapSize { // , Writable{
     this.durability = htd.getDurability() == Durability.USE_DEFAULT
         ? DEFAULT_DURABLITY
         : htd.getDurability();
+    this.rowCache = RowCache.create(conf,
+        rsServices == null ? null : rsServices.getRegionServerAccounting());
     if (rsServices != null) {
       this.rsAccounting = this.rsServices.getRegionServerAccounting();
       // don't initialize coprocessors if not running within a regionserver
@@ -726,7 +743,13 @@ public class HRegion implements HeapSize { // , Writable{
     // Initialize split policy
     this.splitPolicy = RegionSplitPolicy.create(this, conf);
 
+    // Initialize flush policy
+    this.flushPolicy = FlushPolicy.create(this, conf);
+
     this.lastFlushTime = EnvironmentEdgeManager.currentTimeMillis();
+    for (byte[] family : stores.keySet()) {
+      lastStoreFlushSeqIds.put(family, maxSeqId);
+    }
     // Use maximum of log sequenceid or that which was found in stores
     // (particularly if no recovered edits, seqid will be -1).
     long nextSeqid = maxSeqId + 1;
@@ -919,7 +942,7 @@ public class HRegion implements HeapSize { // , Writable{
    * @return Instance of {@link RegionServerServices} used by this HRegion.
    * Can be null.
    */
-  RegionServerServices getRegionServerServices() {
+  public RegionServerServices getRegionServerServices() {
     return this.rsServices;
   }
 
@@ -1202,6 +1225,9 @@ public class HRegion implements HeapSize { // , Writable{
         }
       }
       this.closed.set(true);
+      if (this.rowCache != null) {
+        this.rowCache.close();
+      }
       if (memstoreSize.get() != 0) LOG.error("Memstore size is " + memstoreSize.get());
       if (coprocessorHost != null) {
         status.setStatus("Running coprocessor post-close hooks");
@@ -1346,6 +1372,16 @@ public class HRegion implements HeapSize { // , Writable{
     return this.lastFlushTime;
   }
 
+  /**
+   * @param family name of a family of the region
+   * @return sequence id of the last flush of the store of the family; every edit in its
+   * memstore has a larger sequence id
+   */
+  long getLastStoreFlushSeqId(byte[] family) {
+    Long seqId = lastStoreFlushSeqIds.get(family);
+    return seqId == null ? HConstants.NO_SEQNUM : seqId;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   // HRegion maintenance.
   //
@@ -1478,6 +1514,12 @@ public class HRegion implements HeapSize { // , Writable{
           status.setStatus("Compacting store " + store);
           didPerformCompaction = true;
           store.compact(compaction);
+          if (this.rowCache != null && compaction.getRequest().isMajor()) {
+            // A major compaction rewrites all the files of the store; start over rather than
+            // tell what it dropped. Minor ones do not change what a get sees, except for cells
+            // expired by TTL, which the max age of the cache already bounds.
+            this.rowCache.invalidateAll();
+          }
         } catch (InterruptedIOException iioe) {
           String msg = "compaction interrupted";
           LOG.info(msg, iioe);
@@ -1527,6 +1569,22 @@ public class HRegion implements HeapSize { // , Writable{
    * because a Snapshot was not properly persisted.
    */
   public FlushResult flushcache() throws IOException {
+    return flushcache(true);
+  }
+
+  /**
+   * Flush the cache, or only the stores chosen by the {@link FlushPolicy} of the region.
+   *
+   * @param forceFlushAllStores whether to flush all the stores, e.g. because the region
+   * closes or all its data must be on disk, rather than the stores the policy selects
+   * @return true if the region needs compacting
+   *
+   * @throws IOException general io exceptions
+   * @throws DroppedSnapshotException Thrown when replay of hlog is required
+   * because a Snapshot was not properly persisted.
+   * @see #flushcache()
+   */
+  public FlushResult flushcache(boolean forceFlushAllStores) throws IOException {
     // fail-fast instead of waiting on the lock
     if (this.closing.get()) {
       String msg = "Skipping flush on " + this + " because closing";
@@ -1569,7 +1627,8 @@ public class HRegion implements HeapSize { // , Writable{
         }
       }
       try {
-        FlushResult fs = internalFlushcache(status);
+        FlushResult fs = forceFlushAllStores ? internalFlushcache(status) :
+            internalFlushcache(this.log, -1, flushPolicy.selectStoresToFlush(), status);
 
         if (coprocessorHost != null) {
           status.setStatus("Running post-flush coprocessor hooks");
@@ -1604,12 +1663,8 @@ public class HRegion implements HeapSize { // , Writable{
       return false;
     }
     long now = EnvironmentEdgeManager.currentTimeMillis();
-    //if we flushed in the recent past, we don't need to do again now
-    if ((now - getLastFlushTime() < flushCheckInterval)) {
-      return false;
-    }
-    //since we didn't flush in the recent past, flush now if certain conditions
-    //are met. Return true on first such memstore hit.
+    //flush now if certain conditions are met. Return true on first such memstore hit.
+    //Not gated on the last flush time of the region: it may not have flushed every store.
     for (Store s : this.getStores().values()) {
       if (s.timeOfOldestEdit() < now - flushCheckInterval) {
         // we have an old enough edit in the memstore, flush
@@ -1670,6 +1725,22 @@ public class HRegion implements HeapSize { // , Writable{
    */
   protected FlushResult internalFlushcache(
       final HLog wal, final long myseqid, MonitoredTask status)
+  throws IOException {
+    return internalFlushcache(wal, myseqid, stores.values(), status);
+  }
+
+  /**
+   * @param wal Null if we're NOT to go via hlog/wal.
+   * @param myseqid The seqid to use if <code>wal</code> is null writing out
+   * flush file.
+   * @param storesToFlush The stores to flush; the others keep their memstore
+   * @param status
+   * @return true if the region needs compacting
+   * @throws IOException
+   * @see #internalFlushcache(MonitoredTask)
+   */
+  protected FlushResult internalFlushcache(final HLog wal, final long myseqid,
+      final Collection<Store> storesToFlush, MonitoredTask status)
   throws IOException {
     if (this.rsServices != null && this.rsServices.isAborted()) {
       // Don't flush when server aborting, it's unsafe
@@ -1709,7 +1780,12 @@ public class HRegion implements HeapSize { // , Writable{
     long totalFlushableSize = 0;
     status.setStatus("Preparing to flush by snapshotting stores");
     List<StoreFlushContext> storeFlushCtxs = new ArrayList<StoreFlushContext>(stores.size());
+    Map<byte[], Long> storeFlushableSizes = new TreeMap<byte[], Long>(Bytes.BYTES_COMPARATOR);
+    // stores that hold no edit up to the flush sequence id once the flush is done
+    List<byte[]> flushedFamilies = new ArrayList<byte[]>(stores.size());
     long flushSeqId = -1L;
+    // smallest last flush sequence id of the stores that keep edits in their memstore
+    long oldestUnflushedStoreSeqId = Long.MAX_VALUE;
     try {
       // Record the mvcc for all transactions in progress.
       w = mvcc.beginMemstoreInsert();
@@ -1729,8 +1805,19 @@ public class HRegion implements HeapSize { // , Writable{
       }
 
       for (Store s : stores.values()) {
-        totalFlushableSize += s.getFlushableSize();
-        storeFlushCtxs.add(s.createFlushContext(flushSeqId));
+        byte[] family = s.getFamily().getName();
+        long flushableSize = s.getFlushableSize();
+        if (storesToFlush.contains(s)) {
+          totalFlushableSize += flushableSize;
+          storeFlushableSizes.put(family, flushableSize);
+          storeFlushCtxs.add(s.createFlushContext(flushSeqId));
+          flushedFamilies.add(family);
+        } else if (flushableSize > 0) {
+          oldestUnflushedStoreSeqId = Math.min(oldestUnflushedStoreSeqId,
+              getLastStoreFlushSeqId(family));
+        } else {
+          flushedFamilies.add(family);
+        }
       }
 
       // prepare flush (take a snapshot)
@@ -1808,14 +1895,30 @@ public class HRegion implements HeapSize { // , Writable{
 
     // If we get to here, the HStores have been written.
     if (wal != null) {
-      wal.completeCacheFlush(this.getRegionInfo().getEncodedNameAsBytes());
+      if (oldestUnflushedStoreSeqId == Long.MAX_VALUE) {
+        wal.completeCacheFlush(this.getRegionInfo().getEncodedNameAsBytes());
+      } else {
+        // the stores left out still need their edits in the log
+        wal.completeCacheFlush(this.getRegionInfo().getEncodedNameAsBytes(),
+            oldestUnflushedStoreSeqId + 1);
+      }
     }
 
     // Record latest flush time
     this.lastFlushTime = EnvironmentEdgeManager.currentTimeMillis();
 
+    for (byte[] family : flushedFamilies) {
+      lastStoreFlushSeqIds.put(family, flushSeqId);
+    }
+
     // Update the last flushed sequence id for region
-    completeSequenceId = flushSeqId;
+    completeSequenceId = Math.min(flushSeqId, oldestUnflushedStoreSeqId);
+
+    if (this.metricsRegion != null) {
+      for (Map.Entry<byte[], Long> e : storeFlushableSizes.entrySet()) {
+        this.metricsRegion.updateFlush(Bytes.toString(e.getKey()), e.getValue());
+      }
+    }
 
     // C. Finally notify anyone waiting on memstore to clear:
     // e.g. checkResources().
@@ -1830,6 +1933,8 @@ public class HRegion implements HeapSize { // , Writable{
       ", currentsize=" +
       StringUtils.humanReadableInt(memstoresize) + "/" + memstoresize +
       " for region " + this + " in " + time + "ms, sequenceid=" + flushSeqId +
+      (storeFlushableSizes.size() < stores.size() ? ", flushed " + storeFlushableSizes.size() +
+          " of " + stores.size() + " stores" : "") +
       ", compaction requested=" + compactionRequested +
       ((wal == null)? "; wal=null": "");
     LOG.info(msg);
@@ -2617,6 +2722,11 @@ public class HRegion implements HeapSize { // , Writable{
         rollbackMemstore(batchOp, familyMaps, firstIndex, lastIndexExclusive);
       }
       if (w != null) mvcc.completeMemstoreInsert(w);
+      if (this.rowCache != null) {
+        for (int i = firstIndex; i < lastIndexExclusive; i++) {
+          this.rowCache.invalidate(batchOp.getMutation(i).getRow());
+        }
+      }
 
       if (locked) {
         this.updatesLock.readLock().unlock();
@@ -3086,7 +3196,7 @@ public class HRegion implements HeapSize { // , Writable{
       writestate.flushRequested = true;
     }
     // Make request outside of synchronize block; HBASE-818.
-    this.rsServices.getFlushRequester().requestFlush(this);
+    this.rsServices.getFlushRequester().requestFlush(this, false);
     if (LOG.isDebugEnabled()) {
       LOG.debug("Flush requested on " + this);
     }
@@ -3528,6 +3638,7 @@ public class HRegion implements HeapSize { // , Writable{
           if (!waitForLock) {
             return null;
           }
+          long waitStart = EnvironmentEdgeManager.currentTimeMillis();
           try {
             if (!existingContext.latch.await(this.rowLockWaitDuration, TimeUnit.MILLISECONDS)) {
               throw new IOException("Timed out waiting for lock for row: " + rowKey);
@@ -3537,6 +3648,8 @@ public class HRegion implements HeapSize { // , Writable{
             InterruptedIOException iie = new InterruptedIOException();
             iie.initCause(ie);
             throw iie;
+          } finally {
+            RpcServer.addRowLockWaitTime(EnvironmentEdgeManager.currentTimeMillis() - waitStart);
           }
         }
       }
@@ -3713,6 +3826,9 @@ public class HRegion implements HeapSize { // , Writable{
       }
       return true;
     } finally {
+      if (this.rowCache != null) {
+        this.rowCache.invalidateAll();
+      }
       closeBulkRegionOperation();
     }
   }
@@ -4819,15 +4935,34 @@ public class HRegion implements HeapSize { // , Writable{
        }
     }
 
-    Scan scan = new Scan(get);
+    // Only client gets go through the row cache. Internal reads (checkAndMutate, increment,
+    // append) must see writes that completed but may not have invalidated the cache yet.
+    boolean useRowCache = withCoprocessor && this.rowCache != null && RowCache.isCacheable(get);
+    List<Cell> cached = useRowCache ? this.rowCache.getCachedResult(get) : null;
+    if (cached != null) {
+      results.addAll(cached);
+      if (this.metricsRegion != null) {
+        this.metricsRegion.updateRowCacheHit();
+      }
+    } else {
+      // take the stamp before the scanner picks its read point
+      long rowCacheStamp = useRowCache ? this.rowCache.getStamp(get.getRow()) : 0;
+      Scan scan = new Scan(get);
 
-    RegionScanner scanner = null;
-    try {
-      scanner = getScanner(scan);
-      scanner.next(results);
-    } finally {
-      if (scanner != null)
-        scanner.close();
+      RegionScanner scanner = null;
+      try {
+        scanner = getScanner(scan);
+        scanner.next(results);
+      } finally {
+        if (scanner != null)
+          scanner.close();
+      }
+      if (useRowCache) {
+        this.rowCache.cacheResult(get, rowCacheStamp, results);
+        if (this.metricsRegion != null) {
+          this.metricsRegion.updateRowCacheMiss();
+        }
+      }
     }
 
     // post-get CP hook
@@ -5020,6 +5155,11 @@ public class HRegion implements HeapSize { // , Writable{
           mvcc.completeMemstoreInsert(writeEntry);
           writeEntry = null;
         }
+        if (this.rowCache != null) {
+          for (Mutation m : mutations) {
+            this.rowCache.invalidate(m.getRow());
+          }
+        }
         if (locked) {
           this.updatesLock.readLock().unlock();
           locked = false;
@@ -5275,6 +5415,9 @@ public class HRegion implements HeapSize { // , Writable{
     } finally {
       if (w != null) {
         mvcc.completeMemstoreInsert(w);
+        if (this.rowCache != null) {
+          this.rowCache.invalidate(row);
+        }
       }
       closeRegionOperation(Operation.APPEND);
     }
@@ -5475,6 +5618,9 @@ public class HRegion implements HeapSize { // , Writable{
     } finally {
       if (w != null) {
         mvcc.completeMemstoreInsert(w);
+        if (this.rowCache != null) {
+          this.rowCache.invalidate(row);
+        }
       }
       closeRegionOperation(Operation.INCREMENT);
       if (this.metricsRegion != null) {
@@ -5506,20 +5652,22 @@ public class HRegion implements HeapSize { // , Writable{
   public static final long FIXED_OVERHEAD = ClassSize.align(
       ClassSize.OBJECT +
       ClassSize.ARRAY +
-      41 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT +
+      45 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT +
       (12 * Bytes.SIZEOF_LONG) +
       4 * Bytes.SIZEOF_BOOLEAN);
 
   // woefully out of date - currently missing:
   // 1 x HashMap - coprocessorServiceHandlers
-  // 6 org.cliffc.high_scale_lib.Counter - numMutationsWithoutWAL, dataInMemoryWithoutWAL,
+  // 7 org.cliffc.high_scale_lib.Counter - numMutationsWithoutWAL, dataInMemoryWithoutWAL,
   //   checkAndMutateChecksPassed, checkAndMutateChecksFailed, readRequestsCount,
-  //   writeRequestsCount, updatesBlockedMs
+  //   writeRequestsCount, tombstonesSkipped, updatesBlockedMs
   // 1 x HRegion$WriteState - writestate
   // 1 x RegionCoprocessorHost - coprocessorHost
   // 1 x RegionSplitPolicy - splitPolicy
+  // 1 x FlushPolicy - flushPolicy
   // 1 x MetricsRegion - metricsRegion
   // 1 x MetricsRegionWrapperImpl - metricsRegionWrapper
+  // 1 x RowCache - rowCache
   public static final long DEEP_OVERHEAD = FIXED_OVERHEAD +
       ClassSize.OBJECT + // closeLock
       (2 * ClassSize.ATOMIC_BOOLEAN) + // closed, closing
@@ -5531,6 +5679,7 @@ public class HRegion implements HeapSize { // , Writable{
       ClassSize.ARRAYLIST + // recentFlushes
       MultiVersionConsistencyControl.FIXED_SIZE // mvcc
       + ClassSize.TREEMAP // maxSeqIdInStores
+      + ClassSize.CONCURRENT_SKIPLISTMAP // lastStoreFlushSeqIds
       + 2 * ClassSize.ATOMIC_INTEGER // majorInProgress, minorInProgress
       ;
 
@@ -5977,13 +6126,13 @@ public class HRegion implements HeapSize { // , Writable{
    */
   private void syncOrDefer(long txid, Durability durability) throws IOException {
     if (this.getRegionInfo().isMetaRegion()) {
-      this.log.sync(txid);
+      syncLog(txid);
     } else {
       switch(durability) {
       case USE_DEFAULT:
         // do what table defaults to
         if (shouldSyncLog()) {
-          this.log.sync(txid);
+          syncLog(txid);
         }
         break;
       case SKIP_WAL:
@@ -5995,12 +6144,24 @@ public class HRegion implements HeapSize { // , Writable{
       case SYNC_WAL:
       case FSYNC_WAL:
         // sync the WAL edit (SYNC and FSYNC treated the same for now)
-        this.log.sync(txid);
+        syncLog(txid);
         break;
       }
     }
   }
 
+  /**
+   * Syncs the WAL up to the given transaction, charging the wait to the current RPC, if any.
+   */
+  private void syncLog(long txid) throws IOException {
+    long syncStart = EnvironmentEdgeManager.currentTimeMillis();
+    try {
+      this.log.sync(txid);
+    } finally {
+      RpcServer.addWalSyncWaitTime(EnvironmentEdgeManager.currentTimeMillis() - syncStart);
+    }
+  }
+
   /**
    * Check whether we should sync the log from the table's durability settings
    */
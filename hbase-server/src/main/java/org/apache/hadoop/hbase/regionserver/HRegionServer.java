@@ -115,9 +115,11 @@ import org.apache.hadoop.hbase.ipc.PayloadCarryingRpcController;
 import org.apache.hadoop.hbase.ipc.PriorityFunction;
 import org.apache.hadoop.hbase.ipc.RpcCallContext;
 import org.apache.hadoop.hbase.ipc.RpcClient;
+import org.apache.hadoop.hbase.ipc.RpcClientFactory;
 import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.ipc.RpcServer.BlockingServiceAndInterface;
 import org.apache.hadoop.hbase.ipc.RpcServerInterface;
+import org.apache.hadoop.hbase.ipc.ScanClassifier;
 import org.apache.hadoop.hbase.ipc.ServerNotRunningYetException;
 import org.apache.hadoop.hbase.ipc.ServerRpcController;
 import org.apache.hadoop.hbase.master.SplitLogManager;
@@ -193,9 +195,13 @@ import org.apache.hadoop.hbase.protobuf.generated.RegionServerStatusProtos.Regio
 import org.apache.hadoop.hbase.protobuf.generated.RegionServerStatusProtos.RegionServerStatusService;
 import org.apache.hadoop.hbase.protobuf.generated.RegionServerStatusProtos.ReportRSFatalErrorRequest;
 import org.apache.hadoop.hbase.protobuf.generated.WALProtos.CompactionDescriptor;
+import org.apache.hadoop.hbase.quotas.OperationQuota;
+import org.apache.hadoop.hbase.quotas.RegionServerQuotaManager;
+import org.apache.hadoop.hbase.quotas.ThrottlingException;
 import org.apache.hadoop.hbase.regionserver.HRegion.Operation;
 import org.apache.hadoop.hbase.regionserver.Leases.LeaseStillHeldException;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionProgress;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionThroughputController;
 import org.apache.hadoop.hbase.regionserver.handler.CloseMetaHandler;
 import org.apache.hadoop.hbase.regionserver.handler.CloseRegionHandler;
 import org.apache.hadoop.hbase.regionserver.handler.OpenMetaHandler;
@@ -253,7 +259,7 @@ import com.google.protobuf.TextFormat;
 @SuppressWarnings("deprecation")
 public class HRegionServer implements ClientProtos.ClientService.BlockingInterface,
   AdminProtos.AdminService.BlockingInterface, Runnable, RegionServerServices,
-  HBaseRPCErrorHandler, LastSequenceId {
+  HBaseRPCErrorHandler, LastSequenceId, ScanClassifier {
 
   public static final Log LOG = LogFactory.getLog(HRegionServer.class);
 
@@ -454,6 +460,16 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
   /** The nonce manager chore. */
   private Chore nonceManagerChore;
 
+  private final RegionServerQuotaManager rsQuotaManager;
+
+  /** Rows after which a scan is served by the long scan handlers, if there are any */
+  public static final String LONG_SCAN_ROWS_KEY = "hbase.regionserver.scan.long.rows";
+  /** Age, in ms, after which a scan is served by the long scan handlers, if there are any */
+  public static final String LONG_SCAN_TIME_KEY = "hbase.regionserver.scan.long.time";
+
+  private final long longScanRows;
+  private final long longScanTime;
+
   /**
    * The server name the Master sees us as.  Its made from the hostname the
    * master passes us, port, and server startcode. Gets set after registration
@@ -548,6 +564,10 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
 
     boolean isNoncesEnabled = conf.getBoolean(HConstants.HBASE_RS_NONCES_ENABLED, true);
     this.nonceManager = isNoncesEnabled ? new ServerNonceManager(this.conf) : null;
+    // Enforces the throttles of the quota table, if enabled.
+    this.rsQuotaManager = new RegionServerQuotaManager(this);
+    this.longScanRows = conf.getLong(LONG_SCAN_ROWS_KEY, 10000);
+    this.longScanTime = conf.getLong(LONG_SCAN_TIME_KEY, 10000);
 
     this.maxScannerResultSize = conf.getLong(
       HConstants.HBASE_CLIENT_SCANNER_MAX_RESULT_SIZE_KEY,
@@ -615,7 +635,7 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     // login the server principal (if using secure Hadoop)
     userProvider.login("hbase.regionserver.keytab.file",
       "hbase.regionserver.kerberos.principal", this.isa.getHostName());
-    regionServerAccounting = new RegionServerAccounting();
+    regionServerAccounting = new RegionServerAccounting(conf);
     cacheConfig = new CacheConfig(conf);
     uncaughtExceptionHandler = new UncaughtExceptionHandler() {
       @Override
@@ -814,9 +834,8 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
       // Create the chore that cleans up nonces.
       nonceManagerChore = this.nonceManager.createCleanupChore(this);
     }
-
     // Setup RPC client for master communication
-    rpcClient = new RpcClient(conf, clusterId, new InetSocketAddress(
+    rpcClient = RpcClientFactory.createClient(conf, clusterId, new InetSocketAddress(
         this.isa.getAddress(), 0));
     this.pauseMonitor = new JvmPauseMonitor(conf);
     pauseMonitor.start();
@@ -945,6 +964,7 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     if (this.nonceManagerChore != null) {
       this.nonceManagerChore.interrupt();
     }
+    this.rsQuotaManager.stop();
 
     // Stop the snapshot and other procedure handlers, forcefully killing all running tasks
     if (rspmHost != null) {
@@ -1415,10 +1435,12 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
 
     @Override
     protected void chore() {
+      double compactionPressure = 0.0;
       for (HRegion r : this.instance.onlineRegions.values()) {
         if (r == null)
           continue;
         for (Store s : r.getStores().values()) {
+          compactionPressure = Math.max(compactionPressure, s.getCompactionPressure());
           try {
             long multiplier = s.getCompactionCheckMultiplier();
             assert multiplier > 0;
@@ -1443,6 +1465,8 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
           }
         }
       }
+      this.instance.compactSplitThread.getCompactionThroughputController().tune(
+          compactionPressure);
       iteration = (iteration == Long.MAX_VALUE) ? 0 : (iteration + 1);
     }
   }
@@ -1629,6 +1653,7 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
       Threads.setDaemonThreadRunning(this.nonceManagerChore.getThread(), n + ".nonceCleaner",
             uncaughtExceptionHandler);
     }
+    this.rsQuotaManager.start(uncaughtExceptionHandler);
 
     // Leases is not a Thread. Internally it runs a daemon thread. If it gets
     // an unhandled exception, it will just exit.
@@ -2281,6 +2306,12 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     return this.compactSplitThread;
   }
 
+  @Override
+  public CompactionThroughputController getCompactionThroughputController() {
+    return this.compactSplitThread == null ? null
+        : this.compactSplitThread.getCompactionThroughputController();
+  }
+
   public ZooKeeperWatcher getZooKeeperWatcher() {
     return this.zooKeeper;
   }
@@ -2793,6 +2824,26 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     return this.fsOk;
   }
 
+  /**
+   * A scan is long once it returned {@link #LONG_SCAN_ROWS_KEY} rows or is older than
+   * {@link #LONG_SCAN_TIME_KEY}. Unknown scanners are short; the call will fail anyway.
+   */
+  @Override
+  public boolean isLongScan(long scannerId) {
+    RegionScannerHolder rsh = scanners.get(String.valueOf(scannerId));
+    if (rsh == null) {
+      return false;
+    }
+    return rsh.rowsScanned >= longScanRows ||
+      EnvironmentEdgeManager.currentTimeMillis() - rsh.createTime >= longScanTime;
+  }
+
+  @Override
+  public TableName getScannerTable(long scannerId) {
+    RegionScannerHolder rsh = scanners.get(String.valueOf(scannerId));
+    return rsh == null ? null : rsh.r.getRegionInfo().getTable();
+  }
+
   protected long addScanner(RegionScanner s, HRegion r) throws LeaseStillHeldException {
     long scannerId = this.scannerIdGen.incrementAndGet();
     String scannerName = String.valueOf(scannerId);
@@ -2820,10 +2871,12 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
   public GetResponse get(final RpcController controller,
       final GetRequest request) throws ServiceException {
     long before = EnvironmentEdgeManager.currentTimeMillis();
+    OperationQuota quota = null;
     try {
       checkOpen();
       requestCount.increment();
       HRegion region = getRegion(request.getRegion());
+      quota = rsQuotaManager.checkQuota(region, OperationQuota.OperationType.GET);
 
       GetResponse.Builder builder = GetResponse.newBuilder();
       ClientProtos.Get get = request.getGet();
@@ -2862,11 +2915,17 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
         ClientProtos.Result pbr = ProtobufUtil.toResult(r);
         builder.setResult(pbr);
       }
+      if (r != null) {
+        quota.addGetResult(r);
+      }
       return builder.build();
     } catch (IOException ie) {
       throw new ServiceException(ie);
     } finally {
       metricsRegionServer.updateGet(EnvironmentEdgeManager.currentTimeMillis() - before);
+      if (quota != null) {
+        quota.close();
+      }
     }
   }
 
@@ -2887,10 +2946,12 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     CellScanner cellScanner = controller != null? controller.cellScanner(): null;
     // Clear scanner so we are not holding on to reference across call.
     if (controller != null) controller.setCellScanner(null);
+    OperationQuota quota = null;
     try {
       checkOpen();
       requestCount.increment();
       HRegion region = getRegion(request.getRegion());
+      quota = rsQuotaManager.checkQuota(region, OperationQuota.OperationType.MUTATE);
       MutateResponse.Builder builder = MutateResponse.newBuilder();
       MutationProto mutation = request.getMutation();
       if (!region.getRegionInfo().isMetaTable()) {
@@ -2912,6 +2973,7 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
         break;
       case PUT:
         Put put = ProtobufUtil.toPut(mutation, cellScanner);
+        quota.addMutation(put);
         if (request.hasCondition()) {
           Condition condition = request.getCondition();
           byte[] row = condition.getRow().toByteArray();
@@ -2940,6 +3002,7 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
         break;
       case DELETE:
         Delete delete = ProtobufUtil.toDelete(mutation, cellScanner);
+        quota.addMutation(delete);
         if (request.hasCondition()) {
           Condition condition = request.getCondition();
           byte[] row = condition.getRow().toByteArray();
@@ -2973,9 +3036,16 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
       if (processed != null) builder.setProcessed(processed.booleanValue());
       addResult(builder, r, controller);
       return builder.build();
+    } catch (ThrottlingException te) {
+      // nothing wrong with the file system
+      throw new ServiceException(te);
     } catch (IOException ie) {
       checkFileSystem();
       throw new ServiceException(ie);
+    } finally {
+      if (quota != null) {
+        quota.close();
+      }
     }
   }
 
@@ -3016,6 +3086,7 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
   throws ServiceException {
     Leases.Lease lease = null;
     String scannerName = null;
+    OperationQuota quota = null;
     try {
       if (!request.hasScannerId() && !request.hasScan()) {
         throw new DoNotRetryIOException(
@@ -3071,8 +3142,15 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
           throw new NotServingRegionException("Region was re-opened after the scanner"
             + scannerName + " was created: " + hri.getRegionNameAsString());
         }
+        if (rows > 0) {
+          quota = rsQuotaManager.checkQuota(region, OperationQuota.OperationType.SCAN);
+        }
       } else {
         region = getRegion(request.getRegion());
+        if (rows > 0) {
+          // checked before the scanner is opened, so that a throttled one is not left behind
+          quota = rsQuotaManager.checkQuota(region, OperationQuota.OperationType.SCAN);
+        }
         ClientProtos.Scan protoScan = request.getScan();
         boolean isLoadingCfsOnDemandSet = protoScan.hasLoadColumnFamiliesOnDemand();
         Scan scan = ProtobufUtil.toScan(protoScan);
@@ -3171,6 +3249,12 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
                 }
               }
               region.readRequestsCount.add(i);
+              if (rsh == null) {
+                rsh = scanners.get(scannerName);
+              }
+              if (rsh != null) {
+                rsh.rowsScanned += i;
+              }
             } finally {
               region.closeRegionOperation();
             }
@@ -3190,6 +3274,9 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
           } else {
             addResults(builder, results, controller);
           }
+          if (quota != null) {
+            quota.addScanResult(results);
+          }
         } finally {
           // We're done. On way out re-add the above removed lease.
           // Adding resets expiration time on lease.
@@ -3237,6 +3324,10 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
         }
       }
       throw new ServiceException(ie);
+    } finally {
+      if (quota != null) {
+        quota.close();
+      }
     }
   }
 
@@ -3365,20 +3456,38 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
         responseBuilder.addRegionActionResult(regionActionResultBuilder.build());
         continue;  // For this region it's a failure.
       }
-
-      if (regionAction.hasAtomic() && regionAction.getAtomic()) {
-        // How does this call happen?  It may need some work to play well w/ the surroundings.
-        // Need to return an item per Action along w/ Action index.  TODO.
+      OperationQuota quota;
+      try {
+        quota = rsQuotaManager.checkQuota(region, regionAction.getActionList());
+      } catch (ThrottlingException e) {
+        regionActionResultBuilder.setException(ResponseConverter.buildException(e));
+        responseBuilder.addRegionActionResult(regionActionResultBuilder.build());
+        // The cells of the skipped mutations come before those of the next regions.
         try {
-          mutateRows(region, regionAction.getActionList(), cellScanner);
-        } catch (IOException e) {
-          // As it's atomic, we may expect it's a global failure.
-          regionActionResultBuilder.setException(ResponseConverter.buildException(e));
+          skipCellsForMutations(regionAction.getActionList(), cellScanner);
+        } catch (IOException ioe) {
+          throw new ServiceException(ioe);
         }
-      } else {
-        // doNonAtomicRegionMutation manages the exception internally
-        cellsToReturn = doNonAtomicRegionMutation(region, regionAction, cellScanner,
-            regionActionResultBuilder, cellsToReturn, nonceGroup);
+        continue;
+      }
+
+      try {
+        if (regionAction.hasAtomic() && regionAction.getAtomic()) {
+          // How does this call happen?  It may need some work to play well w/ the surroundings.
+          // Need to return an item per Action along w/ Action index.  TODO.
+          try {
+            mutateRows(region, regionAction.getActionList(), cellScanner);
+          } catch (IOException e) {
+            // As it's atomic, we may expect it's a global failure.
+            regionActionResultBuilder.setException(ResponseConverter.buildException(e));
+          }
+        } else {
+          // doNonAtomicRegionMutation manages the exception internally
+          cellsToReturn = doNonAtomicRegionMutation(region, regionAction, cellScanner,
+              regionActionResultBuilder, cellsToReturn, nonceGroup);
+        }
+      } finally {
+        quota.close();
       }
       responseBuilder.addRegionActionResult(regionActionResultBuilder.build());
     }
@@ -3389,6 +3498,21 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     return responseBuilder.build();
   }
 
+  /**
+   * Moves the scanner past the cells of the mutations among the actions, which are not run.
+   */
+  private static void skipCellsForMutations(final List<ClientProtos.Action> actions,
+      final CellScanner cellScanner) throws IOException {
+    if (cellScanner == null) return;
+    for (ClientProtos.Action action : actions) {
+      if (action.hasMutation() && action.getMutation().hasAssociatedCellCount()) {
+        for (int i = 0; i < action.getMutation().getAssociatedCellCount(); i++) {
+          cellScanner.advance();
+        }
+      }
+    }
+  }
+
   /**
    * Run through the regionMutation <code>rm</code> and per Mutation, do the work, and then when
    * done, add an instance of a {@link ResultOrException} that corresponds to each Mutation.
@@ -4249,6 +4373,13 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     return this.nonceManager;
   }
 
+  /**
+   * @return the quota manager, which lets every operation through if quotas are disabled
+   */
+  public RegionServerQuotaManager getRegionServerQuotaManager() {
+    return rsQuotaManager;
+  }
+
   /**
    * Execute a list of Put/Delete mutations.
    *
@@ -4549,6 +4680,9 @@ public class HRegionServer implements ClientProtos.ClientService.BlockingInterfa
     private RegionScanner s;
     private long nextCallSeq = 0L;
     private HRegion r;
+    // read by the rpc scheduler to tell long scans from short ones
+    private volatile long rowsScanned = 0L;
+    private final long createTime = EnvironmentEdgeManager.currentTimeMillis();
 
     public RegionScannerHolder(RegionScanner s, HRegion r) {
       this.s = s;
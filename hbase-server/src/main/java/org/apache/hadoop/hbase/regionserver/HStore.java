@@ -1845,6 +1845,16 @@ public class HStore implements Store {
     return priority;
   }
 
+  @Override
+  public double getCompactionPressure() {
+    if (blockingFileCount <= 0) {
+      return 0.0;
+    }
+    // the priority is the number of files the store can still take before it blocks
+    int filesBeforeBlocking = this.storeEngine.getStoreFileManager().getStoreCompactionPriority();
+    return (double) (blockingFileCount - filesBeforeBlocking) / blockingFileCount;
+  }
+
   @Override
   public boolean throttleCompaction(long compactionSize) {
     return storeEngine.getCompactionPolicy().throttleCompaction(compactionSize);
@@ -2031,6 +2041,11 @@ public class HStore implements Store {
 
   @Override
   public boolean hasTooManyStoreFiles() {
+    StoreFileManager sfm = this.storeEngine.getStoreFileManager();
+    if (sfm instanceof LeveledStoreFileManager) {
+      // A leveled store has many files by design; what matters is how many a read touches.
+      return ((LeveledStoreFileManager)sfm).getReadAmplification() > this.blockingFileCount;
+    }
     return getStorefilesCount() > this.blockingFileCount;
   }
 }
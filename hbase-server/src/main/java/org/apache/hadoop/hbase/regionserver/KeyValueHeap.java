@@ -22,7 +22,6 @@ package org.apache.hadoop.hbase.regionserver;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.Cell;
@@ -32,6 +31,9 @@ import org.apache.hadoop.hbase.KeyValue.KVComparator;
 /**
  * Implements a heap merge across any number of KeyValueScanners.
  * <p>
+ * The scanners are kept in a {@link TournamentTree}, so moving past the current
+ * sub-scanner costs about log2(N) comparisons and no re-insertion.
+ * <p>
  * Implements KeyValueScanner itself.
  * <p>
  * This class is used at the Region level to merge across Stores
@@ -44,7 +46,7 @@ import org.apache.hadoop.hbase.KeyValue.KVComparator;
 @InterfaceAudience.Private
 public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
     implements KeyValueScanner, InternalScanner {
-  protected PriorityQueue<KeyValueScanner> heap = null;
+  protected TournamentTree<KeyValueScanner> heap = null;
 
   /**
    * The current sub-scanner, i.e. the one that contains the next key/value
@@ -81,7 +83,7 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
       KVScannerComparator comparator) throws IOException {
     this.comparator = comparator;
     if (!scanners.isEmpty()) {
-      this.heap = new PriorityQueue<KeyValueScanner>(scanners.size(),
+      this.heap = new TournamentTree<KeyValueScanner>(scanners.size(),
           this.comparator);
       for (KeyValueScanner scanner : scanners) {
         if (scanner.peek() != null) {
@@ -113,9 +115,9 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
     } else {
       KeyValueScanner topScanner = this.heap.peek();
       // no need to add current back to the heap if it is the only scanner left
-      if (topScanner != null && this.comparator.compare(kvNext, topScanner.peek()) >= 0) {
-        this.heap.add(this.current);
-        this.current = pollRealKV();
+      if (topScanner != null && this.comparator.compare(this.current, topScanner) > 0) {
+        // swap current for the top of the heap in a single replay
+        this.current = pollRealKV(this.heap.replaceTop(this.current));
       }
     }
     return kvReturn;
@@ -337,11 +339,16 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
    * among all top KVs (some of which are fake) in the scanner heap.
    */
   protected KeyValueScanner pollRealKV() throws IOException {
-    KeyValueScanner kvScanner = heap.poll();
-    if (kvScanner == null) {
-      return null;
-    }
+    return pollRealKV(heap.poll());
+  }
 
+  /**
+   * Same as {@link #pollRealKV()}, starting from a sub-scanner that was
+   * already taken from the top of the heap.
+   * @param kvScanner the former top of the heap, or null if the heap is empty
+   */
+  protected KeyValueScanner pollRealKV(KeyValueScanner kvScanner)
+      throws IOException {
     while (kvScanner != null && !kvScanner.realSeekDone()) {
       if (kvScanner.peek() != null) {
         kvScanner.enforceSeek();
@@ -356,15 +363,17 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
           // Compare the current scanner to the next scanner. We try to avoid
           // putting the current one back into the heap if possible.
           KeyValue nextKV = nextEarliestScanner.peek();
-          if (nextKV == null || comparator.compare(curKV, nextKV) < 0) {
+          if (nextKV == null || comparator.compare(kvScanner, nextEarliestScanner) < 0) {
             // We already have the scanner with the earliest KV, so return it.
             return kvScanner;
           }
 
           // Otherwise, put the scanner back into the heap and let it compete
           // against all other scanners (both those that have done a "real
-          // seek" and a "lazy seek").
-          heap.add(kvScanner);
+          // seek" and a "lazy seek"). The top of the heap sorts before it, so
+          // both can be exchanged in one step.
+          kvScanner = heap.replaceTop(kvScanner);
+          continue;
         } else {
           // Close the scanner because we did a real seek and found out there
           // are no more KVs.
@@ -384,7 +393,7 @@ public class KeyValueHeap extends NonReversedNonLazyKeyValueScanner
   /**
    * @return the current Heap
    */
-  public PriorityQueue<KeyValueScanner> getHeap() {
+  public TournamentTree<KeyValueScanner> getHeap() {
     return this.heap;
   }
 
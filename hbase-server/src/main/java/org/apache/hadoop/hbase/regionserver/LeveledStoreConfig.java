@@ -0,0 +1,106 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Configuration class for leveled store and compactions.
+ * See {@link LeveledStoreFileManager} for general documentation.
+ * See getters for the description of each setting.
+ */
+@InterfaceAudience.Private
+public class LeveledStoreConfig {
+  static final Log LOG = LogFactory.getLog(LeveledStoreConfig.class);
+
+  /** The number of L0 files (i.e. flushes and bulk loads) at which L0 is compacted into L1. */
+  public static final String MIN_FILES_L0_KEY = "hbase.store.leveled.compaction.minFilesL0";
+
+  /** The size of the files compactions write into the levels; defaults to the flush size. */
+  public static final String FILE_SIZE_KEY = "hbase.store.leveled.file.size";
+
+  /** The size above which L1 is compacted into L2; defaults to 10 files. */
+  public static final String LEVEL1_SIZE_KEY = "hbase.store.leveled.level1.size";
+
+  /** How many times larger each level may grow than the previous one before it is compacted
+   into the next one. */
+  public static final String LEVEL_SIZE_MULTIPLIER_KEY =
+      "hbase.store.leveled.level.size.multiplier";
+
+  /** The highest level. It has no size limit, so a get reads at most this many files in
+   addition to L0. */
+  public static final String MAX_LEVEL_KEY = "hbase.store.leveled.max.level";
+
+  private final int level0CompactMinFiles;
+  private final long targetFileSize;
+  private final long level1MaxSize;
+  private final int levelSizeMultiplier;
+  private final int maxLevel;
+
+  public LeveledStoreConfig(Configuration config, StoreConfigInformation sci) {
+    this.level0CompactMinFiles = Math.max(1, config.getInt(MIN_FILES_L0_KEY, 4));
+    long flushSize = sci.getMemstoreFlushSize();
+    if (flushSize <= 0) {
+      flushSize = 128 * 1024 * 1024;
+    }
+    this.targetFileSize = Math.max(1, config.getLong(FILE_SIZE_KEY, flushSize));
+    this.level1MaxSize = Math.max(1, config.getLong(LEVEL1_SIZE_KEY, 10 * this.targetFileSize));
+    int multiplier = config.getInt(LEVEL_SIZE_MULTIPLIER_KEY, 10);
+    if (multiplier < 2) {
+      LOG.warn(LEVEL_SIZE_MULTIPLIER_KEY + " is set to " + multiplier + "; using 2");
+      multiplier = 2;
+    }
+    this.levelSizeMultiplier = multiplier;
+    this.maxLevel = Math.max(1, config.getInt(MAX_LEVEL_KEY, 4));
+  }
+
+  public int getLevel0MinFiles() {
+    return level0CompactMinFiles;
+  }
+
+  public long getTargetFileSize() {
+    return targetFileSize;
+  }
+
+  public int getMaxLevel() {
+    return maxLevel;
+  }
+
+  /**
+   * @param level Level, 1 or higher.
+   * @return The size above which the level is compacted into the next one; unlimited for the
+   *         highest level.
+   */
+  public long getLevelMaxSize(int level) {
+    if (level >= maxLevel) {
+      return Long.MAX_VALUE;
+    }
+    long size = level1MaxSize;
+    for (int i = 1; i < level; ++i) {
+      if (size > Long.MAX_VALUE / levelSizeMultiplier) {
+        return Long.MAX_VALUE;
+      }
+      size *= levelSizeMultiplier;
+    }
+    return size;
+  }
+}
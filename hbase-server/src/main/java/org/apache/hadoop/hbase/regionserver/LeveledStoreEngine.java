@@ -0,0 +1,106 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.compactions.LeveledCompactionPolicy;
+import org.apache.hadoop.hbase.regionserver.compactions.LeveledCompactor;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The storage engine that implements the leveled store/compaction scheme. Flushes go to L0 as
+ * in the default store; see {@link LeveledStoreFileManager} for the levels.
+ */
+@InterfaceAudience.Private
+public class LeveledStoreEngine extends StoreEngine<DefaultStoreFlusher,
+  LeveledCompactionPolicy, LeveledCompactor, LeveledStoreFileManager> {
+  static final Log LOG = LogFactory.getLog(LeveledStoreEngine.class);
+  private LeveledStoreConfig config;
+
+  @Override
+  public boolean needsCompaction(List<StoreFile> filesCompacting) {
+    return this.compactionPolicy.needsCompactions(this.storeFileManager, filesCompacting);
+  }
+
+  @Override
+  public CompactionContext createCompaction() {
+    return new LeveledCompaction();
+  }
+
+  @Override
+  protected void createComponents(
+      Configuration conf, Store store, KVComparator comparator) throws IOException {
+    this.config = new LeveledStoreConfig(conf, store);
+    this.compactionPolicy = new LeveledCompactionPolicy(conf, store, config);
+    this.storeFileManager = new LeveledStoreFileManager(comparator, conf);
+    this.storeFlusher = new DefaultStoreFlusher(conf, store);
+    this.compactor = new LeveledCompactor(conf, store);
+  }
+
+  /**
+   * Represents one instance of leveled compaction, with the necessary context and flow.
+   */
+  private class LeveledCompaction extends CompactionContext {
+    private LeveledCompactionPolicy.LeveledCompactionRequest leveledRequest = null;
+
+    @Override
+    public List<StoreFile> preSelect(List<StoreFile> filesCompacting) {
+      return compactionPolicy.preSelectFilesForCoprocessor(storeFileManager, filesCompacting);
+    }
+
+    @Override
+    public boolean select(List<StoreFile> filesCompacting, boolean isUserCompaction,
+        boolean mayUseOffPeak, boolean forceMajor) throws IOException {
+      this.leveledRequest = compactionPolicy.selectCompaction(
+          storeFileManager, filesCompacting, forceMajor);
+      this.request = (this.leveledRequest == null)
+          ? new CompactionRequest(new ArrayList<StoreFile>()) : this.leveledRequest.getRequest();
+      return this.leveledRequest != null;
+    }
+
+    @Override
+    public void forceSelect(CompactionRequest request) {
+      super.forceSelect(request);
+      if (this.leveledRequest != null) {
+        this.leveledRequest.setRequest(this.request);
+      } else {
+        LOG.warn("Leveled store is forced to take an arbitrary file list and compact it.");
+        this.leveledRequest = compactionPolicy.createEmptyRequest(storeFileManager, this.request);
+      }
+    }
+
+    @Override
+    public List<Path> compact() throws IOException {
+      Preconditions.checkArgument(this.leveledRequest != null, "Cannot compact without selection");
+      return this.leveledRequest.execute(compactor);
+    }
+  }
+}
@@ -0,0 +1,428 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.regionserver.compactions.LeveledCompactionPolicy;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ConcatenatedLists;
+import org.apache.hadoop.util.StringUtils;
+
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Leveled implementation of StoreFileManager.
+ * Not thread safe - relies on external locking (in HStore). Collections that this class
+ * returns are immutable or unique to the call, so they should be safe.
+ * Flushes and bulk loads go to level 0, whose files may all overlap. Each higher level holds
+ * files with non-overlapping row ranges and may grow a fixed multiple larger than the previous
+ * one (see {@link LeveledStoreConfig}); so a get reads all of L0, and at most one file per
+ * level, however large the store gets.
+ * The level of a file is kept in its metadata; files without it, or without any rows, are in
+ * L0. Files that turn out to overlap another file of their level are moved to L0 as well,
+ * which is always safe. See LeveledCompactionPolicy on how files move up the levels.
+ */
+@InterfaceAudience.Private
+public class LeveledStoreFileManager
+  implements StoreFileManager, LeveledCompactionPolicy.LevelInformationProvider {
+  static final Log LOG = LogFactory.getLog(LeveledStoreFileManager.class);
+
+  /**
+   * The file metadata field that contains the level of the file.
+   */
+  public static final byte[] LEVEL_KEY = Bytes.toBytes("LEVEL");
+
+  /**
+   * The files of one level above L0, with their row ranges for lookups.
+   */
+  private static class Level {
+    /** The files, ordered by row. */
+    public final ImmutableList<StoreFile> files;
+    /** The first and last row of each file, with the same index as the file. */
+    public final byte[][] firstRows;
+    public final byte[][] lastRows;
+
+    public Level(List<StoreFile> files) {
+      this.files = ImmutableList.copyOf(files);
+      this.firstRows = new byte[files.size()][];
+      this.lastRows = new byte[files.size()][];
+      for (int i = 0; i < files.size(); ++i) {
+        this.firstRows[i] = firstRowOf(files.get(i));
+        this.lastRows[i] = lastRowOf(files.get(i));
+      }
+    }
+  }
+
+  /**
+   * The state class. Used solely to replace results atomically during
+   * compactions and avoid complicated error handling.
+   */
+  private static class State {
+    /** Level 0. The files are in reverse order by seqNum. */
+    public ImmutableList<StoreFile> level0Files = ImmutableList.<StoreFile>of();
+
+    /** Levels 1 and up; the level with index i is level i + 1. The last one is not empty. */
+    public ArrayList<Level> levels = new ArrayList<Level>();
+
+    /** Cached list of all files in the structure, to return from some calls */
+    public ImmutableList<StoreFile> allFilesCached = ImmutableList.<StoreFile>of();
+  }
+  private State state = new State();
+
+  private final KVComparator kvComparator;
+  private final int blockingFileCount;
+
+  private final Comparator<StoreFile> rowOrder = new Comparator<StoreFile>() {
+    @Override
+    public int compare(StoreFile sf1, StoreFile sf2) {
+      return compareRows(firstRowOf(sf1), firstRowOf(sf2));
+    }
+  };
+
+  public LeveledStoreFileManager(KVComparator kvComparator, Configuration conf) {
+    this.kvComparator = kvComparator;
+    this.blockingFileCount = conf.getInt(
+        HStore.BLOCKING_STOREFILES_KEY, HStore.DEFAULT_BLOCKING_STOREFILE_COUNT);
+  }
+
+  @Override
+  public void loadFiles(List<StoreFile> storeFiles) {
+    LOG.debug("Attempting to load " + storeFiles.size() + " store files.");
+    setFiles(storeFiles);
+    debugDumpState("Files loaded");
+  }
+
+  @Override
+  public Collection<StoreFile> getStorefiles() {
+    return state.allFilesCached;
+  }
+
+  @Override
+  public void insertNewFiles(Collection<StoreFile> sfs) throws IOException {
+    ArrayList<StoreFile> newFiles = new ArrayList<StoreFile>(state.allFilesCached);
+    newFiles.addAll(sfs);
+    setFiles(newFiles);
+    debugDumpState("Added new files");
+  }
+
+  @Override
+  public ImmutableCollection<StoreFile> clearFiles() {
+    ImmutableCollection<StoreFile> result = state.allFilesCached;
+    this.state = new State();
+    return result;
+  }
+
+  @Override
+  public int getStorefileCount() {
+    return state.allFilesCached.size();
+  }
+
+  @Override
+  public void addCompactionResults(
+      Collection<StoreFile> compactedFiles, Collection<StoreFile> results) throws IOException {
+    LOG.debug("Attempting to merge compaction results: " + compactedFiles.size()
+        + " files replaced by " + results.size());
+    ArrayList<StoreFile> newFiles = new ArrayList<StoreFile>(state.allFilesCached);
+    newFiles.removeAll(compactedFiles);
+    newFiles.addAll(results);
+    setFiles(newFiles);
+    debugDumpState("Merged compaction results");
+  }
+
+  /**
+   * Returns all L0 files, and the files of each level that may contain rows between startRow
+   * and stopRow; for a get that is at most one file per level. Only when both rows are given
+   * are the files of the levels narrowed down; reverse scans give their rows in the other
+   * order, and HStore drops the files out of range of an open-ended scan anyway.
+   */
+  @Override
+  public Collection<StoreFile> getFilesForScanOrGet(
+      boolean isGet, byte[] startRow, byte[] stopRow) {
+    State state = this.state;
+    if (state.levels.isEmpty()) {
+      return state.level0Files; // There's just L0.
+    }
+    boolean isOpen = !isGet && (Bytes.equals(startRow, HConstants.EMPTY_START_ROW)
+        || Bytes.equals(stopRow, HConstants.EMPTY_END_ROW));
+    if (isOpen) {
+      return state.allFilesCached;
+    }
+    byte[] fromRow = startRow, toRow = isGet ? startRow : stopRow;
+    if (compareRows(fromRow, toRow) > 0) {
+      fromRow = toRow;
+      toRow = startRow;
+    }
+    ConcatenatedLists<StoreFile> result = new ConcatenatedLists<StoreFile>();
+    result.addSublist(state.level0Files);
+    for (Level level : state.levels) {
+      int first = findFirstFileEndingAtOrAfter(level, fromRow);
+      int last = first;
+      while (last < level.files.size() && compareRows(level.firstRows[last], toRow) <= 0) {
+        ++last;
+      }
+      if (first < last) {
+        result.addSublist(level.files.subList(first, last));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns L0, and then for each level the files that start at or before the target row, the
+   * closest first.
+   */
+  @Override
+  public Iterator<StoreFile> getCandidateFilesForRowKeyBefore(final KeyValue targetKey) {
+    State state = this.state;
+    byte[] row = targetKey.getRow();
+    ArrayList<StoreFile> result = new ArrayList<StoreFile>(state.level0Files);
+    for (Level level : state.levels) {
+      for (int i = level.files.size() - 1; i >= 0; --i) {
+        if (compareRows(level.firstRows[i], row) <= 0) {
+          result.add(level.files.get(i));
+        }
+      }
+    }
+    return result.iterator();
+  }
+
+  @Override
+  public Iterator<StoreFile> updateCandidateFilesForRowKeyBefore(
+      Iterator<StoreFile> candidateFiles, final KeyValue targetKey, final KeyValue candidate) {
+    // Like the default store, keep checking all the candidates.
+    return candidateFiles;
+  }
+
+  @Override
+  public byte[] getSplitPoint() throws IOException {
+    if (state.allFilesCached.isEmpty()) {
+      return null;
+    }
+    return StoreUtils.getLargestFile(state.allFilesCached).getFileSplitPoint(this.kvComparator);
+  }
+
+  /**
+   * The priority follows the number of files a get has to read, i.e. the L0 files and one file
+   * per level, rather than the number of files in the store.
+   */
+  @Override
+  public int getStoreCompactionPriority() {
+    int priority = this.blockingFileCount - getReadAmplification();
+    return (priority == HStore.PRIORITY_USER) ? priority + 1 : priority;
+  }
+
+  /**
+   * @return The largest number of files a get has to read.
+   */
+  public int getReadAmplification() {
+    State state = this.state;
+    return state.level0Files.size() + state.levels.size();
+  }
+
+  @Override
+  public List<StoreFile> getLevel0Files() {
+    return state.level0Files;
+  }
+
+  @Override
+  public int getLevelCount() {
+    return state.levels.size();
+  }
+
+  @Override
+  public List<StoreFile> getLevelFiles(int level) {
+    assert level > 0;
+    return (level > state.levels.size())
+        ? ImmutableList.<StoreFile>of() : state.levels.get(level - 1).files;
+  }
+
+  @Override
+  public List<StoreFile> getOverlappingFiles(int level, Collection<StoreFile> files) {
+    List<StoreFile> levelFiles = (level == 0) ? state.level0Files : getLevelFiles(level);
+    if (levelFiles.isEmpty()) {
+      return levelFiles;
+    }
+    byte[] fromRow = null, toRow = null;
+    for (StoreFile sf : files) {
+      byte[] first = firstRowOf(sf), last = lastRowOf(sf);
+      if (first == null || last == null) {
+        continue; // no rows, overlaps nothing
+      }
+      if (fromRow == null || compareRows(first, fromRow) < 0) {
+        fromRow = first;
+      }
+      if (toRow == null || compareRows(last, toRow) > 0) {
+        toRow = last;
+      }
+    }
+    if (fromRow == null) {
+      return ImmutableList.<StoreFile>of();
+    }
+    if (level == 0) {
+      // L0 files overlap each other, so look at all of them
+      List<StoreFile> result = new ArrayList<StoreFile>();
+      for (StoreFile sf : levelFiles) {
+        byte[] first = firstRowOf(sf), last = lastRowOf(sf);
+        if (first != null && last != null
+            && compareRows(first, toRow) <= 0 && compareRows(last, fromRow) >= 0) {
+          result.add(sf);
+        }
+      }
+      return result;
+    }
+    Level l = state.levels.get(level - 1);
+    int first = findFirstFileEndingAtOrAfter(l, fromRow);
+    int last = first;
+    while (last < l.files.size() && compareRows(l.firstRows[last], toRow) <= 0) {
+      ++last;
+    }
+    return l.files.subList(first, last);
+  }
+
+  /**
+   * Sorts the files into their levels, and replaces the state with them.
+   */
+  private void setFiles(Collection<StoreFile> storeFiles) {
+    ArrayList<StoreFile> level0Files = new ArrayList<StoreFile>();
+    ArrayList<ArrayList<StoreFile>> levelFiles = new ArrayList<ArrayList<StoreFile>>();
+    for (StoreFile sf : storeFiles) {
+      int level = levelOf(sf);
+      if (level == 0) {
+        level0Files.add(sf);
+        continue;
+      }
+      while (levelFiles.size() < level) {
+        levelFiles.add(new ArrayList<StoreFile>());
+      }
+      levelFiles.get(level - 1).add(sf);
+    }
+    // Validate that the files of each level do not overlap; move the ones that do to L0.
+    for (int i = 0; i < levelFiles.size(); ++i) {
+      ArrayList<StoreFile> files = levelFiles.get(i);
+      Collections.sort(files, rowOrder);
+      StoreFile previous = null;
+      Iterator<StoreFile> iter = files.iterator();
+      while (iter.hasNext()) {
+        StoreFile sf = iter.next();
+        if (previous != null && compareRows(firstRowOf(sf), lastRowOf(previous)) <= 0) {
+          LOG.warn("Store file " + sf.getPath() + " overlaps " + previous.getPath()
+              + " in level " + (i + 1) + ", to L0 it goes");
+          iter.remove();
+          level0Files.add(sf);
+        } else {
+          previous = sf;
+        }
+      }
+    }
+    Collections.sort(level0Files, Collections.reverseOrder(StoreFile.Comparators.SEQ_ID));
+
+    State state = new State();
+    state.level0Files = ImmutableList.copyOf(level0Files);
+    ArrayList<StoreFile> newAllFiles = new ArrayList<StoreFile>(level0Files);
+    for (ArrayList<StoreFile> files : levelFiles) {
+      state.levels.add(new Level(files));
+      newAllFiles.addAll(files);
+    }
+    // Drop the empty levels at the top, so that the level count is that of the highest level.
+    while (!state.levels.isEmpty()
+        && state.levels.get(state.levels.size() - 1).files.isEmpty()) {
+      state.levels.remove(state.levels.size() - 1);
+    }
+    state.allFilesCached = ImmutableList.copyOf(newAllFiles);
+    this.state = state;
+  }
+
+  private void debugDumpState(String string) {
+    if (!LOG.isDebugEnabled()) return;
+    StringBuilder sb = new StringBuilder();
+    sb.append("\n" + string + "; current level state is as such:");
+    sb.append("\n level 0 with ").append(state.level0Files.size()).append(" files: ")
+        .append(StringUtils.humanReadableInt(
+            LeveledCompactionPolicy.getTotalFileSize(state.level0Files))).append(";");
+    for (int i = 0; i < state.levels.size(); ++i) {
+      List<StoreFile> files = state.levels.get(i).files;
+      sb.append("\n level ").append(i + 1).append(" with ").append(files.size())
+          .append(" files: ")
+          .append(StringUtils.humanReadableInt(LeveledCompactionPolicy.getTotalFileSize(files)))
+          .append(";");
+    }
+    sb.append("\n").append(getStorefileCount()).append(" files total.");
+    LOG.debug(sb.toString());
+  }
+
+  /**
+   * @return The index of the first file of the level whose last row is not before the row, or
+   *         the file count if there is none.
+   */
+  private int findFirstFileEndingAtOrAfter(Level level, byte[] row) {
+    int low = 0, high = level.files.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareRows(level.lastRows[mid], row) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int compareRows(byte[] r1, byte[] r2) {
+    return kvComparator.compareRows(r1, 0, r1.length, r2, 0, r2.length);
+  }
+
+  /**
+   * @return The level from the file metadata; 0 if there is none, or if the file has no rows.
+   */
+  private static int levelOf(StoreFile sf) {
+    byte[] level = sf.getMetadataValue(LEVEL_KEY);
+    if (level == null || level.length != Bytes.SIZEOF_INT) {
+      return 0;
+    }
+    if (firstRowOf(sf) == null || lastRowOf(sf) == null) {
+      return 0;
+    }
+    return Math.max(0, Bytes.toInt(level));
+  }
+
+  private static byte[] firstRowOf(StoreFile sf) {
+    byte[] key = sf.getReader().getFirstKey();
+    return key == null ? null : KeyValue.createKeyValueFromKey(key).getRow();
+  }
+
+  private static byte[] lastRowOf(StoreFile sf) {
+    byte[] key = sf.getReader().getLastKey();
+    return key == null ? null : KeyValue.createKeyValueFromKey(key).getRow();
+  }
+}
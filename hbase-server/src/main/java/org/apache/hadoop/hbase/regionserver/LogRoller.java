@@ -130,7 +130,8 @@ class LogRoller extends HasThread implements WALActionsListener {
     if (r != null) {
       requester = this.services.getFlushRequester();
       if (requester != null) {
-        requester.requestFlush(r);
+        // flush every store so that the oldest WAL files are no longer needed
+        requester.requestFlush(r, true);
         scheduled = true;
       }
     }
@@ -208,7 +208,7 @@ class MemStoreFlusher implements FlushRequester {
       Preconditions.checkState(regionToFlush.memstoreSize.get() > 0);
 
       LOG.info("Flush of region " + regionToFlush + " due to global heap pressure");
-      flushedOne = flushRegion(regionToFlush, true);
+      flushedOne = flushRegion(regionToFlush, true, false);
       if (!flushedOne) {
         LOG.info("Excluding unflushable region " + regionToFlush +
           " - trying to find a different region to flush.");
@@ -321,23 +321,29 @@ class MemStoreFlusher implements FlushRequester {
       getGlobalMemstoreSize() >= globalMemStoreLimitLowMark;
   }
 
-  public void requestFlush(HRegion r) {
+  @Override
+  public void requestFlush(HRegion r, boolean forceFlushAllStores) {
     synchronized (regionsInQueue) {
-      if (!regionsInQueue.containsKey(r)) {
+      FlushRegionEntry queued = regionsInQueue.get(r);
+      if (queued == null) {
         // This entry has no delay so it will be added at the top of the flush
         // queue.  It'll come out near immediately.
-        FlushRegionEntry fqe = new FlushRegionEntry(r);
+        FlushRegionEntry fqe = new FlushRegionEntry(r, forceFlushAllStores);
         this.regionsInQueue.put(r, fqe);
         this.flushQueue.add(fqe);
+      } else if (forceFlushAllStores) {
+        // don't let a pending partial flush swallow a request to flush everything
+        queued.forceFlushAllStores();
       }
     }
   }
 
+  @Override
   public void requestDelayedFlush(HRegion r, long delay) {
     synchronized (regionsInQueue) {
       if (!regionsInQueue.containsKey(r)) {
         // This entry has some delay
-        FlushRegionEntry fqe = new FlushRegionEntry(r);
+        FlushRegionEntry fqe = new FlushRegionEntry(r, false);
         fqe.requeue(delay);
         this.regionsInQueue.put(r, fqe);
         this.flushQueue.add(fqe);
@@ -432,7 +438,7 @@ class MemStoreFlusher implements FlushRequester {
         return true;
       }
     }
-    return flushRegion(region, false);
+    return flushRegion(region, false, fqe.isForceFlushAllStores());
   }
 
   /*
@@ -442,12 +448,15 @@ class MemStoreFlusher implements FlushRequester {
    * needs to be removed from the flush queue. If false, when we were called
    * from the main flusher run loop and we got the entry to flush by calling
    * poll on the flush queue (which removed it).
+   * @param forceFlushAllStores Set to flush all stores instead of the stores
+   * picked by the flush policy of the region.
    *
    * @return true if the region was successfully flushed, false otherwise. If
    * false, there will be accompanying log messages explaining why the log was
    * not flushed.
    */
-  private boolean flushRegion(final HRegion region, final boolean emergencyFlush) {
+  private boolean flushRegion(final HRegion region, final boolean emergencyFlush,
+      final boolean forceFlushAllStores) {
     synchronized (this.regionsInQueue) {
       FlushRegionEntry fqe = this.regionsInQueue.remove(region);
       if (fqe != null && emergencyFlush) {
@@ -458,7 +467,8 @@ class MemStoreFlusher implements FlushRequester {
     }
     lock.readLock().lock();
     try {
-      boolean shouldCompact = region.flushcache().isCompactionNeeded();
+      // unless forced, the flush policy of the region picks the stores worth flushing
+      boolean shouldCompact = region.flushcache(forceFlushAllStores).isCompactionNeeded();
       // We just want to check the size
       boolean shouldSplit = region.checkSplit() != null;
       if (shouldSplit) {
@@ -612,9 +622,11 @@ class MemStoreFlusher implements FlushRequester {
     private final long createTime;
     private long whenToExpire;
     private int requeueCount = 0;
+    private volatile boolean forceFlushAllStores;
 
-    FlushRegionEntry(final HRegion r) {
+    FlushRegionEntry(final HRegion r, final boolean forceFlushAllStores) {
       this.region = r;
+      this.forceFlushAllStores = forceFlushAllStores;
       this.createTime = System.currentTimeMillis();
       this.whenToExpire = this.createTime;
     }
@@ -627,6 +639,20 @@ class MemStoreFlusher implements FlushRequester {
       return (System.currentTimeMillis() - this.createTime) > maximumWait;
     }
 
+    /**
+     * @return True if all stores of the region are to be flushed.
+     */
+    public boolean isForceFlushAllStores() {
+      return this.forceFlushAllStores;
+    }
+
+    /**
+     * Makes this entry flush all stores of the region.
+     */
+    public void forceFlushAllStores() {
+      this.forceFlushAllStores = true;
+    }
+
     /**
      * @return Count of times {@link #requeue(long)} was called; i.e this is
      * number of times we've been requeued.
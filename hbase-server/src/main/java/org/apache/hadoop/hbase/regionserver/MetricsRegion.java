@@ -65,6 +65,18 @@ public class MetricsRegion {
     source.updateIncrement();
   }
 
+  public void updateRowCacheHit() {
+    source.updateRowCacheHit();
+  }
+
+  public void updateRowCacheMiss() {
+    source.updateRowCacheMiss();
+  }
+
+  public void updateFlush(final String family, final long flushSize) {
+    source.updateFlush(family, flushSize);
+  }
+
   MetricsRegionSource getSource() {
     return source;
   }
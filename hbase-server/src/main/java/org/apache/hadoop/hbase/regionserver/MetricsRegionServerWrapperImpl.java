@@ -32,6 +32,7 @@ import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
 import org.apache.hadoop.metrics2.MetricsExecutor;
@@ -58,6 +59,7 @@ class MetricsRegionServerWrapperImpl
   private volatile double requestsPerSecond = 0.0;
   private volatile long readRequestsCount = 0;
   private volatile long writeRequestsCount = 0;
+  private volatile long tombstonesSkipped = 0;
   private volatile long checkAndMutateChecksFailed = 0;
   private volatile long checkAndMutateChecksPassed = 0;
   private volatile long storefileIndexSize = 0;
@@ -184,6 +186,41 @@ class MetricsRegionServerWrapperImpl
     return this.regionServer.compactSplitThread.getLargeCompactionQueueSize();
   }
 
+  @Override
+  public long getCompactionThroughputLimit() {
+    if (this.regionServer.compactSplitThread == null) {
+      return 0;
+    }
+    return this.regionServer.compactSplitThread.getCompactionThroughputController()
+        .getMaxThroughput();
+  }
+
+  @Override
+  public long getCompactionThrottledTime() {
+    if (this.regionServer.compactSplitThread == null) {
+      return 0;
+    }
+    return this.regionServer.compactSplitThread.getCompactionThroughputController()
+        .getTotalThrottledTime();
+  }
+
+  @Override
+  public long getCompactionEffectiveThroughput() {
+    if (this.regionServer.compactSplitThread == null) {
+      return 0;
+    }
+    return this.regionServer.compactSplitThread.getCompactionThroughputController()
+        .getEffectiveThroughput();
+  }
+
+  @Override
+  public long getCompactionsPreempted() {
+    if (this.regionServer.compactSplitThread == null) {
+      return 0;
+    }
+    return this.regionServer.compactSplitThread.getPreemptedCompactionCount();
+  }
+
   @Override
   public int getFlushQueueSize() {
     //If there is no flusher there should be no queue.
@@ -209,6 +246,15 @@ class MetricsRegionServerWrapperImpl
     return this.blockCache.getCurrentSize();
   }
 
+  @Override
+  public long getRowCacheSize() {
+    RegionServerAccounting accounting = this.regionServer.getRegionServerAccounting();
+    if (accounting == null) {
+      return 0;
+    }
+    return accounting.getRowCacheSize();
+  }
+
   @Override
   public long getBlockCacheFreeSize() {
     if (this.blockCache == null) {
@@ -241,6 +287,11 @@ class MetricsRegionServerWrapperImpl
     return this.cacheStats.getEvictedCount();
   }
 
+  @Override
+  public long getDataBlocksSkippedByTimeRange() {
+    return HFile.getSkippedDataBlockCount();
+  }
+
   @Override
   public int getBlockCacheHitPercent() {
     if (this.cacheStats == null) {
@@ -305,6 +356,11 @@ class MetricsRegionServerWrapperImpl
     return writeRequestsCount;
   }
 
+  @Override
+  public long getTombstonesSkipped() {
+    return tombstonesSkipped;
+  }
+
   @Override
   public long getCheckAndMutateChecksFailed() {
     return checkAndMutateChecksFailed;
@@ -378,6 +434,7 @@ class MetricsRegionServerWrapperImpl
       long tempStoreFileSize = 0;
       long tempReadRequestsCount = 0;
       long tempWriteRequestsCount = 0;
+      long tempTombstonesSkipped = 0;
       long tempCheckAndMutateChecksFailed = 0;
       long tempCheckAndMutateChecksPassed = 0;
       long tempStorefileIndexSize = 0;
@@ -393,6 +450,7 @@ class MetricsRegionServerWrapperImpl
         tempDataInMemoryWithoutWAL += r.dataInMemoryWithoutWAL.get();
         tempReadRequestsCount += r.readRequestsCount.get();
         tempWriteRequestsCount += r.writeRequestsCount.get();
+        tempTombstonesSkipped += r.tombstonesSkipped.get();
         tempCheckAndMutateChecksFailed += r.checkAndMutateChecksFailed.get();
         tempCheckAndMutateChecksPassed += r.checkAndMutateChecksPassed.get();
         tempNumStores += r.stores.size();
@@ -451,6 +509,7 @@ class MetricsRegionServerWrapperImpl
       storeFileSize = tempStoreFileSize;
       readRequestsCount = tempReadRequestsCount;
       writeRequestsCount = tempWriteRequestsCount;
+      tombstonesSkipped = tempTombstonesSkipped;
       checkAndMutateChecksFailed = tempCheckAndMutateChecksFailed;
       checkAndMutateChecksPassed = tempCheckAndMutateChecksPassed;
       storefileIndexSize = tempStorefileIndexSize;
@@ -18,16 +18,22 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 
 /**
  * RegionServerAccounting keeps record of some basic real time information about
- * the Region Server. Currently, it only keeps record the global memstore size. 
+ * the Region Server: the global memstore size, and the size of the row caches of all
+ * its regions against their shared budget.
  */
 @InterfaceAudience.Private
 public class RegionServerAccounting {
@@ -39,6 +45,17 @@ public class RegionServerAccounting {
   private final ConcurrentMap<byte[], AtomicLong> replayEditsPerRegion = 
     new ConcurrentSkipListMap<byte[], AtomicLong>(Bytes.BYTES_COMPARATOR);
 
+  // heap held by the row caches of all the regions, and the caches holding it
+  private final AtomicLong rowCacheSize = new AtomicLong(0);
+  private final long rowCacheMaxSize;
+  private final Set<RowCache> rowCaches =
+    Collections.newSetFromMap(new ConcurrentHashMap<RowCache, Boolean>());
+  private volatile long lastRowCacheSweep = 0;
+
+  public RegionServerAccounting(Configuration conf) {
+    this.rowCacheMaxSize = RowCache.getServerMaxSize(conf);
+  }
+
   /**
    * @return the global Memstore size in the RegionServer
    */
@@ -96,5 +113,65 @@ public class RegionServerAccounting {
   public void clearRegionReplayEditsSize(byte[] regionName) {
     replayEditsPerRegion.remove(regionName);
   }
+
+  /**
+   * @return the heap held by the row caches of all the regions
+   */
+  public long getRowCacheSize() {
+    return rowCacheSize.get();
+  }
+
+  /**
+   * @return the most heap the row caches of all the regions may hold
+   */
+  public long getRowCacheMaxSize() {
+    return rowCacheMaxSize;
+  }
+
+  /**
+   * Reserves heap for a row cache entry, if it fits in the budget.
+   * @return true if the size was added
+   */
+  boolean tryAddRowCacheSize(long size) {
+    while (true) {
+      long current = rowCacheSize.get();
+      if (current + size > rowCacheMaxSize) {
+        return false;
+      }
+      if (rowCacheSize.compareAndSet(current, current + size)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @param size heap given back by a row cache, negative
+   */
+  void addRowCacheSize(long size) {
+    rowCacheSize.addAndGet(size);
+  }
+
+  void registerRowCache(RowCache rowCache) {
+    rowCaches.add(rowCache);
+  }
+
+  void unregisterRowCache(RowCache rowCache) {
+    rowCaches.remove(rowCache);
+  }
+
+  /**
+   * Drops the expired results of all the row caches, at most once a second, so that the
+   * caches of regions no longer read give back their share of the budget.
+   */
+  void evictExpiredRowCaches() {
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    if (now - lastRowCacheSweep < 1000) {
+      return;
+    }
+    lastRowCacheSweep = now;
+    for (RowCache rowCache : rowCaches) {
+      rowCache.evictExpired();
+    }
+  }
   
 }
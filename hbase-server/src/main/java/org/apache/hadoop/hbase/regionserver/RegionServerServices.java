@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.executor.ExecutorService;
 import org.apache.hadoop.hbase.ipc.PriorityFunction;
 import org.apache.hadoop.hbase.ipc.RpcServerInterface;
 import org.apache.hadoop.hbase.master.TableLockManager;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
 import org.apache.zookeeper.KeeperException;
 
@@ -53,6 +54,11 @@ public interface RegionServerServices
    */
   CompactionRequestor getCompactionRequester();
 
+  /**
+   * @return Implementation of {@link CompactionThroughputController} or null.
+   */
+  CompactionThroughputController getCompactionThroughputController();
+
   /**
    * @return Implementation of {@link FlushRequester} or null.
    */
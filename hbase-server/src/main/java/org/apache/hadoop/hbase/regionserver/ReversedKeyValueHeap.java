@@ -142,8 +142,7 @@ public class ReversedKeyValueHeap extends KeyValueHeap {
       KeyValueScanner topScanner = this.heap.peek();
       if (topScanner != null
           && this.comparator.compare(this.current, topScanner) > 0) {
-        this.heap.add(this.current);
-        this.current = pollRealKV();
+        this.current = pollRealKV(this.heap.replaceTop(this.current));
       }
     }
     return kvReturn;
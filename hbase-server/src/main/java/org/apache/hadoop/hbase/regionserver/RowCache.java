@@ -0,0 +1,431 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.HashedBytes;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Per-region cache of the cells returned by client {@link Get}s, keyed by row and by the
+ * requested column set.
+ * <p>
+ * Only plain gets are cached: no filter, all-time time range, a single version and no
+ * per-family limit or offset. Cached cells are deep copies, so they never share memory with
+ * memstore chunks that get recycled after a flush.
+ * <p>
+ * Besides the per-region limits, the caches of all the regions of a server share a heap
+ * budget, kept by its {@link RegionServerAccounting}. When it is used up, expired results of
+ * all the caches are dropped, then the least recently used rows of the caching region.
+ * <p>
+ * Consistency with the write path is kept with a striped invalidation counter. A reader takes
+ * a stamp with {@link #getStamp(byte[])} <i>before</i> it opens its scanner (and so before it
+ * picks its MVCC read point); writers call {@link #invalidate(byte[])} only <i>after</i> their
+ * MVCC write entry completed. A result is kept only if the stamp of its row did not move while
+ * it was being read, so a reader can never publish a result that misses a write which completed
+ * before the result got into the cache.
+ * <p>
+ * This class is thread-safe.
+ */
+@InterfaceAudience.Private
+public class RowCache {
+  /** Table or site level switch for the row cache; disabled by default */
+  public static final String ROWCACHE_ENABLED_KEY = "hbase.region.rowcache.enabled";
+  /** Maximum number of rows cached per region */
+  public static final String ROWCACHE_MAX_ROWS_KEY = "hbase.region.rowcache.max.rows";
+  public static final int DEFAULT_ROWCACHE_MAX_ROWS = 10000;
+  /** Results with more serialized bytes than this are never cached */
+  public static final String ROWCACHE_MAX_RESULT_SIZE_KEY =
+      "hbase.region.rowcache.max.result.size";
+  public static final long DEFAULT_ROWCACHE_MAX_RESULT_SIZE = 64 * 1024;
+  /**
+   * Maximum age of a cached result in ms. Bounds how long cells expired by TTL can still be
+   * served from the cache.
+   */
+  public static final String ROWCACHE_MAX_AGE_KEY = "hbase.region.rowcache.max.age";
+  public static final long DEFAULT_ROWCACHE_MAX_AGE = 60 * 1000;
+  /**
+   * Share of the heap held by the row caches of all the regions of a server, on top of the
+   * memstores and the block cache
+   */
+  public static final String ROWCACHE_SIZE_KEY = "hbase.regionserver.rowcache.size";
+  public static final float DEFAULT_ROWCACHE_SIZE = 0.01f;
+
+  private static final int NUM_STRIPES = 256;
+
+  private final int maxRows;
+  private final long maxResultSize;
+  private final long maxAge;
+  private final RegionServerAccounting accounting;
+
+  private final AtomicLongArray stripes = new AtomicLongArray(NUM_STRIPES);
+
+  // row -> (column set -> cached cells), in access order
+  private final LinkedHashMap<HashedBytes, Map<HashedBytes, CachedResult>> rows;
+  // heap held by the cached results, taken from the budget of the accounting; guarded by rows
+  private long size = 0;
+  private boolean closed = false;
+
+  private static final long ENTRY_OVERHEAD = ClassSize.align(ClassSize.OBJECT +
+      2 * ClassSize.REFERENCE + Bytes.SIZEOF_LONG) + ClassSize.MAP_ENTRY + ClassSize.ARRAY;
+
+  private static class CachedResult {
+    private final Cell[] cells;
+    private final long createTime;
+    private final long heapSize;
+
+    CachedResult(HashedBytes row, HashedBytes columns, List<Cell> cells, long createTime) {
+      // Cells read from the memstore point into MSLAB chunks, which the chunk pool hands out
+      // again once the memstore got flushed; keep private copies instead.
+      this.cells = new Cell[cells.size()];
+      long heapSize = ENTRY_OVERHEAD + ClassSize.align(cells.size() * ClassSize.REFERENCE) +
+          row.getBytes().length + columns.getBytes().length;
+      for (int i = 0; i < this.cells.length; i++) {
+        KeyValue kv = KeyValueUtil.copyToNewKeyValue(cells.get(i));
+        this.cells[i] = kv;
+        heapSize += kv.heapSize();
+      }
+      this.createTime = createTime;
+      this.heapSize = heapSize;
+    }
+  }
+
+  /**
+   * @param conf the region configuration, including table level overrides
+   * @param accounting the accounting of the region server, or null outside of one
+   * @return a new row cache, or null if the row cache is not enabled for this region
+   */
+  static RowCache create(final Configuration conf, final RegionServerAccounting accounting) {
+    if (!conf.getBoolean(ROWCACHE_ENABLED_KEY, false)) {
+      return null;
+    }
+    return new RowCache(conf, accounting);
+  }
+
+  /**
+   * @return the most heap the row caches of all the regions of a server may hold
+   */
+  static long getServerMaxSize(final Configuration conf) {
+    return (long) (Runtime.getRuntime().maxMemory() *
+        conf.getFloat(ROWCACHE_SIZE_KEY, DEFAULT_ROWCACHE_SIZE));
+  }
+
+  /**
+   * A row cache with a budget of its own.
+   */
+  @VisibleForTesting
+  RowCache(final Configuration conf) {
+    this(conf, null);
+  }
+
+  RowCache(final Configuration conf, final RegionServerAccounting accounting) {
+    this.maxRows = conf.getInt(ROWCACHE_MAX_ROWS_KEY, DEFAULT_ROWCACHE_MAX_ROWS);
+    this.maxResultSize = conf.getLong(ROWCACHE_MAX_RESULT_SIZE_KEY,
+        DEFAULT_ROWCACHE_MAX_RESULT_SIZE);
+    this.maxAge = conf.getLong(ROWCACHE_MAX_AGE_KEY, DEFAULT_ROWCACHE_MAX_AGE);
+    this.rows = new LinkedHashMap<HashedBytes, Map<HashedBytes, CachedResult>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<HashedBytes, Map<HashedBytes, CachedResult>> eldest) {
+        if (size() > RowCache.this.maxRows) {
+          release(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+    this.accounting = accounting != null ? accounting : new RegionServerAccounting(conf);
+    this.accounting.registerRowCache(this);
+  }
+
+  /**
+   * @param get the get, after coprocessor pre hooks ran
+   * @return true if the result of this get can be served from and stored into the cache
+   */
+  static boolean isCacheable(final Get get) {
+    return get.getFilter() == null
+        && get.getTimeRange().isAllTime()
+        && get.getMaxVersions() == 1
+        && get.getMaxResultsPerColumnFamily() < 0
+        && get.getRowOffsetPerColumnFamily() == 0
+        && !get.isClosestRowBefore();
+  }
+
+  /**
+   * @return a copy of the cached cells for this get, or null on a cache miss
+   */
+  List<Cell> getCachedResult(final Get get) {
+    HashedBytes row = new HashedBytes(get.getRow());
+    HashedBytes columns = toColumnsKey(get);
+    CachedResult cached;
+    synchronized (rows) {
+      Map<HashedBytes, CachedResult> results = rows.get(row);
+      cached = results == null ? null : results.get(columns);
+    }
+    if (cached == null) {
+      return null;
+    }
+    if (EnvironmentEdgeManager.currentTimeMillis() - cached.createTime > maxAge) {
+      synchronized (rows) {
+        removeResult(row, columns, cached);
+      }
+      return null;
+    }
+    List<Cell> copy = new ArrayList<Cell>(cached.cells.length);
+    for (Cell cell : cached.cells) {
+      copy.add(cell);
+    }
+    return copy;
+  }
+
+  /**
+   * Must be called before the scanner serving the get is opened.
+   * @return the stamp to hand to {@link #cacheResult(Get, long, List)}
+   */
+  long getStamp(final byte[] row) {
+    return stripes.get(stripeOf(row));
+  }
+
+  /**
+   * Caches the result of a get, unless the row was invalidated since <code>stamp</code> was
+   * taken.
+   */
+  void cacheResult(final Get get, final long stamp, final List<Cell> cells) {
+    long size = 0;
+    for (Cell cell : cells) {
+      size += KeyValueUtil.length(cell);
+    }
+    if (size > maxResultSize) {
+      return;
+    }
+    int stripe = stripeOf(get.getRow());
+    if (stripes.get(stripe) != stamp) {
+      return;
+    }
+    HashedBytes row = new HashedBytes(get.getRow());
+    HashedBytes columns = toColumnsKey(get);
+    CachedResult cached =
+        new CachedResult(row, columns, cells, EnvironmentEdgeManager.currentTimeMillis());
+    if (!reserve(cached.heapSize)) {
+      return;
+    }
+    synchronized (rows) {
+      if (closed) {
+        accounting.addRowCacheSize(-cached.heapSize);
+        return;
+      }
+      size += cached.heapSize;
+      Map<HashedBytes, CachedResult> results = rows.get(row);
+      if (results == null) {
+        results = new HashMap<HashedBytes, CachedResult>();
+        rows.put(row, results);
+      }
+      CachedResult previous = results.put(columns, cached);
+      if (previous != null) {
+        release(previous.heapSize);
+      }
+    }
+    // An invalidation that raced with us bumped the stripe before it cleared the row; if we
+    // missed its removal, back our entry out ourselves.
+    if (stripes.get(stripe) != stamp) {
+      synchronized (rows) {
+        removeResult(row, columns, cached);
+      }
+    }
+  }
+
+  /**
+   * Takes heap for a new result from the shared budget, making room if it is used up.
+   * @return false if there is no room for it
+   */
+  private boolean reserve(final long heapSize) {
+    if (accounting.tryAddRowCacheSize(heapSize)) {
+      return true;
+    }
+    // not holding our lock, as this goes through the caches of the other regions
+    accounting.evictExpiredRowCaches();
+    if (accounting.tryAddRowCacheSize(heapSize)) {
+      return true;
+    }
+    synchronized (rows) {
+      Iterator<Map<HashedBytes, CachedResult>> it = rows.values().iterator();
+      while (it.hasNext()) {
+        Map<HashedBytes, CachedResult> results = it.next();
+        it.remove();
+        release(results);
+        if (accounting.tryAddRowCacheSize(heapSize)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Drops the results older than the max age.
+   */
+  void evictExpired() {
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    synchronized (rows) {
+      Iterator<Map<HashedBytes, CachedResult>> rowIt = rows.values().iterator();
+      while (rowIt.hasNext()) {
+        Map<HashedBytes, CachedResult> results = rowIt.next();
+        Iterator<CachedResult> it = results.values().iterator();
+        while (it.hasNext()) {
+          CachedResult cached = it.next();
+          if (now - cached.createTime > maxAge) {
+            it.remove();
+            release(cached.heapSize);
+          }
+        }
+        if (results.isEmpty()) {
+          rowIt.remove();
+        }
+      }
+    }
+  }
+
+  // Called holding the rows lock.
+  private void removeResult(final HashedBytes row, final HashedBytes columns,
+      final CachedResult cached) {
+    Map<HashedBytes, CachedResult> results = rows.get(row);
+    if (results != null && results.get(columns) == cached) {
+      results.remove(columns);
+      release(cached.heapSize);
+    }
+  }
+
+  // Called holding the rows lock.
+  private void release(final Map<HashedBytes, CachedResult> results) {
+    if (results == null) {
+      return;
+    }
+    for (CachedResult cached : results.values()) {
+      release(cached.heapSize);
+    }
+  }
+
+  // Called holding the rows lock.
+  private void release(final long heapSize) {
+    size -= heapSize;
+    accounting.addRowCacheSize(-heapSize);
+  }
+
+  /**
+   * Drops all cached results of a row. Must be called after the mutation of the row became
+   * visible to readers, i.e. after its MVCC write entry completed.
+   */
+  void invalidate(final byte[] row) {
+    stripes.incrementAndGet(stripeOf(row));
+    synchronized (rows) {
+      release(rows.remove(new HashedBytes(row)));
+    }
+  }
+
+  /**
+   * Drops all cached results, e.g. after a bulk load or a compaction changed the store files.
+   */
+  void invalidateAll() {
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes.incrementAndGet(i);
+    }
+    synchronized (rows) {
+      rows.clear();
+      accounting.addRowCacheSize(-size);
+      size = 0;
+    }
+  }
+
+  /**
+   * Drops all cached results and gives their heap back for good, when the region closes.
+   */
+  void close() {
+    synchronized (rows) {
+      closed = true;
+    }
+    invalidateAll();
+    accounting.unregisterRowCache(this);
+  }
+
+  @VisibleForTesting
+  int getRowCount() {
+    synchronized (rows) {
+      return rows.size();
+    }
+  }
+
+  @VisibleForTesting
+  long getSize() {
+    synchronized (rows) {
+      return size;
+    }
+  }
+
+  private static int stripeOf(final byte[] row) {
+    return (Bytes.hashCode(row) & Integer.MAX_VALUE) % NUM_STRIPES;
+  }
+
+  private static HashedBytes toColumnsKey(final Get get) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    try {
+      out.writeBoolean(get.isCheckExistenceOnly());
+      // the family map of a Get is sorted, so equal column sets serialize the same way
+      for (Map.Entry<byte[], NavigableSet<byte[]>> e : get.getFamilyMap().entrySet()) {
+        Bytes.writeByteArray(out, e.getKey());
+        NavigableSet<byte[]> qualifiers = e.getValue();
+        if (qualifiers == null) {
+          out.writeInt(-1);
+        } else {
+          out.writeInt(qualifiers.size());
+          for (byte[] qualifier : qualifiers) {
+            Bytes.writeByteArray(out, qualifier);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // not possible with a ByteArrayOutputStream
+      throw new RuntimeException(e);
+    }
+    return new HashedBytes(baos.toByteArray());
+  }
+}
@@ -136,6 +136,9 @@ public class ScanQueryMatcher {
 
   private final boolean isReversed;
 
+  /** Delete markers skipped by a user scan, reported in the region metrics */
+  private long tombstonesSkipped = 0;
+
   /**
    * Construct a QueryMatcher for a scan
    * @param scan
@@ -335,6 +338,9 @@ public class ScanQueryMatcher {
      */
     byte type = bytes[initialOffset + keyLength - 1];
     if (kv.isDelete()) {
+      if (isUserScan && !retainDeletesInOutput) {
+        tombstonesSkipped++;
+      }
       if (!keepDeletedCells) {
         // first ignore delete markers if the scanner can do so, and the
         // range does not include the marker
@@ -522,6 +528,13 @@ public class ScanQueryMatcher {
     stickyNextRow = false;
   }
 
+  /**
+   * @return the number of delete markers this user scan has skipped
+   */
+  public long getTombstonesSkipped() {
+    return tombstonesSkipped;
+  }
+
   /**
    *
    * @return the start key
@@ -23,6 +23,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.ipc.RpcScheduler;
+import org.apache.hadoop.hbase.ipc.ScanClassifier;
 import org.apache.hadoop.hbase.ipc.SimpleRpcScheduler;
 
 /** Constructs a {@link SimpleRpcScheduler}. for the region server. */
@@ -41,6 +42,7 @@ public class SimpleRpcSchedulerFactory implements RpcSchedulerFactory {
         conf.getInt(HConstants.REGION_SERVER_REPLICATION_HANDLER_COUNT,
             HConstants.DEFAULT_REGION_SERVER_REPLICATION_HANDLER_COUNT),
         server,
-        HConstants.QOS_THRESHOLD);
+        HConstants.QOS_THRESHOLD,
+        server instanceof ScanClassifier ? (ScanClassifier) server : null);
   }
 }
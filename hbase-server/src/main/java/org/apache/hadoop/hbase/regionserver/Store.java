@@ -203,6 +203,12 @@ public interface Store extends HeapSize, StoreConfigInformation {
 
   int getCompactPriority();
 
+  /**
+   * @return how close this store is to blocking updates for having too many store files: 0 when
+   *         it has none, 1.0 or more once it reached blockingStoreFiles
+   */
+  double getCompactionPressure();
+
   StoreFlushContext createFlushContext(long cacheFlushId);
 
   /**
@@ -111,6 +111,9 @@ public class StoreFile {
   /** Key for timestamp of earliest-put in metadata*/
   public static final byte[] EARLIEST_PUT_TS = Bytes.toBytes("EARLIEST_PUT_TS");
 
+  /** Key for the number of delete markers of all types in metadata */
+  public static final byte[] DELETE_MARKER_COUNT = Bytes.toBytes("DELETE_MARKER_COUNT");
+
   private final StoreFileInfo fileInfo;
   private final FileSystem fs;
 
@@ -687,6 +690,7 @@ public class StoreFile {
     private long earliestPutTs = HConstants.LATEST_TIMESTAMP;
     private KeyValue lastDeleteFamilyKV = null;
     private long deleteFamilyCnt = 0;
+    private long deleteMarkerCnt = 0;
 
 
     /** Checksum type */
@@ -778,11 +782,12 @@ public class StoreFile {
     }
 
     /**
-     * Add TimestampRange and earliest put timestamp to Metadata
+     * Add TimestampRange, earliest put timestamp and delete marker count to Metadata
      */
     public void appendTrackedTimestampsToMetadata() throws IOException {
       appendFileInfo(TIMERANGE_KEY,WritableUtils.toByteArray(timeRangeTracker));
       appendFileInfo(EARLIEST_PUT_TS, Bytes.toBytes(earliestPutTs));
+      appendFileInfo(DELETE_MARKER_COUNT, Bytes.toBytes(deleteMarkerCnt));
     }
 
     /**
@@ -795,7 +800,7 @@ public class StoreFile {
     }
 
     /**
-     * Record the earlest Put timestamp.
+     * Record the earlest Put timestamp and count the delete markers.
      *
      * If the timeRangeTracker is not set,
      * update TimeRangeTracker to include the timestamp of this key
@@ -804,6 +809,8 @@ public class StoreFile {
     public void trackTimestamps(final KeyValue kv) {
       if (KeyValue.Type.Put.getCode() == kv.getTypeByte()) {
         earliestPutTs = Math.min(earliestPutTs, kv.getTimestamp());
+      } else if (kv.isDelete()) {
+        deleteMarkerCnt++;
       }
       if (!isTimeRangeTrackerSet) {
         timeRangeTracker.includeTimestamp(kv);
@@ -903,12 +910,70 @@ public class StoreFile {
     }
 
     public void append(final KeyValue kv) throws IOException {
+      appendToBloomFilters(kv);
+      appendToFile(kv);
+    }
+
+    /**
+     * Does the Bloom filter half of {@link #append(KeyValue)}. The two halves may run in
+     * different threads, each getting all the cells in order; see {@link FlushPipeline}.
+     */
+    void appendToBloomFilters(final KeyValue kv) throws IOException {
       appendGeneralBloomfilter(kv);
       appendDeleteFamilyBloomFilter(kv);
+    }
+
+    /**
+     * Does the other half of {@link #append(KeyValue)}: writes the cell to the file.
+     */
+    void appendToFile(final KeyValue kv) throws IOException {
       writer.append(kv);
       trackTimestamps(kv);
     }
 
+    /**
+     * @return whether {@link #appendDataBlocks(Reader)} can copy the data blocks of the given
+     *         store file, see {@link HFileWriterV2#canAppendDataBlocks(HFile.Reader)}
+     */
+    public boolean canAppendDataBlocks(Reader source) {
+      return writer instanceof HFileWriterV2
+          && ((HFileWriterV2) writer).canAppendDataBlocks(source.getHFileReader());
+    }
+
+    /**
+     * Appends all cells of another store file by copying its data blocks as they are, see
+     * {@link HFileWriterV2#appendDataBlocks(HFile.Reader)}. The cells are still read, but not
+     * written, to fill the Bloom filters, unless this file has none and the source file has no
+     * delete family markers; otherwise the tracked timestamps and delete marker count are taken
+     * from the source file.
+     * @param source a store file whose keys are all larger than the keys written so far
+     */
+    public void appendDataBlocks(Reader source) throws IOException {
+      HFile.Reader reader = source.getHFileReader();
+      byte[] earliestPut = reader.loadFileInfo().get(EARLIEST_PUT_TS);
+      if (generalBloomFilterWriter != null || source.getDeleteFamilyCnt() != 0
+          || source.timeRangeTracker == null || earliestPut == null
+          || source.getDeleteMarkerCount() < 0) {
+        HFileScanner scanner = reader.getScanner(false, false, true);
+        if (scanner.seekTo()) {
+          do {
+            KeyValue kv = scanner.getKeyValue();
+            appendGeneralBloomfilter(kv);
+            appendDeleteFamilyBloomFilter(kv);
+            trackTimestamps(kv);
+          } while (scanner.next());
+        }
+      } else {
+        earliestPutTs = Math.min(earliestPutTs, Bytes.toLong(earliestPut));
+        deleteMarkerCnt += source.getDeleteMarkerCount();
+        if (!isTimeRangeTrackerSet) {
+          timeRangeTracker.includeTimestamp(source.timeRangeTracker.getMinimumTimestamp());
+          timeRangeTracker.includeTimestamp(source.timeRangeTracker.getMaximumTimestamp());
+        }
+      }
+      ((HFileWriterV2) writer).appendDataBlocks(reader);
+    }
+
     public Path getPath() {
       return this.writer.getPath();
     }
@@ -1008,6 +1073,7 @@ public class StoreFile {
     protected long sequenceID = -1;
     private byte[] lastBloomKey;
     private long deleteFamilyCnt = -1;
+    private long deleteMarkerCnt = -1;
 
     public Reader(FileSystem fs, Path path, CacheConfig cacheConf, Configuration conf)
         throws IOException {
@@ -1340,6 +1406,10 @@ public class StoreFile {
       if (cnt != null) {
         deleteFamilyCnt = Bytes.toLong(cnt);
       }
+      cnt = fi.get(DELETE_MARKER_COUNT);
+      if (cnt != null) {
+        deleteMarkerCnt = Bytes.toLong(cnt);
+      }
 
       return fi;
     }
@@ -1454,6 +1524,14 @@ public class StoreFile {
       return deleteFamilyCnt;
     }
 
+    /**
+     * @return the number of delete markers of all types in the file, -1 if the file was
+     *         written before they were counted
+     */
+    public long getDeleteMarkerCount() {
+      return deleteMarkerCnt;
+    }
+
     public byte[] getFirstKey() {
       return reader.getFirstKey();
     }
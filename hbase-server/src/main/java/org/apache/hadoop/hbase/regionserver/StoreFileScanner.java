@@ -398,6 +398,14 @@ public class StoreFileScanner implements KeyValueScanner {
     seekCount = new AtomicLong();
   }
 
+  /**
+   * Lets this scanner step over data blocks whose cells are all older than the given
+   * timestamp, see {@link HFileScanner#skipBlocksOlderThan(long)}.
+   */
+  void skipBlocksOlderThan(long timestamp) {
+    hfs.skipBlocksOlderThan(timestamp);
+  }
+
   @Override
   public boolean shouldUseScanner(Scan scan, SortedSet<byte[]> columns, long oldestUnexpiredTS) {
     return reader.passesTimerangeFilter(scan, oldestUnexpiredTS)
@@ -111,7 +111,8 @@ abstract class StoreFlusher {
   }
 
   /**
-   * Performs memstore flush, writing data from scanner into sink.
+   * Performs memstore flush, writing data from scanner into sink. The flush runs as a
+   * {@link FlushPipeline} if that is enabled.
    * @param scanner Scanner to get data from.
    * @param sink Sink to write data to. Could be StoreFile.Writer.
    * @param smallestReadPoint Smallest read point used for the flush.
@@ -121,6 +122,10 @@ abstract class StoreFlusher {
       Compactor.CellSink sink, long smallestReadPoint) throws IOException {
     int compactionKVMax =
       conf.getInt(HConstants.COMPACTION_KV_MAX, HConstants.COMPACTION_KV_MAX_DEFAULT);
+    if (FlushPipeline.isEnabled(conf)) {
+      return new FlushPipeline(conf).run(
+          scanner, FlushPipeline.createStages(sink), smallestReadPoint, compactionKVMax);
+    }
     List<Cell> kvs = new ArrayList<Cell>();
     boolean hasMore;
     long flushed = 0;
@@ -128,16 +133,7 @@ abstract class StoreFlusher {
       hasMore = scanner.next(kvs, compactionKVMax);
       if (!kvs.isEmpty()) {
         for (Cell c : kvs) {
-          // If we know that this KV is going to be included always, then let us
-          // set its memstoreTS to 0. This will help us save space when writing to
-          // disk.
-          KeyValue kv = KeyValueUtil.ensureKeyValue(c);
-          if (kv.getMvccVersion() <= smallestReadPoint) {
-            // let us not change the original KV. It could be in the memstore
-            // changing its memstoreTS could affect other threads/scanners.
-            kv = kv.shallowCopy();
-            kv.setMvccVersion(0);
-          }
+          KeyValue kv = prepareForFlush(c, smallestReadPoint);
           sink.append(kv);
           flushed += MemStore.heapSizeChange(kv, true);
         }
@@ -146,4 +142,21 @@ abstract class StoreFlusher {
     } while (hasMore);
     return flushed;
   }
+
+  /**
+   * @return The cell as it should be written to the flushed file.
+   */
+  static KeyValue prepareForFlush(Cell c, long smallestReadPoint) {
+    // If we know that this KV is going to be included always, then let us
+    // set its memstoreTS to 0. This will help us save space when writing to
+    // disk.
+    KeyValue kv = KeyValueUtil.ensureKeyValue(c);
+    if (kv.getMvccVersion() <= smallestReadPoint) {
+      // let us not change the original KV. It could be in the memstore
+      // changing its memstoreTS could affect other threads/scanners.
+      kv = kv.shallowCopy();
+      kv.setMvccVersion(0);
+    }
+    return kv;
+  }
 }
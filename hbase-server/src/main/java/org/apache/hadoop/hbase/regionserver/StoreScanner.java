@@ -352,6 +352,11 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     // Otherwise, we might have to return KVs that have technically expired.
     long expiredTimestampCutoff = minVersions == 0 ? oldestUnexpiredTS :
         Long.MIN_VALUE;
+    // The same holds for the data blocks within a file. Cells older than the time range or
+    // expired are skipped by the matcher, and so are all cells a delete marker of such a block
+    // could cover. Raw and reversed scans walk the cells themselves and are left alone.
+    long skipBlocksOlderThan = Math.max(scan.getTimeRange().getMin(), expiredTimestampCutoff);
+    boolean skipOldBlocks = skipBlocksOlderThan > 0 && !scan.isRaw() && !scan.isReversed();
 
     // include only those scan files which pass all filters
     for (KeyValueScanner kvs : allScanners) {
@@ -361,6 +366,9 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       }
 
       if (kvs.shouldUseScanner(scan, columns, expiredTimestampCutoff)) {
+        if (skipOldBlocks && kvs instanceof StoreFileScanner) {
+          ((StoreFileScanner) kvs).skipBlocksOlderThan(skipBlocksOlderThan);
+        }
         scanners.add(kvs);
       }
     }
@@ -393,8 +401,14 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     if (this.closing) return;
     this.closing = true;
     // under test, we dont have a this.store
-    if (this.store != null)
+    if (this.store != null) {
       this.store.deleteChangedReaderObserver(this);
+      if (this.matcher != null && this.matcher.getTombstonesSkipped() > 0
+          && this.store instanceof HStore && ((HStore) this.store).getHRegion() != null) {
+        ((HStore) this.store).getHRegion().tombstonesSkipped.add(
+            this.matcher.getTombstonesSkipped());
+      }
+    }
     if (this.heap != null)
       this.heap.close();
     this.heap = null; // CLOSED!
@@ -0,0 +1,233 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A tournament tree used as the merge structure of {@link KeyValueHeap}.
+ * <p>
+ * Every element sits in a fixed leaf and each internal node remembers the winner of the match
+ * played there. Removing the smallest element, adding an element or exchanging the smallest
+ * element for another one ({@link #replaceTop(Object)}) all replay the single path from one
+ * leaf to the root, i.e. ceil(log2(N)) comparisons. A {@link java.util.PriorityQueue} needs up
+ * to two comparisons per level and a remove plus an insert for the same exchange.
+ * <p>
+ * Winners rather than losers are kept at the nodes so that an element can be added to any
+ * free leaf, not only to the leaf of the last winner.
+ * <p>
+ * Like a PriorityQueue, the tree assumes elements do not change their order while they are in
+ * it. Empty leaves sort after every element. Not thread-safe.
+ */
+@InterfaceAudience.Private
+public class TournamentTree<E> implements Iterable<E> {
+  private final Comparator<? super E> comparator;
+
+  // leaf i is node (i + leaves.length); internal nodes are 1 .. leaves.length - 1
+  private Object[] leaves;
+  // winners[n] is the leaf index of the winner of internal node n
+  private int[] winners;
+  // stack of empty leaves
+  private int[] freeLeaves;
+  private int numFree;
+  private int size;
+
+  /**
+   * @param capacity initial number of leaves; the tree grows if more elements are added
+   * @param comparator the ordering of the elements
+   */
+  public TournamentTree(int capacity, Comparator<? super E> comparator) {
+    this.comparator = comparator;
+    init(new Object[Math.max(1, capacity)], 0);
+  }
+
+  /**
+   * @param newLeaves the leaves, of which the first <code>used</code> ones are occupied
+   */
+  private void init(Object[] newLeaves, int used) {
+    int capacity = newLeaves.length;
+    this.leaves = newLeaves;
+    this.winners = new int[capacity];
+    this.freeLeaves = new int[capacity];
+    // hand out the low leaves first
+    this.numFree = capacity - used;
+    for (int i = 0; i < numFree; i++) {
+      freeLeaves[i] = capacity - 1 - i;
+    }
+    this.size = used;
+    // play all matches bottom up
+    for (int n = capacity - 1; n >= 1; n--) {
+      winners[n] = play(winnerOf(2 * n), winnerOf(2 * n + 1));
+    }
+  }
+
+  private int winnerOf(int node) {
+    return node >= leaves.length ? node - leaves.length : winners[node];
+  }
+
+  /**
+   * @return the leaf that wins between leaves a and b; a wins ties
+   */
+  @SuppressWarnings("unchecked")
+  private int play(int a, int b) {
+    Object eb = leaves[b];
+    if (eb == null) {
+      return a;
+    }
+    Object ea = leaves[a];
+    if (ea == null) {
+      return b;
+    }
+    return comparator.compare((E) eb, (E) ea) < 0 ? b : a;
+  }
+
+  /**
+   * Replays the matches on the path from the given leaf to the root.
+   */
+  private void replay(int leaf) {
+    for (int node = leaf + leaves.length; node > 1; node >>>= 1) {
+      int left = node & ~1;
+      winners[node >>> 1] = play(winnerOf(left), winnerOf(left + 1));
+    }
+  }
+
+  private int topLeaf() {
+    return leaves.length == 1 ? 0 : winners[1];
+  }
+
+  /**
+   * @return the smallest element, or null if the tree is empty
+   */
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    return (E) leaves[topLeaf()];
+  }
+
+  /**
+   * Removes and returns the smallest element.
+   * @return the smallest element, or null if the tree is empty
+   */
+  public E poll() {
+    E top = peek();
+    if (top != null) {
+      int leaf = topLeaf();
+      leaves[leaf] = null;
+      freeLeaves[numFree++] = leaf;
+      size--;
+      replay(leaf);
+    }
+    return top;
+  }
+
+  /**
+   * Adds an element.
+   */
+  public void add(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    if (numFree == 0) {
+      init(Arrays.copyOf(leaves, leaves.length * 2), leaves.length);
+    }
+    int leaf = freeLeaves[--numFree];
+    leaves[leaf] = e;
+    size++;
+    replay(leaf);
+  }
+
+  /**
+   * Removes the smallest element and adds the given one with a single replay. Only meant for
+   * elements that do not sort before the current smallest one. If the tree is empty this is
+   * the same as {@link #add(Object)}.
+   * @return the element that was the smallest before the call, or null if the tree was empty
+   */
+  public E replaceTop(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    E top = peek();
+    if (top == null) {
+      add(e);
+      return null;
+    }
+    int leaf = topLeaf();
+    leaves[leaf] = e;
+    replay(leaf);
+    return top;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all elements.
+   */
+  public void clear() {
+    Arrays.fill(leaves, null);
+    init(leaves, 0);
+  }
+
+  /**
+   * @return an iterator over the elements in no particular order. Removal is not supported.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private int next = advance(0);
+
+      private int advance(int from) {
+        while (from < leaves.length && leaves[from] == null) {
+          from++;
+        }
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < leaves.length;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        E e = (E) leaves[next];
+        next = advance(next + 1);
+        return e;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
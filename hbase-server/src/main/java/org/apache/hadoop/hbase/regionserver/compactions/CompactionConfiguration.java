@@ -50,6 +50,13 @@ public class CompactionConfiguration {
   public static final String RATIO_KEY = CONFIG_PREFIX + "ratio";
   public static final String MIN_KEY = CONFIG_PREFIX + "min";
   public static final String MAX_KEY = CONFIG_PREFIX + "max";
+  /**
+   * Share of delete markers among the cells of a file above which the store is major compacted
+   * to drop them; 0 disables it.
+   */
+  public static final String DELETE_MARKER_RATIO_KEY = CONFIG_PREFIX + "delete.marker.ratio";
+  /** Number of delete markers a file needs for its delete marker ratio to count */
+  public static final String MIN_DELETE_MARKERS_KEY = CONFIG_PREFIX + "delete.marker.min";
 
   Configuration conf;
   StoreConfigInformation storeConfigInfo;
@@ -64,6 +71,8 @@ public class CompactionConfiguration {
   boolean shouldDeleteExpired;
   long majorCompactionPeriod;
   float majorCompactionJitter;
+  float deleteMarkerRatio;
+  long minDeleteMarkers;
 
   CompactionConfiguration(Configuration conf, StoreConfigInformation storeConfigInfo) {
     this.conf = conf;
@@ -84,6 +93,8 @@ public class CompactionConfiguration {
     majorCompactionPeriod = conf.getLong(HConstants.MAJOR_COMPACTION_PERIOD, 1000*60*60*24*7);
     // Make it 0.5 so jitter has us fall evenly either side of when the compaction should run
     majorCompactionJitter = conf.getFloat("hbase.hregion.majorcompaction.jitter", 0.50F);
+    deleteMarkerRatio = conf.getFloat(DELETE_MARKER_RATIO_KEY, 0F);
+    minDeleteMarkers = conf.getLong(MIN_DELETE_MARKERS_KEY, 10000);
 
     LOG.info(this);
   }
@@ -92,7 +103,7 @@ public class CompactionConfiguration {
   public String toString() {
     return String.format(
       "size [%d, %d); files [%d, %d); ratio %f; off-peak ratio %f; throttle point %d;"
-      + "%s delete expired; major period %d, major jitter %f",
+      + "%s delete expired; major period %d, major jitter %f; delete marker ratio %f, min %d",
       minCompactSize,
       maxCompactSize,
       minFilesToCompact,
@@ -102,7 +113,9 @@ public class CompactionConfiguration {
       throttlePoint,
       shouldDeleteExpired ? "" : " don't",
       majorCompactionPeriod,
-      majorCompactionJitter);
+      majorCompactionJitter,
+      deleteMarkerRatio,
+      minDeleteMarkers);
   }
 
   /**
@@ -170,6 +183,20 @@ public class CompactionConfiguration {
     return majorCompactionJitter;
   }
 
+  /**
+   * @return Share of delete markers in a file that triggers a major compaction, 0 if disabled
+   */
+  float getDeleteMarkerRatio() {
+    return deleteMarkerRatio;
+  }
+
+  /**
+   * @return Number of delete markers a file needs to trigger a major compaction
+   */
+  long getMinDeleteMarkers() {
+    return minDeleteMarkers;
+  }
+
   /**
    * @return Whether expired files should be deleted ASAP using compactions
    */
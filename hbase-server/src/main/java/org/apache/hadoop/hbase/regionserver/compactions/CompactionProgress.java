@@ -37,6 +37,8 @@ public class CompactionProgress {
   public long totalCompactingKVs;
   /** the completed count of key values in currently running compaction */
   public long currentCompactedKVs = 0;
+  /** whether the compaction was asked to give up its thread */
+  private volatile boolean stopRequested = false;
 
   /** Constructor
    * @param totalCompactingKVs the total Key/Value pairs to be compacted
@@ -66,4 +68,18 @@ public class CompactionProgress {
   public void complete() {
     this.totalCompactingKVs = this.currentCompactedKVs;
   }
+
+  /**
+   * Asks the compaction to stop at its next check, as if the store was closing.
+   */
+  public void requestStop() {
+    this.stopRequested = true;
+  }
+
+  /**
+   * @return whether the compaction was asked to stop
+   */
+  public boolean isStopRequested() {
+    return this.stopRequested;
+  }
 }
@@ -57,6 +57,8 @@ public class CompactionRequest implements Comparable<CompactionRequest> {
   private String regionName = "";
   private String storeName = "";
   private long totalSize = -1L;
+  private volatile boolean stopRequested = false;
+  private volatile CompactionProgress progress = null;
 
   /**
    * This ctor should be used by coprocessors that want to subclass CompactionRequest.
@@ -192,6 +194,32 @@ public class CompactionRequest implements Comparable<CompactionRequest> {
     this.isMajor = isMajor;
   }
 
+  /**
+   * Asks the running compaction to stop early, e.g. to free its thread for a more urgent one.
+   * The files stay in place and can be compacted again later.
+   */
+  public void requestStop() {
+    this.stopRequested = true;
+    CompactionProgress p = this.progress;
+    if (p != null) {
+      p.requestStop();
+    }
+  }
+
+  public boolean isStopRequested() {
+    return this.stopRequested;
+  }
+
+  /**
+   * Called by the compactor once it starts tracking the compaction of this request.
+   */
+  public void setProgress(CompactionProgress progress) {
+    this.progress = progress;
+    if (this.stopRequested) {
+      progress.requestStop();
+    }
+  }
+
   @Override
   public String toString() {
     String fsList = Joiner.on(", ").join(
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * Limits the rate at which the compactions of a region server write, so that a large compaction
+ * does not take all the disk bandwidth from reads and flushes.
+ * <p>
+ * The limit is shared by all running compactions. It moves between a lower and a higher bound
+ * with the compaction pressure of the server, i.e. with how close the fullest store is to
+ * blockingStoreFiles (see {@link #tune(double)}). Once a store reaches blockingStoreFiles the
+ * limit is lifted, as updates are blocked until the compaction finishes. During off-peak hours
+ * the off-peak limit applies instead. Throttling is disabled unless a higher bound is set.
+ * <p>
+ * A compaction calls {@link #start(String)}, then {@link #control(String, long)} with the
+ * bytes it wrote, and finally {@link #finish(String)}.
+ */
+@InterfaceAudience.Private
+public class CompactionThroughputController {
+  private static final Log LOG = LogFactory.getLog(CompactionThroughputController.class);
+
+  /** Limit in bytes per second when the compaction pressure is 1; 0 disables throttling */
+  public static final String HIGHER_BOUND_KEY =
+      "hbase.hstore.compaction.throughput.higher.bound";
+  /** Limit in bytes per second when there is no compaction pressure */
+  public static final String LOWER_BOUND_KEY = "hbase.hstore.compaction.throughput.lower.bound";
+  public static final long DEFAULT_LOWER_BOUND = 10L * 1024 * 1024;
+  /** Limit in bytes per second during off-peak hours; 0 means no limit */
+  public static final String OFFPEAK_KEY = "hbase.hstore.compaction.throughput.offpeak";
+  /** Bytes a compaction writes between two checks of its rate */
+  public static final String CONTROL_SIZE_KEY =
+      "hbase.hstore.compaction.throughput.control.size";
+  public static final long DEFAULT_CONTROL_SIZE = 1024 * 1024;
+
+  private static final double NO_LIMIT = Double.MAX_VALUE;
+
+  private final double higherBound;
+  private final double lowerBound;
+  private final double offPeakLimit;
+  private final long controlSize;
+  private final OffPeakHours offPeakHours;
+
+  private volatile double maxThroughput;
+
+  private final ConcurrentMap<String, ActiveCompaction> activeCompactions =
+      new ConcurrentHashMap<String, ActiveCompaction>();
+  private final AtomicLong compactionCount = new AtomicLong();
+
+  private final AtomicLong totalThrottledTime = new AtomicLong();
+  private final AtomicLong totalBytesWritten = new AtomicLong();
+  private final AtomicLong totalCompactionTime = new AtomicLong();
+
+  private static class ActiveCompaction {
+    private final long startTime;
+    private long lastControlTime;
+    private long lastControlSize;
+    private long totalSize;
+    private long throttledTime;
+
+    ActiveCompaction(long now) {
+      this.startTime = now;
+      this.lastControlTime = now;
+    }
+  }
+
+  public CompactionThroughputController(Configuration conf) {
+    this.higherBound = conf.getLong(HIGHER_BOUND_KEY, 0);
+    this.lowerBound = Math.min(higherBound, conf.getLong(LOWER_BOUND_KEY, DEFAULT_LOWER_BOUND));
+    long offPeak = conf.getLong(OFFPEAK_KEY, 0);
+    this.offPeakLimit = offPeak > 0 ? offPeak : NO_LIMIT;
+    this.controlSize = conf.getLong(CONTROL_SIZE_KEY, DEFAULT_CONTROL_SIZE);
+    this.offPeakHours = OffPeakHours.getInstance(conf);
+    this.maxThroughput = isEnabled() ? lowerBound : NO_LIMIT;
+    if (isEnabled()) {
+      LOG.info("Compaction throughput limited to [" + StringUtils.humanReadableInt(
+          (long) lowerBound) + ", " + StringUtils.humanReadableInt((long) higherBound)
+          + "]/s, off-peak " + (offPeakLimit == NO_LIMIT ? "unlimited" :
+            StringUtils.humanReadableInt((long) offPeakLimit) + "/s"));
+    }
+  }
+
+  /**
+   * @return whether compactions are throttled at all
+   */
+  public boolean isEnabled() {
+    return higherBound > 0;
+  }
+
+  /**
+   * Adjusts the limit to the compaction pressure of the server.
+   * @param compactionPressure the highest compaction pressure of the stores of this server; at
+   *          1.0 or above a store has reached blockingStoreFiles
+   */
+  public void tune(double compactionPressure) {
+    if (!isEnabled()) {
+      return;
+    }
+    double limit;
+    if (offPeakHours.isOffPeakHour()) {
+      limit = offPeakLimit;
+    } else if (compactionPressure >= 1.0) {
+      // updates are blocked, compact as fast as possible
+      limit = NO_LIMIT;
+    } else {
+      limit = lowerBound + (higherBound - lowerBound) * Math.max(0.0, compactionPressure);
+    }
+    if (limit != maxThroughput && LOG.isDebugEnabled()) {
+      LOG.debug("Compaction throughput limit set to " + (limit == NO_LIMIT ? "unlimited" :
+          StringUtils.humanReadableInt((long) limit) + "/s") + ", pressure "
+          + compactionPressure);
+    }
+    this.maxThroughput = limit;
+  }
+
+  /**
+   * Registers a compaction.
+   * @param prefix describes the compaction, e.g. the store it runs on
+   * @return the name to pass to {@link #control(String, long)} and {@link #finish(String)}
+   */
+  public String start(String prefix) {
+    String name = prefix + "#" + compactionCount.incrementAndGet();
+    activeCompactions.put(name, new ActiveCompaction(EnvironmentEdgeManager.currentTimeMillis()));
+    return name;
+  }
+
+  /**
+   * Accounts bytes written by a compaction and sleeps if the compaction is ahead of its share
+   * of the limit.
+   * @param compactionName the name returned by {@link #start(String)}
+   * @param size the number of bytes just written
+   * @return the time slept, in ms
+   * @throws InterruptedException if interrupted while sleeping
+   */
+  public long control(String compactionName, long size) throws InterruptedException {
+    ActiveCompaction compaction = activeCompactions.get(compactionName);
+    if (compaction == null) {
+      return 0;
+    }
+    compaction.totalSize += size;
+    long deltaSize = compaction.totalSize - compaction.lastControlSize;
+    if (deltaSize < controlSize) {
+      return 0;
+    }
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    double limit = maxThroughput;
+    long sleepTime = 0;
+    if (limit != NO_LIMIT) {
+      double perCompaction = limit / Math.max(1, activeCompactions.size());
+      long minTimeAllowed = (long) (deltaSize / perCompaction * 1000);
+      long elapsed = now - compaction.lastControlTime;
+      if (elapsed < minTimeAllowed) {
+        sleepTime = minTimeAllowed - elapsed;
+        Thread.sleep(sleepTime);
+        compaction.throttledTime += sleepTime;
+        totalThrottledTime.addAndGet(sleepTime);
+        now = EnvironmentEdgeManager.currentTimeMillis();
+      }
+    }
+    compaction.lastControlSize = compaction.totalSize;
+    compaction.lastControlTime = now;
+    return sleepTime;
+  }
+
+  /**
+   * Unregisters a compaction.
+   */
+  public void finish(String compactionName) {
+    ActiveCompaction compaction = activeCompactions.remove(compactionName);
+    if (compaction == null) {
+      return;
+    }
+    long elapsed = EnvironmentEdgeManager.currentTimeMillis() - compaction.startTime;
+    totalBytesWritten.addAndGet(compaction.totalSize);
+    totalCompactionTime.addAndGet(elapsed);
+    if (compaction.throttledTime > 0 && LOG.isDebugEnabled()) {
+      LOG.debug(compactionName + " wrote " + StringUtils.humanReadableInt(compaction.totalSize)
+          + " in " + elapsed + " ms, throttled for " + compaction.throttledTime + " ms");
+    }
+  }
+
+  /**
+   * @return the current limit in bytes per second, or 0 if compactions are not throttled
+   */
+  public long getMaxThroughput() {
+    double limit = maxThroughput;
+    return limit == NO_LIMIT ? 0 : (long) limit;
+  }
+
+  /**
+   * @return the time compactions spent sleeping to stay below the limit, in ms
+   */
+  public long getTotalThrottledTime() {
+    return totalThrottledTime.get();
+  }
+
+  /**
+   * @return the average rate at which finished compactions wrote, in bytes per second
+   */
+  public long getEffectiveThroughput() {
+    long time = totalCompactionTime.get();
+    return time <= 0 ? 0 : totalBytesWritten.get() * 1000 / time;
+  }
+
+  int getActiveCompactionCount() {
+    return activeCompactions.size();
+  }
+}
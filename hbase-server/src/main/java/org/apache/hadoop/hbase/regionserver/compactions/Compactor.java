@@ -18,6 +18,7 @@
 package org.apache.hadoop.hbase.regionserver.compactions;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -37,6 +38,7 @@ import org.apache.hadoop.hbase.io.hfile.HFile.FileInfo;
 import org.apache.hadoop.hbase.io.hfile.HFileWriterV2;
 import org.apache.hadoop.hbase.regionserver.HStore;
 import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.regionserver.RegionServerServices;
 import org.apache.hadoop.hbase.regionserver.ScanType;
 import org.apache.hadoop.hbase.regionserver.Store;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
@@ -206,42 +208,90 @@ public abstract class Compactor {
    */
   protected boolean performCompaction(InternalScanner scanner,
       CellSink writer, long smallestReadPoint) throws IOException {
+    return performCompaction(scanner, writer, smallestReadPoint, this.progress);
+  }
+
+  /**
+   * Performs the compaction, tracking it in the given progress. Used by compactions that run
+   * several scanners at once, each with its own progress.
+   * @param scanner Where to read from.
+   * @param writer Where to write to.
+   * @param smallestReadPoint Smallest read point.
+   * @param progress Progress of this scanner.
+   * @return Whether compaction ended; false if it was interrupted for some reason.
+   */
+  protected boolean performCompaction(InternalScanner scanner, CellSink writer,
+      long smallestReadPoint, CompactionProgress progress) throws IOException {
     int bytesWritten = 0;
     // Since scanner.next() can return 'false' but still be delivering data,
     // we have to use a do/while loop.
     List<Cell> kvs = new ArrayList<Cell>();
     // Limit to "hbase.hstore.compaction.kv.max" (default 10) to avoid OOME
     int closeCheckInterval = HStore.getCloseCheckInterval();
+    CompactionThroughputController throughputController = getThroughputController();
+    String compactionName = throughputController == null ? null : throughputController.start(
+        store.getRegionInfo().getEncodedName() + "#" + store.getColumnFamilyName());
     boolean hasMore;
-    do {
-      hasMore = scanner.next(kvs, compactionKVMax);
-      // output to writer:
-      for (Cell c : kvs) {
-        KeyValue kv = KeyValueUtil.ensureKeyValue(c);
-        if (kv.getMvccVersion() <= smallestReadPoint) {
-          kv.setMvccVersion(0);
-        }
-        writer.append(kv);
-        ++progress.currentCompactedKVs;
+    try {
+      do {
+        hasMore = scanner.next(kvs, compactionKVMax);
+        long batchSize = 0;
+        // output to writer:
+        for (Cell c : kvs) {
+          KeyValue kv = KeyValueUtil.ensureKeyValue(c);
+          if (kv.getMvccVersion() <= smallestReadPoint) {
+            kv.setMvccVersion(0);
+          }
+          writer.append(kv);
+          ++progress.currentCompactedKVs;
+          batchSize += kv.getLength();
 
-        // check periodically to see if a system stop is requested
-        if (closeCheckInterval > 0) {
-          bytesWritten += kv.getLength();
-          if (bytesWritten > closeCheckInterval) {
-            bytesWritten = 0;
-            if (!store.areWritesEnabled()) {
-              progress.cancel();
-              return false;
+          // check periodically to see if a system stop is requested
+          if (closeCheckInterval > 0) {
+            bytesWritten += kv.getLength();
+            if (bytesWritten > closeCheckInterval) {
+              bytesWritten = 0;
+              if (!store.areWritesEnabled() || progress.isStopRequested()
+                  || (this.progress != null && this.progress.isStopRequested())) {
+                progress.cancel();
+                return false;
+              }
             }
           }
         }
+        if (throughputController != null) {
+          throughputController.control(compactionName, batchSize);
+        }
+        kvs.clear();
+      } while (hasMore);
+    } catch (InterruptedException e) {
+      progress.cancel();
+      throw new InterruptedIOException("Interrupted while throttling " + compactionName);
+    } finally {
+      if (throughputController != null) {
+        throughputController.finish(compactionName);
       }
-      kvs.clear();
-    } while (hasMore);
+    }
     progress.complete();
     return true;
   }
 
+  /**
+   * @return the throughput controller of the region server, or null if compactions of this
+   *         store are not throttled
+   */
+  protected CompactionThroughputController getThroughputController() {
+    if (!(store instanceof HStore)) {
+      return null;
+    }
+    RegionServerServices rsServices = ((HStore) store).getHRegion().getRegionServerServices();
+    if (rsServices == null) {
+      return null;
+    }
+    CompactionThroughputController controller = rsServices.getCompactionThroughputController();
+    return controller != null && controller.isEnabled() ? controller : null;
+  }
+
   /**
    * @param store store
    * @param scanners Store file scanners.
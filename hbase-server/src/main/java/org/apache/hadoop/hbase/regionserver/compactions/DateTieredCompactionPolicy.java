@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.regionserver.StoreConfigInformation;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+/**
+ * Compaction policy for time series data, i.e. for stores where cells mostly arrive in
+ * timestamp order. Store files are grouped into time windows by their maximum timestamp and
+ * minor compactions only pick files from a single window, so that old data is not rewritten
+ * together with the new data that keeps arriving.
+ * <p>
+ * The newest window, the incoming window, is base.window.millis wide and ends at the current
+ * time. Going back in time, every windows.per.tier windows of one size are followed by windows
+ * windows.per.tier times wider, so the older the data the fewer and wider the windows are.
+ * Windows are aligned to multiples of their width, so a file stays in the same window until
+ * the window is merged into a wider one. Files whose maximum timestamp is older than
+ * max.storefile.age.millis are not compacted any more.
+ * <p>
+ * Within a window files are selected like {@link ExploringCompactionPolicy} does. The windows
+ * are tried from the newest one; the incoming window needs incoming.window.min files, the
+ * others hbase.hstore.compaction.min. Files whose data is all past the TTL are still dropped
+ * whole, and a store that might be stuck compacts its newest files regardless of windows.
+ * <p>
+ * Use through {@link org.apache.hadoop.hbase.regionserver.DefaultStoreEngine}, by setting
+ * hbase.hstore.defaultengine.compactionpolicy.class on the table or column family. Periodic
+ * major compactions rewrite all windows into one file and are best turned off.
+ */
+@InterfaceAudience.Private
+public class DateTieredCompactionPolicy extends RatioBasedCompactionPolicy {
+  private static final Log LOG = LogFactory.getLog(DateTieredCompactionPolicy.class);
+
+  private static final String CONFIG_PREFIX = "hbase.hstore.compaction.date.tiered.";
+  public static final String BASE_WINDOW_MILLIS_KEY = CONFIG_PREFIX + "base.window.millis";
+  public static final long DEFAULT_BASE_WINDOW_MILLIS = 6 * 3600 * 1000L;
+  public static final String WINDOWS_PER_TIER_KEY = CONFIG_PREFIX + "windows.per.tier";
+  public static final int DEFAULT_WINDOWS_PER_TIER = 4;
+  public static final String MAX_STOREFILE_AGE_MILLIS_KEY =
+      CONFIG_PREFIX + "max.storefile.age.millis";
+  public static final String INCOMING_WINDOW_MIN_KEY = CONFIG_PREFIX + "incoming.window.min";
+  public static final int DEFAULT_INCOMING_WINDOW_MIN = 6;
+
+  private final ExploringCompactionPolicy windowPolicy;
+  private long baseWindowMillis;
+  private int windowsPerTier;
+  private long maxStoreFileAgeMillis;
+  private int incomingWindowMin;
+
+  public DateTieredCompactionPolicy(Configuration conf, StoreConfigInformation storeConfigInfo) {
+    super(conf, storeConfigInfo);
+    this.windowPolicy = new ExploringCompactionPolicy(conf, storeConfigInfo);
+    loadConf(conf);
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    super.setConf(conf);
+    windowPolicy.setConf(conf);
+    loadConf(conf);
+  }
+
+  private void loadConf(Configuration conf) {
+    baseWindowMillis = Math.max(1, conf.getLong(BASE_WINDOW_MILLIS_KEY,
+        DEFAULT_BASE_WINDOW_MILLIS));
+    windowsPerTier = Math.max(2, conf.getInt(WINDOWS_PER_TIER_KEY, DEFAULT_WINDOWS_PER_TIER));
+    maxStoreFileAgeMillis = conf.getLong(MAX_STOREFILE_AGE_MILLIS_KEY, Long.MAX_VALUE);
+    // the selection has to pass the min files check of the base class anyway
+    incomingWindowMin = Math.max(comConf.getMinFilesToCompact(),
+        conf.getInt(INCOMING_WINDOW_MIN_KEY, DEFAULT_INCOMING_WINDOW_MIN));
+    LOG.info("Date tiered compaction: base window " + baseWindowMillis + " ms, "
+        + windowsPerTier + " windows per tier, max store file age " + maxStoreFileAgeMillis
+        + " ms, incoming window min " + incomingWindowMin + " files");
+  }
+
+  /**
+   * Selects files of a single window. Candidates are ordered from oldest to newest.
+   */
+  @Override
+  ArrayList<StoreFile> applyCompactionPolicy(ArrayList<StoreFile> candidates,
+      boolean mayUseOffPeak, boolean mayBeStuck) {
+    if (candidates.isEmpty()) {
+      return candidates;
+    }
+    long now = EnvironmentEdgeManager.currentTimeMillis();
+    Window incomingWindow = getIncomingWindow(now);
+    List<ArrayList<StoreFile>> windows =
+        partitionFilesToWindows(skipOldFiles(candidates, now), incomingWindow);
+    for (ArrayList<StoreFile> window : windows) {
+      StoreFile newest = window.get(window.size() - 1);
+      boolean incoming = incomingWindow.compareToTimestamp(
+          newest.getReader().getMaxTimestamp()) <= 0;
+      int minFiles = incoming ? incomingWindowMin : comConf.getMinFilesToCompact();
+      if (window.size() < minFiles) {
+        continue;
+      }
+      List<StoreFile> selection = windowPolicy.applyCompactionPolicy(window, false,
+          mayUseOffPeak, minFiles, comConf.getMaxFilesToCompact());
+      if (!selection.isEmpty()) {
+        LOG.debug("Date tiered compaction selected " + selection.size() + " of "
+            + window.size() + " files in " + (incoming ? "the incoming window" : "window ending "
+            + newest.getReader().getMaxTimestamp()));
+        return new ArrayList<StoreFile>(selection);
+      }
+    }
+    if (mayBeStuck) {
+      // too many files spread over too many windows, get below blockingStoreFiles first
+      return super.applyCompactionPolicy(candidates, mayUseOffPeak, true);
+    }
+    return new ArrayList<StoreFile>(0);
+  }
+
+  @Override
+  public boolean needsCompaction(final Collection<StoreFile> storeFiles,
+      final List<StoreFile> filesCompacting) {
+    ArrayList<StoreFile> candidates =
+        new ArrayList<StoreFile>(preSelectCompactionForCoprocessor(storeFiles, filesCompacting));
+    long cfTtl = storeConfigInfo.getStoreFileTtl();
+    if (comConf.shouldDeleteExpired() && cfTtl != Long.MAX_VALUE) {
+      long maxExpiredTimestamp = EnvironmentEdgeManager.currentTimeMillis() - cfTtl;
+      for (StoreFile file : candidates) {
+        if (file.getReader().getMaxTimestamp() < maxExpiredTimestamp) {
+          return true;
+        }
+      }
+    }
+    int futureFiles = filesCompacting.isEmpty() ? 0 : 1;
+    boolean mayBeStuck = (storeFiles.size() - filesCompacting.size() + futureFiles)
+        >= storeConfigInfo.getBlockingFileCount();
+    return !applyCompactionPolicy(candidates, false, mayBeStuck).isEmpty();
+  }
+
+  /**
+   * Removes the oldest files that are older than max.storefile.age.millis. Only a prefix of
+   * the candidates is removed so that the remaining files are still contiguous.
+   */
+  private ArrayList<StoreFile> skipOldFiles(ArrayList<StoreFile> candidates, long now) {
+    if (maxStoreFileAgeMillis == Long.MAX_VALUE) {
+      return candidates;
+    }
+    long minTimestamp = now - maxStoreFileAgeMillis;
+    int pos = 0;
+    while (pos < candidates.size()
+        && candidates.get(pos).getReader().getMaxTimestamp() < minTimestamp) {
+      ++pos;
+    }
+    if (pos > 0) {
+      LOG.debug("Excluding " + pos + " files older than " + maxStoreFileAgeMillis
+          + " ms from compaction candidates");
+    }
+    return new ArrayList<StoreFile>(candidates.subList(pos, candidates.size()));
+  }
+
+  /**
+   * Groups the files into windows, walking from the newest file back. A file newer than the
+   * current window, i.e. one written out of order, stays with the window of the files after it
+   * so that each window holds contiguous files.
+   * @param files files ordered from oldest to newest
+   * @return the non empty windows from newest to oldest, each ordered from oldest to newest
+   */
+  private List<ArrayList<StoreFile>> partitionFilesToWindows(List<StoreFile> files,
+      Window incomingWindow) {
+    List<ArrayList<StoreFile>> windows = new ArrayList<ArrayList<StoreFile>>();
+    Window window = incomingWindow;
+    ArrayList<StoreFile> current = null;
+    for (int i = files.size() - 1; i >= 0; i--) {
+      StoreFile file = files.get(i);
+      long maxTimestamp = file.getReader().getMaxTimestamp();
+      if (window.compareToTimestamp(maxTimestamp) > 0) {
+        if (current != null) {
+          windows.add(current);
+          current = null;
+        }
+        do {
+          window = window.nextWindow(windowsPerTier);
+        } while (window.compareToTimestamp(maxTimestamp) > 0);
+      }
+      if (current == null) {
+        current = new ArrayList<StoreFile>();
+      }
+      current.add(file);
+    }
+    if (current != null) {
+      windows.add(current);
+    }
+    for (ArrayList<StoreFile> w : windows) {
+      Collections.reverse(w);
+    }
+    return windows;
+  }
+
+  private Window getIncomingWindow(long now) {
+    return new Window(baseWindowMillis, floorDiv(now, baseWindowMillis));
+  }
+
+  private static long floorDiv(long dividend, long divisor) {
+    long quotient = dividend / divisor;
+    return (dividend % divisor < 0) ? quotient - 1 : quotient;
+  }
+
+  /**
+   * The time window [divPosition * windowMillis, (divPosition + 1) * windowMillis).
+   */
+  private static final class Window {
+    private final long windowMillis;
+    private final long divPosition;
+
+    private Window(long windowMillis, long divPosition) {
+      this.windowMillis = windowMillis;
+      this.divPosition = divPosition;
+    }
+
+    /**
+     * @return a positive value if the timestamp is before the window, 0 if it is in the window
+     *         and a negative value if it is after the window
+     */
+    int compareToTimestamp(long timestamp) {
+      long pos = floorDiv(timestamp, windowMillis);
+      return divPosition == pos ? 0 : divPosition < pos ? -1 : 1;
+    }
+
+    /**
+     * @return the window just before this one. After every windowsPerTier windows of the same
+     *         width comes a window windowsPerTier times wider.
+     */
+    Window nextWindow(int windowsPerTier) {
+      if (floorDiv(divPosition, windowsPerTier) * windowsPerTier != divPosition
+          || windowMillis > Long.MAX_VALUE / windowsPerTier) {
+        return new Window(windowMillis, divPosition - 1);
+      }
+      return new Window(windowMillis * windowsPerTier, floorDiv(divPosition, windowsPerTier) - 1);
+    }
+  }
+}
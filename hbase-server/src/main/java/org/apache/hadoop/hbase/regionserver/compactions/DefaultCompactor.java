@@ -21,24 +21,67 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.hfile.HFileBlockIndex;
 import org.apache.hadoop.hbase.regionserver.Store;
 import org.apache.hadoop.hbase.regionserver.InternalScanner;
 import org.apache.hadoop.hbase.regionserver.ScanType;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.regionserver.StoreFileScanner;
+import org.apache.hadoop.hbase.regionserver.StoreScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.hbase.util.Threads;
 
 /**
  * Compact passed set of files. Create an instance and then call {@link #compact(CompactionRequest)}
+ * <p>
+ * A major compaction of a large store can be split into row ranges that are compacted by
+ * several threads at once, each into its own file; see {@link #PARALLEL_THREADS_KEY}.
+ * <p>
+ * A minor compaction can copy the data blocks of files that no other file overlaps straight
+ * into the output, without decompressing and merging their cells; see {@link #COPY_BLOCKS_KEY}.
  */
 @InterfaceAudience.Private
 public class DefaultCompactor extends Compactor {
+  private static final Log LOG = LogFactory.getLog(DefaultCompactor.class);
+
+  /** Number of threads, and thus of output files, of a major compaction; 1 disables it */
+  public static final String PARALLEL_THREADS_KEY = "hbase.hstore.compaction.parallel.threads";
+  /** Total size of the files below which a major compaction runs on a single thread */
+  public static final String PARALLEL_MIN_SIZE_KEY = "hbase.hstore.compaction.parallel.min.size";
+  public static final long DEFAULT_PARALLEL_MIN_SIZE = 1024L * 1024 * 1024;
+  /** Whether minor compactions copy the data blocks of files that do not overlap the others */
+  public static final String COPY_BLOCKS_KEY = "hbase.hstore.compaction.copy.blocks";
+
+  private final int parallelThreads;
+  private final long parallelMinSize;
+  private final boolean copyBlocks;
+
   public DefaultCompactor(final Configuration conf, final Store store) {
     super(conf, store);
+    this.parallelThreads = conf.getInt(PARALLEL_THREADS_KEY, 1);
+    this.parallelMinSize = conf.getLong(PARALLEL_MIN_SIZE_KEY, DEFAULT_PARALLEL_MIN_SIZE);
+    this.copyBlocks = conf.getBoolean(COPY_BLOCKS_KEY, false);
   }
 
   /**
@@ -47,9 +90,17 @@ public class DefaultCompactor extends Compactor {
   public List<Path> compact(final CompactionRequest request) throws IOException {
     FileDetails fd = getFileDetails(request.getFiles(), request.isMajor());
     this.progress = new CompactionProgress(fd.maxKeyCount);
+    request.setProgress(this.progress);
 
     // Find the smallest read point across all the Scanners.
     long smallestReadPoint = getSmallestReadPoint();
+    List<byte[]> splitRows = getSplitRows(request);
+    if (!splitRows.isEmpty()) {
+      return compactInParallel(request, fd, smallestReadPoint, splitRows);
+    }
+    if (copyBlocks && !request.isMajor() && !hasCoprocessors()) {
+      return compactCopyingBlocks(request, fd, smallestReadPoint);
+    }
     List<StoreFileScanner> scanners = createFileScanners(request.getFiles(), smallestReadPoint);
 
     StoreFile.Writer writer = null;
@@ -97,6 +148,485 @@ public class DefaultCompactor extends Compactor {
     return newFiles;
   }
 
+  /**
+   * Picks the rows at which a major compaction is split, so that the ranges hold about the
+   * same number of bytes. The candidates are the first rows of the blocks referenced by the
+   * root level of the data block index of each file, each weighted by the bytes of the file it
+   * stands for.
+   * @return the split rows in ascending order, or an empty list if the request is compacted on
+   *         a single thread
+   */
+  List<byte[]> getSplitRows(final CompactionRequest request) {
+    if (parallelThreads <= 1 || !request.isMajor() || request.getSize() < parallelMinSize) {
+      return Collections.emptyList();
+    }
+    // coprocessors expect a single scanner and a single output file per compaction
+    if (hasCoprocessors()) {
+      return Collections.emptyList();
+    }
+    List<Pair<byte[], Long>> samples = new ArrayList<Pair<byte[], Long>>();
+    long totalWeight = 0;
+    for (StoreFile file : request.getFiles()) {
+      StoreFile.Reader r = file.getReader();
+      // the index of a reference file covers the whole parent file, not just the half
+      if (r == null || file.isReference()) {
+        return Collections.emptyList();
+      }
+      HFileBlockIndex.BlockIndexReader index = r.getHFileReader().getDataBlockIndexReader();
+      int rootCount = index.getRootBlockCount();
+      if (rootCount == 0) {
+        continue;
+      }
+      long weight = Math.max(1, r.length() / rootCount);
+      for (int i = 0; i < rootCount; i++) {
+        byte[] key = index.getRootBlockKey(i);
+        samples.add(new Pair<byte[], Long>(
+            KeyValue.createKeyValueFromKey(key, 0, key.length).getRow(), weight));
+        totalWeight += weight;
+      }
+    }
+    final KeyValue.KVComparator comparator = store.getComparator();
+    Collections.sort(samples, new Comparator<Pair<byte[], Long>>() {
+      @Override
+      public int compare(Pair<byte[], Long> a, Pair<byte[], Long> b) {
+        return comparator.compareRows(a.getFirst(), 0, a.getFirst().length,
+            b.getFirst(), 0, b.getFirst().length);
+      }
+    });
+    int ranges = Math.min(parallelThreads, samples.size());
+    List<byte[]> splitRows = new ArrayList<byte[]>(Math.max(0, ranges - 1));
+    long weight = 0;
+    for (int i = 1; i < samples.size() && splitRows.size() < ranges - 1; i++) {
+      // a split before sample i puts the samples up to i - 1 in the ranges so far
+      weight += samples.get(i - 1).getSecond();
+      if (weight < totalWeight / ranges * (splitRows.size() + 1)) {
+        continue;
+      }
+      byte[] row = samples.get(i).getFirst();
+      byte[] previous = splitRows.isEmpty() ? samples.get(0).getFirst()
+          : splitRows.get(splitRows.size() - 1);
+      if (comparator.compareRows(row, 0, row.length, previous, 0, previous.length) > 0) {
+        splitRows.add(row);
+      }
+    }
+    return splitRows;
+  }
+
+  /**
+   * Compacts the row ranges between the split rows concurrently, each into its own file.
+   * The files are handed back together, so {@link org.apache.hadoop.hbase.regionserver.HStore}
+   * swaps them in at once like the output of any other compaction. If a range fails or is
+   * interrupted the files of all ranges are deleted.
+   */
+  private List<Path> compactInParallel(final CompactionRequest request, final FileDetails fd,
+      final long smallestReadPoint, List<byte[]> splitRows) throws IOException {
+    final int ranges = splitRows.size() + 1;
+    LOG.info("Compacting " + store + " in " + ranges + " parallel row ranges");
+    final ScanType scanType =
+        request.isMajor() ? ScanType.COMPACT_DROP_DELETES : ScanType.COMPACT_RETAIN_DELETES;
+    ThreadPoolExecutor pool = Threads.getBoundedCachedThreadPool(ranges, 30L, TimeUnit.SECONDS,
+        Threads.newDaemonThreadFactory("compaction-" + store.getRegionInfo().getEncodedName()
+            + "-" + store.getColumnFamilyName()));
+    CompletionService<RangeResult> completionService =
+        new ExecutorCompletionService<RangeResult>(pool);
+    for (int i = 0; i < ranges; i++) {
+      final int rangeIndex = i;
+      final byte[] startRow = i == 0 ? HConstants.EMPTY_START_ROW : splitRows.get(i - 1);
+      final byte[] stopRow = i == ranges - 1 ? HConstants.EMPTY_END_ROW : splitRows.get(i);
+      completionService.submit(new Callable<RangeResult>() {
+        @Override
+        public RangeResult call() throws IOException {
+          return compactRange(rangeIndex, fd, smallestReadPoint, scanType, request, startRow,
+              stopRow);
+        }
+      });
+    }
+
+    RangeResult[] results = new RangeResult[ranges];
+    IOException ioe = null;
+    try {
+      for (int i = 0; i < ranges; i++) {
+        try {
+          RangeResult result = completionService.take().get();
+          results[result.rangeIndex] = result;
+        } catch (InterruptedException e) {
+          ioe = new InterruptedIOException("Interrupted while compacting " + store);
+          // ranges still running are interrupted below; their files stay in the tmp dir
+          break;
+        } catch (ExecutionException e) {
+          if (ioe == null) {
+            ioe = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                : new IOException(e.getCause());
+          }
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    boolean finished = ioe == null;
+    long compactedKVs = 0;
+    for (RangeResult result : results) {
+      if (result != null) {
+        finished &= result.finished;
+        compactedKVs += result.compactedKVs;
+      }
+    }
+    if (!finished) {
+      for (RangeResult result : results) {
+        if (result != null) {
+          store.getFileSystem().delete(result.path, false);
+        }
+      }
+      if (ioe != null) {
+        throw ioe;
+      }
+      progress.cancel();
+      throw new InterruptedIOException("Aborting compaction of store " + store +
+          " in region " + store.getRegionInfo().getRegionNameAsString() +
+          " because it was interrupted.");
+    }
+    progress.currentCompactedKVs = compactedKVs;
+    progress.complete();
+
+    // drop empty files, but keep one to record the max seq id even if no cell survived,
+    // see HBASE-6059
+    List<Path> newFiles = new ArrayList<Path>(ranges);
+    for (RangeResult result : results) {
+      if (result.compactedKVs > 0 || (newFiles.isEmpty() && result == results[ranges - 1])) {
+        newFiles.add(result.path);
+      } else {
+        store.getFileSystem().delete(result.path, false);
+      }
+    }
+    return newFiles;
+  }
+
+  /**
+   * Compacts the rows in [startRow, stopRow) into a new file in the tmp dir.
+   */
+  private RangeResult compactRange(int rangeIndex, FileDetails fd, long smallestReadPoint,
+      ScanType scanType, CompactionRequest request, byte[] startRow, byte[] stopRow)
+      throws IOException {
+    // pread, so that the ranges do not take turns on the shared input stream of each file
+    List<StoreFileScanner> scanners = StoreFileScanner.getScannersForStoreFiles(
+        request.getFiles(), false, true, true, smallestReadPoint);
+    Scan scan = new Scan(startRow, stopRow);
+    scan.setMaxVersions(store.getFamily().getMaxVersions());
+    InternalScanner scanner = new StopRowScanner(new StoreScanner(store, store.getScanInfo(),
+        scan, scanners, scanType, smallestReadPoint, fd.earliestPutTs), stopRow, store);
+    StoreFile.Writer writer = null;
+    CompactionProgress rangeProgress = new CompactionProgress(fd.maxKeyCount);
+    boolean finished = false;
+    boolean failed = true;
+    try {
+      writer = store.createWriterInTmp(fd.maxKeyCount, this.compactionCompression, true,
+          fd.maxMVCCReadpoint >= smallestReadPoint, fd.maxTagsLength > 0);
+      finished = performCompaction(scanner, writer, smallestReadPoint, rangeProgress);
+      failed = false;
+    } finally {
+      scanner.close();
+      if (writer != null) {
+        writer.appendMetadata(fd.maxSeqId, request.isMajor());
+        writer.close();
+        if (failed) {
+          store.getFileSystem().delete(writer.getPath(), false);
+        }
+      }
+    }
+    return new RangeResult(rangeIndex, writer.getPath(), finished,
+        rangeProgress.currentCompactedKVs);
+  }
+
+  private static class RangeResult {
+    final int rangeIndex;
+    final Path path;
+    final boolean finished;
+    final long compactedKVs;
+
+    RangeResult(int rangeIndex, Path path, boolean finished, long compactedKVs) {
+      this.rangeIndex = rangeIndex;
+      this.path = path;
+      this.finished = finished;
+      this.compactedKVs = compactedKVs;
+    }
+  }
+
+  /**
+   * Ends a compaction scan at the stop row. A compaction {@link StoreScanner} does not check
+   * the stop row of its scan, but returns at most one row per call, so a batch is either all
+   * before the stop row or all past it.
+   */
+  private static class StopRowScanner implements InternalScanner {
+    private final InternalScanner delegate;
+    private final byte[] stopRow;
+    private final KeyValue.KVComparator comparator;
+    private boolean done = false;
+
+    StopRowScanner(InternalScanner delegate, byte[] stopRow, Store store) {
+      this.delegate = delegate;
+      this.stopRow = stopRow;
+      this.comparator = store.getComparator();
+    }
+
+    @Override
+    public boolean next(List<Cell> results) throws IOException {
+      return next(results, -1);
+    }
+
+    @Override
+    public boolean next(List<Cell> results, int limit) throws IOException {
+      if (done) {
+        return false;
+      }
+      int size = results.size();
+      boolean more = delegate.next(results, limit);
+      if (stopRow.length > 0 && results.size() > size) {
+        Cell first = results.get(size);
+        if (comparator.compareRows(first.getRowArray(), first.getRowOffset(),
+            first.getRowLength(), stopRow, 0, stopRow.length) >= 0) {
+          results.subList(size, results.size()).clear();
+          done = true;
+          return false;
+        }
+      }
+      return more;
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+
+  protected boolean hasCoprocessors() {
+    return store.getCoprocessorHost() != null
+        && !store.getCoprocessorHost().getCoprocessors().isEmpty();
+  }
+
+  /**
+   * Minor compaction that copies the data blocks of the files returned by
+   * {@link #getFilesToCopy(Collection)} into the output as they are, and merges the other files
+   * cell by cell in the row ranges between the copied files.
+   */
+  private List<Path> compactCopyingBlocks(final CompactionRequest request, FileDetails fd,
+      long smallestReadPoint) throws IOException {
+    List<StoreFile> candidates = getFilesToCopy(request.getFiles());
+    // the cells of flushed files carry their mvcc version; write it if most copied bytes have it
+    long withMvcc = 0;
+    long withoutMvcc = 0;
+    for (StoreFile file : candidates) {
+      if (file.getReader().getHFileReader().getFileContext().isIncludesMvcc()) {
+        withMvcc += file.getReader().length();
+      } else {
+        withoutMvcc += file.getReader().length();
+      }
+    }
+    StoreFile.Writer writer = store.createWriterInTmp(fd.maxKeyCount, this.compactionCompression,
+        true, fd.maxMVCCReadpoint >= smallestReadPoint || withMvcc > withoutMvcc,
+        fd.maxTagsLength > 0);
+    boolean finished = false;
+    try {
+      List<StoreFile> toCopy = new ArrayList<StoreFile>(candidates.size());
+      for (StoreFile file : candidates) {
+        if (writer.canAppendDataBlocks(file.getReader())) {
+          toCopy.add(file);
+        }
+      }
+      List<StoreFile> toMerge = new ArrayList<StoreFile>(request.getFiles());
+      toMerge.removeAll(toCopy);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Copying the data blocks of " + toCopy.size() + " of "
+            + request.getFiles().size() + " files in the compaction of " + store);
+      }
+      GapScanner gaps = null;
+      if (!toMerge.isEmpty()) {
+        gaps = new GapScanner(createScanner(store, createFileScanners(toMerge, smallestReadPoint),
+            ScanType.COMPACT_RETAIN_DELETES, smallestReadPoint, fd.earliestPutTs), store);
+      }
+      try {
+        finished = true;
+        for (StoreFile file : toCopy) {
+          if (gaps != null) {
+            byte[] firstKey = file.getReader().getFirstKey();
+            gaps.setStopRow(KeyValue.createKeyValueFromKey(firstKey, 0, firstKey.length).getRow());
+            finished = mergeGap(gaps, writer, smallestReadPoint, fd);
+            if (!finished) {
+              break;
+            }
+          }
+          copyBlocks(file, writer);
+        }
+        if (finished && gaps != null) {
+          gaps.setStopRow(HConstants.EMPTY_END_ROW);
+          finished = mergeGap(gaps, writer, smallestReadPoint, fd);
+        }
+      } finally {
+        if (gaps != null) {
+          gaps.close();
+        }
+      }
+    } finally {
+      writer.appendMetadata(fd.maxSeqId, request.isMajor());
+      writer.close();
+      if (!finished) {
+        store.getFileSystem().delete(writer.getPath(), false);
+      }
+    }
+    if (!finished) {
+      progress.cancel();
+      throw new InterruptedIOException("Aborting compaction of store " + store +
+          " in region " + store.getRegionInfo().getRegionNameAsString() +
+          " because it was interrupted.");
+    }
+    progress.complete();
+    List<Path> newFiles = new ArrayList<Path>(1);
+    newFiles.add(writer.getPath());
+    return newFiles;
+  }
+
+  private boolean mergeGap(GapScanner gaps, StoreFile.Writer writer, long smallestReadPoint,
+      FileDetails fd) throws IOException {
+    CompactionProgress gapProgress = new CompactionProgress(fd.maxKeyCount);
+    boolean finished = performCompaction(gaps, writer, smallestReadPoint, gapProgress);
+    progress.currentCompactedKVs += gapProgress.currentCompactedKVs;
+    return finished;
+  }
+
+  private void copyBlocks(StoreFile file, StoreFile.Writer writer) throws IOException {
+    StoreFile.Reader reader = file.getReader();
+    CompactionThroughputController throughputController = getThroughputController();
+    String compactionName = throughputController == null ? null : throughputController.start(
+        store.getRegionInfo().getEncodedName() + "#" + store.getColumnFamilyName());
+    try {
+      writer.appendDataBlocks(reader);
+      progress.currentCompactedKVs += reader.getEntries();
+      if (throughputController != null) {
+        throughputController.control(compactionName, reader.length());
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while throttling " + compactionName);
+    } finally {
+      if (throughputController != null) {
+        throughputController.finish(compactionName);
+      }
+    }
+  }
+
+  /**
+   * Picks the files of a minor compaction whose data blocks may be copied into the output as
+   * they are. A minor compaction keeps delete markers and, for a file written by a flush or a
+   * compaction, would drop nothing from a file that no other file shares rows with. So a file
+   * is a candidate when its row range overlaps no other file of the compaction and none of its
+   * cells can have expired. It is copied if it is also stored the way the output file is
+   * written, see {@link StoreFile.Writer#canAppendDataBlocks(StoreFile.Reader)}.
+   * @return the candidates, ordered by their first key
+   */
+  public List<StoreFile> getFilesToCopy(Collection<StoreFile> files) {
+    long ttl = store.getScanInfo().getTtl();
+    long oldestUnexpiredTs = ttl == Long.MAX_VALUE ? Long.MIN_VALUE
+        : EnvironmentEdgeManager.currentTimeMillis() - ttl;
+    List<StoreFile> toCopy = new ArrayList<StoreFile>();
+    for (StoreFile file : files) {
+      StoreFile.Reader r = file.getReader();
+      if (r == null || file.isReference() || r.getFirstKey() == null
+          || file.getMinimumTimestamp() == null
+          || file.getMinimumTimestamp() < oldestUnexpiredTs) {
+        continue;
+      }
+      boolean overlaps = false;
+      for (StoreFile other : files) {
+        if (other == file) {
+          continue;
+        }
+        StoreFile.Reader o = other.getReader();
+        if (o == null) {
+          overlaps = true;
+        } else if (o.getFirstKey() != null) {
+          overlaps = compareRows(r.getLastKey(), o.getFirstKey()) >= 0
+              && compareRows(o.getLastKey(), r.getFirstKey()) >= 0;
+        }
+        if (overlaps) {
+          break;
+        }
+      }
+      if (!overlaps) {
+        toCopy.add(file);
+      }
+    }
+    final KeyValue.KVComparator comparator = store.getComparator();
+    Collections.sort(toCopy, new Comparator<StoreFile>() {
+      @Override
+      public int compare(StoreFile a, StoreFile b) {
+        return comparator.compareFlatKey(a.getReader().getFirstKey(),
+            b.getReader().getFirstKey());
+      }
+    });
+    return toCopy;
+  }
+
+  /**
+   * Compares the rows of two flat keys.
+   */
+  private int compareRows(byte[] leftKey, byte[] rightKey) {
+    return store.getComparator().compareRows(leftKey, Bytes.SIZEOF_SHORT,
+        Bytes.toShort(leftKey, 0), rightKey, Bytes.SIZEOF_SHORT, Bytes.toShort(rightKey, 0));
+  }
+
+  /**
+   * Hands out the rows of a compaction scan up to a stop row that moves forward, so that the
+   * scan can pause while the blocks of a file are copied. Like {@link StopRowScanner} this
+   * relies on a compaction {@link StoreScanner} returning at most one row per call; the batch
+   * at the stop row is held back for the next range.
+   */
+  private static class GapScanner implements InternalScanner {
+    private final InternalScanner delegate;
+    private final KeyValue.KVComparator comparator;
+    private final List<Cell> pending = new ArrayList<Cell>();
+    private boolean delegateHasMore = true;
+    private byte[] stopRow = HConstants.EMPTY_END_ROW;
+
+    GapScanner(InternalScanner delegate, Store store) {
+      this.delegate = delegate;
+      this.comparator = store.getComparator();
+    }
+
+    void setStopRow(byte[] stopRow) {
+      this.stopRow = stopRow;
+    }
+
+    @Override
+    public boolean next(List<Cell> results) throws IOException {
+      return next(results, -1);
+    }
+
+    @Override
+    public boolean next(List<Cell> results, int limit) throws IOException {
+      if (pending.isEmpty()) {
+        if (!delegateHasMore) {
+          return false;
+        }
+        delegateHasMore = delegate.next(pending, limit);
+        if (pending.isEmpty()) {
+          return delegateHasMore;
+        }
+      }
+      Cell first = pending.get(0);
+      if (stopRow.length > 0 && comparator.compareRows(first.getRowArray(),
+          first.getRowOffset(), first.getRowLength(), stopRow, 0, stopRow.length) >= 0) {
+        return false;
+      }
+      results.addAll(pending);
+      pending.clear();
+      return delegateHasMore;
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+
   /**
    * Compact a list of files for testing. Creates a fake {@link CompactionRequest} to pass to
    * {@link #compact(CompactionRequest)};
@@ -0,0 +1,292 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.regionserver.LeveledStoreConfig;
+import org.apache.hadoop.hbase.regionserver.StoreConfigInformation;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreUtils;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * Leveled store implementation of compaction policy.
+ * When L0 has enough files, they are all compacted together with the L1 files they overlap
+ * into new L1 files. When a level grows past its size, one of its files (taking turns through
+ * the level) is compacted with the files of the next level it overlaps into the next level.
+ * So the files of a level never overlap, and each row is rewritten about once per level
+ * times the level size multiplier.
+ * <p>
+ * The new files of a compaction all get the highest sequence id of its inputs, which decides
+ * between cells of the same key in different files. So a compaction also takes every file of
+ * its target level and of the levels above, L0 included, that overlaps the rows of its files;
+ * a file left out could hold newer cells of the same keys under a lower sequence id.
+ * <p>
+ * Compactions between levels keep the delete markers, since the cells they mask may be in the
+ * levels below; once per major compaction period, all the files are compacted together into
+ * the highest level, which drops them.
+ */
+@InterfaceAudience.Private
+public class LeveledCompactionPolicy extends CompactionPolicy {
+  private final static Log LOG = LogFactory.getLog(LeveledCompactionPolicy.class);
+
+  private final LeveledStoreConfig config;
+
+  /** Per level, the position of the next file to compact out of it. */
+  private final Map<Integer, Integer> compactPointers = new HashMap<Integer, Integer>();
+
+  public LeveledCompactionPolicy(Configuration conf, StoreConfigInformation storeConfigInfo) {
+    this(conf, storeConfigInfo, new LeveledStoreConfig(conf, storeConfigInfo));
+  }
+
+  public LeveledCompactionPolicy(
+      Configuration conf, StoreConfigInformation storeConfigInfo, LeveledStoreConfig config) {
+    super(conf, storeConfigInfo);
+    this.config = config;
+  }
+
+  public List<StoreFile> preSelectFilesForCoprocessor(LevelInformationProvider si,
+      List<StoreFile> filesCompacting) {
+    // Same as in the stripe store; exclude all the filesCompacting from the list.
+    ArrayList<StoreFile> candidateFiles = new ArrayList<StoreFile>(si.getStorefiles());
+    candidateFiles.removeAll(filesCompacting);
+    return candidateFiles;
+  }
+
+  /**
+   * Makes a request for files chosen by the user or coprocessors. The results go to the
+   * highest level of the files, which is safe as long as they are compacted with all the
+   * files of that level they overlap; so in doubt, the files should be all the files.
+   */
+  public LeveledCompactionRequest createEmptyRequest(
+      LevelInformationProvider si, CompactionRequest request) {
+    int targetLevel = 1;
+    for (int level = si.getLevelCount(); level > 1; --level) {
+      if (!Collections.disjoint(si.getLevelFiles(level), request.getFiles())) {
+        targetLevel = level;
+        break;
+      }
+    }
+    return new LeveledCompactionRequest(request, targetLevel, config.getTargetFileSize());
+  }
+
+  public LeveledCompactionRequest selectCompaction(LevelInformationProvider si,
+      List<StoreFile> filesCompacting, boolean forceMajor) throws IOException {
+    // Like the stripe store, no parallel compactions; the levels they touch would overlap.
+    if (!filesCompacting.isEmpty()) {
+      LOG.debug("Not selecting compaction: " + filesCompacting.size() + " files compacting");
+      return null;
+    }
+    Collection<StoreFile> allFiles = si.getStorefiles();
+    if (allFiles.isEmpty()) {
+      return null;
+    }
+
+    // This can happen due to region split; rewrite everything, which also drops the deletes.
+    boolean hasReferences = StoreUtils.hasReferences(allFiles);
+    if (forceMajor || hasReferences || isMajorCompaction(allFiles)) {
+      LOG.debug("Compacting all " + allFiles.size() + " files" + (forceMajor ? " as requested"
+          : hasReferences ? " as there are references in the store" : " as a major compaction"));
+      return new LeveledCompactionRequest(new CompactionRequest(allFiles),
+          Math.max(1, si.getLevelCount()), config.getTargetFileSize());
+    }
+
+    List<StoreFile> l0Files = si.getLevel0Files();
+    if (l0Files.size() >= config.getLevel0MinFiles()) {
+      List<StoreFile> files = addOverlappingFiles(si, l0Files, 1);
+      LOG.debug("Compacting " + l0Files.size() + " L0 files and " + (files.size() - l0Files.size())
+          + " L1 files into L1");
+      return new LeveledCompactionRequest(
+          new CompactionRequest(files), 1, config.getTargetFileSize());
+    }
+
+    int level = selectLevelToCompact(si);
+    if (level == 0) {
+      return null;
+    }
+    List<StoreFile> levelFiles = si.getLevelFiles(level);
+    Integer pointer = compactPointers.get(level);
+    int index = (pointer == null || pointer >= levelFiles.size()) ? 0 : pointer;
+    compactPointers.put(level, index + 1);
+    List<StoreFile> files =
+        addOverlappingFiles(si, levelFiles.subList(index, index + 1), level + 1);
+    LOG.debug("Compacting file " + index + " of L" + level + " and " + (files.size() - 1)
+        + " overlapping files into L" + (level + 1));
+    return new LeveledCompactionRequest(
+        new CompactionRequest(files), level + 1, config.getTargetFileSize());
+  }
+
+  public boolean needsCompactions(LevelInformationProvider si, List<StoreFile> filesCompacting) {
+    return filesCompacting.isEmpty()
+        && (StoreUtils.hasReferences(si.getStorefiles())
+          || (si.getLevel0Files().size() >= this.config.getLevel0MinFiles())
+          || selectLevelToCompact(si) > 0);
+  }
+
+  /**
+   * @return Whether the oldest file is older than the major compaction period, unless it is the
+   *         only file and was written by a major compaction.
+   */
+  @Override
+  public boolean isMajorCompaction(Collection<StoreFile> filesToCompact) throws IOException {
+    long period = comConf.getMajorCompactionPeriod();
+    if (period <= 0 || filesToCompact == null || filesToCompact.isEmpty()) {
+      return false;
+    }
+    if (filesToCompact.size() == 1 && filesToCompact.iterator().next().isMajorCompaction()) {
+      return false;
+    }
+    long lowTimestamp = StoreUtils.getLowestTimestamp(filesToCompact);
+    return lowTimestamp > 0 && lowTimestamp < System.currentTimeMillis() - period;
+  }
+
+  @Override
+  public boolean throttleCompaction(long compactionSize) {
+    return compactionSize > comConf.getThrottlePoint();
+  }
+
+  /**
+   * Adds to the files of a compaction into the target level the files of that level and of the
+   * levels above it that overlap their rows, until no such file is left out.
+   * @return The files to compact.
+   */
+  private static List<StoreFile> addOverlappingFiles(LevelInformationProvider si,
+      List<StoreFile> files, int targetLevel) {
+    LinkedHashSet<StoreFile> result = new LinkedHashSet<StoreFile>(files);
+    int maxLevel = Math.min(targetLevel, si.getLevelCount());
+    boolean added = true;
+    while (added) {
+      added = false;
+      for (int level = 0; level <= maxLevel; ++level) {
+        added |= result.addAll(si.getOverlappingFiles(level, result));
+      }
+    }
+    return new ArrayList<StoreFile>(result);
+  }
+
+  /**
+   * @return The level above L0 that is most over its size, or 0 if none is. The highest level
+   *         has no size limit.
+   */
+  private int selectLevelToCompact(LevelInformationProvider si) {
+    int result = 0;
+    double bestScore = 1.0;
+    for (int level = 1; level < si.getLevelCount() + 1; ++level) {
+      long maxSize = config.getLevelMaxSize(level);
+      if (maxSize == Long.MAX_VALUE) break;
+      long size = getTotalFileSize(si.getLevelFiles(level));
+      double score = (double)size / maxSize;
+      if (score > bestScore) {
+        bestScore = score;
+        result = level;
+      }
+    }
+    if (result > 0 && LOG.isDebugEnabled()) {
+      LOG.debug("L" + result + " has " + StringUtils.humanReadableInt(
+          getTotalFileSize(si.getLevelFiles(result))) + ", over its size by " + bestScore);
+    }
+    return result;
+  }
+
+  public static long getTotalFileSize(final Collection<StoreFile> candidates) {
+    long totalSize = 0;
+    for (StoreFile storeFile : candidates) {
+      totalSize += storeFile.getReader().length();
+    }
+    return totalSize;
+  }
+
+  /** Leveled compaction request wrapper. */
+  public static class LeveledCompactionRequest {
+    private CompactionRequest request;
+    private final int targetLevel;
+    private final long targetFileSize;
+
+    public LeveledCompactionRequest(
+        CompactionRequest request, int targetLevel, long targetFileSize) {
+      this.request = request;
+      this.targetLevel = targetLevel;
+      this.targetFileSize = targetFileSize;
+    }
+
+    /**
+     * Executes the request against compactor.
+     * @param compactor Compactor.
+     * @return result of compact(...)
+     */
+    public List<Path> execute(LeveledCompactor compactor) throws IOException {
+      return compactor.compact(request, targetLevel, targetFileSize);
+    }
+
+    public CompactionRequest getRequest() {
+      return this.request;
+    }
+
+    public void setRequest(CompactionRequest request) {
+      assert request != null;
+      this.request = request;
+    }
+
+    /** @return The level the new files go to. */
+    public int getTargetLevel() {
+      return this.targetLevel;
+    }
+  }
+
+  /** The information about levels that the policy needs to do its stuff */
+  public static interface LevelInformationProvider {
+    public Collection<StoreFile> getStorefiles();
+
+    /**
+     * @return Level 0 files, newest first.
+     */
+    public List<StoreFile> getLevel0Files();
+
+    /**
+     * @return The number of levels above L0.
+     */
+    public int getLevelCount();
+
+    /**
+     * @param level Level, 1 or higher.
+     * @return The files of the level, in row order; empty if there are none.
+     */
+    public List<StoreFile> getLevelFiles(int level);
+
+    /**
+     * @param level Level, 0 or higher.
+     * @param files Files to check.
+     * @return The files of the level that overlap the row range of the given files.
+     */
+    public List<StoreFile> getOverlappingFiles(int level, Collection<StoreFile> files);
+  }
+}
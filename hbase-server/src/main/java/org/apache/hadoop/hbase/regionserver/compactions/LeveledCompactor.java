@@ -0,0 +1,155 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import static org.apache.hadoop.hbase.regionserver.StripeStoreFileManager.OPEN_KEY;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.regionserver.LeveledStoreFileManager;
+import org.apache.hadoop.hbase.regionserver.ScanType;
+import org.apache.hadoop.hbase.regionserver.Store;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreFileScanner;
+import org.apache.hadoop.hbase.regionserver.StoreScanner;
+import org.apache.hadoop.hbase.regionserver.StripeMultiFileWriter;
+import org.apache.hadoop.hbase.regionserver.StoreFile.Writer;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Compactor for the leveled store. Writes the compacted files out in row order, starting a new
+ * file at a row boundary whenever the current one reaches the target size, so the files it
+ * produces do not overlap; and tags all of them with the level they are for.
+ */
+@InterfaceAudience.Private
+public class LeveledCompactor extends Compactor {
+  private static final Log LOG = LogFactory.getLog(LeveledCompactor.class);
+
+  public LeveledCompactor(Configuration conf, Store store) {
+    super(conf, store);
+  }
+
+  public List<Path> compact(CompactionRequest request, int targetLevel, long targetFileSize)
+      throws IOException {
+    final Collection<StoreFile> filesToCompact = request.getFiles();
+    final FileDetails fd = getFileDetails(filesToCompact, request.isMajor());
+    this.progress = new CompactionProgress(fd.maxKeyCount);
+    request.setProgress(this.progress);
+
+    // Estimate the KVs per file from the average KV size of the inputs.
+    long totalSize = Math.max(1, request.getSize());
+    long targetKvs = Math.max(1, (long)((double)fd.maxKeyCount * targetFileSize / totalSize));
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Executing compaction of " + filesToCompact.size() + " files into L"
+          + targetLevel + " with " + targetFileSize + " target file size (" + targetKvs
+          + " kvs)");
+    }
+    StripeMultiFileWriter mw = new StripeMultiFileWriter.SizeMultiWriter(
+        Integer.MAX_VALUE, targetKvs, OPEN_KEY, OPEN_KEY);
+    mw.setNoStripeMetadata();
+
+    long smallestReadPoint = getSmallestReadPoint();
+    List<StoreFileScanner> scanners = createFileScanners(filesToCompact, smallestReadPoint);
+
+    final List<StoreFile.Writer> writers = new ArrayList<StoreFile.Writer>();
+    boolean finished = false;
+    InternalScanner scanner = null;
+    try {
+      // Get scanner to use.
+      ScanType scanType =
+          request.isMajor() ? ScanType.COMPACT_DROP_DELETES : ScanType.COMPACT_RETAIN_DELETES;
+      scanner = preCreateCoprocScanner(request, scanType, fd.earliestPutTs, scanners);
+      if (scanner == null) {
+        scanner = createScanner(store, scanners, scanType, smallestReadPoint, fd.earliestPutTs);
+      }
+      scanner = postCreateCoprocScanner(request, scanType, scanner);
+      if (scanner == null) {
+        // NULL scanner returned from coprocessor hooks means skip normal processing.
+        return new ArrayList<Path>();
+      }
+
+      // Create the writer factory for compactions.
+      final boolean needMvcc = fd.maxMVCCReadpoint >= smallestReadPoint;
+      final Compression.Algorithm compression = store.getFamily().getCompactionCompression();
+      StripeMultiFileWriter.WriterFactory factory = new StripeMultiFileWriter.WriterFactory() {
+        @Override
+        public Writer createWriter() throws IOException {
+          Writer writer = store.createWriterInTmp(
+              fd.maxKeyCount, compression, true, needMvcc, fd.maxTagsLength > 0);
+          writers.add(writer);
+          return writer;
+        }
+      };
+
+      StoreScanner storeScanner = (scanner instanceof StoreScanner) ? (StoreScanner)scanner : null;
+      mw.init(storeScanner, factory, store.getComparator());
+      finished = performCompaction(scanner, mw, smallestReadPoint);
+      if (!finished) {
+        throw new InterruptedIOException( "Aborting compaction of store " + store +
+            " in region " + store.getRegionInfo().getRegionNameAsString() +
+            " because it was interrupted.");
+      }
+    } finally {
+      if (scanner != null) {
+        try {
+          scanner.close();
+        } catch (Throwable t) {
+          // Don't fail the compaction if this fails.
+          LOG.error("Failed to close scanner after compaction.", t);
+        }
+      }
+      if (!finished) {
+        for (Path leftoverFile : mw.abortWriters()) {
+          try {
+            store.getFileSystem().delete(leftoverFile, false);
+          } catch (Exception ex) {
+            LOG.error("Failed to delete the leftover file after an unfinished compaction.", ex);
+          }
+        }
+      }
+    }
+
+    assert finished : "We should have exited the method on all error paths";
+    byte[] level = Bytes.toBytes(targetLevel);
+    for (Writer writer : writers) {
+      writer.appendFileInfo(LeveledStoreFileManager.LEVEL_KEY, level);
+    }
+    List<Path> newFiles = mw.commitWriters(fd.maxSeqId, request.isMajor());
+    if (newFiles.isEmpty()) {
+      // Everything was deleted; write an empty file to preserve the metadata. It goes to L0.
+      Writer writer = store.createWriterInTmp(0, store.getFamily().getCompactionCompression(),
+          true, false, false);
+      writer.appendMetadata(fd.maxSeqId, request.isMajor());
+      newFiles.add(writer.getPath());
+      writer.close();
+    }
+    return newFiles;
+  }
+}
@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.regionserver.CompactionTool;
+import org.apache.hadoop.hbase.regionserver.HRegionFileSystem;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.Store;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+
+/**
+ * Compactor that runs the compactions of a store in a separate compaction worker process on
+ * the same node, so that their heap, CPU and GC pauses stay out of the region server.
+ * <p>
+ * The request is handed over as a small file in the region tmp dir, naming the files to
+ * compact, and the worker, {@link CompactionTool} with <code>-request</code>, compacts them
+ * with a {@link DefaultCompactor} into new files of the region tmp dir, whose names it writes
+ * back next to the request. The region server then only commits the new files as it does for
+ * its own compactions. Stores with coprocessors are compacted in the region server, since
+ * their compaction hooks must run there.
+ * <p>
+ * To use it, set <code>hbase.hstore.defaultengine.compactor.class</code> to this class.
+ * The worker gets the classpath and hbase-site of the region server; other settings made only
+ * in code or on the region server command line do not reach it.
+ * <p>
+ * The worker has no region server to share a {@link CompactionThroughputController} with, so
+ * the request carries the share of the region server limit the compaction gets when it starts,
+ * and the worker keeps to that share; later changes of the limit do not reach it. The
+ * compaction counts as running for the region server controller meanwhile.
+ */
+@InterfaceAudience.Private
+public class OffloadingCompactor extends DefaultCompactor {
+  private static final Log LOG = LogFactory.getLog(OffloadingCompactor.class);
+
+  /**
+   * Command starting the worker, e.g. to run it in its own cgroup. The arguments
+   * <code>-request &lt;file&gt;</code> are appended. By default the java of the region server
+   * is started on {@link CompactionTool} with the region server classpath.
+   */
+  public static final String WORKER_COMMAND_KEY = "hbase.hstore.compaction.offload.command";
+  /** JVM options of the default worker command, e.g. its heap size */
+  public static final String WORKER_JAVA_OPTS_KEY = "hbase.hstore.compaction.offload.java.opts";
+  /** Whether a compaction whose worker failed is run again in the region server */
+  public static final String FALLBACK_KEY = "hbase.hstore.compaction.offload.fallback";
+  /** How often, in ms, the region server checks on the worker */
+  public static final String POLL_INTERVAL_KEY = "hbase.hstore.compaction.offload.poll.interval";
+
+  static final String REQUEST_SUFFIX = ".compaction";
+  static final String RESULT_SUFFIX = ".result";
+  static final String REQUEST_FAMILY = "hbase.compaction.request.family";
+  static final String REQUEST_FILES = "hbase.compaction.request.files";
+  static final String REQUEST_MAJOR = "hbase.compaction.request.major";
+  static final String REQUEST_READ_POINT = "hbase.compaction.request.readpoint";
+  static final String REQUEST_MAX_THROUGHPUT = "hbase.compaction.request.max.throughput";
+  static final String RESULT_FILES = "hbase.compaction.result.files";
+
+  /** How long to wait, in ms, for the rest of the output of a worker that exited */
+  private static final long OUTPUT_WAIT = 10000;
+
+  private final boolean fallback;
+  private final long pollInterval;
+
+  public OffloadingCompactor(final Configuration conf, final Store store) {
+    super(conf, store);
+    this.fallback = conf.getBoolean(FALLBACK_KEY, true);
+    this.pollInterval = conf.getLong(POLL_INTERVAL_KEY, 100);
+  }
+
+  @Override
+  public List<Path> compact(final CompactionRequest request) throws IOException {
+    if (hasCoprocessors()) {
+      return super.compact(request);
+    }
+    try {
+      return compactInWorker(request);
+    } catch (InterruptedIOException e) {
+      throw e;
+    } catch (IOException e) {
+      if (!fallback) {
+        throw e;
+      }
+      LOG.warn("Compaction worker failed on " + request + ", compacting in the region server", e);
+      return super.compact(request);
+    }
+  }
+
+  private List<Path> compactInWorker(final CompactionRequest request) throws IOException {
+    FileDetails fd = getFileDetails(request.getFiles(), request.isMajor());
+    this.progress = new CompactionProgress(fd.maxKeyCount);
+    request.setProgress(this.progress);
+
+    HRegionFileSystem regionFs = ((HStore) store).getRegionFileSystem();
+    FileSystem fs = regionFs.getFileSystem();
+    Path requestFile = new Path(regionFs.getTempDir(),
+        UUID.randomUUID().toString().replaceAll("-", "") + REQUEST_SUFFIX);
+    Path resultFile = requestFile.suffix(RESULT_SUFFIX);
+    CompactionThroughputController throughputController = getThroughputController();
+    String compactionName = null;
+    long maxThroughput = 0;
+    if (throughputController != null) {
+      compactionName = throughputController.start(
+          store.getRegionInfo().getEncodedName() + "#" + store.getColumnFamilyName());
+      maxThroughput = throughputController.getMaxThroughput()
+          / Math.max(1, throughputController.getActiveCompactionCount());
+    }
+    try {
+      Configuration description = new Configuration(false);
+      description.set(REQUEST_FAMILY, store.getColumnFamilyName());
+      List<String> names = new ArrayList<String>(request.getFiles().size());
+      for (StoreFile sf : request.getFiles()) {
+        names.add(sf.getPath().getName());
+      }
+      description.setStrings(REQUEST_FILES, names.toArray(new String[names.size()]));
+      description.setBoolean(REQUEST_MAJOR, request.isMajor());
+      description.setLong(REQUEST_READ_POINT, getSmallestReadPoint());
+      description.setLong(REQUEST_MAX_THROUGHPUT, maxThroughput);
+      writeDescription(fs, requestFile, description);
+
+      runWorker(requestFile);
+
+      if (!fs.exists(resultFile)) {
+        throw new IOException("Compaction worker left no result for " + requestFile);
+      }
+      String[] outputs = readDescription(fs, resultFile).getStrings(RESULT_FILES, new String[0]);
+      List<Path> newFiles = new ArrayList<Path>(outputs.length);
+      for (String output : outputs) {
+        newFiles.add(new Path(output));
+      }
+      this.progress.currentCompactedKVs = fd.maxKeyCount;
+      this.progress.complete();
+      return newFiles;
+    } finally {
+      if (compactionName != null) {
+        throughputController.finish(compactionName);
+      }
+      fs.delete(requestFile, false);
+      fs.delete(resultFile, false);
+    }
+  }
+
+  /**
+   * Starts the worker on the request and waits for it, stopping it if the store closes or the
+   * compaction is asked to stop.
+   */
+  void runWorker(final Path requestFile) throws IOException {
+    List<String> command = getWorkerCommand(requestFile);
+    LOG.debug("Starting compaction worker " + command);
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectErrorStream(true);
+    final Process process = builder.start();
+    final String name = store.getRegionInfo().getEncodedName() + "#" + store.getColumnFamilyName();
+    Thread output = new Thread("CompactionWorkerOutput-" + name) {
+      @Override
+      public void run() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            LOG.debug("[" + name + "] " + line);
+          }
+        } catch (IOException e) {
+          LOG.debug("Stopped reading the output of the compaction worker of " + name, e);
+        }
+      }
+    };
+    output.setDaemon(true);
+    output.start();
+    try {
+      while (true) {
+        try {
+          int exitCode = process.exitValue();
+          // log all the worker said before going on
+          joinOutput(output, name);
+          if (exitCode != 0) {
+            throw new IOException("Compaction worker of " + name + " exited with " + exitCode);
+          }
+          return;
+        } catch (IllegalThreadStateException e) {
+          // still running
+        }
+        if (!store.areWritesEnabled() || progress.isStopRequested()) {
+          process.destroy();
+          progress.cancel();
+          process.waitFor();
+          joinOutput(output, name);
+          throw new InterruptedIOException("Aborting compaction of store " + store +
+              " in region " + store.getRegionInfo().getRegionNameAsString() +
+              " because it was interrupted.");
+        }
+        Thread.sleep(pollInterval);
+      }
+    } catch (InterruptedException e) {
+      process.destroy();
+      progress.cancel();
+      throw (InterruptedIOException) new InterruptedIOException(
+          "Interrupted waiting for the compaction worker of " + name).initCause(e);
+    }
+  }
+
+  private static void joinOutput(final Thread output, final String name)
+      throws InterruptedException {
+    output.join(OUTPUT_WAIT);
+    if (output.isAlive()) {
+      LOG.warn("Output of the compaction worker of " + name + " still open after it exited");
+    }
+  }
+
+  List<String> getWorkerCommand(final Path requestFile) {
+    List<String> command = new ArrayList<String>();
+    String custom = conf.get(WORKER_COMMAND_KEY, "").trim();
+    if (!custom.isEmpty()) {
+      command.addAll(Arrays.asList(custom.split("\\s+")));
+    } else {
+      command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator
+          + "java");
+      String opts = conf.get(WORKER_JAVA_OPTS_KEY, "").trim();
+      if (!opts.isEmpty()) {
+        command.addAll(Arrays.asList(opts.split("\\s+")));
+      }
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(CompactionTool.class.getName());
+    }
+    command.add("-request");
+    command.add(requestFile.toString());
+    return command;
+  }
+
+  /**
+   * Runs a request written by a region server; called in the worker process.
+   * @param store the store to compact, opened by the worker on the region directory
+   * @param requestFile the request
+   * @return the new files in the region tmp dir
+   */
+  public static List<Path> executeRequest(final Configuration conf, final HStore store,
+      final Path requestFile) throws IOException {
+    FileSystem fs = store.getFileSystem();
+    Configuration description = readDescription(fs, requestFile);
+    final long readPoint = description.getLong(REQUEST_READ_POINT, 0);
+    final CompactionThroughputController throughputController =
+        createThroughputController(conf, description.getLong(REQUEST_MAX_THROUGHPUT, 0));
+    Collection<String> names = description.getStringCollection(REQUEST_FILES);
+    List<StoreFile> files = new ArrayList<StoreFile>(names.size());
+    for (StoreFile sf : store.getStorefiles()) {
+      if (names.contains(sf.getPath().getName())) {
+        files.add(sf);
+      }
+    }
+    if (files.size() != names.size()) {
+      throw new IOException("Only found " + files.size() + " of the " + names.size()
+          + " files of " + requestFile + " in " + store);
+    }
+    CompactionRequest request = new CompactionRequest(files);
+    request.setIsMajor(description.getBoolean(REQUEST_MAJOR, false));
+    DefaultCompactor compactor = new DefaultCompactor(conf, store) {
+      @Override
+      protected long getSmallestReadPoint() {
+        // the readers of the region server, not of this process
+        return readPoint;
+      }
+
+      @Override
+      protected CompactionThroughputController getThroughputController() {
+        return throughputController;
+      }
+    };
+    List<Path> newFiles = compactor.compact(request);
+
+    Configuration result = new Configuration(false);
+    String[] outputs = new String[newFiles.size()];
+    for (int i = 0; i < outputs.length; ++i) {
+      outputs[i] = newFiles.get(i).toString();
+    }
+    result.setStrings(RESULT_FILES, outputs);
+    writeDescription(fs, requestFile.suffix(RESULT_SUFFIX), result);
+    return newFiles;
+  }
+
+  /**
+   * @return a controller keeping a worker to the limit it was given, null if it has none
+   */
+  static CompactionThroughputController createThroughputController(final Configuration conf,
+      final long maxThroughput) {
+    if (maxThroughput <= 0) {
+      return null;
+    }
+    // never tuned, so stays at the lower bound
+    Configuration limit = new Configuration(conf);
+    limit.setLong(CompactionThroughputController.HIGHER_BOUND_KEY, maxThroughput);
+    limit.setLong(CompactionThroughputController.LOWER_BOUND_KEY, maxThroughput);
+    return new CompactionThroughputController(limit);
+  }
+
+  /**
+   * @return the name of the family a request is for
+   */
+  public static String getRequestFamily(final FileSystem fs, final Path requestFile)
+      throws IOException {
+    return readDescription(fs, requestFile).get(REQUEST_FAMILY);
+  }
+
+  private static void writeDescription(final FileSystem fs, final Path path,
+      final Configuration description) throws IOException {
+    FSDataOutputStream out = fs.create(path, true);
+    try {
+      description.writeXml(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static Configuration readDescription(final FileSystem fs, final Path path)
+      throws IOException {
+    Configuration description = new Configuration(false);
+    FSDataInputStream in = fs.open(path);
+    try {
+      description.addResource(in);
+      // resources are loaded lazily, read it before the stream closes
+      description.size();
+    } finally {
+      in.close();
+    }
+    return description;
+  }
+}
@@ -322,6 +322,16 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
   public boolean isMajorCompaction(final Collection<StoreFile> filesToCompact)
       throws IOException {
     boolean result = false;
+    StoreFile deleteHeavy = findDeleteHeavyFile(filesToCompact);
+    if (deleteHeavy != null) {
+      if (LOG.isDebugEnabled()) {
+        StoreFile.Reader r = deleteHeavy.getReader();
+        LOG.debug("Major compaction triggered on store " + this + ", because " + deleteHeavy
+            + " has " + r.getDeleteMarkerCount() + " delete markers in " + r.getEntries()
+            + " cells");
+      }
+      return true;
+    }
     long mcTime = getNextMajorCompactTime(filesToCompact);
     if (filesToCompact == null || filesToCompact.isEmpty() || mcTime == 0) {
       return result;
@@ -363,6 +373,32 @@ public class RatioBasedCompactionPolicy extends CompactionPolicy {
     return result;
   }
 
+  /**
+   * Delete markers are only dropped by major compactions, so a file whose cells are mostly
+   * delete markers makes every scan skip them until the next one. Files written by a major
+   * compaction are not considered: the markers they kept could not be dropped.
+   * @param files Files to look at. Can be null.
+   * @return a file with at least the configured ratio and number of delete markers, or null
+   */
+  StoreFile findDeleteHeavyFile(final Collection<StoreFile> files) {
+    float ratio = comConf.getDeleteMarkerRatio();
+    if (files == null || ratio <= 0) {
+      return null;
+    }
+    for (StoreFile sf : files) {
+      StoreFile.Reader r = sf.getReader();
+      if (r == null || sf.isMajorCompaction()) {
+        continue;
+      }
+      long markers = r.getDeleteMarkerCount();
+      if (markers > 0 && markers >= comConf.getMinDeleteMarkers()
+          && markers >= ratio * r.getEntries()) {
+        return sf;
+      }
+    }
+    return null;
+  }
+
   public long getNextMajorCompactTime(final Collection<StoreFile> filesToCompact) {
     // default = 24hrs
     long ret = comConf.getMajorCompactionPeriod();
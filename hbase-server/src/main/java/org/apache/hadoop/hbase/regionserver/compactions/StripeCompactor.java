@@ -84,6 +84,7 @@ public class StripeCompactor extends Compactor {
     final Collection<StoreFile> filesToCompact = request.getFiles();
     final FileDetails fd = getFileDetails(filesToCompact, request.isMajor());
     this.progress = new CompactionProgress(fd.maxKeyCount);
+    request.setProgress(this.progress);
 
     long smallestReadPoint = getSmallestReadPoint();
     List<StoreFileScanner> scanners = createFileScanners(filesToCompact, smallestReadPoint);
@@ -1573,6 +1573,20 @@ class FSHLog implements HLog, Syncable {
     closeBarrier.endOp();
   }
 
+  @Override
+  public void completeCacheFlush(final byte [] encodedRegionName, long oldestUnflushedSeqNum) {
+    synchronized (oldestSeqNumsLock) {
+      this.oldestFlushingSeqNums.remove(encodedRegionName);
+      // appends only ever put a value if there is none, so they cannot race with the put below
+      Long currentSeqNum =
+        this.oldestUnflushedSeqNums.putIfAbsent(encodedRegionName, oldestUnflushedSeqNum);
+      if (currentSeqNum != null && currentSeqNum.longValue() > oldestUnflushedSeqNum) {
+        this.oldestUnflushedSeqNums.put(encodedRegionName, oldestUnflushedSeqNum);
+      }
+    }
+    closeBarrier.endOp();
+  }
+
   @Override
   public void abortCacheFlush(byte[] encodedRegionName) {
     Long currentSeqNum = null, seqNumBeforeFlushStarts = null;
@@ -335,6 +335,16 @@ public interface HLog {
    */
   void completeCacheFlush(final byte[] encodedRegionName);
 
+  /**
+   * Complete a cache flush that left some stores of the region unflushed. Their edits are
+   * still only in memstores, so the region keeps the given oldest seqNum, unless an edit
+   * appended since the flush started is older.
+   * @param encodedRegionName Encoded region name.
+   * @param oldestUnflushedSeqNum A seqNum no larger than that of any edit of the region that is
+   * still not flushed.
+   */
+  void completeCacheFlush(final byte[] encodedRegionName, long oldestUnflushedSeqNum);
+
   /**
    * Abort a cache flush. Call if the flush fails. Note that the only recovery
    * for an aborted flush currently is a restart of the regionserver so the
@@ -38,6 +38,9 @@ import org.apache.hadoop.io.Writable;
  * Adds methods required for writing a compound Bloom filter to the data
  * section of an {@link org.apache.hadoop.hbase.io.hfile.HFile} to the
  * {@link CompoundBloomFilter} class.
+ * <p>
+ * Keys may be added in another thread than the one writing the file; the chunks are
+ * handed over under the lock of this writer.
  */
 @InterfaceAudience.Private
 public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
@@ -101,7 +104,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   }
 
   @Override
-  public boolean shouldWriteBlock(boolean closing) {
+  public synchronized boolean shouldWriteBlock(boolean closing) {
     enqueueReadyChunk(closing);
     return !readyChunks.isEmpty();
   }
@@ -158,7 +161,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
    * org.apache.hadoop.hbase.KeyValue)} for the details of deduplication.
    */
   @Override
-  public void add(byte[] bloomKey, int keyOffset, int keyLength) {
+  public synchronized void add(byte[] bloomKey, int keyOffset, int keyLength) {
     if (bloomKey == null)
       throw new NullPointerException();
 
@@ -196,7 +199,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   }
 
   @Override
-  public void writeInlineBlock(DataOutput out) throws IOException {
+  public synchronized void writeInlineBlock(DataOutput out) throws IOException {
     // We don't remove the chunk from the queue here, because we might need it
     // again for cache-on-write.
     ReadyChunk readyChunk = readyChunks.peek();
@@ -206,7 +209,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   }
 
   @Override
-  public void blockWritten(long offset, int onDiskSize, int uncompressedSize) {
+  public synchronized void blockWritten(long offset, int onDiskSize, int uncompressedSize) {
     ReadyChunk readyChunk = readyChunks.remove();
     bloomBlockIndexWriter.addEntry(readyChunk.firstKey, offset, onDiskSize);
   }
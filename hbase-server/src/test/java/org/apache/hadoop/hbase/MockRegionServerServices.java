@@ -41,6 +41,7 @@ import org.apache.hadoop.hbase.regionserver.Leases;
 import org.apache.hadoop.hbase.regionserver.RegionServerAccounting;
 import org.apache.hadoop.hbase.regionserver.RegionServerServices;
 import org.apache.hadoop.hbase.regionserver.ServerNonceManager;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionThroughputController;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.zookeeper.ZooKeeperWatcher;
@@ -127,6 +128,11 @@ class MockRegionServerServices implements RegionServerServices {
     return null;
   }
 
+  @Override
+  public CompactionThroughputController getCompactionThroughputController() {
+    return null;
+  }
+
   @Override
   public CatalogTracker getCatalogTracker() {
     return null;
@@ -17,6 +17,9 @@
 package org.apache.hadoop.hbase.io.encoding;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -285,6 +288,8 @@ public class TestDataBlockEncoders {
       DataBlockEncoder.EncodedSeeker seeker = encoder.createSeeker(KeyValue.COMPARATOR,
           encoder.newDataBlockDecodingContext(meta));
       seeker.setCurrentBuffer(encodedBuffer);
+      boolean cachesCell = seeker instanceof BufferedDataBlockEncoder.BufferedEncodedSeeker;
+      KeyValue previousKv = null;
       int i = 0;
       do {
         KeyValue expectedKeyValue = sampleKv.get(i);
@@ -310,6 +315,24 @@ public class TestDataBlockEncoders {
               expectedKeyValue.getOffset(), expectedKeyValue.getLength()), Bytes
               .toStringBinary(keyValue)));
         }
+        // the materialized cell has the same bytes and is stable for the current position
+        KeyValue kv = seeker.getKeyValue();
+        assertTrue(Bytes.equals(kv.getBuffer(), kv.getOffset(), kv.getLength(),
+            expectedKeyValue.getBuffer(), expectedKeyValue.getOffset(),
+            expectedKeyValue.getLength()));
+        assertTrue(Bytes.equals(kv.getBuffer(), kv.getOffset(), kv.getLength(),
+            seeker.getKeyValue().getBuffer(), seeker.getKeyValue().getOffset(),
+            seeker.getKeyValue().getLength()));
+        if (cachesCell) {
+          // the cell is materialized once per position, and never handed out again once the
+          // seeker moved on, as callers keep references to the cells they got
+          assertSame(kv, seeker.getKeyValue());
+          assertNotSame(previousKv, kv);
+          if (previousKv != null) {
+            assertTrue(previousKv.getBuffer() != kv.getBuffer());
+          }
+        }
+        previousKv = kv;
         i++;
       } while (seeker.next());
     }
@@ -0,0 +1,134 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Test the data block time ranges written by {@link HFileWriterV2} and the block skipping of
+ * {@link HFileScanner#skipBlocksOlderThan(long)}.
+ */
+@Category(SmallTests.class)
+public class TestBlockTimeRanges {
+  private final static HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_ROWS = 5000;
+
+  /**
+   * Writes rows whose timestamps grow with the row, as in a time series table.
+   */
+  private HFile.Reader writeAndOpen(String name) throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    FSDataOutputStream fout = TEST_UTIL.getTestFileSystem().create(path);
+    CacheConfig cacheConf = new CacheConfig(TEST_UTIL.getConfiguration());
+    HFileContext context = new HFileContextBuilder().withBlockSize(1024).build();
+    HFile.Writer writer = HFile.getWriterFactory(TEST_UTIL.getConfiguration(), cacheConf)
+        .withOutputStream(fout)
+        .withFileContext(context)
+        .withComparator(KeyValue.COMPARATOR)
+        .create();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      writer.append(new KeyValue(Bytes.toBytes(String.format("row%06d", i)), FAMILY, QUALIFIER,
+          i, Bytes.toBytes("value" + i)));
+    }
+    writer.close();
+    fout.close();
+    HFile.Reader reader = HFile.createReader(TEST_UTIL.getTestFileSystem(), path, cacheConf,
+        TEST_UTIL.getConfiguration());
+    reader.loadFileInfo();
+    return reader;
+  }
+
+  @Test
+  public void testTimeRangesWritten() throws IOException {
+    HFile.Reader reader = writeAndOpen("timeranges");
+    BlockTimeRanges ranges = ((HFileReaderV2) reader).getBlockTimeRanges();
+    assertNotNull(ranges);
+    assertTrue(ranges.size() > 1);
+    assertEquals(reader.getTrailer().getFirstDataBlockOffset(), ranges.getOffset(0));
+    assertEquals(reader.getTrailer().getLastDataBlockOffset(),
+        ranges.getOffset(ranges.size() - 1));
+    assertEquals(0, ranges.getMinTimestamp(0));
+    assertEquals(NUM_ROWS - 1, ranges.getMaxTimestamp(ranges.size() - 1));
+    for (int i = 1; i < ranges.size(); i++) {
+      assertTrue(ranges.getOffset(i) > ranges.getOffset(i - 1));
+      assertEquals(ranges.getMaxTimestamp(i - 1) + 1, ranges.getMinTimestamp(i));
+    }
+    // an unknown meta block name must not resolve to a neighbouring block
+    assertNull(reader.getMetaBlock("BLOCK_TIMERANGES_X", false));
+    reader.close();
+  }
+
+  @Test
+  public void testSkipOldBlocks() throws IOException {
+    HFile.Reader reader = writeAndOpen("skipold");
+    long threshold = NUM_ROWS / 2;
+    HFileScanner scanner = reader.getScanner(false, false);
+    scanner.skipBlocksOlderThan(threshold);
+    long skippedBefore = HFile.getSkippedDataBlockCount();
+
+    assertTrue(scanner.seekTo());
+    // the block the scan starts in is always read
+    long previous = scanner.getKeyValue().getTimestamp();
+    assertEquals(0, previous);
+    boolean reachedThreshold = false;
+    int count = 1;
+    while (scanner.next()) {
+      long ts = scanner.getKeyValue().getTimestamp();
+      assertTrue(ts > previous);
+      if (ts != previous + 1) {
+        // the jump can only land in the block that holds the threshold
+        assertTrue("jumped to " + ts, ts <= threshold);
+      }
+      reachedThreshold |= ts == threshold;
+      previous = ts;
+      count++;
+    }
+    assertTrue(reachedThreshold);
+    assertEquals(NUM_ROWS - 1, previous);
+    assertTrue(count < NUM_ROWS);
+    assertTrue(HFile.getSkippedDataBlockCount() > skippedBefore);
+
+    // without the hint every cell is read
+    scanner = reader.getScanner(false, false);
+    assertTrue(scanner.seekTo());
+    count = 1;
+    while (scanner.next()) {
+      count++;
+    }
+    assertEquals(NUM_ROWS, count);
+    reader.close();
+  }
+}
@@ -272,10 +272,10 @@ public class TestCacheOnWrite {
         encoderType.encode ? BlockType.ENCODED_DATA : BlockType.DATA;
     if (useTags) {
       assertEquals("{" + cachedDataBlockType
-          + "=1550, LEAF_INDEX=173, BLOOM_CHUNK=9, INTERMEDIATE_INDEX=20}", countByType);
+          + "=1550, LEAF_INDEX=173, BLOOM_CHUNK=9, META=1, INTERMEDIATE_INDEX=20}", countByType);
     } else {
       assertEquals("{" + cachedDataBlockType
-          + "=1379, LEAF_INDEX=154, BLOOM_CHUNK=9, INTERMEDIATE_INDEX=18}", countByType);
+          + "=1379, LEAF_INDEX=154, BLOOM_CHUNK=9, META=1, INTERMEDIATE_INDEX=18}", countByType);
     }
     reader.close();
   }
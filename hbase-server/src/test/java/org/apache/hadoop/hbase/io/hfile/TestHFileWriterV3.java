@@ -85,6 +85,8 @@ public class TestHFileWriterV3 {
   @Before
   public void setUp() throws IOException {
     conf = TEST_UTIL.getConfiguration();
+    // the meta block checks below expect only the meta blocks the test adds
+    conf.setBoolean(HFileWriterV2.BLOCK_TIMERANGES_KEY, false);
     fs = FileSystem.get(conf);
   }
 
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -119,6 +120,58 @@ public class TestReseekTo {
     reader.close();
   }
 
+  /**
+   * Reseeks to qualifiers spread over a single row that spans many blocks. The block index keys
+   * carry row, family and qualifier, so each reseek has to load at most the one data block that
+   * holds its target, never the blocks in between.
+   */
+  @Test
+  public void testReseekWithinWideRow() throws Exception {
+    Path ncTFile = new Path(TEST_UTIL.getDataTestDir(), "widerow.hfile");
+    FSDataOutputStream fout = TEST_UTIL.getTestFileSystem().create(ncTFile);
+    CacheConfig cacheConf = new CacheConfig(TEST_UTIL.getConfiguration());
+    HFileContext context = new HFileContextBuilder().withBlockSize(1024).build();
+    HFile.Writer writer = HFile.getWriterFactory(
+        TEST_UTIL.getConfiguration(), cacheConf)
+            .withOutputStream(fout)
+            .withFileContext(context)
+            .withComparator(KeyValue.COMPARATOR)
+            .create();
+    byte[] row = Bytes.toBytes("row");
+    byte[] family = Bytes.toBytes("f");
+    int numberOfColumns = 5000;
+    List<KeyValue> kvs = new ArrayList<KeyValue>();
+    for (int i = 0; i < numberOfColumns; i++) {
+      KeyValue kv = new KeyValue(row, family, Bytes.toBytes(String.format("q%06d", i)), 1L,
+          KeyValue.Type.Put, Bytes.toBytes("Value" + i));
+      kvs.add(kv);
+      writer.append(kv);
+    }
+    writer.close();
+    fout.close();
 
+    HFile.Reader reader = HFile.createReader(TEST_UTIL.getTestFileSystem(),
+        ncTFile, cacheConf, TEST_UTIL.getConfiguration());
+    reader.loadFileInfo();
+    assertTrue(reader.getDataBlockIndexReader().getRootBlockCount() > 1
+        || reader.getTrailer().getNumDataIndexLevels() > 1);
+    HFileScanner scanner = reader.getScanner(false, true);
+
+    scanner.seekTo();
+    int step = 200;
+    long readsBefore = HFile.dataBlockReadCnt.get();
+    int seeks = 0;
+    for (int i = step; i < numberOfColumns; i += step) {
+      KeyValue kv = kvs.get(i);
+      assertEquals(0, scanner.reseekTo(kv.getBuffer(), kv.getKeyOffset(), kv.getKeyLength()));
+      assertEquals("i is " + i, "Value" + i, scanner.getValueString());
+      seeks++;
+    }
+    long dataBlockReads = HFile.dataBlockReadCnt.get() - readsBefore;
+    assertTrue("Read " + dataBlockReads + " data blocks for " + seeks + " reseeks",
+        dataBlockReads <= seeks);
+
+    reader.close();
+  }
 }
 
@@ -48,4 +48,14 @@ public class MetricsHBaseServerWrapperStub implements MetricsHBaseServerWrapper{
   public int getActiveRpcHandlerCount() {
     return 106;
   }
+
+  @Override
+  public int getBufferPoolHitPercent() {
+    return 107;
+  }
+
+  @Override
+  public long getBufferPoolOutstanding() {
+    return 108;
+  }
 }
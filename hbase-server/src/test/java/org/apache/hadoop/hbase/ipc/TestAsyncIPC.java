@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.ipc.TestIPC.TestRpcServer;
+import org.apache.hadoop.hbase.ipc.protobuf.generated.TestProtos.EchoRequestProto;
+import org.apache.hadoop.hbase.ipc.protobuf.generated.TestProtos.EchoResponseProto;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.util.Pair;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Descriptors.MethodDescriptor;
+import com.google.protobuf.Message;
+
+@Category(SmallTests.class)
+public class TestAsyncIPC {
+  private static final MethodDescriptor ECHO =
+      TestIPC.SERVICE.getDescriptorForType().findMethodByName("echo");
+
+  private static AsyncRpcClient createClient() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(RpcClientFactory.CUSTOM_RPC_CLIENT_IMPL_CONF_KEY, AsyncRpcClient.class.getName());
+    RpcClient client = RpcClientFactory.createClient(conf, HConstants.CLUSTER_ID_DEFAULT);
+    assertTrue(client instanceof AsyncRpcClient);
+    return (AsyncRpcClient) client;
+  }
+
+  private static EchoRequestProto echo(String message) {
+    return EchoRequestProto.newBuilder().setMessage(message).build();
+  }
+
+  @Test
+  public void testBlockingCallWithCells() throws Exception {
+    AsyncRpcClient client = createClient();
+    TestRpcServer rpcServer = new TestRpcServer();
+    try {
+      rpcServer.start();
+      InetSocketAddress address = rpcServer.getListenerAddress();
+      List<Cell> cells = new ArrayList<Cell>();
+      for (int i = 0; i < 10; ++i) {
+        cells.add(TestIPC.BIG_CELL);
+      }
+      Pair<Message, CellScanner> r = client.call(ECHO, echo("hello"),
+        CellUtil.createCellScanner(cells), ECHO.getOutputType().toProto(), User.getCurrent(),
+        address, 0);
+      assertEquals("hello", ((EchoResponseProto) r.getFirst()).getMessage());
+      int count = 0;
+      while (r.getSecond().advance()) {
+        assertTrue(CellUtil.matchingValue(TestIPC.BIG_CELL, r.getSecond().current()));
+        count++;
+      }
+      assertEquals(10, count);
+    } finally {
+      client.stop();
+      rpcServer.stop();
+    }
+  }
+
+  @Test
+  public void testManyConcurrentCalls() throws Exception {
+    AsyncRpcClient client = createClient();
+    TestRpcServer rpcServer = new TestRpcServer(new FifoRpcScheduler(
+        HBaseConfiguration.create(), 4));
+    try {
+      rpcServer.start();
+      InetSocketAddress address = rpcServer.getListenerAddress();
+      User user = User.getCurrent();
+      List<ListenableFuture<Pair<Message, CellScanner>>> futures =
+          new ArrayList<ListenableFuture<Pair<Message, CellScanner>>>();
+      for (int i = 0; i < 1000; ++i) {
+        futures.add(client.callAsync(ECHO, echo("m" + i), null, ECHO.getOutputType().toProto(),
+          user, address, 0, HConstants.NORMAL_QOS));
+      }
+      for (int i = 0; i < futures.size(); ++i) {
+        Pair<Message, CellScanner> r = futures.get(i).get();
+        assertEquals("m" + i, ((EchoResponseProto) r.getFirst()).getMessage());
+        assertNull(r.getSecond());
+      }
+    } finally {
+      client.stop();
+      rpcServer.stop();
+    }
+  }
+
+  @Test
+  public void testConnectionFailure() throws Exception {
+    AsyncRpcClient client = createClient();
+    try {
+      // nothing listens there
+      InetSocketAddress address = new InetSocketAddress("localhost", 1);
+      ListenableFuture<Pair<Message, CellScanner>> future = client.callAsync(ECHO, echo("x"),
+        null, ECHO.getOutputType().toProto(), User.getCurrent(), address, 0,
+        HConstants.NORMAL_QOS);
+      try {
+        future.get();
+        fail("Expected a connection failure");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+      // the server is now in the failed servers list
+      try {
+        client.call(ECHO, echo("x"), null, ECHO.getOutputType().toProto(), User.getCurrent(),
+          address, 0);
+        fail("Expected a failed server");
+      } catch (RpcClient.FailedServerException e) {
+        // expected
+      }
+    } finally {
+      client.stop();
+    }
+  }
+}
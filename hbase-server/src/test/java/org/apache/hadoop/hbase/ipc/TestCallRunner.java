@@ -37,4 +37,19 @@ public class TestCallRunner {
     CallRunner cr = new CallRunner(mockRpcServer, mockCall, new UserProvider());
     cr.run();
   }
+
+  /**
+   * A call that fails before it could send a response no longer counts against its connection.
+   */
+  @Test
+  public void testCallFinishedWithoutResponse() {
+    RpcServerInterface mockRpcServer = Mockito.mock(RpcServerInterface.class);
+    RpcServer.Call mockCall = Mockito.mock(RpcServer.Call.class);
+    // no channel, so running the call fails right away
+    mockCall.connection = Mockito.mock(RpcServer.Connection.class);
+    CallRunner cr = new CallRunner(mockRpcServer, mockCall, new UserProvider());
+    cr.run();
+    Mockito.verify(mockCall).finish();
+    Mockito.verify(mockCall).releaseRequest();
+  }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManagerTestHelper;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestFairCallQueue {
+
+  private static class StubClassifier implements FairCallQueue.Classifier {
+    final Map<CallRunner, FairCallQueue.CallTag> tags =
+        new HashMap<CallRunner, FairCallQueue.CallTag>();
+    long deadline = 0;
+    double costDelay = 0;
+    int dequeued = 0;
+    int dropped = 0;
+
+    @Override
+    public FairCallQueue.CallTag classify(CallRunner task) {
+      return tags.get(task);
+    }
+
+    @Override
+    public long getDeadline() {
+      return deadline;
+    }
+
+    @Override
+    public double getCostDelay() {
+      return costDelay;
+    }
+
+    @Override
+    public void dequeued(FairCallQueue.CallTag tag, long queueTime) {
+      ++dequeued;
+    }
+
+    @Override
+    public void dropped(FairCallQueue.CallTag tag, long queueTime) {
+      ++dropped;
+    }
+  }
+
+  private final ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+  private StubClassifier classifier;
+
+  @Before
+  public void setUp() {
+    edge.setValue(1000);
+    EnvironmentEdgeManagerTestHelper.injectEdge(edge);
+    classifier = new StubClassifier();
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManagerTestHelper.reset();
+  }
+
+  private CallRunner call(String user, String table, long cost) {
+    CallRunner task = mock(CallRunner.class);
+    classifier.tags.put(task, new FairCallQueue.CallTag(user, table, "get", cost, 1, 1));
+    return task;
+  }
+
+  private List<String> drain(FairCallQueue queue) {
+    List<String> order = new ArrayList<String>();
+    CallRunner task;
+    while ((task = queue.poll()) != null) {
+      FairCallQueue.CallTag tag = classifier.tags.get(task);
+      order.add(tag.user + "/" + tag.table + "/" + tag.cost);
+    }
+    return order;
+  }
+
+  @Test
+  public void testExpensiveUserDoesNotStarveOthers() {
+    FairCallQueue queue = new FairCallQueue(100, classifier);
+    for (int i = 0; i < 5; ++i) {
+      queue.offer(call("scanner", "t", 10));
+    }
+    for (int i = 0; i < 5; ++i) {
+      queue.offer(call("getter", "t", 1));
+    }
+    List<String> order = drain(queue);
+    assertEquals(10, order.size());
+    // one scan is worth ten gets, so all the gets go before the second scan
+    assertEquals("scanner/t/10", order.get(0));
+    for (int i = 1; i < 6; ++i) {
+      assertEquals("getter/t/1", order.get(i));
+    }
+    assertEquals(10, classifier.dequeued);
+  }
+
+  @Test
+  public void testTablesOfUserShareFairly() {
+    FairCallQueue queue = new FairCallQueue(100, classifier);
+    for (int i = 0; i < 4; ++i) {
+      queue.offer(call("u", "a", 1));
+    }
+    queue.offer(call("u", "b", 1));
+    List<String> order = drain(queue);
+    assertEquals("u/a/1", order.get(0));
+    assertEquals("u/b/1", order.get(1));
+  }
+
+  @Test
+  public void testCheapCallsFirstWithinTable() {
+    classifier.costDelay = 1;
+    FairCallQueue queue = new FairCallQueue(100, classifier);
+    queue.offer(call("u", "t", 50));
+    edge.incValue(10);
+    queue.offer(call("u", "t", 1));
+    List<String> order = drain(queue);
+    assertEquals("u/t/1", order.get(0));
+    assertEquals("u/t/50", order.get(1));
+
+    // a scan queued long enough goes ahead of newer gets
+    queue.offer(call("u", "t", 50));
+    edge.incValue(100);
+    queue.offer(call("u", "t", 1));
+    order = drain(queue);
+    assertEquals("u/t/50", order.get(0));
+  }
+
+  @Test
+  public void testExpiredCallsAreDropped() throws Exception {
+    classifier.deadline = 100;
+    FairCallQueue queue = new FairCallQueue(100, classifier);
+    CallRunner stale = call("u", "t", 1);
+    queue.offer(stale);
+    edge.incValue(200);
+    CallRunner fresh = call("u", "t", 1);
+    queue.offer(fresh);
+    assertSame(fresh, queue.poll(1, TimeUnit.MILLISECONDS));
+    verify(stale).drop(any(CallDeadlineExceededException.class));
+    verify(fresh, never()).drop(any(Throwable.class));
+    assertEquals(1, classifier.dropped);
+    assertEquals(1, classifier.dequeued);
+    assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testBounded() {
+    FairCallQueue queue = new FairCallQueue(2, classifier);
+    CallRunner first = call("u", "t", 1);
+    queue.offer(first);
+    queue.offer(call("u", "t", 1));
+    assertFalse(queue.offer(call("u", "t", 1)));
+    assertEquals(0, queue.remainingCapacity());
+    queue.remove(first);
+    assertEquals(1, queue.size());
+    assertEquals(1, queue.remainingCapacity());
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.ipc.RpcServer.Call;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.ScanRequest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.google.protobuf.Message;
+
+@Category(SmallTests.class)
+public class TestFairRpcScheduler {
+
+  @Test
+  public void testScannerTable() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(FairRpcScheduler.TABLE_WEIGHT_PREFIX + "heavy", 4);
+    ScanClassifier classifier = mock(ScanClassifier.class);
+    when(classifier.getScannerTable(1)).thenReturn(TableName.valueOf("heavy"));
+    FairRpcScheduler scheduler = new FairRpcScheduler(conf, 1, 0, 0,
+      mock(PriorityFunction.class), HConstants.QOS_THRESHOLD, classifier);
+
+    // a scan going on with its scanner has no region, its table comes from the scanner
+    FairCallQueue.CallTag tag =
+      scheduler.classify(createMockTask(ScanRequest.newBuilder().setScannerId(1).build()));
+    assertEquals(FairRpcScheduler.SCAN, tag.callClass);
+    assertEquals("heavy", tag.table);
+    assertEquals(4, tag.tableWeight);
+
+    // unknown scanners have no table
+    tag = scheduler.classify(createMockTask(ScanRequest.newBuilder().setScannerId(2).build()));
+    assertEquals("", tag.table);
+    assertEquals(1, tag.tableWeight);
+  }
+
+  private CallRunner createMockTask(Message param) {
+    Call call = mock(Call.class);
+    call.param = param;
+    CallRunner task = mock(CallRunner.class);
+    when(task.getCall()).thenReturn(call);
+    return task;
+  }
+}
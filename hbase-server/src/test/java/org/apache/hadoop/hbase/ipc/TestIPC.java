@@ -19,20 +19,30 @@
 package org.apache.hadoop.hbase.ipc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SelectionKey;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.SocketFactory;
 
@@ -43,6 +53,7 @@ import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellScannable;
 import org.apache.hadoop.hbase.CellScanner;
 import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompatibilityFactory;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HRegionInfo;
@@ -64,9 +75,16 @@ import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MutationProto;
 import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.RegionAction;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.RegionSpecifier;
 import org.apache.hadoop.hbase.protobuf.generated.HBaseProtos.RegionSpecifier.RegionSpecifierType;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.ConnectionHeader;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.RequestHeader;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.ResponseHeader;
+import org.apache.hadoop.hbase.protobuf.generated.RPCProtos.UserInformation;
+import org.apache.hadoop.hbase.security.AuthMethod;
 import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.test.MetricsAssertHelper;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.hbase.util.Threads;
 import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.util.StringUtils;
@@ -96,11 +114,13 @@ public class TestIPC {
   static byte [] BIG_CELL_BYTES = new byte [10 * 1024];
   static Cell BIG_CELL = new KeyValue(CELL_BYTES, CELL_BYTES, CELL_BYTES, BIG_CELL_BYTES);
   private final static Configuration CONF = HBaseConfiguration.create();
+  private static final MetricsAssertHelper HELPER =
+      CompatibilityFactory.getInstance(MetricsAssertHelper.class);
   // We are using the test TestRpcServiceProtos generated classes and Service because they are
   // available and basic with methods like 'echo', and ping.  Below we make a blocking service
   // by passing in implementation of blocking interface.  We use this service in all tests that
   // follow.
-  private static final BlockingService SERVICE =
+  static final BlockingService SERVICE =
    TestRpcServiceProtos.TestProtobufRpcProto.newReflectiveBlockingService(
      new TestRpcServiceProtos.TestProtobufRpcProto.BlockingInterface() {
 
@@ -149,22 +169,43 @@ public class TestIPC {
    * Instance of server.  We actually don't do anything speical in here so could just use
    * HBaseRpcServer directly.
    */
-  private static class TestRpcServer extends RpcServer {
+  static class TestRpcServer extends RpcServer {
 
     TestRpcServer() throws IOException {
       this(new FifoRpcScheduler(CONF, 1));
     }
 
     TestRpcServer(RpcScheduler scheduler) throws IOException {
+      this(scheduler, CONF);
+    }
+
+    TestRpcServer(RpcScheduler scheduler, Configuration conf) throws IOException {
       super(null, "testRpcServer",
           Lists.newArrayList(new BlockingServiceAndInterface(SERVICE, null)),
-        new InetSocketAddress("0.0.0.0", 0), CONF, scheduler);
+        new InetSocketAddress("0.0.0.0", 0), conf, scheduler);
+    }
+
+    @Override
+    public Pair<Message, CellScanner> call(BlockingService service,
+        MethodDescriptor md, Message param, CellScanner cellScanner,
+        long receiveTime, MonitoredRPCHandler status) throws IOException {
+      return super.call(service, md, param, cellScanner, receiveTime, status);
+    }
+  }
+
+  /**
+   * Server with a single handler that takes a while on every call, so calls pile up.
+   */
+  static class SlowRpcServer extends TestRpcServer {
+    SlowRpcServer(Configuration conf) throws IOException {
+      super(new FifoRpcScheduler(conf, 1), conf);
     }
 
     @Override
     public Pair<Message, CellScanner> call(BlockingService service,
         MethodDescriptor md, Message param, CellScanner cellScanner,
         long receiveTime, MonitoredRPCHandler status) throws IOException {
+      Threads.sleep(10);
       return super.call(service, md, param, cellScanner, receiveTime, status);
     }
   }
@@ -218,6 +259,288 @@ public class TestIPC {
     doSimpleTest(conf, new RpcClient(conf, HConstants.CLUSTER_ID_DEFAULT));
   }
 
+  /**
+   * Requests and response cellblocks go in pooled buffers that are given back once the call is
+   * done, or the connection closed halfway through a request.
+   */
+  @Test
+  public void testPooledBuffers() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setBoolean(RpcServer.RESERVOIR_ENABLED_KEY, true);
+    RpcClient client = new RpcClient(CONF, HConstants.CLUSTER_ID_DEFAULT);
+    TestRpcServer rpcServer = new TestRpcServer(new FifoRpcScheduler(conf, 1), conf);
+    List<Cell> cells = new ArrayList<Cell>();
+    for (int i = 0; i < 3; i++) cells.add(BIG_CELL);
+    Socket socket = new Socket();
+    try {
+      rpcServer.start();
+      InetSocketAddress address = rpcServer.getListenerAddress();
+      MethodDescriptor md = SERVICE.getDescriptorForType().findMethodByName("echo");
+      EchoRequestProto param = EchoRequestProto.newBuilder().setMessage("hello").build();
+      for (int i = 0; i < 10; i++) {
+        Pair<Message, CellScanner> r = client.call(md, param, CellUtil.createCellScanner(cells),
+          md.getOutputType().toProto(), User.getCurrent(), address, 0);
+        int index = 0;
+        while (r.getSecond().advance()) {
+          assertTrue(BIG_CELL.equals(r.getSecond().current()));
+          index++;
+        }
+        assertEquals(cells.size(), index);
+      }
+      waitForBuffersBack(rpcServer);
+      assertTrue(rpcServer.requestBufferPool.getHitCount() > 0);
+      assertTrue(rpcServer.cellBlockPool.getHitCount() > 0);
+
+      // a request cut short
+      socket.connect(address);
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.write(HConstants.RPC_HEADER.array());
+      out.write(HConstants.RPC_CURRENT_VERSION);
+      out.write(AuthMethod.SIMPLE.code);
+      ConnectionHeader header = ConnectionHeader.newBuilder()
+        .setServiceName(SERVICE.getDescriptorForType().getName())
+        .setUserInfo(UserInformation.newBuilder()
+          .setEffectiveUser(User.getCurrent().getShortName()))
+        .build();
+      out.writeInt(header.getSerializedSize());
+      header.writeTo(out);
+      out.writeInt(1000);
+      out.write(new byte[10]);
+      out.flush();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (rpcServer.requestBufferPool.getOutstandingCount() == 0) {
+        assertTrue("Request not started", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+      socket.close();
+      waitForBuffersBack(rpcServer);
+    } finally {
+      socket.close();
+      client.stop();
+      rpcServer.stop();
+    }
+  }
+
+  private static void waitForBuffersBack(RpcServer rpcServer) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (rpcServer.requestBufferPool.getOutstandingCount() > 0 ||
+        rpcServer.cellBlockPool.getOutstandingCount() > 0) {
+      assertTrue("Buffers not given back", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Connections are shared out between several listeners and their readers, which decode a
+   * few requests of a connection at a time.
+   */
+  @Test
+  public void testMultipleListeners() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(RpcServer.LISTENER_COUNT_KEY, 2);
+    conf.setInt("hbase.ipc.server.read.threadpool.size", 3);
+    conf.setInt(RpcServer.READ_MAX_REQUESTS_KEY, 2);
+    TestRpcServer rpcServer = new TestRpcServer(new FifoRpcScheduler(conf, 2), conf);
+    List<RpcClient> clients = new ArrayList<RpcClient>();
+    try {
+      rpcServer.start();
+      InetSocketAddress address = rpcServer.getListenerAddress();
+      MethodDescriptor md = SERVICE.getDescriptorForType().findMethodByName("echo");
+      for (int i = 0; i < 6; i++) {
+        clients.add(new RpcClient(conf, HConstants.CLUSTER_ID_DEFAULT));
+      }
+      for (int round = 0; round < 3; round++) {
+        for (int i = 0; i < clients.size(); i++) {
+          String message = "hello" + round + "/" + i;
+          EchoRequestProto param = EchoRequestProto.newBuilder().setMessage(message).build();
+          Pair<Message, CellScanner> r = clients.get(i).call(md, param,
+            CellUtil.createCellScanner(ImmutableList.of(CELL)), md.getOutputType().toProto(),
+            User.getCurrent(), address, 0);
+          assertTrue(r.getFirst().toString().contains(message));
+          assertTrue(r.getSecond().advance());
+          assertTrue(CELL.equals(r.getSecond().current()));
+        }
+      }
+      assertEquals(clients.size(), rpcServer.connectionList.size());
+
+      // whichever listener accepts a connection hands it to its least loaded reader
+      int[][] readerConnections = rpcServer.getReaderConnectionCounts();
+      assertEquals(2, readerConnections.length);
+      int total = 0;
+      for (int[] counts : readerConnections) {
+        assertEquals(3, counts.length);
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int count : counts) {
+          min = Math.min(min, count);
+          max = Math.max(max, count);
+          total += count;
+        }
+        assertTrue("readers of a listener are unevenly loaded: " + min + " to " + max,
+          max - min <= 1);
+      }
+      assertEquals(clients.size(), total);
+    } finally {
+      for (RpcClient client : clients) {
+        client.stop();
+      }
+      rpcServer.stop();
+    }
+  }
+
+  /**
+   * Requests a client pipelined on its connection are all decoded by the reader in one go,
+   * rather than one request per select.
+   */
+  @Test
+  public void testPipelinedRequestsDecodedTogether() throws Exception {
+    final int count = 4;
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(RpcServer.READ_MAX_REQUESTS_KEY, count);
+    final AtomicReference<RpcServer> server = new AtomicReference<RpcServer>();
+    // the number of reader loops done when each call gets dispatched
+    final List<Long> readerLoops = Collections.synchronizedList(new ArrayList<Long>());
+    RpcScheduler scheduler = spy(new FifoRpcScheduler(conf, 1));
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        readerLoops.add(HELPER.getCounter("readerLoopTime_NumOps",
+          server.get().getMetrics().getMetricsSource()));
+        invocation.callRealMethod();
+        return null;
+      }
+    }).when(scheduler).dispatch((CallRunner) anyObject());
+    TestRpcServer rpcServer = new TestRpcServer(scheduler, conf);
+    server.set(rpcServer);
+    Socket socket = new Socket();
+    try {
+      rpcServer.start();
+      MethodDescriptor md = SERVICE.getDescriptorForType().findMethodByName("echo");
+      // preamble, connection header and all requests go out in a single write
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.write(HConstants.RPC_HEADER.array());
+      out.write(HConstants.RPC_CURRENT_VERSION);
+      out.write(AuthMethod.SIMPLE.code);
+      ConnectionHeader header = ConnectionHeader.newBuilder()
+        .setServiceName(SERVICE.getDescriptorForType().getName())
+        .setUserInfo(UserInformation.newBuilder()
+          .setEffectiveUser(User.getCurrent().getShortName()))
+        .build();
+      out.writeInt(header.getSerializedSize());
+      header.writeTo(out);
+      for (int i = 0; i < count; i++) {
+        RequestHeader requestHeader = RequestHeader.newBuilder().setCallId(i)
+          .setMethodName(md.getName()).setRequestParam(true).build();
+        IPCUtil.write(out, requestHeader,
+          EchoRequestProto.newBuilder().setMessage("hello" + i).build(), null);
+      }
+      out.flush();
+      socket.setSoTimeout(30000);
+      socket.connect(rpcServer.getListenerAddress());
+      socket.getOutputStream().write(bytes.toByteArray());
+      socket.getOutputStream().flush();
+
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      for (int i = 0; i < count; i++) {
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        ResponseHeader responseHeader =
+          ResponseHeader.parseDelimitedFrom(new ByteArrayInputStream(response));
+        assertFalse(responseHeader.hasException());
+      }
+      assertEquals(count, readerLoops.size());
+      for (Long loops : readerLoops) {
+        assertEquals(readerLoops.get(0), loops);
+      }
+    } finally {
+      socket.close();
+      rpcServer.stop();
+    }
+  }
+
+  /**
+   * A client pipelining more calls than its connection may have in flight gets them all
+   * answered: the server only stops reading its connection for a while.
+   */
+  @Test
+  public void testConnectionCallLimit() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(RpcServer.CONNECTION_MAX_CALLS_KEY, 1);
+    doPausedConnectionTest(conf);
+  }
+
+  /**
+   * With no limit on the calls of a connection, the server still stops reading a connection
+   * holding more than its share of the call queues once they are filled past the pause ratio.
+   */
+  @Test
+  public void testConnectionCallQueueShare() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(RpcServer.CONNECTION_MAX_CALLS_KEY, 0);
+    // pause as soon as any call waits in the queue
+    conf.setFloat(RpcServer.CALLQUEUE_PAUSE_RATIO_KEY, 0f);
+    doPausedConnectionTest(conf);
+  }
+
+  private void doPausedConnectionTest(final Configuration conf) throws Exception {
+    TestRpcServer rpcServer = new SlowRpcServer(conf);
+    final RpcClient client = new RpcClient(conf, HConstants.CLUSTER_ID_DEFAULT);
+    try {
+      rpcServer.start();
+      final InetSocketAddress address = rpcServer.getListenerAddress();
+      final MethodDescriptor md = SERVICE.getDescriptorForType().findMethodByName("echo");
+      MetricsHBaseServerSource source = rpcServer.getMetrics().getMetricsSource();
+      long pausedBefore = HELPER.getCounter("pausedConnectionReads", source);
+      final AtomicInteger answered = new AtomicInteger(0);
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < 8; i++) {
+        final String message = "hello" + i;
+        Thread t = new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < 5; j++) {
+                EchoRequestProto param =
+                  EchoRequestProto.newBuilder().setMessage(message).build();
+                Pair<Message, CellScanner> r = client.call(md, param, null,
+                  md.getOutputType().toProto(), User.getCurrent(), address, 0);
+                if (r.getFirst().toString().contains(message)) {
+                  answered.incrementAndGet();
+                }
+              }
+            } catch (Exception e) {
+              LOG.warn("Call failed", e);
+            }
+          }
+        };
+        threads.add(t);
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join(30000);
+      }
+      assertEquals(40, answered.get());
+      assertTrue(HELPER.getCounter("pausedConnectionReads", source) > pausedBefore);
+
+      // the connection reads again once its calls are done
+      assertEquals(1, rpcServer.connectionList.size());
+      SelectionKey readKey = rpcServer.connectionList.get(0).getReadKey();
+      // the client may get its last answer before the server is done with the call
+      for (int i = 0; i < 100 && readKey.interestOps() != SelectionKey.OP_READ; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(SelectionKey.OP_READ, readKey.interestOps());
+      EchoRequestProto param = EchoRequestProto.newBuilder().setMessage("again").build();
+      Pair<Message, CellScanner> r = client.call(md, param, null,
+        md.getOutputType().toProto(), User.getCurrent(), address, 0);
+      assertTrue(r.getFirst().toString().contains("again"));
+    } finally {
+      client.stop();
+      rpcServer.stop();
+    }
+  }
+
   private void doSimpleTest(final Configuration conf, final RpcClient client)
   throws InterruptedException, IOException {
     TestRpcServer rpcServer = new TestRpcServer();
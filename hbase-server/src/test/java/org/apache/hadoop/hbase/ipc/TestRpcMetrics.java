@@ -65,6 +65,8 @@ public class TestRpcMetrics {
     HELPER.assertGauge("numCallsInPriorityQueue", 104, serverSource);
     HELPER.assertGauge("numOpenConnections", 105, serverSource);
     HELPER.assertGauge("numActiveHandler", 106, serverSource);
+    HELPER.assertGauge("bufferPoolHitPercent", 107, serverSource);
+    HELPER.assertGauge("bufferPoolOutstanding", 108, serverSource);
   }
 
   /**
@@ -101,6 +103,17 @@ public class TestRpcMetrics {
     HELPER.assertCounter("queueCallTime_NumOps", 1, serverSource);
     HELPER.assertCounter("processCallTime_NumOps", 1, serverSource);
 
+    mrpc.callStage("Get", "queue", 5);
+    mrpc.callStage("Get", "queue", 7);
+    mrpc.callStage("Get", "rowLockWait", 2);
+    HELPER.assertCounter("callStageTime_Get_queue_NumOps", 2, serverSource);
+    HELPER.assertCounter("callStageTime_Get_rowLockWait_NumOps", 1, serverSource);
+
+    mrpc.readerLoop(40);
+    mrpc.pausedConnectionRead();
+    HELPER.assertCounter("pausedConnectionReads", 1, serverSource);
+    HELPER.assertCounter("readerLoopTime_NumOps", 1, serverSource);
+
     mrpc.sentBytes(103);
     mrpc.sentBytes(103);
     mrpc.sentBytes(103);
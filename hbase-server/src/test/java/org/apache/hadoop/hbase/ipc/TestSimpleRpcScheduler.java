@@ -27,6 +27,9 @@ import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.SmallTests;
 import org.apache.hadoop.hbase.ipc.RpcServer.Call;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.GetRequest;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MutateRequest;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.ScanRequest;
 import org.apache.hadoop.hbase.protobuf.generated.RPCProtos;
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +41,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
@@ -128,6 +132,67 @@ public class TestSimpleRpcScheduler {
     assertEquals(3, ImmutableSet.copyOf(handlerThreads.values()).size());
   }
 
+  @Test
+  public void testScanQueues() throws InterruptedException {
+    ScanClassifier classifier = mock(ScanClassifier.class);
+    when(classifier.isLongScan(1)).thenReturn(false);
+    when(classifier.isLongScan(2)).thenReturn(true);
+    // 2 write queues, 3 get queues, 2 short scan queues and 1 long scan queue
+    RWQueueRpcExecutor executor = new RWQueueRpcExecutor("test", 8, 8, 0.75f, 0.5f, 0.34f, 10,
+      classifier);
+    List<BlockingQueue<CallRunner>> queues = executor.getQueues();
+    assertEquals(8, queues.size());
+
+    executor.dispatch(createMockTask("mutate", MutateRequest.getDefaultInstance()));
+    executor.dispatch(createMockTask("get", GetRequest.getDefaultInstance()));
+    executor.dispatch(createMockTask("scan", ScanRequest.getDefaultInstance()));
+    executor.dispatch(createMockTask("scan", ScanRequest.newBuilder().setScannerId(1).build()));
+    executor.dispatch(createMockTask("scan", ScanRequest.newBuilder().setScannerId(2).build()));
+
+    assertEquals(1, queues.get(0).size() + queues.get(1).size());
+    assertEquals(1, queues.get(2).size() + queues.get(3).size() + queues.get(4).size());
+    // a new scanner is always short
+    assertEquals(2, queues.get(5).size() + queues.get(6).size());
+    assertEquals(1, queues.get(7).size());
+  }
+
+  @Test
+  public void testScanHandlersWithoutQueues() {
+    // 15 write handlers, 7 get handlers, 4 short scan and 4 long scan handlers, but
+    // 1 write queue, 1 get queue, 1 short scan queue and no long scan queue
+    RWQueueRpcExecutor executor = new RWQueueRpcExecutor("test", 30, 3, 0.5f, 0.5f, 0.5f, 10,
+      null);
+    assertEquals(3, executor.getQueues().size());
+    assertEquals(15, executor.getWriteHandlersCount());
+    assertEquals(7, executor.getReadHandlersCount());
+    assertEquals(8, executor.getShortScanHandlersCount());
+    assertEquals(0, executor.getLongScanHandlersCount());
+
+    // no scan queue at all: the scan handlers serve gets
+    executor = new RWQueueRpcExecutor("test", 30, 2, 0.5f, 0.5f, 0.5f, 10, null);
+    assertEquals(2, executor.getQueues().size());
+    assertEquals(15, executor.getWriteHandlersCount());
+    assertEquals(15, executor.getReadHandlersCount());
+    assertEquals(0, executor.getShortScanHandlersCount());
+    assertEquals(0, executor.getLongScanHandlersCount());
+
+    // every class with queues keeps its handlers
+    executor = new RWQueueRpcExecutor("test", 8, 8, 0.75f, 0.5f, 0.34f, 10, null);
+    assertEquals(2, executor.getWriteHandlersCount());
+    assertEquals(3, executor.getReadHandlersCount());
+    assertEquals(2, executor.getShortScanHandlersCount());
+    assertEquals(1, executor.getLongScanHandlersCount());
+  }
+
+  private CallRunner createMockTask(String methodName, Message param) {
+    CallRunner task = createMockTask();
+    Call call = task.getCall();
+    when(call.getHeader()).thenReturn(
+      RPCProtos.RequestHeader.newBuilder().setMethodName(methodName).build());
+    call.param = param;
+    return task;
+  }
+
   private CallRunner createMockTask() {
     Call call = mock(Call.class);
     CallRunner task = mock(CallRunner.class);
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestSlowCallLog {
+
+  @Test
+  public void testRing() {
+    SlowCallLog log = new SlowCallLog(3, 100);
+    assertFalse(log.isSlow(99));
+    assertTrue(log.isSlow(100));
+    assertEquals(0, log.getSlowCalls().length);
+    log.add("a");
+    log.add("b");
+    assertArrayEquals(new String[] { "b", "a" }, log.getSlowCalls());
+    log.add("c");
+    log.add("d");
+    log.add("e");
+    assertArrayEquals(new String[] { "e", "d", "c" }, log.getSlowCalls());
+    assertEquals(5, log.getSlowCallCount());
+    assertEquals(100, log.getSlowCallThreshold());
+  }
+
+  @Test
+  public void testDisabled() {
+    SlowCallLog log = new SlowCallLog(0, 0);
+    assertFalse(log.isSlow(Long.MAX_VALUE));
+    log.add("a");
+    assertEquals(0, log.getSlowCalls().length);
+    assertEquals(0, log.getSlowCallCount());
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.quotas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManagerTestHelper;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestQuotaLimiter {
+  private final ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+
+  @Before
+  public void setUp() {
+    edge.setValue(1000);
+    EnvironmentEdgeManagerTestHelper.injectEdge(edge);
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManagerTestHelper.reset();
+  }
+
+  @Test
+  public void testRateLimiterRefills() {
+    RateLimiter limiter = new RateLimiter(10, TimeUnit.SECONDS);
+    assertEquals(0, limiter.waitInterval(10));
+    limiter.consume(10);
+    assertEquals(100, limiter.waitInterval(1));
+    edge.incValue(500);
+    assertEquals(0, limiter.waitInterval(5));
+    assertEquals(100, limiter.waitInterval(6));
+    // a larger request than the limit goes through on a full bucket
+    edge.incValue(10000);
+    assertEquals(0, limiter.waitInterval(50));
+    limiter.consume(50);
+    assertEquals(4100, limiter.waitInterval(1));
+    // what was taken in excess comes back
+    limiter.consume(-45);
+    assertEquals(0, limiter.waitInterval(5));
+  }
+
+  @Test
+  public void testThrottle() throws Exception {
+    QuotaLimiter limiter = new QuotaLimiter("user bob", Arrays.asList(
+      QuotaSettings.throttleUser("bob", ThrottleType.READ_NUMBER, 2, TimeUnit.SECONDS),
+      QuotaSettings.throttleUser("bob", ThrottleType.WRITE_SIZE, 1000, TimeUnit.SECONDS)));
+    for (int i = 0; i < 2; ++i) {
+      limiter.checkQuota(1, 100, 1, 100);
+      limiter.grabQuota(1, 100, 1, 100);
+    }
+    // writes are still allowed, reads are not
+    limiter.checkQuota(1, 100, 0, 0);
+    try {
+      limiter.checkQuota(0, 0, 1, 100);
+      fail("Should have been throttled");
+    } catch (ThrottlingException e) {
+      assertEquals(500, e.getWaitInterval());
+      assertTrue(e.getMessage().contains("READ_NUMBER"));
+      assertTrue(e.getMessage().contains("user bob"));
+      // the client rebuilds it from the remote stack trace
+      assertEquals(500, new ThrottlingException(e.getClass().getName() + ": " + e.getMessage()
+          + "\n\tat somewhere").getWaitInterval());
+    }
+    edge.incValue(500);
+    limiter.checkQuota(0, 0, 1, 100);
+
+    // the real size of a write is charged after it ran
+    limiter.consumeWrite(2000);
+    try {
+      limiter.checkQuota(1, 100, 0, 0);
+      fail("Should have been throttled");
+    } catch (ThrottlingException e) {
+      assertTrue(e.getMessage().contains("WRITE_SIZE"));
+    }
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    TableName table = TableName.valueOf("ns", "t");
+    QuotaSettings user = QuotaSettings.throttleUser("bob", ThrottleType.REQUEST_NUMBER, 10,
+      TimeUnit.SECONDS);
+    QuotaSettings ns = QuotaSettings.throttleNamespace("ns", ThrottleType.REQUEST_NUMBER, 10,
+      TimeUnit.MINUTES);
+    QuotaCache cache = new QuotaCache();
+    cache.update(Arrays.asList(user, ns));
+    assertEquals(2, cache.getLimiters("bob", table).size());
+    assertEquals(1, cache.getLimiters("alice", table).size());
+    assertEquals(1, cache.getLimiters("bob", TableName.valueOf("t")).size());
+
+    // unchanged throttles keep their limiter
+    QuotaLimiter limiter = cache.getLimiters("bob", TableName.valueOf("t")).get(0);
+    cache.update(Arrays.asList(user, QuotaSettings.throttleTable(table,
+      ThrottleType.WRITE_NUMBER, 1, TimeUnit.SECONDS)));
+    List<QuotaLimiter> limiters = cache.getLimiters("bob", table);
+    assertEquals(2, limiters.size());
+    assertSame(limiter, limiters.get(0));
+    cache.update(Collections.<QuotaSettings>emptyList());
+    assertTrue(cache.getLimiters("bob", table).isEmpty());
+  }
+}
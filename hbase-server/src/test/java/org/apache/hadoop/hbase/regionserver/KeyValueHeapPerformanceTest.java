@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CollectionBackedScanner;
+
+/**
+ * Micro-benchmark of the N-way merge done by {@link KeyValueHeap}. Spreads
+ * random keys over 2 to 64 scanners and merges them through the tournament tree
+ * based KeyValueHeap and through a plain PriorityQueue of scanners, which is
+ * how KeyValueHeap used to merge.
+ */
+public class KeyValueHeapPerformanceTest {
+  private static final double NANOSEC_IN_SEC = 1000.0 * 1000.0 * 1000.0;
+  /** Default number of KeyValues merged per run. */
+  public static final int DEFAULT_NUMBER_OF_KVS = 1000 * 1000;
+  private static final int[] SCANNER_COUNTS = { 2, 4, 8, 16, 32, 64 };
+  private static final int RUNS = 5;
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] VALUE = new byte[8];
+
+  private final int numberOfKvs;
+  private final Random randomizer = new Random(42l);
+
+  public KeyValueHeapPerformanceTest(int numberOfKvs) {
+    this.numberOfKvs = numberOfKvs;
+  }
+
+  private List<List<KeyValue>> prepareInputs(int numScanners) {
+    List<List<KeyValue>> inputs = new ArrayList<List<KeyValue>>(numScanners);
+    for (int i = 0; i < numScanners; i++) {
+      inputs.add(new ArrayList<KeyValue>());
+    }
+    for (int i = 0; i < numberOfKvs; i++) {
+      byte[] row = Bytes.toBytes(randomizer.nextLong());
+      inputs.get(randomizer.nextInt(numScanners)).add(
+          new KeyValue(row, FAMILY, QUALIFIER, i, VALUE));
+    }
+    return inputs;
+  }
+
+  private static List<KeyValueScanner> createScanners(List<List<KeyValue>> inputs) {
+    List<KeyValueScanner> scanners = new ArrayList<KeyValueScanner>(inputs.size());
+    for (List<KeyValue> input : inputs) {
+      scanners.add(new CollectionBackedScanner(new ArrayList<KeyValue>(input)));
+    }
+    return scanners;
+  }
+
+  private static long mergeWithKeyValueHeap(List<KeyValueScanner> scanners)
+      throws IOException {
+    KeyValueHeap heap = new KeyValueHeap(scanners, KeyValue.COMPARATOR);
+    long count = 0;
+    while (heap.next() != null) {
+      count++;
+    }
+    heap.close();
+    return count;
+  }
+
+  private static long mergeWithPriorityQueue(List<KeyValueScanner> scanners)
+      throws IOException {
+    KeyValueHeap.KVScannerComparator comparator =
+        new KeyValueHeap.KVScannerComparator(KeyValue.COMPARATOR);
+    PriorityQueue<KeyValueScanner> heap =
+        new PriorityQueue<KeyValueScanner>(scanners.size(), comparator);
+    heap.addAll(scanners);
+    long count = 0;
+    KeyValueScanner current;
+    while ((current = heap.poll()) != null) {
+      current.next();
+      count++;
+      if (current.peek() != null) {
+        heap.add(current);
+      }
+    }
+    return count;
+  }
+
+  private void runTest(int numScanners) throws IOException {
+    List<List<KeyValue>> inputs = prepareInputs(numScanners);
+    long treeNanos = Long.MAX_VALUE;
+    long priorityQueueNanos = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      List<KeyValueScanner> scanners = createScanners(inputs);
+      long start = System.nanoTime();
+      long merged = mergeWithKeyValueHeap(scanners);
+      treeNanos = Math.min(treeNanos, System.nanoTime() - start);
+      if (merged != numberOfKvs) {
+        throw new IllegalStateException("Merged " + merged + " of " + numberOfKvs);
+      }
+
+      scanners = createScanners(inputs);
+      start = System.nanoTime();
+      mergeWithPriorityQueue(scanners);
+      priorityQueueNanos = Math.min(priorityQueueNanos, System.nanoTime() - start);
+    }
+
+    System.out.println(numScanners + " scanners");
+    System.out.printf("  KeyValueHeap (tournament tree): %8.2f (ns/KV) %12.2f (KV/s)\n",
+        (double) treeNanos / numberOfKvs, numberOfKvs * NANOSEC_IN_SEC / treeNanos);
+    System.out.printf("  PriorityQueue:                  %8.2f (ns/KV) %12.2f (KV/s)\n",
+        (double) priorityQueueNanos / numberOfKvs,
+        numberOfKvs * NANOSEC_IN_SEC / priorityQueueNanos);
+  }
+
+  /**
+   * Command line interface:
+   * @param args Takes one optional argument - number of KeyValues to merge.
+   * @throws IOException never, the scanners are in memory
+   */
+  public static void main(final String[] args) throws IOException {
+    int numberOfKvs = DEFAULT_NUMBER_OF_KVS;
+    if (args.length > 0) {
+      numberOfKvs = Integer.parseInt(args[0]);
+    }
+    KeyValueHeapPerformanceTest benchmark = new KeyValueHeapPerformanceTest(numberOfKvs);
+    for (int numScanners : SCANNER_COUNTS) {
+      benchmark.runTest(numScanners);
+    }
+  }
+}
@@ -90,6 +90,11 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 707;
   }
 
+  @Override
+  public long getTombstonesSkipped() {
+    return 425;
+  }
+
   @Override
   public long getCheckAndMutateChecksFailed() {
     return 401;
@@ -145,6 +150,26 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 0;
   }
 
+  @Override
+  public long getCompactionThroughputLimit() {
+    return 421;
+  }
+
+  @Override
+  public long getCompactionThrottledTime() {
+    return 422;
+  }
+
+  @Override
+  public long getCompactionEffectiveThroughput() {
+    return 423;
+  }
+
+  @Override
+  public long getCompactionsPreempted() {
+    return 424;
+  }
+
   @Override
   public int getFlushQueueSize() {
     return 412;
@@ -165,6 +190,11 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 415;
   }
 
+  @Override
+  public long getRowCacheSize() {
+    return 426;
+  }
+
   @Override
   public long getBlockCacheHitCount() {
     return 416;
@@ -180,6 +210,11 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 418;
   }
 
+  @Override
+  public long getDataBlocksSkippedByTimeRange() {
+    return 419;
+  }
+
   @Override
   public int getBlockCacheHitPercent() {
     return 98;
@@ -24,6 +24,7 @@ import java.util.TreeMap;
 
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.KeyValue.KVComparator;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -38,6 +39,9 @@ public class MockStoreFile extends StoreFile {
   byte[] splitPoint = null;
   TimeRangeTracker timeRangeTracker;
   long entryCount;
+  long deleteMarkerCount = -1;
+  byte[] firstRow = null;
+  byte[] lastRow = null;
 
   MockStoreFile(HBaseTestingUtility testUtil, Path testPath,
       long length, long ageInDisk, boolean isRef, long sequenceid) throws IOException {
@@ -95,11 +99,23 @@ public class MockStoreFile extends StoreFile {
     this.entryCount = entryCount;
   }
 
+  void setDeleteMarkerCount(long deleteMarkerCount) {
+    this.deleteMarkerCount = deleteMarkerCount;
+  }
+
+  void setRows(byte[] firstRow, byte[] lastRow) {
+    this.firstRow = firstRow;
+    this.lastRow = lastRow;
+  }
+
   @Override
   public StoreFile.Reader getReader() {
     final long len = this.length;
     final TimeRangeTracker timeRange = this.timeRangeTracker;
     final long entries = this.entryCount;
+    final long deleteMarkers = this.deleteMarkerCount;
+    final byte[] firstKey = firstRow == null ? null : KeyValue.createFirstOnRow(firstRow).getKey();
+    final byte[] lastKey = lastRow == null ? null : KeyValue.createFirstOnRow(lastRow).getKey();
     return new StoreFile.Reader() {
       @Override
       public long length() {
@@ -115,6 +131,21 @@ public class MockStoreFile extends StoreFile {
       public long getEntries() {
         return entries;
       }
+
+      @Override
+      public long getDeleteMarkerCount() {
+        return deleteMarkers;
+      }
+
+      @Override
+      public byte[] getFirstKey() {
+        return firstKey;
+      }
+
+      @Override
+      public byte[] getLastKey() {
+        return lastKey;
+      }
     };
   }
 }
@@ -50,10 +50,12 @@ import org.apache.hadoop.hbase.HBaseTestCase.HRegionIncommon;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.MediumTests;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Durability;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
@@ -263,6 +265,111 @@ public class TestCompaction {
         "thrown while completing a corrupt file");
   }
 
+  @Test
+  public void testParallelMajorCompaction() throws Exception {
+    for (int i = 0; i < compactionThreshold; i++) {
+      createStoreFile(r);
+    }
+    HStore store = (HStore) r.getStore(COLUMN_FAMILY);
+    Collection<StoreFile> storeFiles = store.getStorefiles();
+    FileSystem fs = store.getFileSystem();
+
+    DefaultCompactor serial = (DefaultCompactor) store.storeEngine.getCompactor();
+    List<Path> serialFiles = serial.compactForTesting(storeFiles, true);
+    assertEquals(1, serialFiles.size());
+    long expectedEntries = 0;
+    for (Path path : serialFiles) {
+      StoreFile sf = new StoreFile(fs, path, conf, new CacheConfig(conf), BloomType.NONE);
+      expectedEntries += sf.createReader().getEntries();
+      sf.closeReader(true);
+    }
+
+    Configuration parallelConf = new Configuration(conf);
+    parallelConf.setInt(DefaultCompactor.PARALLEL_THREADS_KEY, 4);
+    parallelConf.setLong(DefaultCompactor.PARALLEL_MIN_SIZE_KEY, 0);
+    DefaultCompactor parallel = new DefaultCompactor(parallelConf, store);
+    List<Path> parallelFiles = parallel.compactForTesting(storeFiles, true);
+    assertTrue(parallelFiles.size() > 1);
+    assertTrue(parallelFiles.size() <= 4);
+
+    // the files hold disjoint row ranges in order, with the same cells in total
+    long entries = 0;
+    byte[] previousLastRow = null;
+    for (Path path : parallelFiles) {
+      StoreFile sf = new StoreFile(fs, path, conf, new CacheConfig(conf), BloomType.NONE);
+      StoreFile.Reader reader = sf.createReader();
+      entries += reader.getEntries();
+      byte[] firstKey = reader.getFirstKey();
+      byte[] firstRow = KeyValue.createKeyValueFromKey(firstKey, 0, firstKey.length).getRow();
+      if (previousLastRow != null) {
+        assertTrue(Bytes.compareTo(previousLastRow, firstRow) < 0);
+      }
+      byte[] lastKey = reader.getLastKey();
+      previousLastRow = KeyValue.createKeyValueFromKey(lastKey, 0, lastKey.length).getRow();
+      sf.closeReader(true);
+    }
+    assertEquals(expectedEntries, entries);
+  }
+
+  @Test
+  public void testMinorCompactionCopyingBlocks() throws Exception {
+    // three files of disjoint rows and one that shares rows with the first
+    for (int f = 0; f < 3; f++) {
+      for (int i = 0; i < 2000; i++) {
+        Put p = new Put(Bytes.toBytes(String.format("row-%d-%04d", f, i)));
+        p.add(COLUMN_FAMILY, Bytes.toBytes("a"), Bytes.toBytes("value-" + f + "-" + i));
+        p.setDurability(Durability.SKIP_WAL);
+        r.put(p);
+      }
+      r.flushcache();
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      Put p = new Put(Bytes.toBytes(String.format("row-0-%04d", i)));
+      p.add(COLUMN_FAMILY, Bytes.toBytes("b"), Bytes.toBytes("other-" + i));
+      p.setDurability(Durability.SKIP_WAL);
+      r.put(p);
+    }
+    r.flushcache();
+    HStore store = (HStore) r.getStore(COLUMN_FAMILY);
+    Collection<StoreFile> storeFiles = store.getStorefiles();
+    FileSystem fs = store.getFileSystem();
+
+    DefaultCompactor merging = (DefaultCompactor) store.storeEngine.getCompactor();
+    List<Path> mergedFiles = merging.compactForTesting(storeFiles, false);
+    assertEquals(1, mergedFiles.size());
+
+    Configuration copyConf = new Configuration(conf);
+    copyConf.setBoolean(DefaultCompactor.COPY_BLOCKS_KEY, true);
+    DefaultCompactor copying = new DefaultCompactor(copyConf, store);
+    assertEquals(2, copying.getFilesToCopy(storeFiles).size());
+    List<Path> copiedFiles = copying.compactForTesting(storeFiles, false);
+    assertEquals(1, copiedFiles.size());
+
+    // both outputs hold the same cells in the same order
+    StoreFile merged = new StoreFile(fs, mergedFiles.get(0), conf, new CacheConfig(conf),
+        BloomType.NONE);
+    StoreFile copied = new StoreFile(fs, copiedFiles.get(0), conf, new CacheConfig(conf),
+        BloomType.NONE);
+    HFileScanner expected = merged.createReader().getScanner(false, false);
+    HFileScanner actual = copied.createReader().getScanner(false, false);
+    assertTrue(expected.seekTo());
+    assertTrue(actual.seekTo());
+    int count = 0;
+    boolean more;
+    do {
+      assertEquals(expected.getKeyString(), actual.getKeyString());
+      assertEquals(expected.getValueString(), actual.getValueString());
+      count++;
+      more = expected.next();
+      assertEquals(more, actual.next());
+    } while (more);
+    assertEquals(7000, count);
+    assertEquals(count, copied.getReader().getEntries());
+    assertEquals(merged.getReader().getMaxTimestamp(), copied.getReader().getMaxTimestamp());
+    merged.closeReader(true);
+    copied.closeReader(true);
+  }
+
   /**
    * Create a custom compaction request and be sure that we can track it through the queue, knowing
    * when the compaction is completed.
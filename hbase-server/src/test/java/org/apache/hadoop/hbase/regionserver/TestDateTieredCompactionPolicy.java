@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.regionserver.compactions.DateTieredCompactionPolicy;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestDateTieredCompactionPolicy {
+  private final static HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  // windows going back from now = 100: [100, 110), [80, 100), [40, 80), [0, 40), [-80, 0)
+  private static final long NOW = 100;
+
+  private Path testFile;
+  private StoreConfigInformation storeConfigInfo;
+  private Configuration conf;
+
+  @Before
+  public void setUp() throws IOException {
+    testFile = new Path(TEST_UTIL.getDataTestDir(), "testfile");
+    TEST_UTIL.getTestFileSystem().createNewFile(testFile);
+    storeConfigInfo = mock(StoreConfigInformation.class);
+    when(storeConfigInfo.getMemstoreFlushSize()).thenReturn(128L * 1024 * 1024);
+    when(storeConfigInfo.getStoreFileTtl()).thenReturn(Long.MAX_VALUE);
+    when(storeConfigInfo.getBlockingFileCount()).thenReturn(20L);
+
+    conf = HBaseConfiguration.create();
+    conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 0);
+    conf.setInt("hbase.hstore.compaction.min", 2);
+    conf.setInt("hbase.hstore.compaction.max", 10);
+    conf.setLong(DateTieredCompactionPolicy.BASE_WINDOW_MILLIS_KEY, 10);
+    conf.setInt(DateTieredCompactionPolicy.WINDOWS_PER_TIER_KEY, 2);
+    conf.setInt(DateTieredCompactionPolicy.INCOMING_WINDOW_MIN_KEY, 3);
+
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    edge.setValue(NOW);
+    EnvironmentEdgeManager.injectEdge(edge);
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  /**
+   * @param maxTimestamps the max timestamp of each file, from oldest to newest file. The file
+   *          sizes are the indexes of the files, so selections can be checked by size.
+   */
+  private List<StoreFile> createFiles(long... maxTimestamps) throws IOException {
+    List<StoreFile> files = new ArrayList<StoreFile>();
+    for (int i = 0; i < maxTimestamps.length; i++) {
+      MockStoreFile file = new MockStoreFile(TEST_UTIL, testFile, i, 0, false, i);
+      file.setTimeRangeTracker(new TimeRangeTracker(maxTimestamps[i], maxTimestamps[i]));
+      file.setEntries(1);
+      files.add(file);
+    }
+    return files;
+  }
+
+  private void compactEquals(DateTieredCompactionPolicy policy, List<StoreFile> candidates,
+      long... expected) throws IOException {
+    CompactionRequest request = policy.selectCompaction(candidates, new ArrayList<StoreFile>(),
+        false, false, false);
+    long[] actual = new long[request.getFiles().size()];
+    int i = 0;
+    for (StoreFile file : request.getFiles()) {
+      actual[i++] = file.getReader().length();
+    }
+    assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    assertEquals(expected.length > 0,
+        policy.needsCompaction(candidates, new ArrayList<StoreFile>()));
+  }
+
+  @Test
+  public void testIncomingWindow() throws IOException {
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    compactEquals(policy, createFiles(10, 20, 101, 102, 103), 2, 3, 4);
+    // files with future timestamps belong to the incoming window
+    compactEquals(policy, createFiles(10, 20, 101, 102, 200), 2, 3, 4);
+  }
+
+  @Test
+  public void testOlderWindow() throws IOException {
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    // the incoming window needs 3 files, the window [80, 100) only 2
+    compactEquals(policy, createFiles(85, 90, 104, 105), 0, 1);
+    // [40, 80) is one window, [0, 40) another
+    compactEquals(policy, createFiles(30, 45, 75, 104), 1, 2);
+    // a file written out of order stays in the window of the files after it
+    compactEquals(policy, createFiles(50, 105, 85, 106, 107), 1, 2);
+  }
+
+  @Test
+  public void testNothingToCompact() throws IOException {
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    // one file per window
+    compactEquals(policy, createFiles(-5, 5, 50, 85, 105));
+  }
+
+  @Test
+  public void testMaxStoreFileAge() throws IOException {
+    conf.setLong(DateTieredCompactionPolicy.MAX_STOREFILE_AGE_MILLIS_KEY, 60);
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    // both files of [0, 40) are older than 60ms
+    compactEquals(policy, createFiles(10, 20, 50, 105));
+    compactEquals(policy, createFiles(10, 20, 45, 50, 105), 2, 3);
+  }
+
+  @Test
+  public void testExpiredFiles() throws IOException {
+    when(storeConfigInfo.getStoreFileTtl()).thenReturn(50L);
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    // whole files past the TTL are dropped before anything else is compacted
+    compactEquals(policy, createFiles(10, 20, 101, 102, 103), 0, 1);
+  }
+
+  @Test
+  public void testStuck() throws IOException {
+    when(storeConfigInfo.getBlockingFileCount()).thenReturn(5L);
+    DateTieredCompactionPolicy policy = new DateTieredCompactionPolicy(conf, storeConfigInfo);
+    List<StoreFile> files = createFiles(-5, 5, 50, 85, 105);
+    CompactionRequest request = policy.selectCompaction(files, new ArrayList<StoreFile>(),
+        false, false, false);
+    assertFalse(request.getFiles().isEmpty());
+    assertTrue(policy.needsCompaction(files, new ArrayList<StoreFile>()));
+  }
+}
@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.SmallTests;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionConfiguration;
 import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
 import org.apache.hadoop.hbase.regionserver.compactions.RatioBasedCompactionPolicy;
 import org.apache.hadoop.hbase.regionserver.wal.HLog;
@@ -303,6 +304,36 @@ public class TestDefaultCompactSelection extends TestCase {
     compactEquals(sfCreate(99,99,99,99, 27,27,27,20,20,20), 20, 20, 20);
   }
 
+  public void testDeleteHeavyFiles() throws IOException {
+    List<StoreFile> candidates = sfCreate(50, 25, 12, 12);
+    for (StoreFile file : candidates) {
+      ((MockStoreFile) file).setEntries(1000);
+    }
+    ((MockStoreFile) candidates.get(1)).setDeleteMarkerCount(600);
+    // disabled by default
+    compactEquals(candidates /* empty */);
+
+    this.conf.setFloat(CompactionConfiguration.DELETE_MARKER_RATIO_KEY, 0.5F);
+    this.conf.setLong(CompactionConfiguration.MIN_DELETE_MARKERS_KEY, 100);
+    store.storeEngine.getCompactionPolicy().setConf(conf);
+    try {
+      // a file that is mostly delete markers triggers a major compaction
+      compactEquals(candidates, 50, 25, 12, 12);
+      // but not below the minimum number of markers
+      this.conf.setLong(CompactionConfiguration.MIN_DELETE_MARKERS_KEY, 1000);
+      store.storeEngine.getCompactionPolicy().setConf(conf);
+      compactEquals(candidates /* empty */);
+      // nor below the ratio
+      this.conf.setLong(CompactionConfiguration.MIN_DELETE_MARKERS_KEY, 100);
+      this.conf.setFloat(CompactionConfiguration.DELETE_MARKER_RATIO_KEY, 0.7F);
+      store.storeEngine.getCompactionPolicy().setConf(conf);
+      compactEquals(candidates /* empty */);
+    } finally {
+      this.conf.setFloat(CompactionConfiguration.DELETE_MARKER_RATIO_KEY, 0F);
+      store.storeEngine.getCompactionPolicy().setConf(conf);
+    }
+  }
+
   public void testCompactionEmptyHFile() throws IOException {
     // Set TTL
     ScanInfo oldScanInfo = store.getScanInfo();
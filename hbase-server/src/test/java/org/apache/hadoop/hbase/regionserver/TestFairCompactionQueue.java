@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestFairCompactionQueue {
+
+  private static class Work implements Runnable, Comparable<Work>,
+      FairCompactionQueue.Schedulable {
+    final String table;
+    final String region;
+    final int weight;
+    final int priority;
+
+    Work(String table, String region, int weight, int priority) {
+      this.table = table;
+      this.region = region;
+      this.weight = weight;
+      this.priority = priority;
+    }
+
+    @Override
+    public void run() {
+    }
+
+    @Override
+    public int compareTo(Work o) {
+      return priority - o.priority;
+    }
+
+    @Override
+    public String getTableName() {
+      return table;
+    }
+
+    @Override
+    public String getRegionName() {
+      return region;
+    }
+
+    @Override
+    public int getWeight() {
+      return weight;
+    }
+
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public String toString() {
+      return table + "/" + region + "/" + priority;
+    }
+  }
+
+  private static List<String> drain(FairCompactionQueue queue) {
+    List<String> order = new ArrayList<String>();
+    Runnable r;
+    while ((r = queue.poll()) != null) {
+      order.add(r.toString());
+    }
+    return order;
+  }
+
+  @Test
+  public void testBusyRegionDoesNotStarveOthers() {
+    FairCompactionQueue queue = new FairCompactionQueue(Store.PRIORITY_USER);
+    for (int i = 0; i < 5; ++i) {
+      queue.offer(new Work("t", "big", 1, 2));
+    }
+    queue.offer(new Work("t", "small1", 1, 5));
+    queue.offer(new Work("t", "small2", 1, 5));
+    assertEquals(7, queue.size());
+    List<String> order = drain(queue);
+    // the small regions get their turn right away despite their lower priority
+    assertTrue(order.subList(0, 3).contains("t/small1/5"));
+    assertTrue(order.subList(0, 3).contains("t/small2/5"));
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testWeightedTables() {
+    FairCompactionQueue queue = new FairCompactionQueue(Store.PRIORITY_USER);
+    for (int i = 0; i < 6; ++i) {
+      queue.offer(new Work("heavy", "r" + i, 2, 5));
+      queue.offer(new Work("light", "r" + i, 1, 5));
+    }
+    List<String> order = drain(queue);
+    int heavy = 0;
+    for (String s : order.subList(0, 6)) {
+      if (s.startsWith("heavy")) ++heavy;
+    }
+    assertEquals(4, heavy);
+  }
+
+  @Test
+  public void testUrgentFirstAndPriorityWithinRegion() {
+    FairCompactionQueue queue = new FairCompactionQueue(Store.PRIORITY_USER);
+    queue.offer(new Work("a", "r1", 1, 4));
+    queue.offer(new Work("a", "r1", 1, 3));
+    queue.offer(new Work("b", "r2", 1, 6));
+    queue.offer(new Work("c", "r3", 1, -2));
+    queue.offer(new Work("b", "r2", 1, Store.PRIORITY_USER));
+    List<String> order = drain(queue);
+    assertEquals("c/r3/-2", order.get(0));
+    assertEquals("b/r2/1", order.get(1));
+    // table a has not been served yet, b has
+    assertEquals("a/r1/3", order.get(2));
+    assertEquals("a/r1/4", order.get(3));
+    assertEquals("b/r2/6", order.get(4));
+  }
+
+  @Test
+  public void testRemoveAndTimedPoll() throws Exception {
+    FairCompactionQueue queue = new FairCompactionQueue(Store.PRIORITY_USER);
+    Work w = new Work("a", "r1", 1, 5);
+    queue.offer(w);
+    queue.offer(new Work("a", "r2", 1, 5));
+    assertTrue(queue.remove(w));
+    assertEquals(1, queue.size());
+    assertEquals("a/r2/5", queue.poll(1, TimeUnit.MILLISECONDS).toString());
+    assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.MediumTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(MediumTests.class)
+public class TestLeveledCompaction {
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] ROW = Bytes.toBytes("mmm");
+  private static final long TS = 100;
+
+  /**
+   * An L1 file holds a newer cell than the L2 file below it, for the same key and timestamp,
+   * under a lower sequence id than another L1 file that overlaps the L2 file. Compacting that
+   * other file into L2 must not let the older cell win.
+   */
+  @Test
+  public void testNewerCellOfUpperLevelSurvives() throws Exception {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.set(StoreEngine.STORE_ENGINE_CLASS_KEY, LeveledStoreEngine.class.getName());
+    conf.setInt(LeveledStoreConfig.MIN_FILES_L0_KEY, 100);
+    conf.setLong(LeveledStoreConfig.LEVEL1_SIZE_KEY, 1);
+    conf.setInt(LeveledStoreConfig.MAX_LEVEL_KEY, 2);
+    conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 0);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf("testNewerCellOfUpperLevel"));
+    htd.addFamily(new HColumnDescriptor(FAMILY).setMaxVersions(1));
+    HRegionInfo hri = new HRegionInfo(htd.getTableName());
+    HRegion region = HRegion.createHRegion(hri,
+        TEST_UTIL.getDataTestDir("testNewerCellOfUpperLevelSurvives"), conf, htd);
+    try {
+      region.close();
+      Path storeDir = HStore.getStoreHomedir(
+          region.getRegionFileSystem().getTableDir(), hri, FAMILY);
+      writeFile(conf, storeDir, 2, 1, "aaa", "mmm", "zzz");
+      writeFile(conf, storeDir, 1, 2, "kkk", "mmm", "nnn");
+      writeFile(conf, storeDir, 1, 3, "bbb");
+      region = HRegion.openHRegion(region, null);
+      assertEquals(3, region.getStore(FAMILY).getStorefilesCount());
+      assertNewest(region);
+
+      region.compactStores();
+      assertNewest(region);
+      region.compactStores();
+      assertNewest(region);
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  private static void assertNewest(HRegion region) throws IOException {
+    Result result = region.get(new Get(ROW).addColumn(FAMILY, QUALIFIER));
+    assertEquals("L1", Bytes.toString(result.getValue(FAMILY, QUALIFIER)));
+  }
+
+  /**
+   * Writes a file of the given level and sequence id, whose cells hold the level name.
+   */
+  private static void writeFile(Configuration conf, Path storeDir, int level, long seqId,
+      String... rows) throws IOException {
+    FileSystem fs = storeDir.getFileSystem(conf);
+    StoreFile.Writer writer = new StoreFile.WriterBuilder(conf, new CacheConfig(conf), fs)
+        .withOutputDir(storeDir)
+        .withComparator(KeyValue.COMPARATOR)
+        .withFileContext(new HFileContextBuilder().build())
+        .build();
+    for (String row : rows) {
+      writer.append(new KeyValue(Bytes.toBytes(row), FAMILY, QUALIFIER, TS,
+          Bytes.toBytes("L" + level)));
+    }
+    writer.appendMetadata(seqId, false);
+    writer.appendFileInfo(LeveledStoreFileManager.LEVEL_KEY, Bytes.toBytes(level));
+    writer.close();
+  }
+}
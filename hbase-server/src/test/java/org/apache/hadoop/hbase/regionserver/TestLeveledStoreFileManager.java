@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestLeveledStoreFileManager {
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+  private static final Path BASEDIR =
+      TEST_UTIL.getDataTestDir(TestLeveledStoreFileManager.class.getSimpleName());
+  private static final Path CFDIR = HStore.getStoreHomedir(BASEDIR, "region", Bytes.toBytes("cf"));
+
+  private static final byte[] KEY_A = Bytes.toBytes("aaa");
+  private static final byte[] KEY_B = Bytes.toBytes("bbb");
+  private static final byte[] KEY_C = Bytes.toBytes("ccc");
+  private static final byte[] KEY_D = Bytes.toBytes("ddd");
+  private static final byte[] KEY_E = Bytes.toBytes("eee");
+  private static final byte[] KEY_F = Bytes.toBytes("fff");
+
+  @Before
+  public void setUp() throws Exception {
+    FileSystem fs = TEST_UTIL.getTestFileSystem();
+    if (!fs.mkdirs(CFDIR)) {
+      throw new IOException("Cannot create test directory " + CFDIR);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileSystem fs = TEST_UTIL.getTestFileSystem();
+    if (fs.exists(CFDIR) && !fs.delete(CFDIR, true)) {
+      throw new IOException("Cannot delete test directory " + CFDIR);
+    }
+  }
+
+  @Test
+  public void testLoadFilesIntoLevels() throws Exception {
+    MockStoreFile l0a = createFile(0, 1, KEY_A, KEY_F), l0b = createFile(0, 2, KEY_B, KEY_C);
+    MockStoreFile l1a = createFile(1, 0, KEY_A, KEY_B), l1b = createFile(1, 0, KEY_C, KEY_D);
+    MockStoreFile l2 = createFile(2, 0, KEY_A, KEY_F);
+    // Overlaps l1b, and has no rows; both go to L0.
+    MockStoreFile l1Overlap = createFile(1, 3, KEY_D, KEY_E), l1Empty = createFile(1, 4, null, null);
+    ArrayList<StoreFile> files = al(l0a, l0b, l1a, l1b, l2, l1Overlap, l1Empty);
+    Collections.shuffle(files);
+    LeveledStoreFileManager manager = createManager(files);
+    assertEquals(7, manager.getStorefileCount());
+    assertEquals(al(l1Empty, l1Overlap, l0b, l0a), manager.getLevel0Files());
+    assertEquals(2, manager.getLevelCount());
+    assertEquals(al(l1a, l1b), manager.getLevelFiles(1));
+    assertEquals(al(l2), manager.getLevelFiles(2));
+    assertTrue(manager.getLevelFiles(3).isEmpty());
+    assertEquals(6, manager.getReadAmplification());
+  }
+
+  @Test
+  public void testGetReadsOneFilePerLevel() throws Exception {
+    MockStoreFile l0 = createFile(0, 1, KEY_B, KEY_E);
+    MockStoreFile l1a = createFile(1, 0, KEY_A, KEY_B), l1b = createFile(1, 0, KEY_C, KEY_D),
+        l1c = createFile(1, 0, KEY_E, KEY_F);
+    MockStoreFile l2a = createFile(2, 0, KEY_A, KEY_C), l2b = createFile(2, 0, KEY_D, KEY_F);
+    LeveledStoreFileManager manager = createManager(al(l0, l1a, l1b, l1c, l2a, l2b));
+
+    verifyGetOrScan(manager, true, KEY_A, KEY_A, l0, l1a, l2a);
+    verifyGetOrScan(manager, true, KEY_D, KEY_D, l0, l1b, l2b);
+    verifyGetOrScan(manager, true, keyAfter(KEY_B), keyAfter(KEY_B), l0, l2a);
+    verifyGetOrScan(manager, true, keyAfter(KEY_F), keyAfter(KEY_F), l0);
+    // Scans read the files of each level that overlap them; reversed ones too.
+    verifyGetOrScan(manager, false, KEY_B, KEY_C, l0, l1a, l1b, l2a);
+    verifyGetOrScan(manager, false, KEY_C, KEY_B, l0, l1a, l1b, l2a);
+    verifyGetOrScan(manager, false, KEY_D, HConstants.EMPTY_END_ROW,
+        l0, l1a, l1b, l1c, l2a, l2b);
+  }
+
+  @Test
+  public void testCompactionResultsMoveFilesUp() throws Exception {
+    MockStoreFile l0a = createFile(0, 1, KEY_A, KEY_F), l0b = createFile(0, 2, KEY_B, KEY_C);
+    LeveledStoreFileManager manager = createManager(al(l0a));
+    manager.insertNewFiles(al(l0b));
+    assertEquals(al(l0b, l0a), manager.getLevel0Files());
+    assertEquals(0, manager.getLevelCount());
+    assertEquals(2, manager.getFilesForScanOrGet(true, KEY_A, KEY_A).size());
+
+    MockStoreFile l1a = createFile(1, 2, KEY_A, KEY_C), l1b = createFile(1, 2, KEY_D, KEY_F);
+    manager.addCompactionResults(al(l0a, l0b), al(l1a, l1b));
+    assertTrue(manager.getLevel0Files().isEmpty());
+    assertEquals(al(l1a, l1b), manager.getLevelFiles(1));
+    assertEquals(al(l1b), manager.getOverlappingFiles(1, al(createFile(0, 3, KEY_E, KEY_E))));
+    assertEquals(al(l1a, l1b), manager.getOverlappingFiles(1, al(createFile(0, 3, KEY_B, KEY_E))));
+
+    MockStoreFile l2 = createFile(2, 2, KEY_D, KEY_F);
+    manager.addCompactionResults(al(l1b), al(l2));
+    assertEquals(al(l1a), manager.getLevelFiles(1));
+    assertEquals(al(l2), manager.getLevelFiles(2));
+    manager.addCompactionResults(al(l2), al());
+    assertEquals(1, manager.getLevelCount());
+    assertEquals(1, manager.clearFiles().size());
+    assertEquals(0, manager.getStorefileCount());
+  }
+
+  @Test
+  public void testRowKeyBefore() throws Exception {
+    MockStoreFile l0 = createFile(0, 1, KEY_E, KEY_F);
+    MockStoreFile l1a = createFile(1, 0, KEY_A, KEY_B), l1b = createFile(1, 0, KEY_C, KEY_D);
+    LeveledStoreFileManager manager = createManager(al(l0, l1a, l1b));
+    KeyValue target = new KeyValue(KEY_B, 0L);
+    ArrayList<StoreFile> candidates = new ArrayList<StoreFile>();
+    Iterator<StoreFile> sfs = manager.getCandidateFilesForRowKeyBefore(target);
+    assertEquals(l0, sfs.next());
+    sfs.remove();
+    sfs = manager.updateCandidateFilesForRowKeyBefore(sfs, target, target);
+    for (; sfs.hasNext(); candidates.add(sfs.next()));
+    assertEquals(al(l1a), candidates);
+    assertEquals(3, manager.getStorefileCount());
+  }
+
+  @Test
+  public void testCompactionPriority() throws Exception {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(HStore.BLOCKING_STOREFILES_KEY, 4);
+    ArrayList<StoreFile> files = al(createFile(0, 1, KEY_A, KEY_F));
+    for (byte[] key : Arrays.asList(KEY_A, KEY_B, KEY_C, KEY_D, KEY_E)) {
+      files.add(createFile(1, 0, key, key));
+      files.add(createFile(2, 0, key, key));
+    }
+    LeveledStoreFileManager manager = createManager(files, conf);
+    assertEquals(11, manager.getStorefileCount());
+    // Reads touch L0, L1 and L2; so despite the file count, the store is not blocking.
+    assertEquals(3, manager.getReadAmplification());
+    assertEquals(2, manager.getStoreCompactionPriority()); // not PRIORITY_USER
+    manager.insertNewFiles(al(createFile(0, 2, KEY_A, KEY_F)));
+    assertEquals(0, manager.getStoreCompactionPriority());
+    manager.insertNewFiles(al(createFile(0, 3, KEY_A, KEY_F)));
+    assertTrue(manager.getStoreCompactionPriority() < 0);
+  }
+
+  private static void verifyGetOrScan(LeveledStoreFileManager manager, boolean isGet,
+      byte[] start, byte[] end, StoreFile... results) throws Exception {
+    Collection<StoreFile> sfs = manager.getFilesForScanOrGet(isGet, start, end);
+    assertEquals(results.length, sfs.size());
+    for (StoreFile result : results) {
+      assertTrue(sfs.contains(result));
+    }
+  }
+
+  private static byte[] keyAfter(byte[] key) {
+    return Arrays.copyOf(key, key.length + 1);
+  }
+
+  private static MockStoreFile createFile(
+      int level, long seqNum, byte[] firstRow, byte[] lastRow) throws Exception {
+    FileSystem fs = TEST_UTIL.getTestFileSystem();
+    Path testFilePath = StoreFile.getUniqueFile(fs, CFDIR);
+    fs.create(testFilePath).close();
+    MockStoreFile sf = new MockStoreFile(TEST_UTIL, testFilePath, 0, 0, false, seqNum);
+    if (level > 0) {
+      sf.setMetadataValue(LeveledStoreFileManager.LEVEL_KEY, Bytes.toBytes(level));
+    }
+    sf.setRows(firstRow, lastRow);
+    return sf;
+  }
+
+  private static LeveledStoreFileManager createManager(ArrayList<StoreFile> sfs) {
+    return createManager(sfs, TEST_UTIL.getConfiguration());
+  }
+
+  private static LeveledStoreFileManager createManager(
+      ArrayList<StoreFile> sfs, Configuration conf) {
+    LeveledStoreFileManager result = new LeveledStoreFileManager(new KVComparator(), conf);
+    result.loadFiles(sfs);
+    return result;
+  }
+
+  private static ArrayList<StoreFile> al(StoreFile... sfs) {
+    return new ArrayList<StoreFile>(Arrays.asList(sfs));
+  }
+}
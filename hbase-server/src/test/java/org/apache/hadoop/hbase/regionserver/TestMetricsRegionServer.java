@@ -67,6 +67,7 @@ public class TestMetricsRegionServer {
     HELPER.assertCounter("totalRequestCount", 899, serverSource);
     HELPER.assertCounter("readRequestCount", 997, serverSource);
     HELPER.assertCounter("writeRequestCount", 707, serverSource);
+    HELPER.assertCounter("tombstonesSkipped", 425, serverSource);
     HELPER.assertCounter("checkMutateFailedCount", 401, serverSource);
     HELPER.assertCounter("checkMutatePassedCount", 405, serverSource);
     HELPER.assertGauge("storeFileIndexSize", 406, serverSource);
@@ -76,13 +77,19 @@ public class TestMetricsRegionServer {
     HELPER.assertGauge("mutationsWithoutWALSize", 410, serverSource);
     HELPER.assertGauge("percentFilesLocal", 99, serverSource);
     HELPER.assertGauge("compactionQueueLength", 411, serverSource);
+    HELPER.assertGauge("compactionThroughputLimit", 421, serverSource);
+    HELPER.assertCounter("compactionThrottledTime", 422, serverSource);
+    HELPER.assertGauge("compactionEffectiveThroughput", 423, serverSource);
+    HELPER.assertCounter("compactionsPreempted", 424, serverSource);
     HELPER.assertGauge("flushQueueLength", 412, serverSource);
     HELPER.assertGauge("blockCacheFreeSize", 413, serverSource);
     HELPER.assertGauge("blockCacheCount", 414, serverSource);
     HELPER.assertGauge("blockCacheSize", 415, serverSource);
+    HELPER.assertGauge("rowCacheSize", 426, serverSource);
     HELPER.assertCounter("blockCacheHitCount", 416, serverSource);
     HELPER.assertCounter("blockCacheMissCount", 417, serverSource);
     HELPER.assertCounter("blockCacheEvictionCount", 418, serverSource);
+    HELPER.assertCounter("dataBlocksSkippedByTimeRange", 419, serverSource);
     HELPER.assertGauge("blockCountHitPercent", 98, serverSource);
     HELPER.assertGauge("blockCacheExpressHitPercent", 97, serverSource);
     HELPER.assertCounter("updatesBlockedTime", 419, serverSource);
@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.MediumTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.regionserver.wal.HLog;
+import org.apache.hadoop.hbase.regionserver.wal.HLogFactory;
+import org.apache.hadoop.hbase.regionserver.wal.HLogSplitter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(MediumTests.class)
+public class TestPerColumnFamilyFlush {
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+  private static final byte[] FAMILY1 = Bytes.toBytes("f1");
+  private static final byte[] FAMILY2 = Bytes.toBytes("f2");
+  private static final byte[] FAMILY3 = Bytes.toBytes("f3");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private Configuration createConf(Class<? extends FlushPolicy> policy) {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setClass(FlushPolicy.HBASE_FLUSH_POLICY_KEY, policy, FlushPolicy.class);
+    conf.setLong(FlushLargeStoresPolicy.HREGION_COLUMNFAMILY_FLUSH_SIZE_LOWER_BOUND, 40 * 1024);
+    return conf;
+  }
+
+  private HTableDescriptor createTableDescriptor(String name) {
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf(name));
+    htd.addFamily(new HColumnDescriptor(FAMILY1));
+    htd.addFamily(new HColumnDescriptor(FAMILY2));
+    htd.addFamily(new HColumnDescriptor(FAMILY3));
+    return htd;
+  }
+
+  private HRegion createRegion(String name, Class<? extends FlushPolicy> policy)
+      throws IOException {
+    HTableDescriptor htd = createTableDescriptor(name);
+    HRegionInfo hri = new HRegionInfo(htd.getTableName());
+    Path rootDir = TEST_UTIL.getDataTestDir(name);
+    return HRegion.createHRegion(hri, rootDir, createConf(policy), htd);
+  }
+
+  private void put(HRegion region, byte[] family, int rows, int valueSize) throws IOException {
+    for (int i = 0; i < rows; ++i) {
+      Put put = new Put(Bytes.toBytes(String.format("row%05d", i)));
+      put.add(family, QUALIFIER, new byte[valueSize]);
+      region.put(put);
+    }
+  }
+
+  private int getStorefilesCount(HRegion region, byte[] family) {
+    return region.getStore(family).getStorefilesCount();
+  }
+
+  private int countRows(HRegion region, byte[] family, int rows) throws IOException {
+    int count = 0;
+    for (int i = 0; i < rows; ++i) {
+      Get get = new Get(Bytes.toBytes(String.format("row%05d", i)));
+      get.addFamily(family);
+      if (!region.get(get).isEmpty()) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testFlushLargeStoresOnly() throws Exception {
+    HRegion region = createRegion("testFlushLargeStoresOnly", FlushLargeStoresPolicy.class);
+    try {
+      put(region, FAMILY2, 10, 100);
+      long smallStoreSeqId = region.getSequenceId().get();
+      put(region, FAMILY1, 100, 1000);
+      put(region, FAMILY3, 10, 100);
+      long family2Size = region.getStore(FAMILY2).getFlushableSize();
+      long family3Size = region.getStore(FAMILY3).getFlushableSize();
+      long oldestFamily2SeqId = region.getLastStoreFlushSeqId(FAMILY2);
+      assertTrue(oldestFamily2SeqId < smallStoreSeqId);
+
+      region.flushcache(false);
+      assertEquals(1, getStorefilesCount(region, FAMILY1));
+      assertEquals(0, getStorefilesCount(region, FAMILY2));
+      assertEquals(0, getStorefilesCount(region, FAMILY3));
+      assertEquals(0, region.getStore(FAMILY1).getFlushableSize());
+      assertEquals(family2Size, region.getStore(FAMILY2).getFlushableSize());
+      assertEquals(family3Size, region.getStore(FAMILY3).getFlushableSize());
+      assertEquals(family2Size + family3Size, region.getMemstoreSize().get());
+
+      // the edits of the small stores must not be let go of in the log
+      assertEquals(oldestFamily2SeqId, region.getLastStoreFlushSeqId(FAMILY2));
+      assertTrue(region.getLastStoreFlushSeqId(FAMILY1) > smallStoreSeqId);
+      assertEquals(oldestFamily2SeqId, region.completeSequenceId);
+      assertEquals(oldestFamily2SeqId + 1, region.getLog().getEarliestMemstoreSeqNum(
+          region.getRegionInfo().getEncodedNameAsBytes()));
+
+      // nothing large is left, so everything goes
+      region.flushcache(false);
+      assertEquals(1, getStorefilesCount(region, FAMILY1));
+      assertEquals(1, getStorefilesCount(region, FAMILY2));
+      assertEquals(1, getStorefilesCount(region, FAMILY3));
+      assertEquals(0, region.getMemstoreSize().get());
+      assertEquals(region.getLastStoreFlushSeqId(FAMILY1), region.completeSequenceId);
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  @Test
+  public void testForcedAndFlushAllStores() throws Exception {
+    HRegion region = createRegion("testForcedAndFlushAllStores", FlushAllStoresPolicy.class);
+    try {
+      put(region, FAMILY1, 100, 1000);
+      put(region, FAMILY2, 10, 100);
+      region.flushcache(false);
+      assertEquals(1, getStorefilesCount(region, FAMILY1));
+      assertEquals(1, getStorefilesCount(region, FAMILY2));
+      assertEquals(0, getStorefilesCount(region, FAMILY3));
+      assertEquals(0, region.getMemstoreSize().get());
+
+      put(region, FAMILY1, 100, 1000);
+      put(region, FAMILY3, 10, 100);
+      region.flushcache();
+      assertEquals(2, getStorefilesCount(region, FAMILY1));
+      assertEquals(1, getStorefilesCount(region, FAMILY3));
+      assertEquals(0, region.getMemstoreSize().get());
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  @Test
+  public void testWALKeepsEditsOfUnflushedStores() throws Exception {
+    HRegion region = createRegion("testWALKeepsEditsOfUnflushedStores",
+        FlushLargeStoresPolicy.class);
+    try {
+      byte[] encodedName = region.getRegionInfo().getEncodedNameAsBytes();
+      HLog log = region.getLog();
+      put(region, FAMILY2, 10, 100);
+      put(region, FAMILY1, 100, 1000);
+      long oldestFamily2SeqId = region.getLastStoreFlushSeqId(FAMILY2);
+      log.rollWriter(true);
+      assertEquals(2, log.getNumLogFiles());
+
+      region.flushcache(false);
+      assertEquals(1, getStorefilesCount(region, FAMILY1));
+      assertEquals(0, getStorefilesCount(region, FAMILY2));
+      // appends after the partial flush must not move the oldest edit of the region forward
+      put(region, FAMILY1, 10, 100);
+      assertEquals(oldestFamily2SeqId + 1, log.getEarliestMemstoreSeqNum(encodedName));
+
+      // the first log file still holds the only copy of the edits of FAMILY2
+      log.rollWriter(true);
+      assertEquals(3, log.getNumLogFiles());
+
+      region.flushcache();
+      log.rollWriter(true);
+      assertEquals(1, log.getNumLogFiles());
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  @Test
+  public void testCompleteSequenceIdAfterPartialFlushes() throws Exception {
+    HRegion region = createRegion("testCompleteSequenceIdAfterPartialFlushes",
+        FlushLargeStoresPolicy.class);
+    try {
+      long firstFamily2SeqId = region.getSequenceId().get() + 1;
+      put(region, FAMILY2, 10, 100);
+      put(region, FAMILY1, 100, 1000);
+      region.flushcache(false);
+      assertEquals(0, getStorefilesCount(region, FAMILY2));
+      assertTrue(region.completeSequenceId < firstFamily2SeqId);
+
+      // another partial flush must not report the edits of FAMILY2 as persisted either
+      put(region, FAMILY1, 100, 1000);
+      long lastSeqId = region.getSequenceId().get();
+      region.flushcache(false);
+      assertEquals(2, getStorefilesCount(region, FAMILY1));
+      assertEquals(0, getStorefilesCount(region, FAMILY2));
+      assertTrue(region.getLastStoreFlushSeqId(FAMILY1) > lastSeqId);
+      assertTrue(region.completeSequenceId < firstFamily2SeqId);
+
+      region.flushcache();
+      assertTrue(region.completeSequenceId > lastSeqId);
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  @Test
+  public void testReplayUnflushedStoresAfterCrash() throws Exception {
+    String name = "testReplayUnflushedStoresAfterCrash";
+    Configuration conf = createConf(FlushLargeStoresPolicy.class);
+    HTableDescriptor htd = createTableDescriptor(name);
+    HRegionInfo hri = new HRegionInfo(htd.getTableName());
+    Path rootDir = TEST_UTIL.getDataTestDir(name);
+    FSUtils.setRootDir(conf, rootDir);
+    FileSystem fs = FileSystem.get(conf);
+    HRegion.closeHRegion(HRegion.createHRegion(hri, rootDir, conf, htd));
+
+    HLog wal = HLogFactory.createHLog(fs, rootDir, HConstants.HREGION_LOGDIR_NAME, conf);
+    HRegion region = HRegion.openHRegion(conf, fs, rootDir, hri, htd, wal);
+    put(region, FAMILY2, 10, 100);
+    put(region, FAMILY1, 100, 1000);
+    put(region, FAMILY3, 10, 100);
+    region.flushcache(false);
+    assertEquals(1, getStorefilesCount(region, FAMILY1));
+    assertEquals(0, getStorefilesCount(region, FAMILY2));
+    assertEquals(0, getStorefilesCount(region, FAMILY3));
+
+    // crash: the memstores are lost, only the log is left to split
+    wal.close();
+    HLogSplitter.split(rootDir, new Path(rootDir, HConstants.HREGION_LOGDIR_NAME),
+        new Path(rootDir, HConstants.HREGION_OLDLOGDIR_NAME), fs, conf);
+
+    HLog wal2 = HLogFactory.createHLog(fs, rootDir, HConstants.HREGION_LOGDIR_NAME, conf);
+    HRegion region2 = HRegion.openHRegion(conf, fs, rootDir, hri, htd, wal2);
+    try {
+      assertEquals(100, countRows(region2, FAMILY1, 100));
+      assertEquals(10, countRows(region2, FAMILY2, 10));
+      assertEquals(10, countRows(region2, FAMILY3, 10));
+    } finally {
+      HRegion.closeHRegion(region2);
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestRowCache {
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  private static Configuration createConf() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(RowCache.ROWCACHE_ENABLED_KEY, true);
+    return conf;
+  }
+
+  private static List<Cell> createCells(String value) {
+    List<Cell> cells = new ArrayList<Cell>();
+    cells.add(new KeyValue(ROW, FAMILY, QUALIFIER, Bytes.toBytes(value)));
+    return cells;
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    assertNull(RowCache.create(HBaseConfiguration.create()));
+    assertNotNull(RowCache.create(createConf()));
+  }
+
+  @Test
+  public void testIsCacheable() throws Exception {
+    assertTrue(RowCache.isCacheable(new Get(ROW)));
+    assertFalse(RowCache.isCacheable(new Get(ROW).setMaxVersions(2)));
+    assertFalse(RowCache.isCacheable(new Get(ROW).setTimeRange(0, 10)));
+    assertFalse(RowCache.isCacheable(new Get(ROW).setFilter(new KeyOnlyFilter())));
+    assertFalse(RowCache.isCacheable(new Get(ROW).setMaxResultsPerColumnFamily(1)));
+  }
+
+  @Test
+  public void testHitAndColumnSets() {
+    RowCache cache = new RowCache(createConf());
+    Get get = new Get(ROW).addColumn(FAMILY, QUALIFIER);
+    assertNull(cache.getCachedResult(get));
+    cache.cacheResult(get, cache.getStamp(ROW), createCells("v1"));
+    List<Cell> cached = cache.getCachedResult(get);
+    assertEquals(1, cached.size());
+    assertTrue(Bytes.equals(Bytes.toBytes("v1"), cached.get(0).getValue()));
+
+    // a different column set of the same row is a different entry
+    assertNull(cache.getCachedResult(new Get(ROW).addFamily(FAMILY)));
+    assertNotNull(cache.getCachedResult(new Get(ROW).addColumn(FAMILY, QUALIFIER)));
+  }
+
+  @Test
+  public void testInvalidate() {
+    RowCache cache = new RowCache(createConf());
+    Get get = new Get(ROW).addFamily(FAMILY);
+    cache.cacheResult(get, cache.getStamp(ROW), createCells("v1"));
+    cache.invalidate(ROW);
+    assertNull(cache.getCachedResult(get));
+
+    cache.cacheResult(get, cache.getStamp(ROW), createCells("v1"));
+    cache.invalidateAll();
+    assertNull(cache.getCachedResult(get));
+    assertEquals(0, cache.getRowCount());
+  }
+
+  @Test
+  public void testStaleStampIsNotCached() {
+    RowCache cache = new RowCache(createConf());
+    Get get = new Get(ROW).addFamily(FAMILY);
+    long stamp = cache.getStamp(ROW);
+    // a write completes while the reader is still scanning with an older read point
+    cache.invalidate(ROW);
+    cache.cacheResult(get, stamp, createCells("old"));
+    assertNull(cache.getCachedResult(get));
+  }
+
+  @Test
+  public void testLimits() {
+    Configuration conf = createConf();
+    conf.setInt(RowCache.ROWCACHE_MAX_ROWS_KEY, 2);
+    conf.setLong(RowCache.ROWCACHE_MAX_AGE_KEY, 100);
+    RowCache cache = new RowCache(conf);
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    EnvironmentEdgeManager.injectEdge(edge);
+
+    for (int i = 0; i < 3; i++) {
+      byte[] row = Bytes.toBytes("row" + i);
+      cache.cacheResult(new Get(row), cache.getStamp(row), createCells("v"));
+    }
+    assertEquals(2, cache.getRowCount());
+    assertNull(cache.getCachedResult(new Get(Bytes.toBytes("row0"))));
+
+    Get get = new Get(Bytes.toBytes("row2"));
+    assertNotNull(cache.getCachedResult(get));
+    edge.incValue(101);
+    assertNull(cache.getCachedResult(get));
+  }
+
+  @Test
+  public void testServerBudget() {
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    edge.setValue(10000);
+    EnvironmentEdgeManager.injectEdge(edge);
+    RowCache sizer = new RowCache(createConf());
+    cache(sizer, 0);
+    long entrySize = sizer.getSize();
+    assertTrue(entrySize > 0);
+
+    // room for three results across the caches of the server
+    Configuration conf = createConf();
+    conf.setFloat(RowCache.ROWCACHE_SIZE_KEY,
+        3.5f * entrySize / Runtime.getRuntime().maxMemory());
+    RegionServerAccounting accounting = new RegionServerAccounting(conf);
+    RowCache cache1 = new RowCache(conf, accounting);
+    RowCache cache2 = new RowCache(conf, accounting);
+    for (int i = 0; i < 3; i++) {
+      cache(cache1, i);
+    }
+    assertEquals(3, cache1.getRowCount());
+    assertEquals(3 * entrySize, accounting.getRowCacheSize());
+
+    // the results of the other region are not expired yet, so there is no room
+    cache(cache2, 0);
+    assertEquals(0, cache2.getRowCount());
+    // a region makes room among its own rows, least recently used first
+    cache(cache1, 3);
+    assertEquals(3, cache1.getRowCount());
+    assertNull(cache1.getCachedResult(new Get(Bytes.toBytes("row0"))));
+    assertEquals(3 * entrySize, accounting.getRowCacheSize());
+
+    // expired results give their room to the other regions
+    edge.incValue(RowCache.DEFAULT_ROWCACHE_MAX_AGE + 1);
+    cache(cache2, 0);
+    assertEquals(1, cache2.getRowCount());
+    assertEquals(0, cache1.getRowCount());
+    assertEquals(entrySize, accounting.getRowCacheSize());
+
+    cache2.close();
+    assertEquals(0, accounting.getRowCacheSize());
+    cache(cache2, 1);
+    assertEquals(0, accounting.getRowCacheSize());
+  }
+
+  private static void cache(RowCache cache, int i) {
+    byte[] row = Bytes.toBytes("row" + i);
+    cache.cacheResult(new Get(row), cache.getStamp(row), createCells("v"));
+  }
+
+  @Test
+  public void testRegionWithMemStoreChunkPool() throws Exception {
+    HBaseTestingUtility htu = new HBaseTestingUtility();
+    Configuration conf = htu.getConfiguration();
+    conf.setBoolean(RowCache.ROWCACHE_ENABLED_KEY, true);
+    conf.setBoolean(MemStore.USEMSLAB_KEY, true);
+    conf.setFloat(MemStoreChunkPool.CHUNK_POOL_MAXSIZE_KEY, 0.2f);
+    boolean chunkPoolDisabledBeforeTest = MemStoreChunkPool.chunkPoolDisabled;
+    MemStoreChunkPool.chunkPoolDisabled = false;
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf("testRowCache"));
+    htd.addFamily(new HColumnDescriptor(FAMILY));
+    HRegionInfo hri = new HRegionInfo(htd.getTableName(), null, null, false);
+    HRegion region = HRegion.createHRegion(hri,
+        htu.getDataTestDir("testRegionWithMemStoreChunkPool"), conf, htd);
+    try {
+      assertNotNull(MemStoreChunkPool.getPool(conf));
+      Get get = new Get(ROW).addColumn(FAMILY, QUALIFIER);
+      put(region, ROW, "v1");
+      assertValue("v1", region.get(get));
+      assertEquals(1, region.rowCache.getRowCount());
+
+      // the chunks of the flushed memstore go back to the pool and get filled by other rows
+      region.flushcache();
+      for (int i = 0; i < 100; i++) {
+        put(region, Bytes.toBytes("other" + i), "xx");
+      }
+      assertValue("v1", region.get(get));
+
+      put(region, ROW, "v2");
+      assertEquals(0, region.rowCache.getRowCount());
+      assertValue("v2", region.get(get));
+      assertValue("v2", region.get(get));
+
+      Delete delete = new Delete(ROW);
+      delete.setDurability(Durability.SKIP_WAL);
+      region.delete(delete);
+      assertEquals(0, region.rowCache.getRowCount());
+      assertTrue(region.get(get).isEmpty());
+    } finally {
+      HRegion.closeHRegion(region);
+      MemStoreChunkPool.chunkPoolDisabled = chunkPoolDisabledBeforeTest;
+    }
+  }
+
+  private static void put(HRegion region, byte[] row, String value) throws Exception {
+    Put put = new Put(row);
+    put.setDurability(Durability.SKIP_WAL);
+    put.add(FAMILY, QUALIFIER, Bytes.toBytes(value));
+    region.put(put);
+  }
+
+  private static void assertValue(String expected, Result result) {
+    assertEquals(expected, Bytes.toString(result.getValue(FAMILY, QUALIFIER)));
+  }
+}
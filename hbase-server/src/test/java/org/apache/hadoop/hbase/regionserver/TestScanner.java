@@ -220,6 +220,44 @@ public class TestScanner {
     }
   }
 
+  /**
+   * Test that the delete markers a user scan skips are counted for the region once the
+   * scanner closes.
+   */
+  @Test
+  public void testTombstonesSkipped() throws Exception {
+    try {
+      this.r = TEST_UTIL.createLocalHRegion(TESTTABLEDESC, null, null);
+      for (byte[] row : new byte[][] { firstRowBytes, secondRowBytes, thirdRowBytes }) {
+        Put put = new Put(row);
+        put.add(HConstants.CATALOG_FAMILY, col1, Bytes.toBytes("v"));
+        this.r.put(put);
+      }
+      // a family delete marker and a column delete marker
+      this.r.delete(new Delete(firstRowBytes));
+      Delete delete = new Delete(secondRowBytes);
+      delete.deleteColumns(HConstants.CATALOG_FAMILY, col1);
+      this.r.delete(delete);
+      assertEquals(0, this.r.tombstonesSkipped.get());
+
+      InternalScanner s = r.getScanner(new Scan());
+      List<Cell> results = new ArrayList<Cell>();
+      int rows = 0;
+      boolean more;
+      do {
+        more = s.next(results);
+        if (!results.isEmpty()) rows++;
+        results.clear();
+      } while (more);
+      assertEquals(1, rows);
+      // counted when the store scanners close
+      s.close();
+      assertEquals(2, this.r.tombstonesSkipped.get());
+    } finally {
+      HRegion.closeHRegion(this.r);
+    }
+  }
+
   /**
    * Test that closing a scanner while a client is using it doesn't throw
    * NPEs but instead a UnknownScannerException. HBASE-2503
@@ -33,6 +33,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HBaseTestCase;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
 import org.apache.hadoop.hbase.HConstants;
@@ -570,6 +571,116 @@ public class TestStoreFile extends HBaseTestCase {
         + ", expected no more than " + maxFalsePos, falsePos <= maxFalsePos);
   }
 
+  public void testDeleteMarkerCount() throws Exception {
+    Path f = new Path(ROOT_DIR, getName());
+    HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL).build();
+    StoreFile.Writer writer = new StoreFile.WriterBuilder(conf, cacheConf, this.fs)
+            .withFilePath(f)
+            .withFileContext(meta)
+            .build();
+    long now = System.currentTimeMillis();
+    KeyValue.Type[] types = { KeyValue.Type.DeleteFamily, KeyValue.Type.DeleteColumn,
+        KeyValue.Type.Delete, KeyValue.Type.Put };
+    for (int i = 0; i < 1000; i++) {
+      String row = String.format(localFormatter, i);
+      KeyValue kv = new KeyValue(row.getBytes(), "family".getBytes(),
+          "col".getBytes(), now, types[i % types.length], "value".getBytes());
+      writer.append(kv);
+    }
+    writer.appendTrackedTimestampsToMetadata();
+    writer.close();
+
+    StoreFile.Reader reader = new StoreFile.Reader(fs, f, cacheConf, conf);
+    reader.loadFileInfo();
+    assertEquals(750, reader.getDeleteMarkerCount());
+    assertEquals(250, reader.getDeleteFamilyCnt());
+    reader.close(true);
+
+    // files written without the tracked metadata do not know their count
+    writer = new StoreFile.WriterBuilder(conf, cacheConf, this.fs)
+            .withFilePath(f)
+            .withFileContext(meta)
+            .build();
+    writeStoreFile(writer);
+    writer.close();
+    reader = new StoreFile.Reader(fs, f, cacheConf, conf);
+    reader.loadFileInfo();
+    assertEquals(-1, reader.getDeleteMarkerCount());
+    reader.close(true);
+    fs.delete(f, true);
+  }
+
+  public void testPipelinedFlushWrite() throws Exception {
+    Configuration conf = new Configuration(this.conf);
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    // small Bloom chunks and queues, so that the stages hand over a lot
+    conf.setInt(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCK_SIZE, 128);
+    conf.setInt(FlushPipeline.QUEUE_SIZE_KEY, 2);
+    Path f = new Path(ROOT_DIR, getName());
+    HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL).build();
+    StoreFile.Writer writer = new StoreFile.WriterBuilder(conf, cacheConf, this.fs)
+            .withFilePath(f)
+            .withBloomType(BloomType.ROW)
+            .withMaxKeyCount(2000)
+            .withFileContext(meta)
+            .build();
+    long now = System.currentTimeMillis();
+    final List<Cell> kvs = new ArrayList<Cell>();
+    for (int i = 0; i < 2000; i += 2) {
+      byte[] row = Bytes.toBytes(String.format(localFormatter, i));
+      if (i % 10 == 0) {
+        kvs.add(new KeyValue(row, "family".getBytes(), null, now, KeyValue.Type.DeleteFamily));
+      }
+      kvs.add(new KeyValue(row, "family".getBytes(), "col".getBytes(), now, "value".getBytes()));
+    }
+    InternalScanner scanner = new InternalScanner() {
+      private int next = 0;
+
+      @Override
+      public boolean next(List<Cell> results) throws IOException {
+        return next(results, -1);
+      }
+
+      @Override
+      public boolean next(List<Cell> results, int limit) throws IOException {
+        int end = limit < 0 ? kvs.size() : Math.min(kvs.size(), next + limit);
+        results.addAll(kvs.subList(next, end));
+        next = end;
+        return next < kvs.size();
+      }
+
+      @Override
+      public void close() throws IOException {
+      }
+    };
+    FlushPipeline pipeline = new FlushPipeline(conf);
+    List<FlushPipeline.Stage> stages = FlushPipeline.createStages(writer);
+    assertEquals(2, stages.size());
+    assertTrue(pipeline.run(scanner, stages, Long.MAX_VALUE, 7) > 0);
+    writer.close();
+
+    StoreFile.Reader reader = new StoreFile.Reader(fs, f, cacheConf, conf);
+    reader.loadFileInfo();
+    reader.loadBloomfilter();
+    assertEquals(kvs.size(), reader.getEntries());
+    assertEquals(200, reader.getDeleteFamilyCnt());
+    HFileScanner hfs = reader.getScanner(false, false);
+    assertTrue(hfs.seekTo());
+    for (Cell kv : kvs) {
+      assertTrue(Bytes.equals(((KeyValue) kv).getKey(), hfs.getKeyValue().getKey()));
+      hfs.next();
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      byte[] row = Bytes.toBytes(String.format(localFormatter, i));
+      assertTrue(reader.passesGeneralBloomFilter(row, 0, row.length, null, 0, 0));
+      if (i % 10 == 0) {
+        assertTrue(reader.passesDeleteFamilyBloomFilter(row, 0, row.length));
+      }
+    }
+    reader.close(true);
+    fs.delete(f, true);
+  }
+
   /**
    * Test for HBASE-8012
    */
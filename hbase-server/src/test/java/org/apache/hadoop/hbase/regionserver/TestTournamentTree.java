@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestTournamentTree {
+  private static final Comparator<Integer> COMPARATOR = new Comparator<Integer>() {
+    @Override
+    public int compare(Integer left, Integer right) {
+      return left.compareTo(right);
+    }
+  };
+
+  @Test
+  public void testEmpty() {
+    TournamentTree<Integer> tree = new TournamentTree<Integer>(4, COMPARATOR);
+    assertTrue(tree.isEmpty());
+    assertNull(tree.peek());
+    assertNull(tree.poll());
+    assertFalse(tree.iterator().hasNext());
+  }
+
+  @Test
+  public void testSortedPollForAllSizes() {
+    Random rand = new Random(42);
+    for (int capacity = 1; capacity <= 65; capacity++) {
+      TournamentTree<Integer> tree = new TournamentTree<Integer>(capacity, COMPARATOR);
+      List<Integer> expected = new ArrayList<Integer>();
+      for (int i = 0; i < capacity; i++) {
+        int value = rand.nextInt(1000);
+        expected.add(value);
+        tree.add(value);
+      }
+      assertEquals(capacity, tree.size());
+      Collections.sort(expected);
+      for (Integer value : expected) {
+        assertEquals(value, tree.peek());
+        assertEquals(value, tree.poll());
+      }
+      assertTrue(tree.isEmpty());
+    }
+  }
+
+  @Test
+  public void testReplaceTopMerge() {
+    // merge ascending runs the way KeyValueHeap does: exchange the exhausted top
+    // for its successor without a separate poll and add
+    Random rand = new Random(42);
+    int runs = 13;
+    TournamentTree<Integer> tree = new TournamentTree<Integer>(runs, COMPARATOR);
+    for (int i = 0; i < runs; i++) {
+      int value = rand.nextInt(100);
+      tree.add(value);
+    }
+    List<Integer> merged = new ArrayList<Integer>();
+    while (merged.size() < 1000) {
+      Integer top = tree.peek();
+      int successor = top + rand.nextInt(10);
+      assertEquals(top, tree.replaceTop(successor));
+      merged.add(top);
+    }
+    List<Integer> sorted = new ArrayList<Integer>(merged);
+    Collections.sort(sorted);
+    assertEquals(sorted, merged);
+  }
+
+  @Test
+  public void testGrowAndClear() {
+    TournamentTree<Integer> tree = new TournamentTree<Integer>(1, COMPARATOR);
+    for (int i = 10; i > 0; i--) {
+      tree.add(i);
+    }
+    assertEquals(10, tree.size());
+    int count = 0;
+    for (Integer value : tree) {
+      assertNotNull(value);
+      count++;
+    }
+    assertEquals(10, count);
+    for (int i = 1; i <= 10; i++) {
+      assertEquals(Integer.valueOf(i), tree.poll());
+    }
+    tree.add(5);
+    tree.clear();
+    assertTrue(tree.isEmpty());
+    assertNull(tree.peek());
+  }
+}
@@ -22,10 +22,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
 import org.apache.hadoop.hbase.MediumTests;
 import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.LeveledStoreConfig;
+import org.apache.hadoop.hbase.regionserver.LeveledStoreFileManager;
 import org.apache.hadoop.hbase.regionserver.StoreConfigInformation;
 import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ReflectionUtils;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -35,6 +40,7 @@ import org.junit.runners.Parameterized;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.Mockito.mock;
@@ -48,7 +54,11 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
 
   private static final Log LOG = LogFactory.getLog(PerfTestCompactionPolicies.class);
 
-  private final RatioBasedCompactionPolicy cp;
+  /** The number of rows the leveled store simulation spreads its files over. */
+  private static final int KEY_SPACE = 1000000;
+
+  private final CompactionPolicy cp;
+  private final Configuration configuration;
   private final StoreFileListGenerator generator;
   private final HStore store;
   private Class<? extends StoreFileListGenerator> fileGenClass;
@@ -56,6 +66,10 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
   private final int min;
   private final float ratio;
   private long written = 0;
+  private long flushed = 0;
+  private long flushes = 0;
+  private long filesRead = 0;
+  private long seqId = 0;
 
   @Parameterized.Parameters
   public static Collection<Object[]> data() {
@@ -66,6 +80,7 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
         EverythingPolicy.class,
         RatioBasedCompactionPolicy.class,
         ExploringCompactionPolicy.class,
+        LeveledCompactionPolicy.class,
     };
 
     Class[] fileListGenClasses = new Class[]{
@@ -128,15 +143,20 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
     org.apache.log4j.Logger.getLogger(RatioBasedCompactionPolicy.class).
         setLevel(org.apache.log4j.Level.ERROR);
 
+    org.apache.log4j.Logger.getLogger(LeveledStoreFileManager.class).
+        setLevel(org.apache.log4j.Level.ERROR);
+
     org.apache.log4j.Logger.getLogger(cpClass).setLevel(org.apache.log4j.Level.ERROR);
 
 
-    Configuration configuration = HBaseConfiguration.create();
+    configuration = HBaseConfiguration.create();
 
     // Make sure that this doesn't include every file.
     configuration.setInt("hbase.hstore.compaction.max", max);
     configuration.setInt("hbase.hstore.compaction.min", min);
     configuration.setFloat("hbase.hstore.compaction.ratio", ratio);
+    // Files about the size of the generated flushes.
+    configuration.setLong(LeveledStoreConfig.FILE_SIZE_KEY, 16 * 1024 * 1024);
 
     store = createMockStore();
     this.cp = ReflectionUtils.instantiateWithCustomCtor(cpClass.getName(),
@@ -151,12 +171,22 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
   public final void testSelection() throws Exception {
     long fileDiff = 0;
     for (List<StoreFile> storeFileList : generator) {
-      List<StoreFile> currentFiles = new ArrayList<StoreFile>(18);
-      for (StoreFile file : storeFileList) {
-        currentFiles.add(file);
-        currentFiles = runIteration(currentFiles);
+      int filesLeft;
+      if (cp instanceof LeveledCompactionPolicy) {
+        filesLeft = runLeveled(storeFileList);
+      } else {
+        List<StoreFile> currentFiles = new ArrayList<StoreFile>(18);
+        for (StoreFile file : storeFileList) {
+          currentFiles.add(file);
+          currentFiles = runIteration(currentFiles);
+          flushed += file.getReader().length();
+          ++flushes;
+          // Every file may have the row a get is looking for.
+          filesRead += currentFiles.size();
+        }
+        filesLeft = currentFiles.size();
       }
-      fileDiff += (storeFileList.size() - currentFiles.size());
+      fileDiff += (storeFileList.size() - filesLeft);
     }
 
     // print out tab delimited so that it can be used in excel/gdocs.
@@ -168,6 +198,8 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
             + "\t" + ratio
             + "\t" + written
             + "\t" + fileDiff
+            + "\t" + String.format("%.2f", (double) (flushed + written) / flushed)
+            + "\t" + String.format("%.2f", (double) filesRead / flushes)
     );
   }
 
@@ -175,7 +207,7 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
   private List<StoreFile> runIteration(List<StoreFile> startingStoreFiles) throws IOException {
 
     List<StoreFile> storeFiles = new ArrayList<StoreFile>(startingStoreFiles);
-    CompactionRequest req = cp.selectCompaction(
+    CompactionRequest req = ((RatioBasedCompactionPolicy) cp).selectCompaction(
         storeFiles, new ArrayList<StoreFile>(), false, false, false);
     long newFileSize = 0;
 
@@ -197,6 +229,77 @@ public class PerfTestCompactionPolicies extends MockStoreFileGenerator {
     return storeFiles;
   }
 
+  /**
+   * Simulates a leveled store: every flush covers the whole key space, and compactions split
+   * their output into files of the target size that partition the key range of their inputs.
+   * The files a get reads are counted on a random row after each flush and its compactions.
+   * @return The number of files left.
+   */
+  private int runLeveled(List<StoreFile> flushFiles) throws IOException {
+    LeveledCompactionPolicy policy = (LeveledCompactionPolicy) cp;
+    LeveledStoreFileManager sfm = new LeveledStoreFileManager(new KVComparator(), configuration);
+    sfm.loadFiles(new ArrayList<StoreFile>());
+    List<StoreFile> filesCompacting = new ArrayList<StoreFile>();
+    long fileSize = new LeveledStoreConfig(configuration, store).getTargetFileSize();
+    for (StoreFile file : flushFiles) {
+      long size = file.getReader().length();
+      sfm.insertNewFiles(Collections.singletonList(
+          createLeveledFile(size, ++seqId, 0, 0, KEY_SPACE - 1)));
+      flushed += size;
+      ++flushes;
+      while (policy.needsCompactions(sfm, filesCompacting)) {
+        LeveledCompactionPolicy.LeveledCompactionRequest request =
+            policy.selectCompaction(sfm, filesCompacting, false);
+        if (request == null) break;
+        Collection<StoreFile> filesToCompact = request.getRequest().getFiles();
+        sfm.addCompactionResults(filesToCompact,
+            createLeveledOutput(filesToCompact, request.getTargetLevel(), fileSize));
+      }
+      byte[] row = Bytes.toBytes(random.nextInt(KEY_SPACE));
+      filesRead += sfm.getFilesForScanOrGet(true, row, row).size();
+    }
+    return sfm.getStorefileCount();
+  }
+
+  private List<StoreFile> createLeveledOutput(
+      Collection<StoreFile> filesToCompact, int level, long fileSize) {
+    long size = 0, maxSeqId = 0;
+    int firstRow = Integer.MAX_VALUE, lastRow = Integer.MIN_VALUE;
+    for (StoreFile sf : filesToCompact) {
+      size += sf.getReader().length();
+      maxSeqId = Math.max(maxSeqId, sf.getMaxSequenceId());
+      firstRow = Math.min(firstRow, rowOf(sf.getReader().getFirstKey()));
+      lastRow = Math.max(lastRow, rowOf(sf.getReader().getLastKey()));
+    }
+    written += size;
+    long rows = (long) lastRow - firstRow + 1;
+    int count = (int) Math.min(rows, Math.max(1, (size + fileSize - 1) / fileSize));
+    List<StoreFile> result = new ArrayList<StoreFile>(count);
+    for (int i = 0; i < count; ++i) {
+      result.add(createLeveledFile(size / count, maxSeqId, level,
+          (int) (firstRow + rows * i / count), (int) (firstRow + rows * (i + 1) / count - 1)));
+    }
+    return result;
+  }
+
+  private StoreFile createLeveledFile(
+      long sizeInBytes, long seqId, int level, int firstRow, int lastRow) {
+    StoreFile sf = createMockStoreFile(sizeInBytes, seqId);
+    StoreFile.Reader reader = sf.getReader();
+    when(sf.getMaxSequenceId()).thenReturn(seqId);
+    when(sf.getMetadataValue(LeveledStoreFileManager.LEVEL_KEY)).thenReturn(
+        level > 0 ? Bytes.toBytes(level) : null);
+    when(reader.getFirstKey()).thenReturn(
+        KeyValue.createFirstOnRow(Bytes.toBytes(firstRow)).getKey());
+    when(reader.getLastKey()).thenReturn(
+        KeyValue.createFirstOnRow(Bytes.toBytes(lastRow)).getKey());
+    return sf;
+  }
+
+  private static int rowOf(byte[] key) {
+    return Bytes.toInt(KeyValue.createKeyValueFromKey(key).getRow());
+  }
+
   private HStore createMockStore() {
     HStore s = mock(HStore.class);
     when(s.getStoreFileTtl()).thenReturn(Long.MAX_VALUE);
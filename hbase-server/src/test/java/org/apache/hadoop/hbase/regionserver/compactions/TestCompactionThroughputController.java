@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.SmallTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestCompactionThroughputController {
+
+  private static Configuration createConf(long lower, long higher) {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setLong(CompactionThroughputController.LOWER_BOUND_KEY, lower);
+    conf.setLong(CompactionThroughputController.HIGHER_BOUND_KEY, higher);
+    conf.setLong(CompactionThroughputController.CONTROL_SIZE_KEY, 1000);
+    return conf;
+  }
+
+  @Test
+  public void testDisabledByDefault() throws InterruptedException {
+    CompactionThroughputController controller =
+        new CompactionThroughputController(HBaseConfiguration.create());
+    assertFalse(controller.isEnabled());
+    controller.tune(0.5);
+    assertEquals(0, controller.getMaxThroughput());
+    String name = controller.start("test");
+    assertEquals(0, controller.control(name, 1024L * 1024 * 1024));
+    controller.finish(name);
+    assertEquals(0, controller.getTotalThrottledTime());
+  }
+
+  @Test
+  public void testTune() {
+    CompactionThroughputController controller =
+        new CompactionThroughputController(createConf(1000, 3000));
+    assertTrue(controller.isEnabled());
+    assertEquals(1000, controller.getMaxThroughput());
+    controller.tune(0.0);
+    assertEquals(1000, controller.getMaxThroughput());
+    controller.tune(0.5);
+    assertEquals(2000, controller.getMaxThroughput());
+    controller.tune(-1.0);
+    assertEquals(1000, controller.getMaxThroughput());
+    // a store is blocking updates
+    controller.tune(1.0);
+    assertEquals(0, controller.getMaxThroughput());
+  }
+
+  @Test
+  public void testOffPeak() {
+    Configuration conf = createConf(1000, 3000);
+    conf.setLong(CompactionThroughputController.OFFPEAK_KEY, 5000);
+    // off-peak from now on
+    int hour = CurrentHourProvider.getCurrentHour();
+    conf.setInt("hbase.offpeak.start.hour", hour);
+    conf.setInt("hbase.offpeak.end.hour", (hour + 2) % 24);
+    CompactionThroughputController controller = new CompactionThroughputController(conf);
+    controller.tune(0.2);
+    assertEquals(5000, controller.getMaxThroughput());
+  }
+
+  @Test
+  public void testControlSleeps() throws InterruptedException {
+    // 10KB/s, with 1000 bytes between checks
+    CompactionThroughputController controller =
+        new CompactionThroughputController(createConf(10000, 10000));
+    String name = controller.start("test");
+    assertEquals(1, controller.getActiveCompactionCount());
+    // below the control size nothing happens
+    assertEquals(0, controller.control(name, 500));
+    long slept = 0;
+    for (int i = 0; i < 5; i++) {
+      slept += controller.control(name, 1000);
+    }
+    // 5KB at 10KB/s takes about half a second
+    assertTrue("slept " + slept, slept >= 300);
+    assertEquals(slept, controller.getTotalThrottledTime());
+    controller.finish(name);
+    assertEquals(0, controller.getActiveCompactionCount());
+    assertTrue(controller.getEffectiveThroughput() > 0);
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValue.KVComparator;
+import org.apache.hadoop.hbase.SmallTests;
+import org.apache.hadoop.hbase.regionserver.LeveledStoreConfig;
+import org.apache.hadoop.hbase.regionserver.LeveledStoreFileManager;
+import org.apache.hadoop.hbase.regionserver.StoreConfigInformation;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.regionserver.compactions.LeveledCompactionPolicy.LeveledCompactionRequest;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(SmallTests.class)
+public class TestLeveledCompactionPolicy {
+  private static final byte[] KEY_A = Bytes.toBytes("aaa");
+  private static final byte[] KEY_B = Bytes.toBytes("bbb");
+  private static final byte[] KEY_C = Bytes.toBytes("ccc");
+  private static final byte[] KEY_D = Bytes.toBytes("ddd");
+  private static final byte[] KEY_F = Bytes.toBytes("fff");
+  private static final byte[] KEY_X = Bytes.toBytes("xxx");
+  private static final byte[] KEY_Y = Bytes.toBytes("yyy");
+
+  private static final List<StoreFile> NONE_COMPACTING = new ArrayList<StoreFile>();
+
+  @Test
+  public void testLevel0Compaction() throws Exception {
+    Configuration conf = createConf();
+    LeveledCompactionPolicy policy = createPolicy(conf);
+    StoreFile l0a = createFile(0, 1, 10, KEY_A, KEY_F), l0b = createFile(0, 2, 10, KEY_B, KEY_D);
+    StoreFile l1a = createFile(1, 0, 10, KEY_A, KEY_B), l1b = createFile(1, 0, 10, KEY_C, KEY_D),
+        l1c = createFile(1, 0, 10, KEY_X, KEY_Y);
+    LeveledStoreFileManager sfm = createManager(conf, l0a, l1a, l1b, l1c);
+    // L1 is over its size, but a file gets compacted into L2 only when L0 has been dealt with.
+    sfm.insertNewFiles(al(l0b));
+    assertTrue(policy.needsCompactions(sfm, NONE_COMPACTING));
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 1, l0a, l0b, l1a, l1b);
+    // One compaction at a time.
+    assertFalse(policy.needsCompactions(sfm, al(l0a)));
+    assertNull(policy.selectCompaction(sfm, al(l0a), false));
+  }
+
+  @Test
+  public void testLevelCompactionsTakeTurns() throws Exception {
+    Configuration conf = createConf();
+    LeveledCompactionPolicy policy = createPolicy(conf);
+    StoreFile l1a = createFile(1, 0, 10, KEY_A, KEY_B), l1b = createFile(1, 0, 10, KEY_C, KEY_D);
+    StoreFile l2a = createFile(2, 0, 10, KEY_A, KEY_B), l2b = createFile(2, 0, 10, KEY_D, KEY_F);
+    LeveledStoreFileManager sfm = createManager(conf, l1a, l1b, l2a, l2b);
+    assertFalse(policy.needsCompactions(sfm, NONE_COMPACTING));
+    assertNull(policy.selectCompaction(sfm, NONE_COMPACTING, false));
+
+    StoreFile l1c = createFile(1, 0, 10, KEY_X, KEY_Y);
+    sfm.insertNewFiles(al(l1c));
+    assertTrue(policy.needsCompactions(sfm, NONE_COMPACTING));
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 2, l1a, l2a);
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 2, l1b, l2b);
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 2, l1c);
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 2, l1a, l2a);
+
+    // The highest level has no size limit.
+    sfm = createManager(conf, createFile(2, 0, 1000, KEY_A, KEY_F));
+    assertFalse(policy.needsCompactions(sfm, NONE_COMPACTING));
+  }
+
+  @Test
+  public void testOverlappingFilesAreCompactedTogether() throws Exception {
+    Configuration conf = createConf();
+    LeveledCompactionPolicy policy = createPolicy(conf);
+    StoreFile l0 = createFile(0, 9, 1, KEY_F, KEY_F);
+    StoreFile l1a = createFile(1, 5, 10, KEY_A, KEY_B), l1b = createFile(1, 3, 10, KEY_C, KEY_D),
+        l1c = createFile(1, 7, 10, KEY_X, KEY_Y);
+    StoreFile l2a = createFile(2, 1, 10, KEY_A, KEY_C), l2b = createFile(2, 1, 10, KEY_D, KEY_F);
+    LeveledStoreFileManager sfm = createManager(conf, l0, l1a, l1b, l1c, l2a, l2b);
+    // l2a takes in l1b, whose newer cells would otherwise lose to the new files of the higher
+    // sequence id of l1a; l1b takes in l2b, and l2b takes in l0.
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 2,
+        l1a, l1b, l2a, l2b, l0);
+  }
+
+  @Test
+  public void testPeriodicMajorCompaction() throws Exception {
+    Configuration conf = createConf();
+    conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 1000);
+    LeveledCompactionPolicy policy = createPolicy(conf);
+    StoreFile l0 = createFile(0, 3, 1, KEY_A, KEY_B), l1 = createFile(1, 2, 10, KEY_A, KEY_C);
+    StoreFile l2 = createFile(2, 1, 10, KEY_X, KEY_Y);
+    LeveledStoreFileManager sfm = createManager(conf, l0, l1, l2);
+    long now = System.currentTimeMillis();
+    for (StoreFile sf : al(l0, l1, l2)) {
+      when(sf.getModificationTimeStamp()).thenReturn(now);
+    }
+    assertFalse(policy.isMajorCompaction(sfm.getStorefiles()));
+    assertNull(policy.selectCompaction(sfm, NONE_COMPACTING, false));
+    // Once the oldest file is older than the period, all the files go to the highest level.
+    when(l2.getModificationTimeStamp()).thenReturn(now - 2000);
+    assertTrue(policy.isMajorCompaction(sfm.getStorefiles()));
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, false), 2, l0, l1, l2);
+  }
+
+  @Test
+  public void testForcedCompaction() throws Exception {
+    Configuration conf = createConf();
+    LeveledCompactionPolicy policy = createPolicy(conf);
+    StoreFile l0 = createFile(0, 1, 10, KEY_A, KEY_F), l1 = createFile(1, 0, 10, KEY_A, KEY_B);
+    StoreFile l2 = createFile(2, 0, 10, KEY_A, KEY_C);
+    LeveledStoreFileManager sfm = createManager(conf, l0, l1, l2);
+    assertFalse(policy.needsCompactions(sfm, NONE_COMPACTING));
+    verifyRequest(policy.selectCompaction(sfm, NONE_COMPACTING, true), 2, l0, l1, l2);
+    // Files chosen by the user go to their highest level.
+    assertEquals(2, policy.createEmptyRequest(
+        sfm, new CompactionRequest(al(l1, l2))).getTargetLevel());
+    assertEquals(1, policy.createEmptyRequest(
+        sfm, new CompactionRequest(al(l0))).getTargetLevel());
+  }
+
+  private static void verifyRequest(
+      LeveledCompactionRequest request, int targetLevel, StoreFile... files) {
+    assertEquals(targetLevel, request.getTargetLevel());
+    assertEquals(new HashSet<StoreFile>(Arrays.asList(files)),
+        new HashSet<StoreFile>(request.getRequest().getFiles()));
+  }
+
+  private static Configuration createConf() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(LeveledStoreConfig.MIN_FILES_L0_KEY, 2);
+    conf.setLong(LeveledStoreConfig.FILE_SIZE_KEY, 10);
+    conf.setLong(LeveledStoreConfig.LEVEL1_SIZE_KEY, 25);
+    conf.setInt(LeveledStoreConfig.LEVEL_SIZE_MULTIPLIER_KEY, 10);
+    conf.setInt(LeveledStoreConfig.MAX_LEVEL_KEY, 2);
+    return conf;
+  }
+
+  private static LeveledCompactionPolicy createPolicy(Configuration conf) {
+    return new LeveledCompactionPolicy(conf, mock(StoreConfigInformation.class));
+  }
+
+  private static LeveledStoreFileManager createManager(Configuration conf, StoreFile... sfs) {
+    LeveledStoreFileManager sfm = new LeveledStoreFileManager(new KVComparator(), conf);
+    sfm.loadFiles(al(sfs));
+    return sfm;
+  }
+
+  private static StoreFile createFile(
+      int level, long seqId, long size, byte[] firstRow, byte[] lastRow) {
+    StoreFile sf = mock(StoreFile.class);
+    when(sf.getPath()).thenReturn(new Path("moo"));
+    when(sf.getMaxSequenceId()).thenReturn(seqId);
+    if (level > 0) {
+      when(sf.getMetadataValue(LeveledStoreFileManager.LEVEL_KEY))
+          .thenReturn(Bytes.toBytes(level));
+    }
+    StoreFile.Reader r = mock(StoreFile.Reader.class);
+    when(r.length()).thenReturn(size);
+    when(r.getFirstKey()).thenReturn(KeyValue.createFirstOnRow(firstRow).getKey());
+    when(r.getLastKey()).thenReturn(KeyValue.createFirstOnRow(lastRow).getKey());
+    when(sf.getReader()).thenReturn(r);
+    return sf;
+  }
+
+  private static ArrayList<StoreFile> al(StoreFile... sfs) {
+    return new ArrayList<StoreFile>(Arrays.asList(sfs));
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.MediumTests;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.regionserver.CompactionTool;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FSTableDescriptors;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(MediumTests.class)
+public class TestOffloadingCompactor {
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  /**
+   * Runs the worker in this process rather than forking one.
+   */
+  private static class InProcessCompactor extends OffloadingCompactor {
+    InProcessCompactor(Configuration conf, HStore store) {
+      super(conf, store);
+    }
+
+    @Override
+    void runWorker(Path requestFile) throws IOException {
+      try {
+        assertEquals(0, ToolRunner.run(new Configuration(conf), new CompactionTool(),
+            new String[] { "-request", requestFile.toString() }));
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  @Test
+  public void testCompactionInWorker() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    conf.setBoolean(OffloadingCompactor.FALLBACK_KEY, false);
+    Path rootDir = TEST_UTIL.getDataTestDir("testCompactionInWorker");
+    FileSystem fs = rootDir.getFileSystem(conf);
+    HTableDescriptor htd = new HTableDescriptor(TableName.valueOf("testCompactionInWorker"));
+    htd.addFamily(new HColumnDescriptor(FAMILY));
+    new FSTableDescriptors(fs, rootDir).createTableDescriptor(htd);
+    HRegionInfo hri = new HRegionInfo(htd.getTableName());
+    HRegion region = HRegion.createHRegion(hri, rootDir, conf, htd);
+    try {
+      int rows = 0;
+      for (int f = 0; f < 3; ++f) {
+        for (int i = 0; i < 100; ++i, ++rows) {
+          Put put = new Put(Bytes.toBytes(String.format("row%05d", f + 3 * i)));
+          put.add(FAMILY, QUALIFIER, Bytes.toBytes(rows));
+          region.put(put);
+        }
+        region.flushcache();
+      }
+      HStore store = (HStore) region.getStore(FAMILY);
+      assertEquals(3, store.getStorefilesCount());
+
+      CompactionRequest request = new CompactionRequest(store.getStorefiles());
+      request.setIsMajor(true);
+      OffloadingCompactor compactor = new InProcessCompactor(conf, store);
+      List<Path> newFiles = compactor.compact(request);
+      assertEquals(1, newFiles.size());
+      Path newFile = newFiles.get(0);
+      assertEquals(store.getRegionFileSystem().getTempDir().toUri().getPath(),
+          newFile.getParent().toUri().getPath());
+      assertEquals(1.0f, compactor.getProgress().getProgressPct(), 0.0f);
+
+      StoreFile sf = new StoreFile(fs, newFile, conf, new CacheConfig(conf), BloomType.NONE);
+      try {
+        assertEquals(rows, sf.createReader().getEntries());
+      } finally {
+        sf.closeReader(true);
+      }
+      // the request and result files are gone, only the new file is left
+      assertEquals(1, fs.listStatus(store.getRegionFileSystem().getTempDir()).length);
+      assertTrue(fs.exists(newFile));
+      for (StoreFile input : request.getFiles()) {
+        assertTrue(fs.exists(input.getPath()));
+      }
+      List<String> command = compactor.getWorkerCommand(newFile);
+      assertEquals(CompactionTool.class.getName(), command.get(command.size() - 3));
+      assertEquals(newFile.toString(), command.get(command.size() - 1));
+    } finally {
+      HRegion.closeHRegion(region);
+    }
+  }
+
+  @Test
+  public void testWorkerThroughput() {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    // the region server did not throttle
+    assertNull(OffloadingCompactor.createThroughputController(conf, 0));
+    // the worker keeps to the share it was given
+    CompactionThroughputController controller =
+        OffloadingCompactor.createThroughputController(conf, 1024 * 1024);
+    assertTrue(controller.isEnabled());
+    assertEquals(1024 * 1024, controller.getMaxThroughput());
+  }
+}